@@ -6,19 +6,21 @@ import android.support.v4.app.Fragment;
 import android.support.v7.widget.GridLayoutManager;
 import android.support.v7.widget.LinearLayoutManager;
 import android.support.v7.widget.RecyclerView;
-import android.util.Log;
-import android.view.GestureDetector;
 import android.view.LayoutInflater;
-import android.view.MotionEvent;
 import android.view.View;
 import android.view.ViewGroup;
 import android.widget.Toast;
 
 import com.comp6239.Backend.BackendRequestController;
+import com.comp6239.Backend.Messaging.MessageGateway;
+import com.comp6239.Backend.Messaging.ReadyEvent;
+import com.comp6239.Backend.Messaging.TutorReviewedEvent;
 import com.comp6239.Backend.Model.Tutor;
 import com.comp6239.R;
 
+import java.util.Collections;
 import java.util.List;
+import java.util.UUID;
 
 import retrofit2.Call;
 import retrofit2.Callback;
@@ -27,6 +29,9 @@ import retrofit2.Response;
 /**
  * A fragment representing a list of Items.
  * <p/>
+ * The list is loaded when shown and kept up to date from the gateway while it is: tutors are added as their profiles
+ * are submitted and removed once any admin has reviewed them, without reloading the rest of the list.
+ * <p/>
  * Activities containing this fragment MUST implement the {@link OnApproveTutorFragmentInteractionListener}
  * interface.
  */
@@ -39,6 +44,7 @@ public class AdminApprovalFragment extends Fragment {
     private OnApproveTutorFragmentInteractionListener mListener;
     private BackendRequestController apiBackend;
     private RecyclerView mRecyclerView;
+    private final ApprovalListener mApprovalListener = new ApprovalListener();
 
     /**
      * Mandatory empty constructor for the fragment manager to instantiate the
@@ -62,7 +68,9 @@ public class AdminApprovalFragment extends Fragment {
         super.onCreate(savedInstanceState);
 
         apiBackend = BackendRequestController.getInstance(getContext());
-        
+        //Listens until destroyed, so the list is current when the admin comes back from reviewing a tutor
+        apiBackend.getMessageGateway().addListener(mApprovalListener);
+
         if (getArguments() != null) {
             mColumnCount = getArguments().getInt(ARG_COLUMN_COUNT);
         }
@@ -85,44 +93,6 @@ public class AdminApprovalFragment extends Fragment {
 
         refreshTutorList();
 
-        final GestureDetector gesture = new GestureDetector(getActivity(),
-                new GestureDetector.SimpleOnGestureListener() {
-
-                    @Override
-                    public boolean onDown(MotionEvent e) {
-                        return true;
-                    }
-
-                    @Override
-                    public boolean onFling(MotionEvent e1, MotionEvent e2, float velocityX,
-                                           float velocityY) {
-                        final int SWIPE_MIN_DISTANCE = 120;
-                        final int SWIPE_MAX_OFF_PATH = 250;
-                        final int SWIPE_THRESHOLD_VELOCITY = 200;
-                        try {
-                            if (Math.abs(e1.getX() - e2.getX()) > SWIPE_MAX_OFF_PATH)
-                                return false;
-                            if (e1.getY() - e2.getY() > SWIPE_MIN_DISTANCE
-                                    && Math.abs(velocityY) > SWIPE_THRESHOLD_VELOCITY) {
-                                Log.i("Swipe", "Down to Up");
-                            } else if (e2.getY() - e1.getY() > SWIPE_MIN_DISTANCE
-                                    && Math.abs(velocityY) > SWIPE_THRESHOLD_VELOCITY) {
-                                Log.i("Swipe", "Up to Down");
-                                refreshTutorList();
-                            }
-                        } catch (Exception e) {
-                            // nothing
-                        }
-                        return super.onFling(e1, e2, velocityX, velocityY);
-                    }
-                });
-        view.setOnTouchListener(new View.OnTouchListener() {
-            @Override
-            public boolean onTouch(View v, MotionEvent event) {
-                return gesture.onTouchEvent(event);
-            }
-        });
-
         return view;
     }
 
@@ -143,6 +113,22 @@ public class AdminApprovalFragment extends Fragment {
     }
 
 
+    @Override
+    public void onDestroy() {
+        super.onDestroy();
+        apiBackend.getMessageGateway().removeListener(mApprovalListener);
+    }
+
+    /**
+     * Removes a tutor straight away, e.g. once this admin has reviewed them, without waiting for the gateway
+     */
+    public void removeTutor(UUID tutorId) {
+        AdminTutorApprovalRecyclerViewAdapter adapter = (AdminTutorApprovalRecyclerViewAdapter) mRecyclerView.getAdapter();
+        if (adapter != null) {
+            adapter.removeTutor(tutorId);
+        }
+    }
+
     @Override
     public void onAttach(Context context) {
         super.onAttach(context);
@@ -160,6 +146,34 @@ public class AdminApprovalFragment extends Fragment {
         mListener = null;
     }
 
+    private class ApprovalListener extends MessageGateway.Listener {
+        @Override
+        public void onReady(ReadyEvent ready) {
+            //Tutors may have been submitted or reviewed while disconnected
+            if (mRecyclerView != null) {
+                refreshTutorList();
+            }
+        }
+
+        @Override
+        public void onTutorAwaitingApproval(Tutor tutor) {
+            if (mRecyclerView == null || tutor.getId() == null) return;
+            AdminTutorApprovalRecyclerViewAdapter adapter = (AdminTutorApprovalRecyclerViewAdapter) mRecyclerView.getAdapter();
+            if (adapter == null) {
+                mRecyclerView.setAdapter(new AdminTutorApprovalRecyclerViewAdapter(Collections.singletonList(tutor), mListener));
+            } else {
+                adapter.addTutor(tutor);
+            }
+        }
+
+        @Override
+        public void onTutorReviewed(TutorReviewedEvent reviewed) {
+            if (mRecyclerView != null && reviewed.getTutorId() != null) {
+                removeTutor(reviewed.getTutorId());
+            }
+        }
+    }
+
     /**
      * This interface must be implemented by activities that contain this
      * fragment to allow an interaction in this fragment to be communicated
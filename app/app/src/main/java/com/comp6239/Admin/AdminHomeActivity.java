@@ -59,6 +59,8 @@ public class AdminHomeActivity extends AppCompatActivity implements AdminSubject
         setTitle("Tutors Awaiting Approvals");
 
         apiBackend = BackendRequestController.getInstance(this);
+        //Connect once logged in, so the approval list is kept up to date
+        apiBackend.getMessageGateway().start();
 
         fm.beginTransaction().add(R.id.main_container, subjects, "2").hide(subjects).commit();
         fm.beginTransaction().add(R.id.main_container, tutorApproval, "1").commit();
@@ -21,6 +21,7 @@ import android.widget.Toast;
 
 import com.comp6239.Backend.BackendRequestController;
 import com.comp6239.Backend.Model.Subject;
+import com.comp6239.Backend.Store.LocalStore;
 import com.comp6239.R;
 import com.comp6239.Tutor.TutorViewProfileActivity;
 
@@ -77,11 +78,26 @@ public class AdminSubjectListFragment extends Fragment {
 
 
     public void createSubjectList() {
+        //Show the subjects as they were last time straight away, the response replaces them
+        if (mRecyclerView.getAdapter() == null) {
+            apiBackend.getLocalStore().loadSubjects(new LocalStore.Callback<List<Subject>>() {
+                @Override
+                public void onLoaded(List<Subject> subjects) {
+                    if (subjects != null && !subjects.isEmpty() && mRecyclerView.getAdapter() == null) {
+                        mRecyclerView.setAdapter(new AdminMySubjectRecyclerViewAdapter(subjects, mListener));
+                    }
+                }
+            });
+        }
+
         Call<List<Subject>> subjectList = apiBackend.apiService.getAllSubjects();
         subjectList.enqueue(new Callback<List<Subject>>() {
             @Override
             public void onResponse(Call<List<Subject>> call, Response<List<Subject>> response) {
-                mRecyclerView.setAdapter(new AdminMySubjectRecyclerViewAdapter(response.body(), mListener));
+                List<Subject> subjects = response.body();
+                if (subjects == null) return;
+                mRecyclerView.setAdapter(new AdminMySubjectRecyclerViewAdapter(subjects, mListener));
+                apiBackend.getLocalStore().saveSubjects(subjects);
             }
 
             @Override
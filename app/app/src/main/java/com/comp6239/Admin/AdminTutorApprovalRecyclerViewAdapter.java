@@ -10,7 +10,9 @@ import com.comp6239.Admin.AdminApprovalFragment.OnApproveTutorFragmentInteractio
 import com.comp6239.Backend.Model.Tutor;
 import com.comp6239.R;
 
+import java.util.ArrayList;
 import java.util.List;
+import java.util.UUID;
 
 /**
  * {@link RecyclerView.Adapter} that can display a {@link Tutor} and makes a call to the
@@ -19,14 +21,49 @@ import java.util.List;
  */
 public class AdminTutorApprovalRecyclerViewAdapter extends RecyclerView.Adapter<AdminTutorApprovalRecyclerViewAdapter.ViewHolder> {
 
-    private List<Tutor> mValues;
+    private final List<Tutor> mValues;
     private final OnApproveTutorFragmentInteractionListener mListener;
 
     public AdminTutorApprovalRecyclerViewAdapter(List<Tutor> items, OnApproveTutorFragmentInteractionListener listener) {
-        mValues = items;
+        //Copied, tutors are added and removed as the gateway reports them
+        mValues = items == null ? new ArrayList<Tutor>() : new ArrayList<>(items);
         mListener = listener;
     }
 
+    /**
+     * Adds a tutor waiting for approval to the end of the list, or updates their entry if they're already in it
+     */
+    public void addTutor(Tutor tutor) {
+        int position = indexOf(tutor.getId());
+        if (position >= 0) {
+            mValues.set(position, tutor);
+            notifyItemChanged(position);
+        } else {
+            mValues.add(tutor);
+            notifyItemInserted(mValues.size() - 1);
+        }
+    }
+
+    /**
+     * Removes a tutor who has been reviewed
+     */
+    public void removeTutor(UUID tutorId) {
+        int position = indexOf(tutorId);
+        if (position >= 0) {
+            mValues.remove(position);
+            notifyItemRemoved(position);
+        }
+    }
+
+    private int indexOf(UUID tutorId) {
+        for (int i = 0; i < mValues.size(); i++) {
+            if (mValues.get(i).getId().equals(tutorId)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
     @Override
     public ViewHolder onCreateViewHolder(ViewGroup parent, int viewType) {
         View view = LayoutInflater.from(parent.getContext())
@@ -1,11 +1,5 @@
 package com.comp6239.Backend.AuthInterceptors;
 
-import android.util.Base64;
-
-import com.comp6239.Backend.Authorisation;
-import com.comp6239.Backend.AuthorisationRequest;
-import com.comp6239.Backend.BackEndService;
-import com.comp6239.Backend.BackendRequestController;
 import com.comp6239.Backend.Session;
 
 import java.io.IOException;
@@ -14,6 +8,10 @@ import okhttp3.Interceptor;
 import okhttp3.Request;
 import okhttp3.Response;
 
+/**
+ * Attaches the bearer token to every request but those to /oauth/, which authenticate with their body.
+ * Expired tokens are handled by {@link TokenAuthenticator} once the backend answers 401.
+ */
 public class AuthorisationInterceptor implements Interceptor {
     private Session session;
 
@@ -26,62 +24,14 @@ public class AuthorisationInterceptor implements Interceptor {
 
         Request request = chain.request();
 
-        if(session.getToken() != null) {
+        String token = session.getToken();
+        //A refresh would otherwise carry the expired token it is replacing
+        if (token != null && !request.url().encodedPath().startsWith("/oauth/")) {
             request = request.newBuilder()
-                    .addHeader("Authorization", "Bearer " + session.getToken())
+                    .header("Authorization", "Bearer " + token)
                     .build();
         }
 
-        Response response = chain.proceed(request);
-        return response;
-
+        return chain.proceed(request);
     }
-
-    /*
-    Cyclic dependency
-    @Override
-    public Response intercept(Chain chain) throws IOException {
-        //If auth token exists, then go ahead and attach it
-        Response mainResponse; //TODO: try this without the clause first I guess, might not need it
-        //if(session.getToken() != null) {
-        //    mainResponse = chain.proceed(chain.request().newBuilder().addHeader("Authorization", "Bearer " + session.getToken()).build());
-       // } else {
-            mainResponse = chain.proceed(chain.request());
-        //}
-
-        Request mainRequest = chain.request();
-
-        if (session.isLoggedIn()) {
-            // if response code is 401 or 403, 'mainRequest' has encountered authentication error
-            if (mainResponse.code() == 401 || mainResponse.code() == 403) {
-
-                AuthorisationRequest authRequest = new AuthorisationRequest();
-                authRequest.setUsername(session.getEmail());
-                authRequest.setPassword(session.getPassword());
-                authRequest.setGrant_type("password");
-
-
-                // request to login API to get fresh token
-                // synchronously calling login API
-                retrofit2.Response<Authorisation> loginResponse = apiService.loginAccount(authRequest).execute();
-
-                if (loginResponse.isSuccessful()) {
-                    // login request succeed, new token generated
-                    Authorisation authorization = loginResponse.body();
-                    // save the new tokens
-                    session.saveToken(authorization.getToken());
-                    session.saveRefreshToken(authorization.getRefreshToken());
-                    // retry the 'mainRequest' which encountered an authentication error
-                    // add new token into 'mainRequest' header and request again
-                    Request.Builder builder = mainRequest.newBuilder().header("Authorization", "Bearer " + session.getToken()).
-                            method(mainRequest.method(), mainRequest.body());
-                    mainResponse = chain.proceed(builder.build());
-                }
-            }
-        }
-
-        return mainResponse;
-    }
-
-    */
-}
\ No newline at end of file
+}
@@ -0,0 +1,107 @@
+package com.comp6239.Backend.AuthInterceptors;
+
+import android.util.Log;
+
+import com.comp6239.Backend.Authorisation;
+import com.comp6239.Backend.AuthorisationRequest;
+import com.comp6239.Backend.BackEndService;
+import com.comp6239.Backend.Session;
+
+import java.io.IOException;
+
+import okhttp3.Authenticator;
+import okhttp3.Request;
+import okhttp3.Response;
+import okhttp3.Route;
+
+/**
+ * Refreshes the access token when the backend answers 401, then replays the request.
+ *
+ * Concurrent 401s are coalesced: the first thread performs the /oauth/token refresh while
+ * the rest are parked on the lock. When they wake up the session already holds a newer token
+ * than the one they were rejected with, so they are replayed with it without another round trip.
+ */
+public class TokenAuthenticator implements Authenticator {
+    private static final String TAG = "TokenAuthenticator";
+    private static final String BEARER = "Bearer ";
+    private static final int MAX_ATTEMPTS = 2;
+
+    private final Session session;
+    private final BackEndService authService;
+    private final Object refreshLock = new Object();
+
+    /**
+     * @param session     Where tokens are read from and saved to
+     * @param authService Service used for the refresh call, must be built on a client without this authenticator
+     */
+    public TokenAuthenticator(Session session, BackEndService authService) {
+        this.session = session;
+        this.authService = authService;
+    }
+
+    @Override
+    public Request authenticate(Route route, Response response) throws IOException {
+        Request failed = response.request();
+        if (failed.url().encodedPath().startsWith("/oauth/")) {
+            return null; // Bad credentials, a refresh won't help
+        }
+        if (attempts(response) >= MAX_ATTEMPTS) {
+            return null; // Already replayed with a fresh token and still rejected
+        }
+
+        String rejectedToken = tokenOf(failed);
+
+        synchronized (refreshLock) {
+            String current = session.getToken();
+            if (current != null && !current.equals(rejectedToken)) {
+                // Another request refreshed while we were parked
+                return withToken(failed, current);
+            }
+
+            String refreshToken = session.getRefreshToken();
+            if (refreshToken == null) {
+                return null;
+            }
+
+            AuthorisationRequest refresh = new AuthorisationRequest();
+            refresh.setGrant_type("refresh_token");
+            refresh.setRefresh_token(refreshToken);
+
+            retrofit2.Response<Authorisation> refreshResponse = authService.loginAccount(refresh).execute();
+            Authorisation authorisation = refreshResponse.body();
+            if (!refreshResponse.isSuccessful() || authorisation == null || authorisation.getToken() == null) {
+                Log.w(TAG, "Token refresh failed with " + refreshResponse.code() + ", logging out");
+                session.invalidate();
+                return null;
+            }
+
+            session.saveToken(authorisation.getToken());
+            if (authorisation.getRefreshToken() != null) {
+                session.saveRefreshToken(authorisation.getRefreshToken());
+            }
+            return withToken(failed, authorisation.getToken());
+        }
+    }
+
+    private static Request withToken(Request request, String token) {
+        return request.newBuilder()
+                .header("Authorization", BEARER + token)
+                .build();
+    }
+
+    private static String tokenOf(Request request) {
+        String header = request.header("Authorization");
+        if (header == null || !header.startsWith(BEARER)) {
+            return null;
+        }
+        return header.substring(BEARER.length());
+    }
+
+    private static int attempts(Response response) {
+        int count = 1;
+        while ((response = response.priorResponse()) != null) {
+            count++;
+        }
+        return count;
+    }
+}
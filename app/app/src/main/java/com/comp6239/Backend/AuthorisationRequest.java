@@ -48,6 +48,14 @@ public class AuthorisationRequest {
         this.grant_type = grant_type;
     }
 
+    public String getRefresh_token() {
+        return refresh_token;
+    }
+
+    public void setRefresh_token(String refresh_token) {
+        this.refresh_token = refresh_token;
+    }
+
     public String getClient_id() {
         return client_id;
     }
@@ -1,10 +1,14 @@
 package com.comp6239.Backend;
 
+import com.comp6239.Backend.Messaging.MessageBatchRequest;
 import com.comp6239.Backend.Messaging.MessageRequest;
 import com.comp6239.Backend.Messaging.MessageThread;
+import com.comp6239.Backend.Messaging.ReceiptsRequest;
+import com.comp6239.Backend.Messaging.ThreadChanges;
 import com.comp6239.Backend.Model.Student;
 import com.comp6239.Backend.Model.Subject;
 import com.comp6239.Backend.Model.Tutor;
+import com.comp6239.Backend.Model.TutorFacets;
 import com.comp6239.Backend.Model.User;
 
 import java.util.List;
@@ -50,23 +54,77 @@ public interface BackEndService {
     @POST("/thread/{id}")
     Call<MessageThread> sendMessageToThread(@Path("id") String id, @Body MessageRequest messageOnly);
 
+    /**
+     * Sends the messages in order, the response is the same as for one message
+     */
+    @POST("/thread/{id}")
+    Call<MessageThread> sendMessagesToThread(@Path("id") String id, @Body MessageBatchRequest messages);
+
+    /**
+     * @param subjects Comma separated subject IDs, tutors teaching any of them match
+     * @param page From 1, of perPage tutors each, or null with perPage for every tutor at once.
+     *             A page shorter than perPage is the last one.
+     */
     @GET("/search/tutors")
     Call<List<Tutor>> getAvailableTutors(@Query("name") String name,
                                          @Query("location") String location,
                                          @Query("price") String lowValueHighValue,
-                                         @Query("q") String q);
-
+                                         @Query("subjects") String subjects,
+                                         @Query("q") String q,
+                                         @Query("near") String near,
+                                         @Query("sort") String sort,
+                                         @Query("summary") Boolean summary,
+                                         @Query("page") Integer page,
+                                         @Query("per_page") Integer perPage);
+
+    /**
+     * Price and subject counts of the tutors the same search would return
+     */
+    @GET("/search/tutors/facets")
+    Call<TutorFacets> getTutorFacets(@Query("name") String name,
+                                     @Query("location") String location,
+                                     @Query("price") String lowValueHighValue,
+                                     @Query("subjects") String subjects,
+                                     @Query("q") String q);
+
+    /**
+     * The thread lists and a thread's messages are paged newest first.
+     * before/after are the ID of a thread or message already loaded and are left null for the newest page,
+     * a page shorter than limit is the last one.
+     * Lists requested as a summary only carry each thread's last message and unread count, not its messages.
+     */
     @GET("/student/tutors")
-    Call<List<MessageThread>> getStudentsTutorConversations();
+    Call<List<MessageThread>> getStudentsTutorConversations(@Query("before") String before,
+                                                            @Query("after") String after,
+                                                            @Query("limit") Integer limit,
+                                                            @Query("summary") boolean summary);
 
     @GET("/student/requests")
-    Call<List<MessageThread>> getStudentTutorRequests();
+    Call<List<MessageThread>> getStudentTutorRequests(@Query("before") String before,
+                                                      @Query("after") String after,
+                                                      @Query("limit") Integer limit,
+                                                      @Query("summary") boolean summary);
 
     @GET("/tutor/tutees")
-    Call<List<MessageThread>> getTutorsTuteesConversations();
+    Call<List<MessageThread>> getTutorsTuteesConversations(@Query("before") String before,
+                                                           @Query("after") String after,
+                                                           @Query("limit") Integer limit,
+                                                           @Query("summary") boolean summary);
 
     @GET("/tutor/requests")
-    Call<List<MessageThread>> getTutorsStudentRequests();
+    Call<List<MessageThread>> getTutorsStudentRequests(@Query("before") String before,
+                                                       @Query("after") String after,
+                                                       @Query("limit") Integer limit,
+                                                       @Query("summary") boolean summary);
+
+    /**
+     * The threads of one of the lists above that changed since the watermark of the last sync
+     * @param list The list's path, one of the LocalStore.LIST_ constants
+     */
+    @GET("/{list}")
+    Call<ThreadChanges> getThreadChanges(@Path(value = "list", encoded = true) String list,
+                                         @Query("since") String since,
+                                         @Query("summary") boolean summary);
 
     @GET("/admin/tutor")
     Call<List<Tutor>> getAwaitingApprovalTutors();
@@ -75,10 +133,16 @@ public interface BackEndService {
     Call<Void> approveTutor(@Path("id") String tutorId, @Body Tutor tutor);
 
     @GET("/thread/{id}")
-    Call<MessageThread> getConversationThread(@Path("id") String threadId);
+    Call<MessageThread> getConversationThread(@Path("id") String threadId,
+                                              @Query("before") String before,
+                                              @Query("after") String after,
+                                              @Query("limit") Integer limit);
 
     @GET("/thread")
-    Call<List<MessageThread>> getAllConversations();
+    Call<List<MessageThread>> getAllConversations(@Query("before") String before,
+                                                  @Query("after") String after,
+                                                  @Query("limit") Integer limit,
+                                                  @Query("summary") boolean summary);
 
     @POST("/thread")
     Call<Void> startConversation(@Body MessageRequest messageRequest);
@@ -89,6 +153,12 @@ public interface BackEndService {
     @PUT("/subject")
     Call<Void> createNewSubject(@Body Subject subject);
 
+    /**
+     * Acknowledges messages in the thread as delivered or read, answered with 204
+     */
+    @POST("/thread/{id}/receipts")
+    Call<Void> sendReceipts(@Path("id") String id, @Body ReceiptsRequest receipts);
+
     @POST("/thread/{id}/block")
     Call<Void> blockConversationById(@Path("id") String id);
 
@@ -3,22 +3,39 @@ package com.comp6239.Backend;
 import android.content.Context;
 import android.content.Intent;
 import android.content.SharedPreferences;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
 
 import com.comp6239.Backend.AuthInterceptors.AuthorisationInterceptor;
+import com.comp6239.Backend.AuthInterceptors.TokenAuthenticator;
+import com.comp6239.Backend.Cache.CachePolicyInterceptor;
+import com.comp6239.Backend.Cache.CacheStats;
+import com.comp6239.Backend.Cache.CacheStatsInterceptor;
+import com.comp6239.Backend.Messaging.MessageGateway;
+import com.comp6239.Backend.Messaging.MessageOutbox;
+import com.comp6239.Backend.Messaging.MessageReceipts;
 import com.comp6239.Backend.Model.Admin;
 import com.comp6239.Backend.Model.RuntimeTypeAdapterFactory;
 import com.comp6239.Backend.Model.Student;
 import com.comp6239.Backend.Model.Tutor;
 
 import com.comp6239.Backend.Model.User;
+import com.comp6239.Backend.Search.TutorIndex;
+import com.comp6239.Backend.Store.LocalStore;
+import com.comp6239.Backend.Store.ThreadCache;
 import com.comp6239.Generic.LoginActivity;
 import com.comp6239.R;
 import com.google.gson.FieldNamingPolicy;
 import com.google.gson.Gson;
 import com.google.gson.GsonBuilder;
 
+import java.io.File;
+import java.io.IOException;
 import java.text.DateFormat;
+import java.util.concurrent.TimeUnit;
 
+import okhttp3.Cache;
 import okhttp3.OkHttpClient;
 import okhttp3.logging.HttpLoggingInterceptor;
 import retrofit2.Retrofit;
@@ -31,28 +48,99 @@ public class BackendRequestController {
 
     public final static String PROTOCOL = "https";
     public final static String BASE_URL = "comp6239.biggy.hcbj.io/";
+    private final static long HTTP_CACHE_SIZE = 10 * 1024 * 1024;
     private static BackendRequestController instance;
     public static BackEndService apiService;
     private Context context;
     private Session session;
     private AuthenticationListener authenticationListener;
+    private Cache httpCache;
+    private final CacheStats cacheStats = new CacheStats();
+    private final static long HEARTBEAT_INTERVAL_SECONDS = 30;
+    private OkHttpClient webSocketClient;
+    private MessageGateway messageGateway;
+    private MessageOutbox messageOutbox;
+    private MessageReceipts messageReceipts;
+    private ThreadCache threadCache;
+    private TutorIndex tutorIndex;
+    private long tutorIndexBuiltAt;
+    private Gson gson;
+    private LocalStore localStore;
     SharedPreferences sharedPreferences;
-    SharedPreferences.Editor editor;
 
     private BackendRequestController(Context context) {
+        this.context = context;
+        sharedPreferences = context.getSharedPreferences(context.getResources().getString(R.string.preference_file_key) , Context.MODE_PRIVATE);
+        //Built first, the session below restores the logged in user with it
+        gson = createGson();
 
         //Logging for debugging
         HttpLoggingInterceptor logging = new HttpLoggingInterceptor();
         logging.setLevel(HttpLoggingInterceptor.Level.BODY);
+
+        //Disk cache for GETs, revalidated against the ETag the backend sends
+        httpCache = new Cache(new File(context.getCacheDir(), "http"), HTTP_CACHE_SIZE);
+        CachePolicyInterceptor cachePolicy = new CachePolicyInterceptor()
+                .maxAge("/subject", 300)
+                .maxAge("/(tutor|student)/[^/]+/profile", 60)
+                .maxAge("/search/tutors", 30)
+                .maxAge("/thread(/[^/]+)?", 0)
+                .maxAge("/(student|tutor)/(tutors|tutees|requests)", 0)
+                .maxAge("/admin/tutor", 0)
+                .maxAge("/(student/)?profile", 0)
+                .noStore("/oauth/.*")
+                .invalidateOnWrite("/subject/[^/]+", "/subject")
+                .invalidateOnWrite("/admin/tutor/[^/]+", "/admin/tutor")
+                .invalidateOnWrite("/thread/[^/]+/(approve|block)", "/tutor/requests");
+        cachePolicy.setCache(httpCache);
+
         //Interceptor for OAuth and Logging
-        OkHttpClient client = new OkHttpClient.Builder()
+        OkHttpClient baseClient = new OkHttpClient.Builder()
+                .cache(httpCache)
+                .addInterceptor(new CacheStatsInterceptor(cacheStats))
                 //.addInterceptor(new RenewTokenInterceptor(getSession()))
                 .addInterceptor(new AuthorisationInterceptor(getSession()))
                 .addInterceptor(logging)
+                .addNetworkInterceptor(cachePolicy)
                 .build();
 
+        //Token refreshes go through a client without the authenticator so a failing refresh can't recurse
+        BackEndService authService = new Retrofit.Builder()
+                .baseUrl(PROTOCOL + "://" + BASE_URL)
+                .client(baseClient)
+                .addConverterFactory(GsonConverterFactory.create(gson))
+                .build()
+                .create(BackEndService.class);
+
+        //The messaging gateway shares the connection pool and threads, but not the HTTP cache or logging
+        //The pings are its heartbeat, a connection that stops answering them is dropped and reconnected
+        OkHttpClient.Builder socketClient = baseClient.newBuilder()
+                .cache(null)
+                .pingInterval(HEARTBEAT_INTERVAL_SECONDS, TimeUnit.SECONDS);
+        socketClient.interceptors().clear();
+        socketClient.networkInterceptors().clear();
+        webSocketClient = socketClient.build();
+
+        //Shares the connection pool and cache with the auth client
+        OkHttpClient client = baseClient.newBuilder()
+                .authenticator(new TokenAuthenticator(getSession(), authService))
+                .build();
 
-        this.context = context;
+        //The retrofit itself
+        Retrofit retrofitAsync = new Retrofit.Builder()
+                .baseUrl(PROTOCOL + "://" + BASE_URL)
+                .client(client)
+                .addConverterFactory(GsonConverterFactory.create(gson))
+                .build();
+
+        apiService = retrofitAsync.create(BackEndService.class);
+    }
+
+    /**
+     * Builds the Gson used by every Retrofit converter
+     * @return The configured Gson
+     */
+    static Gson createGson() {
         //Basically this is meant to make GSON support the polymorphism of our model
         final RuntimeTypeAdapterFactory<User> typeFactory = RuntimeTypeAdapterFactory
                 .of(User.class, "role", false)
@@ -61,27 +149,16 @@ public class BackendRequestController {
                 .registerSubtype(Admin.class, "a");
 
         //The GSON converter itself, with the polymorphism factory added in
-        Gson gson = new GsonBuilder()
+        //Gson asks the last registered factory first, so the model factory must go in before the
+        //polymorphism factory for it to be the delegate the User subtypes are handed to
+        return new GsonBuilder()
+                .registerTypeAdapterFactory(new ModelTypeAdapterFactory())
                 .registerTypeAdapterFactory(typeFactory)
                 .enableComplexMapKeySerialization()
                 .setDateFormat(DateFormat.LONG)
                 .setFieldNamingPolicy(FieldNamingPolicy.UPPER_CAMEL_CASE)
-                .setPrettyPrinting()
                 .setVersion(1.0)
                 .create();
-
-
-        //The retrofit itself
-        Retrofit retrofitAsync = new Retrofit.Builder()
-                .baseUrl(PROTOCOL + "://" + BASE_URL)
-                .client(client)
-                .addConverterFactory(GsonConverterFactory.create(gson))
-                .build();
-
-        apiService = retrofitAsync.create(BackEndService.class);
-
-        sharedPreferences = context.getSharedPreferences(context.getResources().getString(R.string.preference_file_key) , Context.MODE_PRIVATE);
-        editor = sharedPreferences.edit();
     }
 
     /**
@@ -104,94 +181,140 @@ public class BackendRequestController {
         this.authenticationListener = listener;
     }
 
-    public Session getSession() {
-        if (session == null) {
-            session = new Session() {
-                String refreshToken;
-                String password;
-                User user;
-
-                @Override
-                public boolean isLoggedIn() {
-                    return true;
-                }
-
-                @Override
-                public void saveToken(String token) {
-                    editor.putString(context.getResources().getString(R.string.tokenSharePref), token);
-                    editor.commit();
+    /**
+     * @return hit/miss/revalidation counters for the HTTP cache since process start
+     */
+    public CacheStats getCacheStats() {
+        return cacheStats;
+    }
 
-                }
+    /**
+     * Drops every cached response, e.g. when a different user logs in on this device
+     */
+    public void clearHttpCache() {
+        try {
+            httpCache.evictAll();
+        } catch (IOException e) {
+            // Cache directory is unusable, nothing cached to leak
+        }
+    }
 
-                @Override
-                public void saveRefreshToken(String token) {
-                    refreshToken = token;
-                }
+    /**
+     * @return The app wide messaging websocket, not started until something calls start()
+     */
+    public synchronized MessageGateway getMessageGateway() {
+        if (messageGateway == null) {
+            messageGateway = new MessageGateway(webSocketClient, getSession(), "wss://" + BASE_URL + "ws", gson);
+        }
+        return messageGateway;
+    }
 
-                @Override
-                public String getToken() {
-                    // return the token that was saved earlier
-                    return sharedPreferences.getString(context.getResources().getString(R.string.tokenSharePref), null);
-                }
+    /**
+     * @return The app wide queue of messages waiting to be sent, loaded from disk and flushed on first use
+     */
+    public synchronized MessageOutbox getMessageOutbox() {
+        if (messageOutbox == null) {
+            messageOutbox = new MessageOutbox(apiService, getMessageGateway(), getLocalStore());
+        }
+        return messageOutbox;
+    }
 
-                @Override
-                public String getRefreshToken() {
-                    return refreshToken;
-                }
+    /**
+     * @return The app wide collector of delivery and read receipts, delivered ones are collected from first use
+     */
+    public synchronized MessageReceipts getMessageReceipts() {
+        if (messageReceipts == null) {
+            messageReceipts = new MessageReceipts(apiService, getMessageGateway());
+        }
+        return messageReceipts;
+    }
 
-                @Override
-                public void saveEmail(String email) {
-                    editor.putString(context.getResources().getString(R.string.emailSharePref), email);
-                    editor.commit();
-                }
+    /**
+     * @return The app wide cache of recently opened conversations, kept up to date from the gateway
+     */
+    public synchronized ThreadCache getThreadCache() {
+        if (threadCache == null) {
+            threadCache = new ThreadCache(getMessageGateway(), getMessageOutbox());
+        }
+        return threadCache;
+    }
 
+    /**
+     * @return The newest index of every tutor, kept so searching again doesn't download it again, or null if none is
+     */
+    public synchronized TutorIndex getTutorIndex() {
+        return tutorIndex;
+    }
 
-                @Override
-                public String getEmail() {
-                    return sharedPreferences.getString(context.getResources().getString(R.string.emailSharePref), null);
-                }
+    /**
+     * @return How long ago the tutor index was built, in ms
+     */
+    public synchronized long getTutorIndexAge() {
+        return SystemClock.elapsedRealtime() - tutorIndexBuiltAt;
+    }
 
-                @Override
-                public void savePassword(String password) {
-                    this.password = password;
-                }
+    public synchronized void setTutorIndex(TutorIndex index) {
+        tutorIndex = index;
+        tutorIndexBuiltAt = SystemClock.elapsedRealtime();
+    }
 
-                @Override
-                public String getPassword() {
-                    // should return null 99% of the time aside from on login
-                    return password;
-                }
+    /**
+     * @return The on disk copy of what the app has loaded, for screens to show before the network answers
+     */
+    public synchronized LocalStore getLocalStore() {
+        if (localStore == null) {
+            localStore = new LocalStore(context.getApplicationContext(), gson);
+        }
+        return localStore;
+    }
 
+    public Session getSession() {
+        if (session == null) {
+            session = new PreferencesSession(context, sharedPreferences, gson, new PreferencesSession.InvalidationListener() {
                 @Override
-                public void invalidate() {
-                    // get called when user become logged out
-                    // delete token and other user info
-                    // (i.e: email, password)
-                    // from the storage
-                    editor.remove(context.getResources().getString(R.string.emailSharePref));
-                    editor.remove(context.getResources().getString(R.string.tokenSharePref));
-
-                    // sending logged out event to it's listener
-                    // i.e: Activity, Fragment, Service
-                    if (authenticationListener != null) {
-                        authenticationListener.onUserLoggedOut();
+                public void onInvalidated() {
+                    //A failed token refresh invalidates on an OkHttp thread, the stores and listeners are the UI's
+                    if (Looper.myLooper() != Looper.getMainLooper()) {
+                        new Handler(Looper.getMainLooper()).post(new Runnable() {
+                            @Override
+                            public void run() {
+                                onLoggedOut();
+                            }
+                        });
+                    } else {
+                        onLoggedOut();
                     }
                 }
-
-                @Override
-                public User getUser() {
-                    return user;
-                }
-
-                @Override
-                public void setUser(User user) {
-                    this.user = user;
-                }
-            };
+            });
         }
 
         return session;
     }
 
+    /**
+     * Drops everything kept for the user who was logged in, on the main thread
+     */
+    private void onLoggedOut() {
+        clearHttpCache();
+        getLocalStore().clear();
+        if (messageOutbox != null) {
+            messageOutbox.clear();
+        }
+        if (messageReceipts != null) {
+            messageReceipts.clear();
+        }
+        if (threadCache != null) {
+            threadCache.clear();
+        }
+        setTutorIndex(null);
+        if (messageGateway != null) {
+            messageGateway.stop();
+        }
 
+        // sending logged out event to it's listener
+        // i.e: Activity, Fragment, Service
+        if (authenticationListener != null) {
+            authenticationListener.onUserLoggedOut();
+        }
+    }
 }
@@ -0,0 +1,126 @@
+package com.comp6239.Backend.Cache;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.regex.Pattern;
+
+import okhttp3.Cache;
+import okhttp3.HttpUrl;
+import okhttp3.Interceptor;
+import okhttp3.Request;
+import okhttp3.Response;
+
+/**
+ * Network interceptor that applies per-endpoint freshness rules to backend responses.
+ *
+ * The backend only sends an ETag, so without this every cached response would be treated
+ * as immediately stale. Rules are matched against the request path in the order they were added,
+ * and an explicit Cache-Control sent by the server always wins.
+ */
+public class CachePolicyInterceptor implements Interceptor {
+    private static final String CACHE_CONTROL = "Cache-Control";
+
+    private final List<Rule> rules = new ArrayList<>();
+    private final List<Invalidation> invalidations = new ArrayList<>();
+    private Cache cache;
+
+    /**
+     * Keep GET responses for paths matching {@code pathRegex} fresh for {@code maxAgeSeconds}.
+     * A max age of 0 stores the response but always revalidates it with the server (304 if unchanged).
+     */
+    public CachePolicyInterceptor maxAge(String pathRegex, int maxAgeSeconds) {
+        String value = maxAgeSeconds > 0 ? "private, max-age=" + maxAgeSeconds : "private, no-cache";
+        rules.add(new Rule(Pattern.compile(pathRegex), value));
+        return this;
+    }
+
+    /**
+     * Never store GET responses for paths matching {@code pathRegex}
+     */
+    public CachePolicyInterceptor noStore(String pathRegex) {
+        rules.add(new Rule(Pattern.compile(pathRegex), "no-store"));
+        return this;
+    }
+
+    /**
+     * Successful writes to paths matching {@code pathRegex} evict the cached {@code collectionPath}.
+     * OkHttp already evicts the URL that was written to, this covers list endpoints that live elsewhere
+     * (e.g. DELETE /subject/{id} making GET /subject stale).
+     */
+    public CachePolicyInterceptor invalidateOnWrite(String pathRegex, String collectionPath) {
+        invalidations.add(new Invalidation(Pattern.compile(pathRegex), collectionPath));
+        return this;
+    }
+
+    public void setCache(Cache cache) {
+        this.cache = cache;
+    }
+
+    @Override
+    public Response intercept(Chain chain) throws IOException {
+        Request request = chain.request();
+        Response response = chain.proceed(request);
+        String path = request.url().encodedPath();
+
+        if (!"GET".equals(request.method())) {
+            if (response.isSuccessful()) {
+                invalidate(path);
+            }
+            return response;
+        }
+
+        if (response.header(CACHE_CONTROL) != null) {
+            return response;
+        }
+
+        for (Rule rule : rules) {
+            if (rule.path.matcher(path).matches()) {
+                return response.newBuilder()
+                        .removeHeader("Pragma")
+                        .header(CACHE_CONTROL, rule.cacheControl)
+                        .build();
+            }
+        }
+        return response;
+    }
+
+    private void invalidate(String path) throws IOException {
+        if (cache == null) {
+            return;
+        }
+        for (Invalidation invalidation : invalidations) {
+            if (!invalidation.path.matcher(path).matches()) {
+                continue;
+            }
+            Iterator<String> urls = cache.urls();
+            while (urls.hasNext()) {
+                HttpUrl url = HttpUrl.parse(urls.next());
+                if (url != null && url.encodedPath().equals(invalidation.collectionPath)) {
+                    urls.remove();
+                }
+            }
+        }
+    }
+
+    private static class Rule {
+        final Pattern path;
+        final String cacheControl;
+
+        Rule(Pattern path, String cacheControl) {
+            this.path = path;
+            this.cacheControl = cacheControl;
+        }
+    }
+
+    private static class Invalidation {
+        final Pattern path;
+        final String collectionPath;
+
+        Invalidation(Pattern path, String collectionPath) {
+            this.path = path;
+            this.collectionPath = collectionPath;
+        }
+    }
+}
@@ -0,0 +1,84 @@
+package com.comp6239.Backend.Cache;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Counters for how GET requests were served by the HTTP cache
+ */
+public class CacheStats {
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong revalidations = new AtomicLong();
+    private final AtomicLong notModified = new AtomicLong();
+    private final AtomicLong bytesSaved = new AtomicLong();
+
+    /**
+     * Served straight from disk without touching the network
+     */
+    void recordHit(long bodyBytes) {
+        hits.incrementAndGet();
+        addSaved(bodyBytes);
+    }
+
+    /**
+     * Nothing usable on disk, full body downloaded
+     */
+    void recordMiss() {
+        misses.incrementAndGet();
+    }
+
+    /**
+     * Stale entry was revalidated with the server using its ETag/Last-Modified
+     * @param unchanged true if the server answered 304 and the cached body was reused
+     */
+    void recordRevalidation(boolean unchanged, long bodyBytes) {
+        revalidations.incrementAndGet();
+        if (unchanged) {
+            notModified.incrementAndGet();
+            addSaved(bodyBytes);
+        }
+    }
+
+    private void addSaved(long bodyBytes) {
+        if (bodyBytes > 0) {
+            bytesSaved.addAndGet(bodyBytes);
+        }
+    }
+
+    public long getHits() {
+        return hits.get();
+    }
+
+    public long getMisses() {
+        return misses.get();
+    }
+
+    public long getRevalidations() {
+        return revalidations.get();
+    }
+
+    public long getNotModified() {
+        return notModified.get();
+    }
+
+    public long getBytesSaved() {
+        return bytesSaved.get();
+    }
+
+    public void reset() {
+        hits.set(0);
+        misses.set(0);
+        revalidations.set(0);
+        notModified.set(0);
+        bytesSaved.set(0);
+    }
+
+    @Override
+    public String toString() {
+        return "hits=" + hits.get()
+                + " misses=" + misses.get()
+                + " revalidations=" + revalidations.get()
+                + " (304=" + notModified.get() + ")"
+                + " bytesSaved=" + bytesSaved.get();
+    }
+}
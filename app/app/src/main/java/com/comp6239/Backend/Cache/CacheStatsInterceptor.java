@@ -0,0 +1,64 @@
+package com.comp6239.Backend.Cache;
+
+import android.util.Log;
+
+import com.comp6239.BuildConfig;
+
+import java.io.IOException;
+
+import okhttp3.Interceptor;
+import okhttp3.Request;
+import okhttp3.Response;
+
+/**
+ * Application interceptor that classifies every GET as a cache hit, miss or revalidation.
+ * Has to sit in front of the cache (i.e. added with addInterceptor) to see both
+ * the cache and network halves of the response.
+ */
+public class CacheStatsInterceptor implements Interceptor {
+    private static final String TAG = "HttpCache";
+
+    private final CacheStats stats;
+
+    public CacheStatsInterceptor(CacheStats stats) {
+        this.stats = stats;
+    }
+
+    @Override
+    public Response intercept(Chain chain) throws IOException {
+        Request request = chain.request();
+        Response response = chain.proceed(request);
+
+        if (!"GET".equals(request.method())) {
+            return response;
+        }
+
+        Response cached = response.cacheResponse();
+        Response network = response.networkResponse();
+        if (cached != null && network == null) {
+            stats.recordHit(contentLength(cached));
+        } else if (cached != null) {
+            stats.recordRevalidation(network.code() == 304, contentLength(cached));
+        } else {
+            stats.recordMiss();
+        }
+
+        //Release builds only keep the counters, CacheStats exposes them
+        if (BuildConfig.DEBUG) {
+            Log.v(TAG, request.url().encodedPath() + " -> " + stats);
+        }
+        return response;
+    }
+
+    private static long contentLength(Response response) {
+        String length = response.header("Content-Length");
+        if (length == null) {
+            return -1;
+        }
+        try {
+            return Long.parseLong(length);
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+}
@@ -0,0 +1,137 @@
+package com.comp6239.Backend;
+
+import org.joda.time.DateTimeZone;
+
+/**
+ * Parses the ISO-8601 timestamps the backend sends straight to epoch milliseconds, without building a DateTime.
+ *
+ * Accepts what Python's isoformat() and Joda's toString() produce, e.g. 2019-01-10T12:10:00.123456+00:00.
+ * Seconds, the fraction and the offset are optional. Without an offset the time is taken to be in the device's
+ * time zone, as Joda would.
+ */
+public final class Iso8601 {
+    private static final long MILLIS_PER_DAY = 24 * 60 * 60 * 1000;
+
+    private Iso8601() {
+    }
+
+    /**
+     * @throws IllegalArgumentException if the value isn't a timestamp in one of the accepted forms
+     */
+    public static long parseMillis(String value) {
+        int length = value.length();
+        if (length < 16 || value.charAt(4) != '-' || value.charAt(7) != '-' || value.charAt(10) != 'T'
+                || value.charAt(13) != ':') {
+            throw invalid(value);
+        }
+        int year = digits(value, 0, 4);
+        int month = digits(value, 5, 2);
+        int day = digits(value, 8, 2);
+        int hour = digits(value, 11, 2);
+        int minute = digits(value, 14, 2);
+        int second = 0;
+        int millis = 0;
+
+        int i = 16;
+        if (i < length && value.charAt(i) == ':') {
+            second = digits(value, i + 1, 2);
+            i += 3;
+            if (i < length && value.charAt(i) == '.') {
+                i++;
+                int start = i;
+                //Anything finer than milliseconds is dropped, as Joda does
+                for (int scale = 100; i < length && isDigit(value.charAt(i)); i++, scale /= 10) {
+                    millis += (value.charAt(i) - '0') * scale;
+                }
+                if (i == start) {
+                    throw invalid(value);
+                }
+            }
+        }
+
+        if (month < 1 || month > 12 || day < 1 || day > daysInMonth(year, month)
+                || hour > 23 || minute > 59 || second > 59) {
+            throw invalid(value);
+        }
+        long local = daysFromCivil(year, month, day) * MILLIS_PER_DAY
+                + ((hour * 60 + minute) * 60 + second) * 1000L + millis;
+
+        if (i == length) {
+            return local - DateTimeZone.getDefault().getOffsetFromLocal(local);
+        }
+        char sign = value.charAt(i);
+        if (sign == 'Z' && i + 1 == length) {
+            return local;
+        }
+        if (sign != '+' && sign != '-') {
+            throw invalid(value);
+        }
+        int offsetHours = digits(value, i + 1, 2);
+        int offsetMinutes = 0;
+        i += 3;
+        if (i < length) {
+            if (value.charAt(i) == ':') {
+                i++;
+            }
+            offsetMinutes = digits(value, i, 2);
+            i += 2;
+        }
+        if (i != length || offsetHours > 23 || offsetMinutes > 59) {
+            throw invalid(value);
+        }
+        long offset = (offsetHours * 60 + offsetMinutes) * 60 * 1000L;
+        return sign == '+' ? local - offset : local + offset;
+    }
+
+    private static int digits(String value, int start, int count) {
+        if (start + count > value.length()) {
+            throw invalid(value);
+        }
+        int result = 0;
+        for (int i = start; i < start + count; i++) {
+            char c = value.charAt(i);
+            if (!isDigit(c)) {
+                throw invalid(value);
+            }
+            result = result * 10 + (c - '0');
+        }
+        return result;
+    }
+
+    private static boolean isDigit(char c) {
+        return c >= '0' && c <= '9';
+    }
+
+    private static int daysInMonth(int year, int month) {
+        switch (month) {
+            case 2:
+                boolean leap = (year % 4 == 0 && year % 100 != 0) || year % 400 == 0;
+                return leap ? 29 : 28;
+            case 4:
+            case 6:
+            case 9:
+            case 11:
+                return 30;
+            default:
+                return 31;
+        }
+    }
+
+    /**
+     * Days since 1970-01-01 of a proleptic Gregorian date
+     */
+    private static long daysFromCivil(int year, int month, int day) {
+        if (month <= 2) {
+            year--;
+        }
+        int era = (year >= 0 ? year : year - 399) / 400;
+        int yearOfEra = year - era * 400;
+        int dayOfYear = (153 * (month + (month > 2 ? -3 : 9)) + 2) / 5 + day - 1;
+        int dayOfEra = yearOfEra * 365 + yearOfEra / 4 - yearOfEra / 100 + dayOfYear;
+        return era * 146097L + dayOfEra - 719468;
+    }
+
+    private static IllegalArgumentException invalid(String value) {
+        return new IllegalArgumentException("Invalid timestamp: \"" + value + "\"");
+    }
+}
@@ -0,0 +1,130 @@
+package com.comp6239.Backend.Messaging;
+
+import android.os.Build;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.Charset;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+import okio.ByteString;
+
+/**
+ * The zlib streams of one gateway connection, and how many bytes they save.
+ *
+ * OkHttp can't negotiate permessage-deflate, so we ask the server for zlib-stream instead. Each direction is a single
+ * zlib stream for the life of the connection, flushed at the end of every frame, so field names repeated from one
+ * payload to the next compress to almost nothing. Frames we send are only compressed from KitKat, which is when
+ * Deflater could sync flush; before that they go as text, which the server also accepts.
+ */
+public class GatewayCompression {
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+    private static final int BUFFER_SIZE = 8192;
+
+    private final Inflater inflater = new Inflater();
+    private final Deflater deflater;
+    private final byte[] buffer = new byte[BUFFER_SIZE];
+
+    private boolean ended;
+
+    private long rawBytesIn;
+    private long wireBytesIn;
+    private long rawBytesOut;
+    private long wireBytesOut;
+
+    public GatewayCompression() {
+        this(Build.VERSION.SDK_INT >= Build.VERSION_CODES.KITKAT);
+    }
+
+    /**
+     * @param deflate Whether frames we send are compressed
+     */
+    GatewayCompression(boolean deflate) {
+        deflater = deflate ? new Deflater() : null;
+    }
+
+    /**
+     * @return The text of a compressed frame from the server
+     */
+    public synchronized String inflate(ByteString frame) throws DataFormatException {
+        if (ended) {
+            throw new DataFormatException("Connection closed");
+        }
+        byte[] input = frame.toByteArray();
+        wireBytesIn += input.length;
+        inflater.setInput(input);
+        ByteArrayOutputStream output = new ByteArrayOutputStream(input.length * 4);
+        int read;
+        do {
+            read = inflater.inflate(buffer);
+            output.write(buffer, 0, read);
+        } while (read > 0);
+        rawBytesIn += output.size();
+        return new String(output.toByteArray(), UTF_8);
+    }
+
+    /**
+     * Counts a frame from the server that came uncompressed
+     */
+    public synchronized void receivedText(String text) {
+        long length = text.getBytes(UTF_8).length;
+        rawBytesIn += length;
+        wireBytesIn += length;
+    }
+
+    /**
+     * @return The frame to send for a payload, compressed if this device can, otherwise null to send it as text
+     */
+    public synchronized ByteString deflate(String text) {
+        byte[] input = text.getBytes(UTF_8);
+        rawBytesOut += input.length;
+        if (deflater == null || ended) {
+            wireBytesOut += input.length;
+            return null;
+        }
+        deflater.setInput(input);
+        ByteArrayOutputStream output = new ByteArrayOutputStream(input.length);
+        int written;
+        do {
+            written = deflater.deflate(buffer, 0, buffer.length, Deflater.SYNC_FLUSH);
+            output.write(buffer, 0, written);
+        } while (written == buffer.length);
+        wireBytesOut += output.size();
+        return ByteString.of(output.toByteArray());
+    }
+
+    /**
+     * Frees the streams, once the connection has closed
+     */
+    public synchronized void end() {
+        if (ended) return;
+        ended = true;
+        inflater.end();
+        if (deflater != null) {
+            deflater.end();
+        }
+    }
+
+    public synchronized long getRawBytesIn() {
+        return rawBytesIn;
+    }
+
+    public synchronized long getWireBytesIn() {
+        return wireBytesIn;
+    }
+
+    public synchronized long getRawBytesOut() {
+        return rawBytesOut;
+    }
+
+    public synchronized long getWireBytesOut() {
+        return wireBytesOut;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return "received " + rawBytesIn + " B as " + wireBytesIn + " B, sent " + rawBytesOut + " B as "
+                + wireBytesOut + " B";
+    }
+}
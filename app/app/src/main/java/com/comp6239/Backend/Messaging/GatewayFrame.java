@@ -0,0 +1,46 @@
+package com.comp6239.Backend.Messaging;
+
+/**
+ * One payload from the gateway, with its data decoded to the event's type
+ */
+public class GatewayFrame {
+    private final int op;
+    private final String event;
+    private final Long seq;
+    private final Object data;
+
+    public GatewayFrame(int op, String event, Long seq, Object data) {
+        this.op = op;
+        this.event = event;
+        this.seq = seq;
+        this.data = data;
+    }
+
+    /**
+     * @return One of the MessageGateway.OP_ constants
+     */
+    public int getOp() {
+        return op;
+    }
+
+    /**
+     * @return The event of a DISPATCH, null for other OpCodes
+     */
+    public String getEvent() {
+        return event;
+    }
+
+    /**
+     * @return The sequence number of a DISPATCH that can be replayed, or null
+     */
+    public Long getSeq() {
+        return seq;
+    }
+
+    /**
+     * @return The data as the type registered for the event, or null if none was
+     */
+    public Object getData() {
+        return data;
+    }
+}
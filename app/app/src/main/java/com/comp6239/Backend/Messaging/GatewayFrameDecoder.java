@@ -0,0 +1,120 @@
+package com.comp6239.Backend.Messaging;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonParser;
+import com.google.gson.TypeAdapter;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Decodes gateway payloads straight from the text with a {@link JsonReader}, into the type registered for each
+ * event, without building a tree first.
+ *
+ * The backend writes "e" before "d", so by the time the data is reached its type is known. If the data ever comes
+ * first it is parsed to a tree and converted once the event is known. Data of events and OpCodes that aren't
+ * registered is skipped.
+ */
+public class GatewayFrameDecoder {
+    private final Gson gson;
+    private final Map<String, TypeAdapter<?>> adapters = new HashMap<>();
+    private final Map<Integer, TypeAdapter<?>> opAdapters = new HashMap<>();
+
+    /**
+     * @param gson Gson with the model adapters, so enums keep their {@code @SerializedName}s
+     */
+    public GatewayFrameDecoder(Gson gson) {
+        this.gson = gson;
+    }
+
+    /**
+     * Decodes the data of the event as type
+     */
+    public GatewayFrameDecoder register(String event, Class<?> type) {
+        adapters.put(event, gson.getAdapter(type));
+        return this;
+    }
+
+    /**
+     * Decodes the data of payloads with an OpCode other than DISPATCH as type, e.g. the details of an error
+     */
+    public GatewayFrameDecoder register(int op, Class<?> type) {
+        opAdapters.put(op, gson.getAdapter(type));
+        return this;
+    }
+
+    /**
+     * @throws IOException if the payload isn't valid JSON or has no OpCode
+     * @throws RuntimeException if a field has the wrong type, e.g. an ID that isn't a UUID
+     */
+    public GatewayFrame decode(String text) throws IOException {
+        JsonReader in = new JsonReader(new StringReader(text));
+        Integer op = null;
+        String event = null;
+        Long seq = null;
+        Object data = null;
+        JsonElement early = null;
+
+        in.beginObject();
+        while (in.hasNext()) {
+            switch (in.nextName()) {
+                case "o":
+                    op = in.nextInt();
+                    break;
+                case "e":
+                    event = nextString(in);
+                    break;
+                case "s":
+                    if (in.peek() == JsonToken.NULL) {
+                        in.nextNull();
+                    } else {
+                        seq = in.nextLong();
+                    }
+                    break;
+                case "d":
+                    if (event == null && (op == null || op == MessageGateway.OP_DISPATCH)) {
+                        early = new JsonParser().parse(in);
+                    } else {
+                        data = readData(in, op, event);
+                    }
+                    break;
+                default:
+                    in.skipValue();
+            }
+        }
+        in.endObject();
+
+        if (op == null) {
+            throw new IOException("Payload has no OpCode");
+        }
+        if (early != null) {
+            TypeAdapter<?> adapter = event != null ? adapters.get(event) : opAdapters.get(op);
+            if (adapter != null) {
+                data = adapter.fromJsonTree(early);
+            }
+        }
+        return new GatewayFrame(op, event, seq, data);
+    }
+
+    private Object readData(JsonReader in, Integer op, String event) throws IOException {
+        TypeAdapter<?> adapter = event != null ? adapters.get(event) : op != null ? opAdapters.get(op) : null;
+        if (adapter == null) {
+            in.skipValue();
+            return null;
+        }
+        return adapter.read(in);
+    }
+
+    private static String nextString(JsonReader in) throws IOException {
+        if (in.peek() == JsonToken.NULL) {
+            in.nextNull();
+            return null;
+        }
+        return in.nextString();
+    }
+}
@@ -0,0 +1,43 @@
+package com.comp6239.Backend.Messaging;
+
+/**
+ * The sequence number of the last event seen on a gateway session, resumed from so missed events are replayed,
+ * and used to drop events that are replayed more than once.
+ */
+public class GatewaySequence {
+    private long last;
+
+    /**
+     * @return The sequence number to resume from
+     */
+    public long getLast() {
+        return last;
+    }
+
+    /**
+     * @return false if the event has already been seen
+     */
+    public boolean accept(long seq) {
+        if (seq <= last) {
+            return false;
+        }
+        last = seq;
+        return true;
+    }
+
+    /**
+     * Takes the server's sequence number for a new session. A resumed session keeps ours, as the server sends the
+     * newest number before replaying the events since ours, which would otherwise all look seen.
+     * @param event READY or RESUMED
+     * @param seq The sequence number the server sent with it
+     */
+    public void established(String event, long seq) {
+        if ("READY".equals(event)) {
+            last = seq;
+        }
+    }
+
+    public void reset() {
+        last = 0;
+    }
+}
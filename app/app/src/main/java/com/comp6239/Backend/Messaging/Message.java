@@ -1,5 +1,6 @@
 package com.comp6239.Backend.Messaging;
 
+import com.comp6239.Backend.Iso8601;
 import com.google.gson.annotations.SerializedName;
 
 import org.joda.time.DateTime;
@@ -16,9 +17,13 @@ public class Message {
     private UUID senderId;
 
     @SerializedName("timestamp")
-    private String sentAt;
+    String sentAt;
 
-    private DateTime timestamp;
+    //Decoded from sentAt once, so sorting never parses it
+    private transient long sentAtMillis;
+    private transient boolean sentAtDecoded;
+    //Cut from sentAt when first bound, most messages of a long thread never are
+    private transient String sentAtTime;
 
     @SerializedName("message")
     private String message;
@@ -47,8 +52,35 @@ public class Message {
     }
 
     public void setSentAt(String sentAt) {
-        this.timestamp = new DateTime(sentAt);
         this.sentAt = sentAt;
+        decodeSentAt();
+    }
+
+    /**
+     * @return When the message was sent, in milliseconds since the epoch
+     */
+    public long getSentAtMillis() {
+        if (!sentAtDecoded) {
+            decodeSentAt();
+        }
+        return sentAtMillis;
+    }
+
+    /**
+     * @return The time of day the message was sent, as HH:mm
+     */
+    public String getSentAtTime() {
+        if (sentAtTime == null && sentAt != null) {
+            int t = sentAt.indexOf('T');
+            sentAtTime = sentAt.substring(t + 1, t + 6);
+        }
+        return sentAtTime;
+    }
+
+    private void decodeSentAt() {
+        sentAtMillis = sentAt == null ? 0 : Iso8601.parseMillis(sentAt);
+        sentAtDecoded = true;
+        sentAtTime = null;
     }
 
     public String getMessage() {
@@ -68,10 +100,7 @@ public class Message {
     }
 
     public DateTime getTimestamp() {
-        if (timestamp == null){
-            setSentAt(sentAt);
-        }
-        return timestamp;
+        return new DateTime(getSentAtMillis());
     }
 }
 
@@ -0,0 +1,25 @@
+package com.comp6239.Backend.Messaging;
+
+import com.google.gson.annotations.SerializedName;
+
+import java.util.List;
+
+/**
+ * Several messages to send to a thread in one request, in order
+ */
+public class MessageBatchRequest {
+    @SerializedName("messages")
+    List<MessageRequest> messages;
+
+    public MessageBatchRequest(List<MessageRequest> messages) {
+        this.messages = messages;
+    }
+
+    public List<MessageRequest> getMessages() {
+        return messages;
+    }
+
+    public void setMessages(List<MessageRequest> messages) {
+        this.messages = messages;
+    }
+}
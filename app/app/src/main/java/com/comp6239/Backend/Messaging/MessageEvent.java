@@ -0,0 +1,43 @@
+package com.comp6239.Backend.Messaging;
+
+import com.google.gson.annotations.SerializedName;
+
+import java.util.UUID;
+
+/**
+ * MESSAGE, a message sent to the user, or MESSAGE_REQUEST if it is the first of a new thread
+ */
+public class MessageEvent {
+    @SerializedName("thread_id")
+    private UUID threadId;
+
+    @SerializedName("from")
+    private MessageRecipient from;
+
+    //The id, message, timestamp and state fields, with the sender taken from from
+    private Message message;
+
+    public UUID getThreadId() {
+        return threadId;
+    }
+
+    public void setThreadId(UUID threadId) {
+        this.threadId = threadId;
+    }
+
+    public MessageRecipient getFrom() {
+        return from;
+    }
+
+    public void setFrom(MessageRecipient from) {
+        this.from = from;
+    }
+
+    public Message getMessage() {
+        return message;
+    }
+
+    public void setMessage(Message message) {
+        this.message = message;
+    }
+}
@@ -0,0 +1,33 @@
+package com.comp6239.Backend.Messaging;
+
+import com.google.gson.annotations.SerializedName;
+
+import java.util.UUID;
+
+/**
+ * MESSAGE_FAILED, the backend would not send a message the user sent
+ */
+public class MessageFailedEvent {
+    //Null if the message had no ID, or one that wasn't a UUID
+    @SerializedName("message_id")
+    private UUID messageId;
+
+    @SerializedName("reason")
+    private String reason;
+
+    public UUID getMessageId() {
+        return messageId;
+    }
+
+    public void setMessageId(UUID messageId) {
+        this.messageId = messageId;
+    }
+
+    public String getReason() {
+        return reason;
+    }
+
+    public void setReason(String reason) {
+        this.reason = reason;
+    }
+}
@@ -0,0 +1,597 @@
+package com.comp6239.Backend.Messaging;
+
+import android.os.Build;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
+import android.util.Log;
+
+import com.comp6239.Backend.Model.Tutor;
+import com.comp6239.Backend.Session;
+import com.google.gson.Gson;
+import com.google.gson.JsonObject;
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.zip.DataFormatException;
+
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+import okhttp3.Response;
+import okhttp3.WebSocket;
+import okhttp3.WebSocketListener;
+import okio.ByteString;
+
+/**
+ * The one websocket to the messaging backend, shared by the whole app.
+ *
+ * Follows the HELLO/IDENTIFY/READY handshake in docs/messaging.md. Heartbeats are the client's websocket pings.
+ * When the connection drops it reconnects with jittered exponential backoff, and IDENTIFY asks the server to resume
+ * from the last sequence number seen so missed events are replayed instead of lost.
+ * Payloads are decoded by a {@link GatewayFrameDecoder} into typed events, which listeners are called with on the
+ * main thread.
+ *
+ * Dispatches are sent through a bounded queue, at no more than a token bucket allows, which stays under the
+ * backend's rate limit. If the server rate limits us anyway, sending pauses for as long as it asks. The queue filling
+ * up is reported to listeners, and once it is full dispatch() refuses, so callers fall back to REST.
+ * Each error the server closes the connection with is recovered from as docs/messaging.md says.
+ *
+ * Payloads are compressed as zlib streams, see {@link GatewayCompression}, which also counts how many bytes each
+ * connection saved.
+ */
+public class MessageGateway {
+    private static final String TAG = "MessageGateway";
+
+    public static final int OP_DISPATCH = 0;
+    public static final int OP_IDENTIFY = 2;
+    public static final int OP_INVALID_SESSION = 9;
+    public static final int OP_HELLO = 10;
+
+    //Sent before the server closes the connection
+    public static final int OP_UNKNOWN_ERROR = 4000;
+    public static final int OP_UNKNOWN_OPCODE = 4001;
+    public static final int OP_DECODE_ERROR = 4002;
+    public static final int OP_NOT_AUTHENTICATED = 4003;
+    public static final int OP_AUTHENTICATION_FAILED = 4004;
+    public static final int OP_ALREADY_AUTHENTICATED = 4005;
+    public static final int OP_RATE_LIMITED = 4008;
+    public static final int OP_SESSION_TIMEOUT = 4009;
+
+    private static final int NORMAL_CLOSURE_STATUS = 1000;
+    private static final String COMPRESS_QUERY = "compress=zlib-stream";
+    private static final long BACKOFF_BASE_MS = 1000;
+    private static final long BACKOFF_CAP_MS = 60 * 1000;
+
+    //Half the backend's limit, so frames bunched up in transit don't trip it
+    private static final int SEND_BURST = 10;
+    private static final double SEND_RATE_PER_SECOND = 1;
+    private static final int OUTBOUND_CAPACITY = 50;
+    //Listeners are told sending is congested above the high mark, and that it has cleared below the low mark
+    private static final int CONGESTED_HIGH_MARK = 20;
+    private static final int CONGESTED_LOW_MARK = 5;
+
+    /**
+     * Override the events of interest, the rest are ignored
+     */
+    public static abstract class Listener {
+        /**
+         * The session could not be resumed, so events may have been missed and anything cached may be stale
+         */
+        public void onReady(ReadyEvent ready) {
+        }
+
+        /**
+         * The session was resumed, every missed event is about to be replayed
+         */
+        public void onResumed(ReadyEvent resumed) {
+        }
+
+        public void onMessage(MessageEvent message) {
+        }
+
+        /**
+         * The first message of a thread, which the user has to approve before any more are delivered
+         */
+        public void onMessageRequest(MessageEvent request) {
+        }
+
+        public void onMessageSent(MessageSentEvent sent) {
+        }
+
+        public void onMessageFailed(MessageFailedEvent failed) {
+        }
+
+        /**
+         * A request the tutor received was approved or blocked
+         */
+        public void onThreadStateChanged(ThreadStateEvent changed) {
+        }
+
+        /**
+         * Admins only, a tutor's profile is waiting to be reviewed, or has changed while waiting
+         */
+        public void onTutorAwaitingApproval(Tutor tutor) {
+        }
+
+        /**
+         * Admins only, a tutor has been approved or denied
+         */
+        public void onTutorReviewed(TutorReviewedEvent reviewed) {
+        }
+
+        /**
+         * The server rejected the connection or a payload, e.g. with OP_INVALID_SESSION, and is closing it
+         */
+        public void onError(int opCode) {
+        }
+
+        /**
+         * Dispatches are queueing faster than they can be sent, or the server has asked us to slow down.
+         * Anything sent meanwhile is delayed, and may go over REST instead.
+         */
+        public void onCongestionChanged(boolean congested) {
+        }
+
+        /**
+         * The connection has dropped, dispatches sent shortly before may never have reached the server
+         */
+        public void onDisconnected() {
+        }
+    }
+
+    private final OkHttpClient client;
+    private final Session session;
+    private final String url;
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+    private final List<Listener> listeners = new CopyOnWriteArrayList<>();
+    private final Random random = new Random();
+    private final GatewayFrameDecoder decoder;
+
+    private WebSocket socket;
+    private GatewayCompression compression;
+    private boolean running;
+    private boolean ready;
+    private int attempts;
+
+    //Resume state, from READY and the sequence numbers of the events since
+    private String sessionId;
+    private final GatewaySequence sequence = new GatewaySequence();
+
+    private final ArrayDeque<String> outbound = new ArrayDeque<>();
+    private final TokenBucket sendLimit = new TokenBucket(SEND_BURST, SEND_RATE_PER_SECOND, SystemClock.elapsedRealtime());
+    //When the server said we could send again, after RATE_LIMITED
+    private long pausedUntil;
+    private boolean congested;
+    //The error the server sent before closing the connection, if any
+    private int closingError;
+
+    private final Runnable drainLater = new Runnable() {
+        @Override
+        public void run() {
+            synchronized (MessageGateway.this) {
+                drain();
+            }
+        }
+    };
+
+    private final Runnable reconnect = new Runnable() {
+        @Override
+        public void run() {
+            synchronized (MessageGateway.this) {
+                if (running && socket == null) {
+                    open();
+                }
+            }
+        }
+    };
+
+    /**
+     * @param client Client with a ping interval set, the pings are the heartbeat
+     * @param session Session to identify with
+     * @param url The websocket endpoint
+     * @param gson Gson with the model adapters, to decode events with
+     */
+    public MessageGateway(OkHttpClient client, Session session, String url, Gson gson) {
+        this.client = client;
+        this.session = session;
+        this.url = url;
+        this.decoder = new GatewayFrameDecoder(gson)
+                .register("READY", ReadyEvent.class)
+                .register("RESUMED", ReadyEvent.class)
+                .register("MESSAGE", MessageEvent.class)
+                .register("MESSAGE_REQUEST", MessageEvent.class)
+                .register("MESSAGE_SENT", MessageSentEvent.class)
+                .register("MESSAGE_FAILED", MessageFailedEvent.class)
+                .register("THREAD_STATE", ThreadStateEvent.class)
+                .register("TUTOR_AWAITING_APPROVAL", Tutor.class)
+                .register("TUTOR_REVIEWED", TutorReviewedEvent.class)
+                .register(OP_RATE_LIMITED, RateLimitedEvent.class);
+    }
+
+    public void addListener(Listener listener) {
+        listeners.add(listener);
+    }
+
+    public void removeListener(Listener listener) {
+        listeners.remove(listener);
+    }
+
+    /**
+     * Connects, if not already connected or connecting. Safe to call from every screen.
+     */
+    public synchronized void start() {
+        running = true;
+        if (socket == null) {
+            mainHandler.removeCallbacks(reconnect);
+            open();
+        }
+    }
+
+    /**
+     * Disconnects and forgets the session, e.g. on logout
+     */
+    public synchronized void stop() {
+        running = false;
+        ready = false;
+        sessionId = null;
+        sequence.reset();
+        attempts = 0;
+        pausedUntil = 0;
+        outbound.clear();
+        setCongested(false);
+        mainHandler.removeCallbacks(reconnect);
+        mainHandler.removeCallbacks(drainLater);
+        if (socket != null) {
+            socket.close(NORMAL_CLOSURE_STATUS, null);
+            socket = null;
+        }
+    }
+
+    /**
+     * @return The byte counts of the current or last connection, or null if there hasn't been one
+     */
+    public synchronized GatewayCompression getCompression() {
+        return compression;
+    }
+
+    /**
+     * @return true once IDENTIFY has been accepted on the current connection
+     */
+    public synchronized boolean isReady() {
+        return ready;
+    }
+
+    /**
+     * Queues a DISPATCH event, it is sent as soon as the rate limit allows.
+     * Dispatches still queued when the connection drops are sent once it is back.
+     * @return false if the gateway isn't ready or the queue is full, the caller should fall back to REST
+     */
+    public synchronized boolean dispatch(String event, JsonObject data) {
+        if (!ready || socket == null || outbound.size() >= OUTBOUND_CAPACITY) {
+            return false;
+        }
+        JsonObject payload = new JsonObject();
+        payload.addProperty("o", OP_DISPATCH);
+        payload.addProperty("e", event);
+        payload.add("d", data);
+        outbound.add(payload.toString());
+        drain();
+        return true;
+    }
+
+    /**
+     * Sends queued dispatches until the queue is empty or the rate limit is reached, then waits for the next token
+     */
+    private void drain() {
+        mainHandler.removeCallbacks(drainLater);
+        while (ready && socket != null && !outbound.isEmpty()) {
+            long now = SystemClock.elapsedRealtime();
+            long wait = pausedUntil > now ? pausedUntil - now : sendLimit.acquire(now);
+            if (wait > 0) {
+                mainHandler.postDelayed(drainLater, wait);
+                break;
+            }
+            send(socket, outbound.poll());
+        }
+        if (outbound.size() > CONGESTED_HIGH_MARK) {
+            setCongested(true);
+        } else if (outbound.size() < CONGESTED_LOW_MARK && pausedUntil <= SystemClock.elapsedRealtime()) {
+            setCongested(false);
+        }
+    }
+
+    private void setCongested(final boolean congested) {
+        if (this.congested == congested) return;
+        this.congested = congested;
+        mainHandler.post(new Runnable() {
+            @Override
+            public void run() {
+                for (Listener listener : listeners) {
+                    listener.onCongestionChanged(congested);
+                }
+            }
+        });
+    }
+
+    private void open() {
+        ready = false;
+        closingError = 0;
+        compression = new GatewayCompression();
+        Request request = new Request.Builder()
+                .url(url + (url.contains("?") ? "&" : "?") + COMPRESS_QUERY)
+                .build();
+        socket = client.newWebSocket(request, new GatewayListener(compression));
+    }
+
+    private void send(WebSocket webSocket, String payload) {
+        ByteString frame = compression.deflate(payload);
+        if (frame != null) {
+            webSocket.send(frame);
+        } else {
+            webSocket.send(payload);
+        }
+    }
+
+    /**
+     * @param code The close code, or 0 if the connection failed without one
+     */
+    private synchronized void scheduleReconnect(WebSocket dropped, int code) {
+        if (socket != dropped) {
+            //Already replaced or stopped
+            return;
+        }
+        socket = null;
+        ready = false;
+        mainHandler.post(new Runnable() {
+            @Override
+            public void run() {
+                for (Listener listener : listeners) {
+                    listener.onDisconnected();
+                }
+            }
+        });
+        if (!running) {
+            return;
+        }
+
+        //The error sent before closing says more than the close code, which older servers don't set
+        int error = closingError != 0 ? closingError : code;
+        long delay;
+        switch (error) {
+            case OP_SESSION_TIMEOUT:
+                //Nothing wrong but the session, so start a new one straight away
+                forgetSession();
+                attempts = 0;
+                delay = 0;
+                break;
+            case OP_INVALID_SESSION:
+            case OP_NOT_AUTHENTICATED:
+            case OP_AUTHENTICATION_FAILED:
+                //Identify afresh, with a token the REST client may have refreshed meanwhile
+                forgetSession();
+                delay = backoff();
+                break;
+            case OP_RATE_LIMITED:
+                //Resume once the server will listen again, without sending the burst we'd otherwise be allowed
+                delay = Math.max(pausedUntil - SystemClock.elapsedRealtime(), backoff());
+                break;
+            default:
+                delay = backoff();
+        }
+        Log.d(TAG, "Reconnecting in " + delay + "ms (attempt " + attempts + ", error " + error + ")");
+        mainHandler.postDelayed(reconnect, delay);
+    }
+
+    private void forgetSession() {
+        sessionId = null;
+        sequence.reset();
+    }
+
+    /**
+     * @return How long to wait before the next reconnect
+     */
+    private long backoff() {
+        //Full jitter, so devices dropped together don't all come back at the same moment
+        long ceiling = Math.min(BACKOFF_CAP_MS, BACKOFF_BASE_MS << Math.min(attempts, 16));
+        attempts++;
+        return (long) (random.nextDouble() * ceiling);
+    }
+
+    /**
+     * The server said we've sent too much, so stop sending until it says we can start again
+     */
+    private void rateLimited(RateLimitedEvent limit) {
+        long now = SystemClock.elapsedRealtime();
+        long retryAfter = limit != null && limit.getRetryAfter() != null
+                ? (long) Math.ceil(limit.getRetryAfter() * 1000) : BACKOFF_BASE_MS;
+        pausedUntil = now + retryAfter;
+        sendLimit.drain(now);
+        setCongested(true);
+        //Clears the congestion once the pause is over, even if nothing is queued by then
+        mainHandler.postDelayed(drainLater, retryAfter);
+    }
+
+    private String identify() {
+        JsonObject payload = new JsonObject();
+        payload.addProperty("o", OP_IDENTIFY);
+        JsonObject data = new JsonObject();
+        JsonObject properties = new JsonObject();
+        properties.addProperty("device", Build.MANUFACTURER + " " + Build.MODEL);
+        properties.addProperty("os", "Android " + Build.VERSION.RELEASE + "(" + Build.VERSION.SDK_INT + ")");
+
+        data.add("properties", properties);
+        data.addProperty("token", session.getToken());
+        if (sessionId != null) {
+            JsonObject resume = new JsonObject();
+            resume.addProperty("session_id", sessionId);
+            resume.addProperty("seq", sequence.getLast());
+            data.add("resume", resume);
+        }
+        payload.add("d", data);
+
+        return payload.toString();
+    }
+
+    private void deliver(final GatewayFrame frame) {
+        mainHandler.post(new Runnable() {
+            @Override
+            public void run() {
+                for (Listener listener : listeners) {
+                    dispatchTo(listener, frame);
+                }
+            }
+        });
+    }
+
+    private static void dispatchTo(Listener listener, GatewayFrame frame) {
+        if (frame.getOp() != OP_DISPATCH) {
+            listener.onError(frame.getOp());
+            return;
+        }
+        switch (frame.getEvent()) {
+            case "READY":
+                listener.onReady((ReadyEvent) frame.getData());
+                break;
+            case "RESUMED":
+                listener.onResumed((ReadyEvent) frame.getData());
+                break;
+            case "MESSAGE":
+                listener.onMessage((MessageEvent) frame.getData());
+                break;
+            case "MESSAGE_REQUEST":
+                listener.onMessageRequest((MessageEvent) frame.getData());
+                break;
+            case "MESSAGE_SENT":
+                listener.onMessageSent((MessageSentEvent) frame.getData());
+                break;
+            case "MESSAGE_FAILED":
+                listener.onMessageFailed((MessageFailedEvent) frame.getData());
+                break;
+            case "THREAD_STATE":
+                listener.onThreadStateChanged((ThreadStateEvent) frame.getData());
+                break;
+            case "TUTOR_AWAITING_APPROVAL":
+                listener.onTutorAwaitingApproval((Tutor) frame.getData());
+                break;
+            case "TUTOR_REVIEWED":
+                listener.onTutorReviewed((TutorReviewedEvent) frame.getData());
+                break;
+        }
+    }
+
+    private class GatewayListener extends WebSocketListener {
+        private final GatewayCompression compression;
+
+        GatewayListener(GatewayCompression compression) {
+            this.compression = compression;
+        }
+
+        @Override
+        public void onMessage(WebSocket webSocket, ByteString bytes) {
+            String text;
+            try {
+                text = compression.inflate(bytes);
+            } catch (DataFormatException e) {
+                //The stream can't be trusted after this, so start a new one
+                Log.w(TAG, "Undecompressable payload", e);
+                webSocket.close(NORMAL_CLOSURE_STATUS, null);
+                return;
+            }
+            onPayload(webSocket, text);
+        }
+
+        @Override
+        public void onMessage(WebSocket webSocket, String text) {
+            compression.receivedText(text);
+            onPayload(webSocket, text);
+        }
+
+        private void onPayload(WebSocket webSocket, String text) {
+            GatewayFrame frame;
+            try {
+                frame = decoder.decode(text);
+            } catch (IOException | RuntimeException e) {
+                Log.w(TAG, "Dropping undecodable payload", e);
+                return;
+            }
+
+            synchronized (MessageGateway.this) {
+                if (webSocket != socket) return;
+
+                int op = frame.getOp();
+                switch (op) {
+                    case OP_HELLO:
+                        send(webSocket, identify());
+                        return;
+                    case OP_DISPATCH:
+                        break;
+                    case OP_INVALID_SESSION:
+                        Log.d(TAG, "Identify rejected");
+                        closingError = op;
+                        webSocket.close(NORMAL_CLOSURE_STATUS, null);
+                        deliver(frame);
+                        return;
+                    default:
+                        if (op >= OP_UNKNOWN_ERROR) {
+                            Log.d(TAG, "Error OpCode of " + op);
+                            closingError = op;
+                            if (op == OP_RATE_LIMITED) {
+                                rateLimited((RateLimitedEvent) frame.getData());
+                            }
+                            deliver(frame);
+                        } else {
+                            Log.d(TAG, "Ignoring OpCode of " + op);
+                        }
+                        return;
+                }
+
+                if (frame.getEvent() == null) return;
+                Long seq = frame.getSeq();
+                if (seq != null && !sequence.accept(seq)) {
+                    //Already seen, e.g. replayed twice over a flaky connection
+                    return;
+                }
+
+                if (frame.getData() instanceof ReadyEvent) {
+                    ReadyEvent established = (ReadyEvent) frame.getData();
+                    sessionId = established.getSessionId();
+                    sequence.established(frame.getEvent(), established.getSeq());
+                    attempts = 0;
+                    ready = true;
+                    //Anything queued before the connection dropped
+                    drain();
+                }
+                if (frame.getData() != null) {
+                    deliver(frame);
+                }
+            }
+        }
+
+        @Override
+        public void onClosing(WebSocket webSocket, int code, String reason) {
+            webSocket.close(NORMAL_CLOSURE_STATUS, null);
+            Log.d(TAG, "Closing : " + code + " / " + reason);
+        }
+
+        @Override
+        public void onClosed(WebSocket webSocket, int code, String reason) {
+            closed();
+            scheduleReconnect(webSocket, code);
+        }
+
+        @Override
+        public void onFailure(WebSocket webSocket, Throwable t, Response response) {
+            Log.d(TAG, "Error : " + t.getMessage());
+            closed();
+            scheduleReconnect(webSocket, 0);
+        }
+
+        private void closed() {
+            Log.d(TAG, "Connection " + compression);
+            compression.end();
+        }
+    }
+}
@@ -0,0 +1,423 @@
+package com.comp6239.Backend.Messaging;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+
+import com.comp6239.Backend.BackEndService;
+import com.comp6239.Backend.Store.LocalStore;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParseException;
+import com.google.gson.JsonParser;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import retrofit2.Call;
+import retrofit2.Callback;
+import retrofit2.Response;
+
+/**
+ * Messages the user has written that the backend hasn't accepted yet, kept on disk so none are lost if the app is
+ * closed or the network is down.
+ *
+ * Messages are sent in the order they were written. Consecutive messages to a thread go as one batch, over the
+ * gateway if it is ready and as one POST if not, and only one batch is in flight at a time. A batch that isn't
+ * accepted is retried with jittered exponential backoff, or straight away when the gateway reconnects.
+ * Every message has a client chosen ID, so a batch that was sent but not acknowledged is not stored twice.
+ * A message the backend rejects is kept, marked as failed, until the conversation takes it back with
+ * {@link #takeFailed(UUID)}.
+ *
+ * Must be used from the main thread, listeners are called on it.
+ */
+public class MessageOutbox {
+    private static final String TAG = "MessageOutbox";
+
+    //Matches the most the backend accepts at once
+    private static final int MAX_BATCH_SIZE = 20;
+    //How long a batch sent over the gateway waits for every MESSAGE_SENT before it is retried
+    private static final long ACK_TIMEOUT_MS = 10 * 1000;
+    private static final long BACKOFF_BASE_MS = 1000;
+    private static final long BACKOFF_CAP_MS = 60 * 1000;
+
+    public interface Listener {
+        /**
+         * A batch was accepted over REST, any sent over the gateway are acknowledged with MESSAGE_SENT instead
+         * @param thread The thread with its newest messages, including the batch
+         */
+        void onSent(UUID threadId, MessageThread thread);
+
+        /**
+         * Messages were rejected, e.g. the thread was blocked, and won't be retried
+         */
+        void onFailed(UUID threadId, List<Entry> entries, String reason);
+    }
+
+    /**
+     * A message waiting in the outbox
+     */
+    public static class Entry {
+        private final UUID threadId;
+        private final Message message;
+        private boolean failed;
+
+        /**
+         * @param message The message as shown while sending, with its ID, content, sender and time written
+         */
+        public Entry(UUID threadId, Message message) {
+            this.threadId = threadId;
+            this.message = message;
+        }
+
+        public UUID getThreadId() {
+            return threadId;
+        }
+
+        public Message getMessage() {
+            return message;
+        }
+
+        public boolean isFailed() {
+            return failed;
+        }
+
+        public void setFailed(boolean failed) {
+            this.failed = failed;
+        }
+    }
+
+    private final BackEndService service;
+    private final MessageGateway gateway;
+    private final LocalStore store;
+    private final Handler handler = new Handler(Looper.getMainLooper());
+    private final List<Listener> listeners = new CopyOnWriteArrayList<>();
+    private final Random random = new Random();
+
+    private final List<Entry> queue = new ArrayList<>();
+    private boolean loaded = false;
+
+    //The batch being sent, with the IDs still waiting for MESSAGE_SENT if it went over the gateway
+    private List<Entry> inFlight;
+    private Set<UUID> awaitingAck;
+    private Call<MessageThread> call;
+
+    private boolean waiting = false;
+    private int attempts;
+
+    private final Runnable retry = new Runnable() {
+        @Override
+        public void run() {
+            waiting = false;
+            flush();
+        }
+    };
+
+    private final Runnable ackTimeout = new Runnable() {
+        @Override
+        public void run() {
+            Log.d(TAG, "Batch not acknowledged, retrying");
+            retryLater();
+        }
+    };
+
+    public MessageOutbox(BackEndService service, MessageGateway gateway, LocalStore store) {
+        this.service = service;
+        this.gateway = gateway;
+        this.store = store;
+        gateway.addListener(new GatewayListener());
+        store.loadOutbox(new LocalStore.Callback<List<Entry>>() {
+            @Override
+            public void onLoaded(List<Entry> entries) {
+                if (entries != null) {
+                    //Anything queued before the load finished was written after these
+                    Set<UUID> queued = ids(queue);
+                    List<Entry> stored = new ArrayList<>();
+                    for (Entry entry : entries) {
+                        if (!queued.contains(entry.getMessage().getId())) {
+                            stored.add(entry);
+                        }
+                    }
+                    queue.addAll(0, stored);
+                }
+                loaded = true;
+                flush();
+            }
+        });
+    }
+
+    public void addListener(Listener listener) {
+        listeners.add(listener);
+    }
+
+    public void removeListener(Listener listener) {
+        listeners.remove(listener);
+    }
+
+    /**
+     * Queues a message to send to a thread
+     */
+    public void enqueue(UUID threadId, Message message) {
+        Entry entry = new Entry(threadId, message);
+        queue.add(entry);
+        store.saveOutboxEntry(entry);
+        flush();
+    }
+
+    /**
+     * @return The messages still waiting to be sent to the thread, oldest first
+     */
+    public List<Message> getPending(UUID threadId) {
+        List<Message> pending = new ArrayList<>();
+        for (Entry entry : queue) {
+            if (!entry.isFailed() && entry.getThreadId().equals(threadId)) {
+                pending.add(entry.getMessage());
+            }
+        }
+        return pending;
+    }
+
+    /**
+     * Removes the messages the backend rejected from the outbox, so their text can be given back to the user
+     * @return The rejected messages, oldest first
+     */
+    public List<Entry> takeFailed(UUID threadId) {
+        List<Entry> failed = new ArrayList<>();
+        Iterator<Entry> it = queue.iterator();
+        while (it.hasNext()) {
+            Entry entry = it.next();
+            if (entry.isFailed() && entry.getThreadId().equals(threadId)) {
+                failed.add(entry);
+                it.remove();
+            }
+        }
+        store.deleteOutboxEntries(ids(failed));
+        return failed;
+    }
+
+    /**
+     * Sends the next batch, unless one is already in flight or waiting to be retried
+     */
+    public void flush() {
+        if (!loaded || inFlight != null || waiting) {
+            return;
+        }
+
+        UUID threadId = null;
+        List<Entry> batch = new ArrayList<>();
+        for (Entry entry : queue) {
+            if (entry.isFailed()) continue;
+            if (threadId == null) {
+                threadId = entry.getThreadId();
+            }
+            if (entry.getThreadId().equals(threadId)) {
+                batch.add(entry);
+                if (batch.size() == MAX_BATCH_SIZE) break;
+            }
+        }
+        if (batch.isEmpty()) {
+            return;
+        }
+        inFlight = batch;
+
+        JsonArray messages = new JsonArray();
+        for (Entry entry : batch) {
+            JsonObject message = new JsonObject();
+            message.addProperty("id", entry.getMessage().getId().toString());
+            message.addProperty("message", entry.getMessage().getMessage());
+            messages.add(message);
+        }
+        JsonObject data = new JsonObject();
+        data.addProperty("thread_id", threadId.toString());
+        data.add("messages", messages);
+        if (gateway.dispatch("SEND_MESSAGE", data)) {
+            awaitingAck = ids(batch);
+            handler.postDelayed(ackTimeout, ACK_TIMEOUT_MS);
+            return;
+        }
+        sendOverRest(threadId, batch);
+    }
+
+    /**
+     * Forgets every message, e.g. when the user logs out
+     */
+    public void clear() {
+        queue.clear();
+        handler.removeCallbacks(retry);
+        handler.removeCallbacks(ackTimeout);
+        if (call != null) {
+            call.cancel();
+            call = null;
+        }
+        inFlight = null;
+        awaitingAck = null;
+        waiting = false;
+        attempts = 0;
+    }
+
+    private void sendOverRest(final UUID threadId, final List<Entry> batch) {
+        List<MessageRequest> requests = new ArrayList<>();
+        for (Entry entry : batch) {
+            requests.add(new MessageRequest(entry.getMessage().getId(), entry.getMessage().getMessage()));
+        }
+        call = service.sendMessagesToThread(threadId.toString(), new MessageBatchRequest(requests));
+        call.enqueue(new Callback<MessageThread>() {
+            @Override
+            public void onResponse(Call<MessageThread> call, Response<MessageThread> response) {
+                if (call != MessageOutbox.this.call) return;
+                MessageOutbox.this.call = null;
+
+                if (response.isSuccessful()) {
+                    remove(batch);
+                    completed();
+                    for (Listener listener : listeners) {
+                        listener.onSent(threadId, response.body());
+                    }
+                    flush();
+                } else if (response.code() >= 500 || response.code() == 408 || response.code() == 429) {
+                    retryLater();
+                } else {
+                    completed();
+                    fail(threadId, batch, errorMessage(response));
+                    flush();
+                }
+            }
+
+            @Override
+            public void onFailure(Call<MessageThread> call, Throwable t) {
+                if (call != MessageOutbox.this.call) return;
+                MessageOutbox.this.call = null;
+                retryLater();
+            }
+        });
+    }
+
+    private void completed() {
+        handler.removeCallbacks(ackTimeout);
+        inFlight = null;
+        awaitingAck = null;
+        attempts = 0;
+    }
+
+    private void retryLater() {
+        handler.removeCallbacks(ackTimeout);
+        inFlight = null;
+        awaitingAck = null;
+        waiting = true;
+        //Full jitter, so a reconnecting device doesn't retry in lockstep with the gateway
+        long ceiling = Math.min(BACKOFF_CAP_MS, BACKOFF_BASE_MS << Math.min(attempts, 16));
+        long delay = (long) (random.nextDouble() * ceiling);
+        attempts++;
+        Log.d(TAG, "Retrying in " + delay + "ms (attempt " + attempts + ")");
+        handler.postDelayed(retry, delay);
+    }
+
+    private void remove(List<Entry> entries) {
+        queue.removeAll(entries);
+        store.deleteOutboxEntries(ids(entries));
+    }
+
+    private void fail(UUID threadId, List<Entry> entries, String reason) {
+        for (Entry entry : entries) {
+            entry.setFailed(true);
+        }
+        store.markOutboxFailed(ids(entries));
+        for (Listener listener : listeners) {
+            listener.onFailed(threadId, entries, reason);
+        }
+    }
+
+    /**
+     * Stops waiting for an acknowledgement, and sends the next batch once the whole batch has one
+     */
+    private void acknowledged(UUID id) {
+        if (awaitingAck != null && awaitingAck.remove(id) && awaitingAck.isEmpty()) {
+            completed();
+            flush();
+        }
+    }
+
+    private Entry find(UUID id) {
+        for (Entry entry : queue) {
+            if (entry.getMessage().getId().equals(id)) {
+                return entry;
+            }
+        }
+        return null;
+    }
+
+    private static Set<UUID> ids(List<Entry> entries) {
+        Set<UUID> ids = new HashSet<>();
+        for (Entry entry : entries) {
+            ids.add(entry.getMessage().getId());
+        }
+        return ids;
+    }
+
+    private static String errorMessage(Response<?> response) {
+        try {
+            JsonElement message = new JsonParser().parse(response.errorBody().string())
+                    .getAsJsonObject().get("message");
+            if (message != null && !message.isJsonNull()) {
+                return message.getAsString();
+            }
+        } catch (IOException | JsonParseException | IllegalStateException | NullPointerException e) {
+            //Fall through to the generic message
+        }
+        return "Unable to send message!";
+    }
+
+    private class GatewayListener extends MessageGateway.Listener {
+        @Override
+        public void onReady(ReadyEvent ready) {
+            reconnected();
+        }
+
+        @Override
+        public void onResumed(ReadyEvent resumed) {
+            reconnected();
+        }
+
+        @Override
+        public void onMessageSent(MessageSentEvent sent) {
+            UUID id = sent.getMessageId();
+            if (id == null) return;
+            Entry entry = find(id);
+            if (entry != null) {
+                remove(Collections.singletonList(entry));
+            }
+            acknowledged(id);
+        }
+
+        @Override
+        public void onMessageFailed(MessageFailedEvent failed) {
+            UUID id = failed.getMessageId();
+            if (id == null) return;
+            Entry entry = find(id);
+            if (entry != null && !entry.isFailed()) {
+                fail(entry.getThreadId(), Collections.singletonList(entry),
+                        failed.getReason() == null ? "Unable to send message!" : failed.getReason());
+            }
+            acknowledged(id);
+        }
+
+        private void reconnected() {
+            //Back online, so don't wait out the backoff
+            if (waiting) {
+                handler.removeCallbacks(retry);
+                waiting = false;
+                attempts = 0;
+            }
+            flush();
+        }
+    }
+}
@@ -0,0 +1,113 @@
+package com.comp6239.Backend.Messaging;
+
+import com.comp6239.Backend.BackEndService;
+
+import java.util.Arrays;
+import java.util.List;
+
+import retrofit2.Call;
+import retrofit2.Callback;
+import retrofit2.Response;
+
+/**
+ * Loads a thread's messages a page at a time, newest first, using the oldest loaded message as the cursor.
+ * Only one page is ever in flight, so it is safe to call {@link #loadOlder()} on every scroll.
+ */
+public class MessagePager {
+    public static final int PAGE_SIZE = 20;
+
+    public interface Listener {
+        /**
+         * The thread with its newest page of messages
+         */
+        void onThreadLoaded(MessageThread thread);
+
+        /**
+         * A page of messages older than any loaded so far, newest first
+         */
+        void onOlderMessagesLoaded(List<Message> messages);
+
+        void onPageFailed(Throwable t);
+    }
+
+    private final BackEndService service;
+    private final String threadId;
+    private final Listener listener;
+
+    private Call<MessageThread> inFlight;
+    private String oldestMessageId;
+    private boolean exhausted;
+
+    public MessagePager(BackEndService service, String threadId, Listener listener) {
+        this.service = service;
+        this.threadId = threadId;
+        this.listener = listener;
+    }
+
+    /**
+     * (Re)loads the newest page, forgetting anything loaded before
+     */
+    public void loadFirstPage() {
+        cancel();
+        oldestMessageId = null;
+        exhausted = false;
+        load(null);
+    }
+
+    /**
+     * Loads the page before the oldest loaded message, unless one is already loading or there are no more
+     */
+    public void loadOlder() {
+        if (inFlight != null || exhausted || oldestMessageId == null) {
+            return;
+        }
+        load(oldestMessageId);
+    }
+
+    public boolean hasMore() {
+        return !exhausted;
+    }
+
+    public void cancel() {
+        if (inFlight != null) {
+            inFlight.cancel();
+            inFlight = null;
+        }
+    }
+
+    private void load(final String before) {
+        inFlight = service.getConversationThread(threadId, before, null, PAGE_SIZE);
+        inFlight.enqueue(new Callback<MessageThread>() {
+            @Override
+            public void onResponse(Call<MessageThread> call, Response<MessageThread> response) {
+                if (call != inFlight) return;
+                inFlight = null;
+
+                MessageThread thread = response.body();
+                if (!response.isSuccessful() || thread == null) {
+                    listener.onPageFailed(new IllegalStateException("Unexpected response " + response.code()));
+                    return;
+                }
+
+                Message[] messages = thread.getMessages() == null ? new Message[0] : thread.getMessages();
+                exhausted = messages.length < PAGE_SIZE;
+                if (messages.length > 0) {
+                    oldestMessageId = messages[messages.length - 1].getId().toString();
+                }
+
+                if (before == null) {
+                    listener.onThreadLoaded(thread);
+                } else {
+                    listener.onOlderMessagesLoaded(Arrays.asList(messages));
+                }
+            }
+
+            @Override
+            public void onFailure(Call<MessageThread> call, Throwable t) {
+                if (call != inFlight) return;
+                inFlight = null;
+                listener.onPageFailed(t);
+            }
+        });
+    }
+}
@@ -0,0 +1,301 @@
+package com.comp6239.Backend.Messaging;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
+import android.util.Log;
+
+import com.comp6239.Backend.BackEndService;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonObject;
+
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+
+import retrofit2.Call;
+import retrofit2.Callback;
+import retrofit2.Response;
+
+/**
+ * Tells the backend which messages sent to the user have been delivered and read.
+ *
+ * Receipts are collected rather than sent one per message: messages are marked delivered as they arrive over the
+ * gateway and read as the conversation shows them, and every few seconds each thread's receipts go as one
+ * MESSAGE_RECEIPTS dispatch, or one POST if the gateway isn't ready. Receipts that couldn't be sent are kept for the
+ * next flush. Each message is acknowledged once per state, and a message read needn't also be acknowledged delivered.
+ * The gateway doesn't confirm receipts, so those dispatched shortly before it disconnects are queued again, the
+ * backend ignores any it has already recorded.
+ *
+ * Must be used from the main thread.
+ */
+public class MessageReceipts {
+    private static final String TAG = "MessageReceipts";
+
+    private static final long FLUSH_INTERVAL_MS = 3000;
+    //Matches the most the backend accepts at once
+    private static final int MAX_RECEIPTS = 100;
+    //Messages whose receipts are remembered, the oldest acknowledged are forgotten first
+    private static final int MAX_ACKNOWLEDGED = 1000;
+    //A dropped connection is noticed within a missed heartbeat, receipts dispatched since then may be lost with it
+    private static final long UNCONFIRMED_MS = 30 * 1000;
+
+    /**
+     * The receipts of one thread waiting to be sent, oldest first
+     */
+    private static class Pending {
+        final Set<UUID> delivered = new LinkedHashSet<>();
+        final Set<UUID> read = new LinkedHashSet<>();
+        //When the batch was handed to the gateway
+        long dispatchedAt;
+
+        boolean isEmpty() {
+            return delivered.isEmpty() && read.isEmpty();
+        }
+    }
+
+    private final BackEndService service;
+    private final MessageGateway gateway;
+    private final Handler handler = new Handler(Looper.getMainLooper());
+
+    private final Map<UUID, Pending> pending = new LinkedHashMap<>();
+    //The furthest state each message has been acknowledged in, or queued to be
+    private final Map<UUID, MessageState> acknowledged = new LinkedHashMap<UUID, MessageState>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<UUID, MessageState> eldest) {
+            //At worst a forgotten message is acknowledged again, which the backend ignores
+            return size() > MAX_ACKNOWLEDGED;
+        }
+    };
+    //Batches dispatched over the gateway in the last UNCONFIRMED_MS, by thread, oldest first
+    private final List<Map.Entry<UUID, Pending>> unconfirmed = new ArrayList<>();
+    private boolean scheduled = false;
+
+    private final Runnable flush = new Runnable() {
+        @Override
+        public void run() {
+            scheduled = false;
+            flush();
+        }
+    };
+
+    public MessageReceipts(BackEndService service, MessageGateway gateway) {
+        this.service = service;
+        this.gateway = gateway;
+        gateway.addListener(new MessageGateway.Listener() {
+            @Override
+            public void onMessage(MessageEvent message) {
+                delivered(message.getThreadId(), message.getMessage());
+            }
+
+            @Override
+            public void onDisconnected() {
+                requeueUnconfirmed();
+            }
+        });
+    }
+
+    /**
+     * Acknowledges that a message sent to the user has arrived
+     */
+    public void delivered(UUID threadId, Message message) {
+        acknowledge(threadId, message, MessageState.DELIVERED);
+    }
+
+    /**
+     * Acknowledges that the user has seen a message sent to them
+     */
+    public void read(UUID threadId, Message message) {
+        acknowledge(threadId, message, MessageState.READ);
+    }
+
+    /**
+     * Sends every receipt collected so far, a request per thread
+     */
+    public void flush() {
+        handler.removeCallbacks(flush);
+        scheduled = false;
+        Iterator<Map.Entry<UUID, Pending>> it = pending.entrySet().iterator();
+        while (it.hasNext()) {
+            Map.Entry<UUID, Pending> entry = it.next();
+            send(entry.getKey(), take(entry.getValue()));
+            if (entry.getValue().isEmpty()) {
+                it.remove();
+            }
+        }
+        if (!pending.isEmpty()) {
+            schedule();
+        }
+    }
+
+    /**
+     * Forgets every receipt, e.g. when the user logs out
+     */
+    public void clear() {
+        handler.removeCallbacks(flush);
+        scheduled = false;
+        pending.clear();
+        acknowledged.clear();
+        unconfirmed.clear();
+    }
+
+    private void acknowledge(UUID threadId, Message message, MessageState state) {
+        if (threadId == null || message == null || message.getId() == null) return;
+        UUID id = message.getId();
+        if (reached(message.getState(), state) || reached(acknowledged.get(id), state)) {
+            return;
+        }
+        acknowledged.put(id, state);
+
+        Pending receipts = pending.get(threadId);
+        if (receipts == null) {
+            receipts = new Pending();
+            pending.put(threadId, receipts);
+        }
+        if (state == MessageState.READ) {
+            receipts.delivered.remove(id);
+            receipts.read.add(id);
+        } else {
+            receipts.delivered.add(id);
+        }
+        schedule();
+    }
+
+    private void schedule() {
+        if (scheduled) return;
+        scheduled = true;
+        handler.postDelayed(flush, FLUSH_INTERVAL_MS);
+    }
+
+    /**
+     * Removes up to a request's worth of receipts, read ones first
+     */
+    private static Pending take(Pending receipts) {
+        Pending batch = new Pending();
+        int room = MAX_RECEIPTS;
+        room = move(receipts.read, batch.read, room);
+        move(receipts.delivered, batch.delivered, room);
+        return batch;
+    }
+
+    private static int move(Set<UUID> from, Set<UUID> to, int room) {
+        Iterator<UUID> it = from.iterator();
+        while (room > 0 && it.hasNext()) {
+            to.add(it.next());
+            it.remove();
+            room--;
+        }
+        return room;
+    }
+
+    private void send(final UUID threadId, final Pending batch) {
+        if (batch.isEmpty()) return;
+
+        JsonObject data = new JsonObject();
+        data.addProperty("thread_id", threadId.toString());
+        data.add("delivered", toJson(batch.delivered));
+        data.add("read", toJson(batch.read));
+        if (gateway.dispatch("MESSAGE_RECEIPTS", data)) {
+            batch.dispatchedAt = SystemClock.elapsedRealtime();
+            forgetConfirmed(batch.dispatchedAt);
+            unconfirmed.add(new AbstractMap.SimpleEntry<>(threadId, batch));
+            return;
+        }
+
+        service.sendReceipts(threadId.toString(), new ReceiptsRequest(toStrings(batch.delivered), toStrings(batch.read)))
+                .enqueue(new Callback<Void>() {
+                    @Override
+                    public void onResponse(Call<Void> call, Response<Void> response) {
+                        if (response.isSuccessful()) return;
+                        if (response.code() >= 500 || response.code() == 408 || response.code() == 429) {
+                            retry(threadId, batch);
+                        } else {
+                            //e.g. the thread has gone, so sending them again won't help
+                            Log.d(TAG, "Receipts for " + threadId + " rejected with " + response.code());
+                        }
+                    }
+
+                    @Override
+                    public void onFailure(Call<Void> call, Throwable t) {
+                        retry(threadId, batch);
+                    }
+                });
+    }
+
+    /**
+     * Drops the dispatched batches old enough that a disconnect would have been noticed since
+     */
+    private void forgetConfirmed(long now) {
+        Iterator<Map.Entry<UUID, Pending>> it = unconfirmed.iterator();
+        while (it.hasNext() && now - it.next().getValue().dispatchedAt > UNCONFIRMED_MS) {
+            it.remove();
+        }
+    }
+
+    /**
+     * Queues the recently dispatched batches again, they may have been lost with the connection
+     */
+    private void requeueUnconfirmed() {
+        forgetConfirmed(SystemClock.elapsedRealtime());
+        for (Map.Entry<UUID, Pending> dispatched : unconfirmed) {
+            retry(dispatched.getKey(), dispatched.getValue());
+        }
+        unconfirmed.clear();
+    }
+
+    /**
+     * Puts receipts that weren't sent back, unless they have been superseded or cleared meanwhile
+     */
+    private void retry(UUID threadId, Pending batch) {
+        Pending receipts = pending.get(threadId);
+        if (receipts == null) {
+            receipts = new Pending();
+        }
+        for (UUID id : batch.read) {
+            if (acknowledged.get(id) == MessageState.READ) {
+                receipts.read.add(id);
+            }
+        }
+        for (UUID id : batch.delivered) {
+            if (acknowledged.get(id) == MessageState.DELIVERED) {
+                receipts.delivered.add(id);
+            }
+        }
+        if (!receipts.isEmpty()) {
+            pending.put(threadId, receipts);
+            schedule();
+        }
+    }
+
+    /**
+     * @return Whether a message in state has been acknowledged at least as far as wanted
+     */
+    private static boolean reached(MessageState state, MessageState wanted) {
+        if (state == null || state == MessageState.SENDING) {
+            return false;
+        }
+        return state == MessageState.READ || state == wanted;
+    }
+
+    private static JsonArray toJson(Set<UUID> ids) {
+        JsonArray array = new JsonArray();
+        for (UUID id : ids) {
+            array.add(id.toString());
+        }
+        return array;
+    }
+
+    private static List<String> toStrings(Set<UUID> ids) {
+        List<String> strings = new ArrayList<>(ids.size());
+        for (UUID id : ids) {
+            strings.add(id.toString());
+        }
+        return strings;
+    }
+}
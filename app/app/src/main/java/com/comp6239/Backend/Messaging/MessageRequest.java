@@ -5,6 +5,9 @@ import com.google.gson.annotations.SerializedName;
 import java.util.UUID;
 
 public class MessageRequest {
+    @SerializedName("id")
+    String id;
+
     @SerializedName("to")
     String recipientId;
 
@@ -20,6 +23,23 @@ public class MessageRequest {
         this.message = message;
     }
 
+    /**
+     * @param id Client chosen ID for the message, so a retried send isn't stored twice
+     * @param message The message content
+     */
+    public MessageRequest(UUID id, String message) {
+        this.id = id.toString();
+        this.message = message;
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    public void setId(String id) {
+        this.id = id;
+    }
+
     public String getRecipientId() {
         return recipientId;
     }
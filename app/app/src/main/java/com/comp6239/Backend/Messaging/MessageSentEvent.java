@@ -0,0 +1,54 @@
+package com.comp6239.Backend.Messaging;
+
+import com.google.gson.annotations.SerializedName;
+
+import java.util.UUID;
+
+/**
+ * MESSAGE_SENT, the backend has stored a message the user sent
+ */
+public class MessageSentEvent {
+    @SerializedName("message_id")
+    private UUID messageId;
+
+    @SerializedName("thread_id")
+    private UUID threadId;
+
+    @SerializedName("timestamp")
+    private String timestamp;
+
+    @SerializedName("state")
+    private MessageState state;
+
+    public UUID getMessageId() {
+        return messageId;
+    }
+
+    public void setMessageId(UUID messageId) {
+        this.messageId = messageId;
+    }
+
+    public UUID getThreadId() {
+        return threadId;
+    }
+
+    public void setThreadId(UUID threadId) {
+        this.threadId = threadId;
+    }
+
+    public String getTimestamp() {
+        return timestamp;
+    }
+
+    public void setTimestamp(String timestamp) {
+        this.timestamp = timestamp;
+    }
+
+    public MessageState getState() {
+        return state;
+    }
+
+    public void setState(MessageState state) {
+        this.state = state;
+    }
+}
@@ -8,6 +8,6 @@ public enum MessageState {
     SENT,
     @SerializedName("d")
     DELIVERED,
-    @SerializedName("d")
+    @SerializedName("r")
     READ
 }
@@ -21,6 +21,13 @@ public class MessageThread {
     @SerializedName("message_count")
     private Integer messageCount;
 
+    //Only sent instead of messages when the list is requested as a summary
+    @SerializedName("last_message")
+    private Message lastMessage;
+
+    @SerializedName("unread_count")
+    private Integer unreadCount;
+
     public UUID getId() {
         return id;
     }
@@ -60,4 +67,28 @@ public class MessageThread {
     public void setMessageCount(Integer messageCount) {
         this.messageCount = messageCount;
     }
+
+    /**
+     * The newest message of the thread, whether it was requested as a summary or not
+     * @return The newest message, or null if there are none
+     */
+    public Message getLastMessage() {
+        if (lastMessage == null && messages != null && messages.length > 0) {
+            //The backend sends messages newest first
+            return messages[0];
+        }
+        return lastMessage;
+    }
+
+    public void setLastMessage(Message lastMessage) {
+        this.lastMessage = lastMessage;
+    }
+
+    public Integer getUnreadCount() {
+        return unreadCount;
+    }
+
+    public void setUnreadCount(Integer unreadCount) {
+        this.unreadCount = unreadCount;
+    }
 }
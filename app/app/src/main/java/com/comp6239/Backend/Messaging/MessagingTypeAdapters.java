@@ -0,0 +1,691 @@
+package com.comp6239.Backend.Messaging;
+
+import com.comp6239.Backend.ObjectTypeAdapter;
+import com.google.gson.TypeAdapter;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.JsonWriter;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * Streaming adapters for the messaging payloads, so Gson doesn't fall back to reflection.
+ * Field names must be kept in step with the {@code @SerializedName}s on each class.
+ */
+public final class MessagingTypeAdapters {
+
+    private MessagingTypeAdapters() {
+    }
+
+    public static class MessageAdapter extends ObjectTypeAdapter<Message> {
+        private final TypeAdapter<MessageState> stateAdapter;
+
+        public MessageAdapter(TypeAdapter<MessageState> stateAdapter) {
+            this.stateAdapter = stateAdapter;
+        }
+
+        @Override
+        public Message newInstance() {
+            return new Message();
+        }
+
+        @Override
+        public boolean readField(JsonReader in, String name, Message target) throws IOException {
+            switch (name) {
+                case "id":
+                    target.setId(nextUuid(in));
+                    return true;
+                case "sender_id":
+                    target.setSenderId(nextUuid(in));
+                    return true;
+                case "timestamp":
+                    // Decoded here once, rather than on every sort and bind
+                    target.setSentAt(nextString(in));
+                    return true;
+                case "message":
+                    target.setMessage(nextString(in));
+                    return true;
+                case "state":
+                    target.setState(stateAdapter.read(in));
+                    return true;
+            }
+            return false;
+        }
+
+        @Override
+        public void writeFields(JsonWriter out, Message value) throws IOException {
+            out.name("id");
+            writeUuid(out, value.getId());
+            out.name("sender_id");
+            writeUuid(out, value.getSenderId());
+            out.name("timestamp").value(value.sentAt);
+            out.name("message").value(value.getMessage());
+            out.name("state");
+            stateAdapter.write(out, value.getState());
+        }
+    }
+
+    public static class MessageRecipientAdapter extends ObjectTypeAdapter<MessageRecipient> {
+        @Override
+        public MessageRecipient newInstance() {
+            return new MessageRecipient();
+        }
+
+        @Override
+        public boolean readField(JsonReader in, String name, MessageRecipient target) throws IOException {
+            switch (name) {
+                case "id":
+                    target.setId(nextUuid(in));
+                    return true;
+                case "first_name":
+                    target.setFirstName(nextString(in));
+                    return true;
+                case "last_name":
+                    target.setLastName(nextString(in));
+                    return true;
+            }
+            return false;
+        }
+
+        @Override
+        public void writeFields(JsonWriter out, MessageRecipient value) throws IOException {
+            out.name("id");
+            writeUuid(out, value.getId());
+            out.name("first_name").value(value.getFirstName());
+            out.name("last_name").value(value.getLastName());
+        }
+    }
+
+    public static class MessageThreadAdapter extends ObjectTypeAdapter<MessageThread> {
+        private final TypeAdapter<MessageRecipient> recipientAdapter;
+        private final TypeAdapter<ThreadState> stateAdapter;
+        private final TypeAdapter<Message> messageAdapter;
+
+        public MessageThreadAdapter(TypeAdapter<MessageRecipient> recipientAdapter,
+                                    TypeAdapter<ThreadState> stateAdapter,
+                                    TypeAdapter<Message> messageAdapter) {
+            this.recipientAdapter = recipientAdapter;
+            this.stateAdapter = stateAdapter;
+            this.messageAdapter = messageAdapter;
+        }
+
+        @Override
+        public MessageThread newInstance() {
+            return new MessageThread();
+        }
+
+        @Override
+        public boolean readField(JsonReader in, String name, MessageThread target) throws IOException {
+            switch (name) {
+                case "id":
+                    target.setId(nextUuid(in));
+                    return true;
+                case "recipient":
+                    target.setRecipient(recipientAdapter.read(in));
+                    return true;
+                case "state":
+                    target.setState(stateAdapter.read(in));
+                    return true;
+                case "messages":
+                    target.setMessages(readMessages(in));
+                    return true;
+                case "message_count":
+                    target.setMessageCount(nextInteger(in));
+                    return true;
+                case "last_message":
+                    target.setLastMessage(messageAdapter.read(in));
+                    return true;
+                case "unread_count":
+                    target.setUnreadCount(nextInteger(in));
+                    return true;
+            }
+            return false;
+        }
+
+        @Override
+        public void writeFields(JsonWriter out, MessageThread value) throws IOException {
+            out.name("id");
+            writeUuid(out, value.getId());
+            out.name("recipient");
+            recipientAdapter.write(out, value.getRecipient());
+            out.name("state");
+            stateAdapter.write(out, value.getState());
+            out.name("messages");
+            Message[] messages = value.getMessages();
+            if (messages == null) {
+                out.nullValue();
+            } else {
+                out.beginArray();
+                for (Message message : messages) {
+                    messageAdapter.write(out, message);
+                }
+                out.endArray();
+            }
+            out.name("message_count").value(value.getMessageCount());
+            out.name("last_message");
+            messageAdapter.write(out, value.getLastMessage());
+            out.name("unread_count").value(value.getUnreadCount());
+        }
+
+        private Message[] readMessages(JsonReader in) throws IOException {
+            if (in.peek() == JsonToken.NULL) {
+                in.nextNull();
+                return null;
+            }
+            List<Message> messages = new ArrayList<>();
+            in.beginArray();
+            while (in.hasNext()) {
+                messages.add(messageAdapter.read(in));
+            }
+            in.endArray();
+            return messages.toArray(new Message[messages.size()]);
+        }
+    }
+
+    public static class ThreadChangesAdapter extends ObjectTypeAdapter<ThreadChanges> {
+        private final TypeAdapter<MessageThread> threadAdapter;
+
+        public ThreadChangesAdapter(TypeAdapter<MessageThread> threadAdapter) {
+            this.threadAdapter = threadAdapter;
+        }
+
+        @Override
+        public ThreadChanges newInstance() {
+            return new ThreadChanges();
+        }
+
+        @Override
+        public boolean readField(JsonReader in, String name, ThreadChanges target) throws IOException {
+            switch (name) {
+                case "threads":
+                    target.setThreads(readThreads(in));
+                    return true;
+                case "removed":
+                    target.setRemoved(readIds(in));
+                    return true;
+                case "watermark":
+                    target.setWatermark(nextString(in));
+                    return true;
+            }
+            return false;
+        }
+
+        @Override
+        public void writeFields(JsonWriter out, ThreadChanges value) throws IOException {
+            out.name("threads");
+            if (value.getThreads() == null) {
+                out.nullValue();
+            } else {
+                out.beginArray();
+                for (MessageThread thread : value.getThreads()) {
+                    threadAdapter.write(out, thread);
+                }
+                out.endArray();
+            }
+            out.name("removed");
+            if (value.getRemoved() == null) {
+                out.nullValue();
+            } else {
+                out.beginArray();
+                for (UUID id : value.getRemoved()) {
+                    writeUuid(out, id);
+                }
+                out.endArray();
+            }
+            out.name("watermark").value(value.getWatermark());
+        }
+
+        private MessageThread[] readThreads(JsonReader in) throws IOException {
+            if (in.peek() == JsonToken.NULL) {
+                in.nextNull();
+                return null;
+            }
+            List<MessageThread> threads = new ArrayList<>();
+            in.beginArray();
+            while (in.hasNext()) {
+                threads.add(threadAdapter.read(in));
+            }
+            in.endArray();
+            return threads.toArray(new MessageThread[threads.size()]);
+        }
+
+        private UUID[] readIds(JsonReader in) throws IOException {
+            if (in.peek() == JsonToken.NULL) {
+                in.nextNull();
+                return null;
+            }
+            List<UUID> ids = new ArrayList<>();
+            in.beginArray();
+            while (in.hasNext()) {
+                ids.add(nextUuid(in));
+            }
+            in.endArray();
+            return ids.toArray(new UUID[ids.size()]);
+        }
+    }
+
+    public static class MessageRequestAdapter extends ObjectTypeAdapter<MessageRequest> {
+        @Override
+        public MessageRequest newInstance() {
+            return new MessageRequest(null);
+        }
+
+        @Override
+        public boolean readField(JsonReader in, String name, MessageRequest target) throws IOException {
+            switch (name) {
+                case "id":
+                    target.id = nextString(in);
+                    return true;
+                case "to":
+                    target.recipientId = nextString(in);
+                    return true;
+                case "message":
+                    target.message = nextString(in);
+                    return true;
+            }
+            return false;
+        }
+
+        @Override
+        public void writeFields(JsonWriter out, MessageRequest value) throws IOException {
+            out.name("id").value(value.id);
+            out.name("to").value(value.recipientId);
+            out.name("message").value(value.message);
+        }
+    }
+
+    public static class MessageBatchRequestAdapter extends ObjectTypeAdapter<MessageBatchRequest> {
+        private final TypeAdapter<MessageRequest> requestAdapter;
+
+        public MessageBatchRequestAdapter(TypeAdapter<MessageRequest> requestAdapter) {
+            this.requestAdapter = requestAdapter;
+        }
+
+        @Override
+        public MessageBatchRequest newInstance() {
+            return new MessageBatchRequest(null);
+        }
+
+        @Override
+        public boolean readField(JsonReader in, String name, MessageBatchRequest target) throws IOException {
+            if (!"messages".equals(name)) {
+                return false;
+            }
+            if (in.peek() == JsonToken.NULL) {
+                in.nextNull();
+                return true;
+            }
+            List<MessageRequest> messages = new ArrayList<>();
+            in.beginArray();
+            while (in.hasNext()) {
+                messages.add(requestAdapter.read(in));
+            }
+            in.endArray();
+            target.messages = messages;
+            return true;
+        }
+
+        @Override
+        public void writeFields(JsonWriter out, MessageBatchRequest value) throws IOException {
+            out.name("messages");
+            if (value.messages == null) {
+                out.nullValue();
+                return;
+            }
+            out.beginArray();
+            for (MessageRequest request : value.messages) {
+                requestAdapter.write(out, request);
+            }
+            out.endArray();
+        }
+    }
+
+    public static class ReceiptsRequestAdapter extends ObjectTypeAdapter<ReceiptsRequest> {
+        @Override
+        public ReceiptsRequest newInstance() {
+            return new ReceiptsRequest(null, null);
+        }
+
+        @Override
+        public boolean readField(JsonReader in, String name, ReceiptsRequest target) throws IOException {
+            switch (name) {
+                case "delivered":
+                    target.delivered = nextStrings(in);
+                    return true;
+                case "read":
+                    target.read = nextStrings(in);
+                    return true;
+            }
+            return false;
+        }
+
+        @Override
+        public void writeFields(JsonWriter out, ReceiptsRequest value) throws IOException {
+            writeStrings(out.name("delivered"), value.delivered);
+            writeStrings(out.name("read"), value.read);
+        }
+
+        private static List<String> nextStrings(JsonReader in) throws IOException {
+            if (in.peek() == JsonToken.NULL) {
+                in.nextNull();
+                return null;
+            }
+            List<String> strings = new ArrayList<>();
+            in.beginArray();
+            while (in.hasNext()) {
+                strings.add(nextString(in));
+            }
+            in.endArray();
+            return strings;
+        }
+
+        private static void writeStrings(JsonWriter out, List<String> strings) throws IOException {
+            if (strings == null) {
+                out.nullValue();
+                return;
+            }
+            out.beginArray();
+            for (String string : strings) {
+                out.value(string);
+            }
+            out.endArray();
+        }
+    }
+
+    public static class ReadyEventAdapter extends ObjectTypeAdapter<ReadyEvent> {
+        private final TypeAdapter<MessageThread> threadAdapter;
+
+        public ReadyEventAdapter(TypeAdapter<MessageThread> threadAdapter) {
+            this.threadAdapter = threadAdapter;
+        }
+
+        @Override
+        public ReadyEvent newInstance() {
+            return new ReadyEvent();
+        }
+
+        @Override
+        public boolean readField(JsonReader in, String name, ReadyEvent target) throws IOException {
+            switch (name) {
+                case "id":
+                    target.setUserId(nextUuid(in));
+                    return true;
+                case "first_name":
+                    target.setFirstName(nextString(in));
+                    return true;
+                case "last_name":
+                    target.setLastName(nextString(in));
+                    return true;
+                case "unread_threads":
+                    target.setUnreadThreads(nextInteger(in));
+                    return true;
+                case "recent_threads":
+                    if (in.peek() == JsonToken.NULL) {
+                        in.nextNull();
+                        return true;
+                    }
+                    List<MessageThread> threads = new ArrayList<>();
+                    in.beginArray();
+                    while (in.hasNext()) {
+                        threads.add(threadAdapter.read(in));
+                    }
+                    in.endArray();
+                    target.setRecentThreads(threads.toArray(new MessageThread[threads.size()]));
+                    return true;
+                case "session_id":
+                    target.setSessionId(nextString(in));
+                    return true;
+                case "seq":
+                    target.setSeq(in.nextLong());
+                    return true;
+            }
+            return false;
+        }
+
+        @Override
+        public void writeFields(JsonWriter out, ReadyEvent value) throws IOException {
+            out.name("id");
+            writeUuid(out, value.getUserId());
+            out.name("first_name").value(value.getFirstName());
+            out.name("last_name").value(value.getLastName());
+            out.name("unread_threads").value(value.getUnreadThreads());
+            out.name("recent_threads");
+            if (value.getRecentThreads() == null) {
+                out.nullValue();
+            } else {
+                out.beginArray();
+                for (MessageThread thread : value.getRecentThreads()) {
+                    threadAdapter.write(out, thread);
+                }
+                out.endArray();
+            }
+            out.name("session_id").value(value.getSessionId());
+            out.name("seq").value(value.getSeq());
+        }
+    }
+
+    /**
+     * The message's own fields are at the top level of the event, so they're read into a Message as they come
+     */
+    public static class MessageEventAdapter extends ObjectTypeAdapter<MessageEvent> {
+        private final TypeAdapter<MessageRecipient> recipientAdapter;
+        private final TypeAdapter<MessageState> stateAdapter;
+
+        public MessageEventAdapter(TypeAdapter<MessageRecipient> recipientAdapter,
+                                   TypeAdapter<MessageState> stateAdapter) {
+            this.recipientAdapter = recipientAdapter;
+            this.stateAdapter = stateAdapter;
+        }
+
+        @Override
+        public MessageEvent newInstance() {
+            MessageEvent event = new MessageEvent();
+            event.setMessage(new Message());
+            return event;
+        }
+
+        @Override
+        public boolean readField(JsonReader in, String name, MessageEvent target) throws IOException {
+            Message message = target.getMessage();
+            switch (name) {
+                case "thread_id":
+                    target.setThreadId(nextUuid(in));
+                    return true;
+                case "from":
+                    target.setFrom(recipientAdapter.read(in));
+                    if (target.getFrom() != null) {
+                        message.setSenderId(target.getFrom().getId());
+                    }
+                    return true;
+                case "id":
+                    message.setId(nextUuid(in));
+                    return true;
+                case "message":
+                    message.setMessage(nextString(in));
+                    return true;
+                case "timestamp":
+                    message.setSentAt(nextString(in));
+                    return true;
+                case "state":
+                    message.setState(stateAdapter.read(in));
+                    return true;
+            }
+            return false;
+        }
+
+        @Override
+        public void writeFields(JsonWriter out, MessageEvent value) throws IOException {
+            Message message = value.getMessage();
+            out.name("thread_id");
+            writeUuid(out, value.getThreadId());
+            out.name("from");
+            recipientAdapter.write(out, value.getFrom());
+            out.name("id");
+            writeUuid(out, message.getId());
+            out.name("message").value(message.getMessage());
+            out.name("timestamp").value(message.getSentAt());
+            out.name("state");
+            stateAdapter.write(out, message.getState());
+        }
+    }
+
+    public static class MessageSentEventAdapter extends ObjectTypeAdapter<MessageSentEvent> {
+        private final TypeAdapter<MessageState> stateAdapter;
+
+        public MessageSentEventAdapter(TypeAdapter<MessageState> stateAdapter) {
+            this.stateAdapter = stateAdapter;
+        }
+
+        @Override
+        public MessageSentEvent newInstance() {
+            return new MessageSentEvent();
+        }
+
+        @Override
+        public boolean readField(JsonReader in, String name, MessageSentEvent target) throws IOException {
+            switch (name) {
+                case "message_id":
+                    target.setMessageId(nextUuid(in));
+                    return true;
+                case "thread_id":
+                    target.setThreadId(nextUuid(in));
+                    return true;
+                case "timestamp":
+                    target.setTimestamp(nextString(in));
+                    return true;
+                case "state":
+                    target.setState(stateAdapter.read(in));
+                    return true;
+            }
+            return false;
+        }
+
+        @Override
+        public void writeFields(JsonWriter out, MessageSentEvent value) throws IOException {
+            out.name("message_id");
+            writeUuid(out, value.getMessageId());
+            out.name("thread_id");
+            writeUuid(out, value.getThreadId());
+            out.name("timestamp").value(value.getTimestamp());
+            out.name("state");
+            stateAdapter.write(out, value.getState());
+        }
+    }
+
+    public static class ThreadStateEventAdapter extends ObjectTypeAdapter<ThreadStateEvent> {
+        private final TypeAdapter<ThreadState> stateAdapter;
+
+        public ThreadStateEventAdapter(TypeAdapter<ThreadState> stateAdapter) {
+            this.stateAdapter = stateAdapter;
+        }
+
+        @Override
+        public ThreadStateEvent newInstance() {
+            return new ThreadStateEvent();
+        }
+
+        @Override
+        public boolean readField(JsonReader in, String name, ThreadStateEvent target) throws IOException {
+            switch (name) {
+                case "thread_id":
+                    target.setThreadId(nextUuid(in));
+                    return true;
+                case "state":
+                    target.setState(stateAdapter.read(in));
+                    return true;
+            }
+            return false;
+        }
+
+        @Override
+        public void writeFields(JsonWriter out, ThreadStateEvent value) throws IOException {
+            out.name("thread_id");
+            writeUuid(out, value.getThreadId());
+            out.name("state");
+            stateAdapter.write(out, value.getState());
+        }
+    }
+
+    public static class TutorReviewedEventAdapter extends ObjectTypeAdapter<TutorReviewedEvent> {
+        @Override
+        public TutorReviewedEvent newInstance() {
+            return new TutorReviewedEvent();
+        }
+
+        @Override
+        public boolean readField(JsonReader in, String name, TutorReviewedEvent target) throws IOException {
+            switch (name) {
+                case "id":
+                    target.setTutorId(nextUuid(in));
+                    return true;
+                case "approved":
+                    target.setApproved(nextBoolean(in));
+                    return true;
+            }
+            return false;
+        }
+
+        @Override
+        public void writeFields(JsonWriter out, TutorReviewedEvent value) throws IOException {
+            out.name("id");
+            writeUuid(out, value.getTutorId());
+            out.name("approved").value(value.getApproved());
+        }
+    }
+
+    public static class MessageFailedEventAdapter extends ObjectTypeAdapter<MessageFailedEvent> {
+        @Override
+        public MessageFailedEvent newInstance() {
+            return new MessageFailedEvent();
+        }
+
+        @Override
+        public boolean readField(JsonReader in, String name, MessageFailedEvent target) throws IOException {
+            switch (name) {
+                case "message_id":
+                    //Echoed back as it was sent, which may not have been a UUID
+                    try {
+                        target.setMessageId(nextUuid(in));
+                    } catch (IllegalArgumentException e) {
+                        target.setMessageId(null);
+                    }
+                    return true;
+                case "reason":
+                    target.setReason(nextString(in));
+                    return true;
+            }
+            return false;
+        }
+
+        @Override
+        public void writeFields(JsonWriter out, MessageFailedEvent value) throws IOException {
+            out.name("message_id");
+            writeUuid(out, value.getMessageId());
+            out.name("reason").value(value.getReason());
+        }
+    }
+
+    public static class RateLimitedEventAdapter extends ObjectTypeAdapter<RateLimitedEvent> {
+        @Override
+        public RateLimitedEvent newInstance() {
+            return new RateLimitedEvent();
+        }
+
+        @Override
+        public boolean readField(JsonReader in, String name, RateLimitedEvent target) throws IOException {
+            if ("retry_after".equals(name)) {
+                target.setRetryAfter(nextDouble(in));
+                return true;
+            }
+            return false;
+        }
+
+        @Override
+        public void writeFields(JsonWriter out, RateLimitedEvent value) throws IOException {
+            out.name("retry_after").value(value.getRetryAfter());
+        }
+    }
+}
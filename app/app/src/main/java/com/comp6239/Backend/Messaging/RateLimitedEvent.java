@@ -0,0 +1,20 @@
+package com.comp6239.Backend.Messaging;
+
+import com.google.gson.annotations.SerializedName;
+
+/**
+ * The data of a RATE_LIMITED error
+ */
+public class RateLimitedEvent {
+    //Seconds until the server will accept another dispatch
+    @SerializedName("retry_after")
+    private Double retryAfter;
+
+    public Double getRetryAfter() {
+        return retryAfter;
+    }
+
+    public void setRetryAfter(Double retryAfter) {
+        this.retryAfter = retryAfter;
+    }
+}
@@ -0,0 +1,87 @@
+package com.comp6239.Backend.Messaging;
+
+import com.google.gson.annotations.SerializedName;
+
+import java.util.UUID;
+
+/**
+ * READY, sent when IDENTIFY starts a new session, or RESUMED, when it resumes one and only the session is given
+ */
+public class ReadyEvent {
+    @SerializedName("id")
+    private UUID userId;
+
+    @SerializedName("first_name")
+    private String firstName;
+
+    @SerializedName("last_name")
+    private String lastName;
+
+    @SerializedName("unread_threads")
+    private Integer unreadThreads;
+
+    @SerializedName("recent_threads")
+    private MessageThread[] recentThreads;
+
+    @SerializedName("session_id")
+    private String sessionId;
+
+    @SerializedName("seq")
+    private long seq;
+
+    public UUID getUserId() {
+        return userId;
+    }
+
+    public void setUserId(UUID userId) {
+        this.userId = userId;
+    }
+
+    public String getFirstName() {
+        return firstName;
+    }
+
+    public void setFirstName(String firstName) {
+        this.firstName = firstName;
+    }
+
+    public String getLastName() {
+        return lastName;
+    }
+
+    public void setLastName(String lastName) {
+        this.lastName = lastName;
+    }
+
+    public Integer getUnreadThreads() {
+        return unreadThreads;
+    }
+
+    public void setUnreadThreads(Integer unreadThreads) {
+        this.unreadThreads = unreadThreads;
+    }
+
+    public MessageThread[] getRecentThreads() {
+        return recentThreads;
+    }
+
+    public void setRecentThreads(MessageThread[] recentThreads) {
+        this.recentThreads = recentThreads;
+    }
+
+    public String getSessionId() {
+        return sessionId;
+    }
+
+    public void setSessionId(String sessionId) {
+        this.sessionId = sessionId;
+    }
+
+    public long getSeq() {
+        return seq;
+    }
+
+    public void setSeq(long seq) {
+        this.seq = seq;
+    }
+}
@@ -0,0 +1,37 @@
+package com.comp6239.Backend.Messaging;
+
+import com.google.gson.annotations.SerializedName;
+
+import java.util.List;
+
+/**
+ * The messages of a thread the user has received and read, to acknowledge in one request
+ */
+public class ReceiptsRequest {
+    @SerializedName("delivered")
+    List<String> delivered;
+
+    @SerializedName("read")
+    List<String> read;
+
+    public ReceiptsRequest(List<String> delivered, List<String> read) {
+        this.delivered = delivered;
+        this.read = read;
+    }
+
+    public List<String> getDelivered() {
+        return delivered;
+    }
+
+    public void setDelivered(List<String> delivered) {
+        this.delivered = delivered;
+    }
+
+    public List<String> getRead() {
+        return read;
+    }
+
+    public void setRead(List<String> read) {
+        this.read = read;
+    }
+}
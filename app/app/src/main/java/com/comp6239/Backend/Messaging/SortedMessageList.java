@@ -0,0 +1,291 @@
+package com.comp6239.Backend.Messaging;
+
+import android.support.v7.util.ListUpdateCallback;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * The messages of a conversation, oldest first, indexed by ID.
+ *
+ * Every change is reported to a {@link ListUpdateCallback} as just the positions that changed, so a RecyclerView
+ * only rebinds those rows. Adding a message is a binary search and an insert, which for a new message is an append,
+ * so it costs the same however much history is loaded. A message with an ID already in the list replaces it.
+ *
+ * Messages are treated as immutable once added, to change one add a copy with the same ID.
+ */
+public class SortedMessageList {
+    /**
+     * Oldest first, the ID breaks ties so that no two messages compare equal
+     */
+    public static final Comparator<Message> BY_SENT_AT = new Comparator<Message>() {
+        @Override
+        public int compare(Message o1, Message o2) {
+            long a = o1.getSentAtMillis();
+            long b = o2.getSentAtMillis();
+            if (a != b) {
+                return a < b ? -1 : 1;
+            }
+            return o1.getId().compareTo(o2.getId());
+        }
+    };
+
+    private final List<Message> messages = new ArrayList<>();
+    private final Map<UUID, Message> byId = new HashMap<>();
+    private final ListUpdateCallback callback;
+
+    public SortedMessageList(ListUpdateCallback callback) {
+        this.callback = callback;
+    }
+
+    public int size() {
+        return messages.size();
+    }
+
+    public Message get(int position) {
+        return messages.get(position);
+    }
+
+    public boolean contains(UUID id) {
+        return byId.containsKey(id);
+    }
+
+    /**
+     * @return The position of the message with the ID, or -1
+     */
+    public int indexOf(UUID id) {
+        Message message = byId.get(id);
+        if (message == null) {
+            return -1;
+        }
+        return Collections.binarySearch(messages, message, BY_SENT_AT);
+    }
+
+    /**
+     * Adds a message, or replaces the message with the same ID
+     * @return The message's position
+     */
+    public int add(Message message) {
+        Message existing = byId.get(message.getId());
+        byId.put(message.getId(), message);
+
+        if (existing == null) {
+            int position = insertionPoint(message);
+            messages.add(position, message);
+            callback.onInserted(position, 1);
+            return position;
+        }
+
+        int from = Collections.binarySearch(messages, existing, BY_SENT_AT);
+        if (BY_SENT_AT.compare(existing, message) == 0) {
+            messages.set(from, message);
+            if (!sameContents(existing, message)) {
+                callback.onChanged(from, 1, null);
+            }
+            return from;
+        }
+
+        messages.remove(from);
+        int to = insertionPoint(message);
+        messages.add(to, message);
+        if (from != to) {
+            callback.onMoved(from, to);
+        }
+        callback.onChanged(to, 1, null);
+        return to;
+    }
+
+    /**
+     * Adds a batch of messages, e.g. a page of history.
+     * A batch that is wholly older or newer than what is already loaded is inserted and reported as one range.
+     */
+    public void addAll(Collection<Message> batch) {
+        List<Message> fresh = new ArrayList<>();
+        for (Message message : uniqueSorted(batch)) {
+            if (byId.containsKey(message.getId())) {
+                add(message);
+            } else {
+                fresh.add(message);
+            }
+        }
+        if (fresh.isEmpty()) {
+            return;
+        }
+
+        Message first = fresh.get(0);
+        Message last = fresh.get(fresh.size() - 1);
+        int position;
+        if (messages.isEmpty() || BY_SENT_AT.compare(last, messages.get(0)) < 0) {
+            position = 0;
+        } else if (BY_SENT_AT.compare(first, messages.get(messages.size() - 1)) > 0) {
+            position = messages.size();
+        } else {
+            for (Message message : fresh) {
+                add(message);
+            }
+            return;
+        }
+
+        messages.addAll(position, fresh);
+        for (Message message : fresh) {
+            byId.put(message.getId(), message);
+        }
+        callback.onInserted(position, fresh.size());
+    }
+
+    /**
+     * Replaces the whole list, reporting only the messages that were inserted, removed or changed.
+     * Both lists are already in order, so they are diffed in a single pass.
+     */
+    public void replaceAll(Collection<Message> replacement) {
+        List<Message> next = uniqueSorted(replacement);
+        List<Message> previous = new ArrayList<>(messages);
+        messages.clear();
+        byId.clear();
+
+        //messages holds what has been merged so far, everything after it is still the previous list
+        Batch batch = new Batch();
+        int i = 0;
+        int j = 0;
+        while (i < previous.size() || j < next.size()) {
+            int order;
+            if (i == previous.size()) {
+                order = 1;
+            } else if (j == next.size()) {
+                order = -1;
+            } else {
+                order = BY_SENT_AT.compare(previous.get(i), next.get(j));
+            }
+
+            if (order < 0) {
+                batch.removed(messages.size());
+                i++;
+                continue;
+            }
+
+            Message message = next.get(j);
+            messages.add(message);
+            byId.put(message.getId(), message);
+            if (order == 0) {
+                if (!sameContents(previous.get(i), message)) {
+                    batch.changed(messages.size() - 1);
+                }
+                i++;
+            } else {
+                batch.inserted(messages.size() - 1);
+            }
+            j++;
+        }
+        batch.flush();
+    }
+
+    /**
+     * @return false if there is no message with the ID
+     */
+    public boolean remove(UUID id) {
+        int position = indexOf(id);
+        if (position < 0) {
+            return false;
+        }
+        messages.remove(position);
+        byId.remove(id);
+        callback.onRemoved(position, 1);
+        return true;
+    }
+
+    private int insertionPoint(Message message) {
+        //Nearly every new message is the newest
+        int last = messages.size() - 1;
+        if (last < 0 || BY_SENT_AT.compare(message, messages.get(last)) > 0) {
+            return messages.size();
+        }
+        return -(Collections.binarySearch(messages, message, BY_SENT_AT) + 1);
+    }
+
+    private static List<Message> uniqueSorted(Collection<Message> batch) {
+        Map<UUID, Message> unique = new HashMap<>();
+        for (Message message : batch) {
+            unique.put(message.getId(), message);
+        }
+        List<Message> sorted = new ArrayList<>(unique.values());
+        Collections.sort(sorted, BY_SENT_AT);
+        return sorted;
+    }
+
+    private static boolean sameContents(Message a, Message b) {
+        return a.getState() == b.getState()
+                && equal(a.getMessage(), b.getMessage())
+                && equal(a.getSentAt(), b.getSentAt())
+                && equal(a.getSenderId(), b.getSenderId());
+    }
+
+    private static boolean equal(Object a, Object b) {
+        return a == null ? b == null : a.equals(b);
+    }
+
+    /**
+     * Merges consecutive updates of the same kind into one range
+     */
+    private class Batch {
+        private static final int NONE = 0;
+        private static final int INSERT = 1;
+        private static final int REMOVE = 2;
+        private static final int CHANGE = 3;
+
+        private int type = NONE;
+        private int start;
+        private int count;
+
+        void inserted(int position) {
+            if (type == INSERT && position == start + count) {
+                count++;
+                return;
+            }
+            begin(INSERT, position);
+        }
+
+        void removed(int position) {
+            if (type == REMOVE && position == start) {
+                count++;
+                return;
+            }
+            begin(REMOVE, position);
+        }
+
+        void changed(int position) {
+            if (type == CHANGE && position == start + count) {
+                count++;
+                return;
+            }
+            begin(CHANGE, position);
+        }
+
+        private void begin(int type, int position) {
+            flush();
+            this.type = type;
+            this.start = position;
+            this.count = 1;
+        }
+
+        void flush() {
+            switch (type) {
+                case INSERT:
+                    callback.onInserted(start, count);
+                    break;
+                case REMOVE:
+                    callback.onRemoved(start, count);
+                    break;
+                case CHANGE:
+                    callback.onChanged(start, count, null);
+                    break;
+            }
+            type = NONE;
+        }
+    }
+}
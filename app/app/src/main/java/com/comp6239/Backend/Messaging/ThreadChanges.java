@@ -0,0 +1,46 @@
+package com.comp6239.Backend.Messaging;
+
+import com.google.gson.annotations.SerializedName;
+
+import java.util.UUID;
+
+/**
+ * What changed in a thread list since the watermark of the last sync
+ */
+public class ThreadChanges {
+    //Summaries of the threads in the list that changed
+    @SerializedName("threads")
+    private MessageThread[] threads;
+
+    //Threads that changed and aren't in the list, e.g. requests that were approved
+    @SerializedName("removed")
+    private UUID[] removed;
+
+    //Passed as since to the next sync
+    @SerializedName("watermark")
+    private String watermark;
+
+    public MessageThread[] getThreads() {
+        return threads;
+    }
+
+    public void setThreads(MessageThread[] threads) {
+        this.threads = threads;
+    }
+
+    public UUID[] getRemoved() {
+        return removed;
+    }
+
+    public void setRemoved(UUID[] removed) {
+        this.removed = removed;
+    }
+
+    public String getWatermark() {
+        return watermark;
+    }
+
+    public void setWatermark(String watermark) {
+        this.watermark = watermark;
+    }
+}
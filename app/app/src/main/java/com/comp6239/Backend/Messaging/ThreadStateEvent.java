@@ -0,0 +1,32 @@
+package com.comp6239.Backend.Messaging;
+
+import com.google.gson.annotations.SerializedName;
+
+import java.util.UUID;
+
+/**
+ * THREAD_STATE, a request the tutor received was approved or blocked, on this device or another
+ */
+public class ThreadStateEvent {
+    @SerializedName("thread_id")
+    private UUID threadId;
+
+    @SerializedName("state")
+    private ThreadState state;
+
+    public UUID getThreadId() {
+        return threadId;
+    }
+
+    public void setThreadId(UUID threadId) {
+        this.threadId = threadId;
+    }
+
+    public ThreadState getState() {
+        return state;
+    }
+
+    public void setState(ThreadState state) {
+        this.state = state;
+    }
+}
@@ -0,0 +1,52 @@
+package com.comp6239.Backend.Messaging;
+
+/**
+ * Allows a burst of sends, then a steady rate, the same way the backend limits what a client can send.
+ * Times are passed in so it can be driven by any clock.
+ */
+public class TokenBucket {
+    private final int capacity;
+    private final double tokensPerMilli;
+    private double tokens;
+    private long updatedAt;
+
+    /**
+     * @param capacity Sends allowed in a burst
+     * @param perSecond Sends allowed each second once the burst is used up
+     * @param now The current time in milliseconds
+     */
+    public TokenBucket(int capacity, double perSecond, long now) {
+        this.capacity = capacity;
+        this.tokensPerMilli = perSecond / 1000;
+        this.tokens = capacity;
+        this.updatedAt = now;
+    }
+
+    /**
+     * Takes a token if there is one
+     * @return 0 if a token was taken, otherwise how many milliseconds until there will be one
+     */
+    public long acquire(long now) {
+        refill(now);
+        if (tokens >= 1) {
+            tokens -= 1;
+            return 0;
+        }
+        return (long) Math.ceil((1 - tokens) / tokensPerMilli);
+    }
+
+    /**
+     * Empties the bucket, e.g. when the server says we've sent too much, so the burst has to be earned again
+     */
+    public void drain(long now) {
+        refill(now);
+        tokens = 0;
+    }
+
+    private void refill(long now) {
+        if (now > updatedAt) {
+            tokens = Math.min(capacity, tokens + (now - updatedAt) * tokensPerMilli);
+            updatedAt = now;
+        }
+    }
+}
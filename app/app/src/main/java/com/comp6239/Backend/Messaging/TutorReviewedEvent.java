@@ -0,0 +1,32 @@
+package com.comp6239.Backend.Messaging;
+
+import com.google.gson.annotations.SerializedName;
+
+import java.util.UUID;
+
+/**
+ * TUTOR_REVIEWED, sent to admins when a tutor waiting for approval has been approved or denied
+ */
+public class TutorReviewedEvent {
+    @SerializedName("id")
+    private UUID tutorId;
+
+    @SerializedName("approved")
+    private Boolean approved;
+
+    public UUID getTutorId() {
+        return tutorId;
+    }
+
+    public void setTutorId(UUID tutorId) {
+        this.tutorId = tutorId;
+    }
+
+    public Boolean getApproved() {
+        return approved;
+    }
+
+    public void setApproved(Boolean approved) {
+        this.approved = approved;
+    }
+}
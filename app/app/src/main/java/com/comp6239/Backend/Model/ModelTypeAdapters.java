@@ -0,0 +1,360 @@
+package com.comp6239.Backend.Model;
+
+import com.comp6239.Backend.ObjectTypeAdapter;
+import com.google.gson.TypeAdapter;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.JsonWriter;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Streaming adapters for the profile models, so Gson doesn't fall back to reflection.
+ * Field names must be kept in step with the {@code @SerializedName}s on each class.
+ */
+public final class ModelTypeAdapters {
+
+    private ModelTypeAdapters() {
+    }
+
+    public static class SubjectAdapter extends ObjectTypeAdapter<Subject> {
+        @Override
+        public Subject newInstance() {
+            return new Subject();
+        }
+
+        @Override
+        public boolean readField(JsonReader in, String name, Subject target) throws IOException {
+            switch (name) {
+                case "name":
+                    target.name = nextString(in);
+                    return true;
+                case "id":
+                    target.id = nextUuid(in);
+                    return true;
+            }
+            return false;
+        }
+
+        @Override
+        public void writeFields(JsonWriter out, Subject value) throws IOException {
+            out.name("name").value(value.name);
+            out.name("id");
+            writeUuid(out, value.id);
+        }
+    }
+
+    /**
+     * Fields shared by every {@link User} subtype
+     */
+    public abstract static class UserAdapter<T extends User> extends ObjectTypeAdapter<T> {
+        private final TypeAdapter<Gender> genderAdapter;
+
+        UserAdapter(TypeAdapter<Gender> genderAdapter) {
+            this.genderAdapter = genderAdapter;
+        }
+
+        @Override
+        public boolean readField(JsonReader in, String name, T target) throws IOException {
+            switch (name) {
+                case "id":
+                    target.setId(nextUuid(in));
+                    return true;
+                case "first_name":
+                    target.setFirstName(nextString(in));
+                    return true;
+                case "last_name":
+                    target.setLastName(nextString(in));
+                    return true;
+                case "email":
+                    target.setEmail(nextString(in));
+                    return true;
+                case "gender":
+                    target.setGender(genderAdapter.read(in));
+                    return true;
+                case "location":
+                    target.setLocation(nextString(in));
+                    return true;
+                case "latitude":
+                    target.setPosition(nextDouble(in), target.getLongitude());
+                    return true;
+                case "longitude":
+                    target.setPosition(target.getLatitude(), nextDouble(in));
+                    return true;
+                case "password":
+                    target.setPassword(nextString(in));
+                    return true;
+            }
+            return false;
+        }
+
+        @Override
+        public void writeFields(JsonWriter out, T value) throws IOException {
+            out.name("id");
+            writeUuid(out, value.getId());
+            out.name("first_name").value(value.getFirstName());
+            out.name("last_name").value(value.getLastName());
+            out.name("email").value(value.getEmail());
+            out.name("gender");
+            genderAdapter.write(out, value.getGender());
+            out.name("location").value(value.getLocation());
+            out.name("latitude").value(value.getLatitude());
+            out.name("longitude").value(value.getLongitude());
+            out.name("password").value(value.getPassword());
+        }
+    }
+
+    public static class StudentAdapter extends UserAdapter<Student> {
+        private final TypeAdapter<Subject> subjectAdapter;
+
+        public StudentAdapter(TypeAdapter<Gender> genderAdapter, TypeAdapter<Subject> subjectAdapter) {
+            super(genderAdapter);
+            this.subjectAdapter = subjectAdapter;
+        }
+
+        @Override
+        public Student newInstance() {
+            return new Student();
+        }
+
+        @Override
+        public boolean readField(JsonReader in, String name, Student target) throws IOException {
+            if ("subjects".equals(name)) {
+                target.subjects = readSubjects(in, subjectAdapter);
+                return true;
+            }
+            return super.readField(in, name, target);
+        }
+
+        @Override
+        public void writeFields(JsonWriter out, Student value) throws IOException {
+            super.writeFields(out, value);
+            out.name("subjects");
+            writeSubjects(out, subjectAdapter, value.subjects);
+        }
+    }
+
+    public static class TutorAdapter extends UserAdapter<Tutor> {
+        private final TypeAdapter<Subject> subjectAdapter;
+
+        public TutorAdapter(TypeAdapter<Gender> genderAdapter, TypeAdapter<Subject> subjectAdapter) {
+            super(genderAdapter);
+            this.subjectAdapter = subjectAdapter;
+        }
+
+        @Override
+        public Tutor newInstance() {
+            return new Tutor();
+        }
+
+        @Override
+        public boolean readField(JsonReader in, String name, Tutor target) throws IOException {
+            switch (name) {
+                case "bio":
+                    target.setBio(nextString(in));
+                    return true;
+                case "status":
+                    target.setApproved(nextBoolean(in));
+                    return true;
+                case "price":
+                    target.setPrice(nextDouble(in));
+                    return true;
+                case "subjects":
+                    target.subjects = readSubjects(in, subjectAdapter);
+                    return true;
+                case "reason":
+                    target.reasonForRejection = nextString(in);
+                    return true;
+                case "revision":
+                    target.dateOfLastRevision = nextString(in);
+                    return true;
+                case "reviewed_at":
+                    target.lastTimeReviewed = nextString(in);
+                    return true;
+                case "geohash":
+                    target.geohash = nextString(in);
+                    return true;
+                case "distance":
+                    target.distance = nextDouble(in);
+                    return true;
+            }
+            return super.readField(in, name, target);
+        }
+
+        @Override
+        public void writeFields(JsonWriter out, Tutor value) throws IOException {
+            super.writeFields(out, value);
+            out.name("bio").value(value.getBio());
+            out.name("status").value(value.isApproved());
+            out.name("price").value(value.getPrice());
+            out.name("subjects");
+            writeSubjects(out, subjectAdapter, value.subjects);
+            out.name("reason").value(value.reasonForRejection);
+            out.name("revision").value(value.dateOfLastRevision);
+            out.name("reviewed_at").value(value.lastTimeReviewed);
+            out.name("geohash").value(value.geohash);
+            out.name("distance").value(value.distance);
+        }
+    }
+
+    public static class AdminAdapter extends UserAdapter<Admin> {
+        public AdminAdapter(TypeAdapter<Gender> genderAdapter) {
+            super(genderAdapter);
+        }
+
+        @Override
+        public Admin newInstance() {
+            return new Admin();
+        }
+    }
+
+    public static class TutorFacetsAdapter extends ObjectTypeAdapter<TutorFacets> {
+        @Override
+        public TutorFacets newInstance() {
+            return new TutorFacets();
+        }
+
+        @Override
+        public boolean readField(JsonReader in, String name, TutorFacets target) throws IOException {
+            switch (name) {
+                case "count":
+                    Integer count = nextInteger(in);
+                    target.count = count == null ? 0 : count;
+                    return true;
+                case "prices":
+                    target.prices = readPriceBuckets(in);
+                    return true;
+                case "subjects":
+                    target.subjects = readSubjectCounts(in);
+                    return true;
+            }
+            return false;
+        }
+
+        @Override
+        public void writeFields(JsonWriter out, TutorFacets value) throws IOException {
+            out.name("count").value(value.count);
+            out.name("prices");
+            if (value.prices == null) {
+                out.nullValue();
+            } else {
+                out.beginArray();
+                for (TutorFacets.PriceBucket bucket : value.prices) {
+                    out.beginObject();
+                    out.name("low").value(bucket.low);
+                    out.name("high").value(bucket.high);
+                    out.name("count").value(bucket.count);
+                    out.endObject();
+                }
+                out.endArray();
+            }
+            out.name("subjects");
+            if (value.subjects == null) {
+                out.nullValue();
+            } else {
+                out.beginArray();
+                for (TutorFacets.SubjectCount subject : value.subjects) {
+                    out.beginObject();
+                    out.name("id");
+                    writeUuid(out, subject.id);
+                    out.name("name").value(subject.name);
+                    out.name("count").value(subject.count);
+                    out.endObject();
+                }
+                out.endArray();
+            }
+        }
+
+        private static TutorFacets.PriceBucket[] readPriceBuckets(JsonReader in) throws IOException {
+            if (in.peek() == JsonToken.NULL) {
+                in.nextNull();
+                return null;
+            }
+            List<TutorFacets.PriceBucket> buckets = new ArrayList<>();
+            in.beginArray();
+            while (in.hasNext()) {
+                TutorFacets.PriceBucket bucket = new TutorFacets.PriceBucket();
+                in.beginObject();
+                while (in.hasNext()) {
+                    switch (in.nextName()) {
+                        case "low":
+                            bucket.low = in.nextDouble();
+                            break;
+                        case "high":
+                            bucket.high = in.nextDouble();
+                            break;
+                        case "count":
+                            bucket.count = in.nextInt();
+                            break;
+                        default:
+                            in.skipValue();
+                    }
+                }
+                in.endObject();
+                buckets.add(bucket);
+            }
+            in.endArray();
+            return buckets.toArray(new TutorFacets.PriceBucket[buckets.size()]);
+        }
+
+        private static TutorFacets.SubjectCount[] readSubjectCounts(JsonReader in) throws IOException {
+            if (in.peek() == JsonToken.NULL) {
+                in.nextNull();
+                return null;
+            }
+            List<TutorFacets.SubjectCount> subjects = new ArrayList<>();
+            in.beginArray();
+            while (in.hasNext()) {
+                TutorFacets.SubjectCount subject = new TutorFacets.SubjectCount();
+                in.beginObject();
+                while (in.hasNext()) {
+                    switch (in.nextName()) {
+                        case "id":
+                            subject.id = nextUuid(in);
+                            break;
+                        case "name":
+                            subject.name = nextString(in);
+                            break;
+                        case "count":
+                            subject.count = in.nextInt();
+                            break;
+                        default:
+                            in.skipValue();
+                    }
+                }
+                in.endObject();
+                subjects.add(subject);
+            }
+            in.endArray();
+            return subjects.toArray(new TutorFacets.SubjectCount[subjects.size()]);
+        }
+    }
+
+    private static Subject[] readSubjects(JsonReader in, TypeAdapter<Subject> subjectAdapter) throws IOException {
+        if (in.peek() == JsonToken.NULL) {
+            in.nextNull();
+            return null;
+        }
+        List<Subject> subjects = new ArrayList<>();
+        in.beginArray();
+        while (in.hasNext()) {
+            subjects.add(subjectAdapter.read(in));
+        }
+        in.endArray();
+        return subjects.toArray(new Subject[subjects.size()]);
+    }
+
+    private static void writeSubjects(JsonWriter out, TypeAdapter<Subject> subjectAdapter, Subject[] subjects) throws IOException {
+        if (subjects == null) {
+            out.nullValue();
+            return;
+        }
+        out.beginArray();
+        for (Subject subject : subjects) {
+            subjectAdapter.write(out, subject);
+        }
+        out.endArray();
+    }
+}
@@ -22,6 +22,7 @@ import java.io.IOException;
 import java.util.LinkedHashMap;
 import java.util.Map;
 
+import com.comp6239.Backend.ObjectTypeAdapter;
 import com.google.gson.Gson;
 import com.google.gson.JsonElement;
 import com.google.gson.JsonObject;
@@ -30,6 +31,7 @@ import com.google.gson.JsonPrimitive;
 import com.google.gson.TypeAdapter;
 import com.google.gson.TypeAdapterFactory;
 import com.google.gson.internal.Streams;
+import com.google.gson.internal.bind.JsonTreeReader;
 import com.google.gson.reflect.TypeToken;
 import com.google.gson.stream.JsonReader;
 import com.google.gson.stream.JsonWriter;
@@ -116,6 +118,10 @@ import com.google.gson.stream.JsonWriter;
  *       .registerTypeAdapterFactory(shapeAdapterFactory)
  *       .create();
  * }</pre>
+ * When a subtype's delegate is an {@link ObjectTypeAdapter} the object is streamed straight
+ * into it; only the fields before the type field are buffered, so send it first where you can.
+ * Other delegates are handed the whole object as a tree.
+ *
  * Like {@code GsonBuilder}, this API supports chaining: <pre>   {@code
  *   RuntimeTypeAdapterFactory<Shape> shapeAdapterFactory = RuntimeTypeAdapterFactory.of(Shape.class)
  *       .registerSubtype(Rectangle.class)
@@ -211,26 +217,65 @@ public final class RuntimeTypeAdapterFactory<T> implements TypeAdapterFactory {
 
         return new TypeAdapter<R>() {
             @Override public R read(JsonReader in) throws IOException {
-                JsonElement jsonElement = Streams.parse(in);
-                JsonElement labelJsonElement;
-                if (maintainType) {
-                    labelJsonElement = jsonElement.getAsJsonObject().get(typeFieldName);
-                } else {
-                    labelJsonElement = jsonElement.getAsJsonObject().remove(typeFieldName);
+                // Stream up to the label, only buffering the fields that come before it
+                JsonObject buffered = null;
+                String label = null;
+                in.beginObject();
+                while (in.hasNext()) {
+                    String name = in.nextName();
+                    if (name.equals(typeFieldName)) {
+                        label = in.nextString();
+                        break;
+                    }
+                    if (buffered == null) {
+                        buffered = new JsonObject();
+                    }
+                    buffered.add(name, Streams.parse(in));
                 }
 
-                if (labelJsonElement == null) {
+                if (label == null) {
                     throw new JsonParseException("cannot deserialize " + baseType
                             + " because it does not define a field named " + typeFieldName);
                 }
-                String label = labelJsonElement.getAsString();
                 @SuppressWarnings("unchecked") // registration requires that subtype extends T
                         TypeAdapter<R> delegate = (TypeAdapter<R>) labelToDelegate.get(label);
                 if (delegate == null) {
                     throw new JsonParseException("cannot deserialize " + baseType + " subtype named "
                             + label + "; did you forget to register a subtype?");
                 }
-                return delegate.fromJsonTree(jsonElement);
+
+                if (delegate instanceof ObjectTypeAdapter) {
+                    ObjectTypeAdapter<R> objectDelegate = (ObjectTypeAdapter<R>) delegate;
+                    R value = objectDelegate.newInstance();
+                    if (buffered != null) {
+                        for (Map.Entry<String, JsonElement> e : buffered.entrySet()) {
+                            objectDelegate.readField(new JsonTreeReader(e.getValue()), e.getKey(), value);
+                        }
+                    }
+                    if (maintainType) {
+                        objectDelegate.readField(new JsonTreeReader(new JsonPrimitive(label)), typeFieldName, value);
+                    }
+                    while (in.hasNext()) {
+                        if (!objectDelegate.readField(in, in.nextName(), value)) {
+                            in.skipValue();
+                        }
+                    }
+                    in.endObject();
+                    return value;
+                }
+
+                // Any other delegate needs the whole object as a tree
+                if (buffered == null) {
+                    buffered = new JsonObject();
+                }
+                if (maintainType) {
+                    buffered.add(typeFieldName, new JsonPrimitive(label));
+                }
+                while (in.hasNext()) {
+                    buffered.add(in.nextName(), Streams.parse(in));
+                }
+                in.endObject();
+                return delegate.fromJsonTree(buffered);
             }
 
             @Override public void write(JsonWriter out, R value) throws IOException {
@@ -242,6 +287,17 @@ public final class RuntimeTypeAdapterFactory<T> implements TypeAdapterFactory {
                     throw new JsonParseException("cannot serialize " + srcType.getName()
                             + "; did you forget to register a subtype?");
                 }
+
+                if (delegate instanceof ObjectTypeAdapter) {
+                    out.beginObject();
+                    if (!maintainType) {
+                        out.name(typeFieldName).value(label);
+                    }
+                    ((ObjectTypeAdapter<R>) delegate).writeFields(out, value);
+                    out.endObject();
+                    return;
+                }
+
                 JsonObject jsonObject = delegate.toJsonTree(value).getAsJsonObject();
 
                 if (maintainType) {
@@ -11,6 +11,10 @@ public class Subject {
     @SerializedName("id")
     UUID id;
 
+    //Used by the type adapter
+    Subject() {
+    }
+
     public Subject(String toString) {
         name = toString;
     }
@@ -26,6 +26,13 @@ public class Tutor extends User {
     @SerializedName("reviewed_at")
     String lastTimeReviewed;
 
+    //Only in search results, the cell the tutor is in to about a kilometre, and how far away they are if searched near
+    @SerializedName("geohash")
+    String geohash;
+
+    @SerializedName("distance")
+    Double distance;
+
     //Constructor used to approve a tutor through the REST API
     public Tutor(boolean b, String reason) {
         super();
@@ -100,6 +107,21 @@ public class Tutor extends User {
         this.price = price;
     }
 
+    public String getGeohash() {
+        return geohash;
+    }
+
+    public void setGeohash(String geohash) {
+        this.geohash = geohash;
+    }
+
+    /**
+     * @return Distance in km from where the search was near, or null if it wasn't
+     */
+    public Double getDistance() {
+        return distance;
+    }
+
     public String getReasonForRejection() {
         return reasonForRejection;
     }
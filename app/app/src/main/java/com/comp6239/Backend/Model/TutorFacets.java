@@ -0,0 +1,112 @@
+package com.comp6239.Backend.Model;
+
+import com.google.gson.annotations.SerializedName;
+
+import java.util.UUID;
+
+/**
+ * How the tutors matching a search are spread over prices and subjects, to drive the search filters.
+ * Each facet ignores its own filter, so it shows what choosing another value would give.
+ */
+public class TutorFacets {
+    //Tutors matching every filter
+    @SerializedName("count")
+    int count;
+
+    //From cheapest to dearest, of the same whole number of pounds
+    @SerializedName("prices")
+    PriceBucket[] prices;
+
+    //Most taught first
+    @SerializedName("subjects")
+    SubjectCount[] subjects;
+
+    //Used by the type adapter
+    TutorFacets() {
+    }
+
+    public TutorFacets(int count, PriceBucket[] prices, SubjectCount[] subjects) {
+        this.count = count;
+        this.prices = prices;
+        this.subjects = subjects;
+    }
+
+    public int getCount() {
+        return count;
+    }
+
+    public PriceBucket[] getPrices() {
+        return prices;
+    }
+
+    public SubjectCount[] getSubjects() {
+        return subjects;
+    }
+
+    /**
+     * Tutors priced from low up to but not including high, or up to and including it for the last bucket
+     */
+    public static class PriceBucket {
+        @SerializedName("low")
+        double low;
+
+        @SerializedName("high")
+        double high;
+
+        @SerializedName("count")
+        int count;
+
+        PriceBucket() {
+        }
+
+        public PriceBucket(double low, double high, int count) {
+            this.low = low;
+            this.high = high;
+            this.count = count;
+        }
+
+        public double getLow() {
+            return low;
+        }
+
+        public double getHigh() {
+            return high;
+        }
+
+        public int getCount() {
+            return count;
+        }
+    }
+
+    public static class SubjectCount {
+        @SerializedName("id")
+        UUID id;
+
+        @SerializedName("name")
+        String name;
+
+        @SerializedName("count")
+        int count;
+
+        SubjectCount() {
+        }
+
+        public SubjectCount(UUID id, String name, int count) {
+            this.id = id;
+            this.name = name;
+            this.count = count;
+        }
+
+        public UUID getId() {
+            return id;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public int getCount() {
+            return count;
+        }
+    }
+}
@@ -24,6 +24,13 @@ public class User  {
     @SerializedName("location")
     private String location;
 
+    //Where the user is, location is only the name of the area
+    @SerializedName("latitude")
+    private Double latitude;
+
+    @SerializedName("longitude")
+    private Double longitude;
+
     @SerializedName("password")
     private String password;
 
@@ -39,6 +46,19 @@ public class User  {
         this.location = location;
     }
 
+    public Double getLatitude() {
+        return latitude;
+    }
+
+    public Double getLongitude() {
+        return longitude;
+    }
+
+    public void setPosition(Double latitude, Double longitude) {
+        this.latitude = latitude;
+        this.longitude = longitude;
+    }
+
     public String getPassword() {
         return password;
     }
@@ -0,0 +1,94 @@
+package com.comp6239.Backend;
+
+import com.comp6239.Backend.Messaging.Message;
+import com.comp6239.Backend.Messaging.MessageBatchRequest;
+import com.comp6239.Backend.Messaging.MessageEvent;
+import com.comp6239.Backend.Messaging.MessageFailedEvent;
+import com.comp6239.Backend.Messaging.MessageRecipient;
+import com.comp6239.Backend.Messaging.MessageRequest;
+import com.comp6239.Backend.Messaging.MessageSentEvent;
+import com.comp6239.Backend.Messaging.MessageState;
+import com.comp6239.Backend.Messaging.MessageThread;
+import com.comp6239.Backend.Messaging.MessagingTypeAdapters;
+import com.comp6239.Backend.Messaging.RateLimitedEvent;
+import com.comp6239.Backend.Messaging.ReadyEvent;
+import com.comp6239.Backend.Messaging.ReceiptsRequest;
+import com.comp6239.Backend.Messaging.ThreadChanges;
+import com.comp6239.Backend.Messaging.ThreadState;
+import com.comp6239.Backend.Messaging.ThreadStateEvent;
+import com.comp6239.Backend.Messaging.TutorReviewedEvent;
+import com.comp6239.Backend.Model.Admin;
+import com.comp6239.Backend.Model.Gender;
+import com.comp6239.Backend.Model.ModelTypeAdapters;
+import com.comp6239.Backend.Model.Student;
+import com.comp6239.Backend.Model.Subject;
+import com.comp6239.Backend.Model.Tutor;
+import com.comp6239.Backend.Model.TutorFacets;
+import com.google.gson.Gson;
+import com.google.gson.TypeAdapter;
+import com.google.gson.TypeAdapterFactory;
+import com.google.gson.reflect.TypeToken;
+
+/**
+ * Hands Gson the streaming adapters for our models instead of letting it build reflective ones.
+ *
+ * User itself is deliberately not claimed, the RuntimeTypeAdapterFactory picks the subtype
+ * and then delegates to the adapters from here.
+ */
+public class ModelTypeAdapterFactory implements TypeAdapterFactory {
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public <T> TypeAdapter<T> create(Gson gson, TypeToken<T> type) {
+        Class<? super T> raw = type.getRawType();
+        TypeAdapter<?> adapter;
+        if (raw == Subject.class) {
+            adapter = new ModelTypeAdapters.SubjectAdapter();
+        } else if (raw == Student.class) {
+            adapter = new ModelTypeAdapters.StudentAdapter(gson.getAdapter(Gender.class), gson.getAdapter(Subject.class));
+        } else if (raw == Tutor.class) {
+            adapter = new ModelTypeAdapters.TutorAdapter(gson.getAdapter(Gender.class), gson.getAdapter(Subject.class));
+        } else if (raw == TutorFacets.class) {
+            adapter = new ModelTypeAdapters.TutorFacetsAdapter();
+        } else if (raw == Admin.class) {
+            adapter = new ModelTypeAdapters.AdminAdapter(gson.getAdapter(Gender.class));
+        } else if (raw == Message.class) {
+            adapter = new MessagingTypeAdapters.MessageAdapter(gson.getAdapter(MessageState.class));
+        } else if (raw == MessageRecipient.class) {
+            adapter = new MessagingTypeAdapters.MessageRecipientAdapter();
+        } else if (raw == MessageThread.class) {
+            adapter = new MessagingTypeAdapters.MessageThreadAdapter(
+                    gson.getAdapter(MessageRecipient.class),
+                    gson.getAdapter(ThreadState.class),
+                    gson.getAdapter(Message.class));
+        } else if (raw == ThreadChanges.class) {
+            adapter = new MessagingTypeAdapters.ThreadChangesAdapter(gson.getAdapter(MessageThread.class));
+        } else if (raw == MessageRequest.class) {
+            adapter = new MessagingTypeAdapters.MessageRequestAdapter();
+        } else if (raw == MessageBatchRequest.class) {
+            adapter = new MessagingTypeAdapters.MessageBatchRequestAdapter(gson.getAdapter(MessageRequest.class));
+        } else if (raw == ReceiptsRequest.class) {
+            adapter = new MessagingTypeAdapters.ReceiptsRequestAdapter();
+        } else if (raw == ReadyEvent.class) {
+            adapter = new MessagingTypeAdapters.ReadyEventAdapter(gson.getAdapter(MessageThread.class));
+        } else if (raw == MessageEvent.class) {
+            adapter = new MessagingTypeAdapters.MessageEventAdapter(
+                    gson.getAdapter(MessageRecipient.class),
+                    gson.getAdapter(MessageState.class));
+        } else if (raw == MessageSentEvent.class) {
+            adapter = new MessagingTypeAdapters.MessageSentEventAdapter(gson.getAdapter(MessageState.class));
+        } else if (raw == MessageFailedEvent.class) {
+            adapter = new MessagingTypeAdapters.MessageFailedEventAdapter();
+        } else if (raw == ThreadStateEvent.class) {
+            adapter = new MessagingTypeAdapters.ThreadStateEventAdapter(gson.getAdapter(ThreadState.class));
+        } else if (raw == TutorReviewedEvent.class) {
+            adapter = new MessagingTypeAdapters.TutorReviewedEventAdapter();
+        } else if (raw == RateLimitedEvent.class) {
+            adapter = new MessagingTypeAdapters.RateLimitedEventAdapter();
+        } else {
+            return null;
+        }
+        // Not wrapped in nullSafe(), the polymorphic User adapter checks for ObjectTypeAdapter
+        return (TypeAdapter<T>) adapter;
+    }
+}
@@ -0,0 +1,101 @@
+package com.comp6239.Backend;
+
+import com.google.gson.TypeAdapter;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.JsonWriter;
+
+import java.io.IOException;
+import java.util.UUID;
+
+/**
+ * Base for the hand-written streaming adapters of our JSON objects.
+ *
+ * Subclasses only map field names to setters/getters; the object framing, unknown fields
+ * and nulls are handled here. {@link #newInstance()}, {@link #readField} and {@link #writeFields}
+ * are public so that wrappers such as the polymorphic User adapter can drive them directly.
+ */
+public abstract class ObjectTypeAdapter<T> extends TypeAdapter<T> {
+
+    public abstract T newInstance();
+
+    /**
+     * Reads the value of field {@code name} into {@code target}
+     * @return false if the field isn't mapped, in which case the caller skips its value
+     */
+    public abstract boolean readField(JsonReader in, String name, T target) throws IOException;
+
+    /**
+     * Writes every field of {@code value}, without the enclosing braces
+     */
+    public abstract void writeFields(JsonWriter out, T value) throws IOException;
+
+    @Override
+    public T read(JsonReader in) throws IOException {
+        if (in.peek() == JsonToken.NULL) {
+            in.nextNull();
+            return null;
+        }
+        T value = newInstance();
+        in.beginObject();
+        while (in.hasNext()) {
+            if (!readField(in, in.nextName(), value)) {
+                in.skipValue();
+            }
+        }
+        in.endObject();
+        return value;
+    }
+
+    @Override
+    public void write(JsonWriter out, T value) throws IOException {
+        if (value == null) {
+            out.nullValue();
+            return;
+        }
+        out.beginObject();
+        writeFields(out, value);
+        out.endObject();
+    }
+
+    protected static String nextString(JsonReader in) throws IOException {
+        if (in.peek() == JsonToken.NULL) {
+            in.nextNull();
+            return null;
+        }
+        return in.nextString();
+    }
+
+    protected static UUID nextUuid(JsonReader in) throws IOException {
+        String value = nextString(in);
+        return value == null ? null : UUID.fromString(value);
+    }
+
+    protected static Double nextDouble(JsonReader in) throws IOException {
+        if (in.peek() == JsonToken.NULL) {
+            in.nextNull();
+            return null;
+        }
+        return in.nextDouble();
+    }
+
+    protected static Integer nextInteger(JsonReader in) throws IOException {
+        if (in.peek() == JsonToken.NULL) {
+            in.nextNull();
+            return null;
+        }
+        return in.nextInt();
+    }
+
+    protected static Boolean nextBoolean(JsonReader in) throws IOException {
+        if (in.peek() == JsonToken.NULL) {
+            in.nextNull();
+            return null;
+        }
+        return in.nextBoolean();
+    }
+
+    protected static void writeUuid(JsonWriter out, UUID value) throws IOException {
+        out.value(value == null ? null : value.toString());
+    }
+}
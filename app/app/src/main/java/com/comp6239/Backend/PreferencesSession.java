@@ -0,0 +1,156 @@
+package com.comp6239.Backend;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+
+import com.comp6239.Backend.Model.User;
+import com.comp6239.R;
+import com.google.gson.Gson;
+import com.google.gson.JsonParseException;
+
+/**
+ * Session held in memory and written behind to SharedPreferences.
+ *
+ * The persisted tokens, email and user are read once when the session is created, after which
+ * every getter is a volatile read. Saves update memory immediately and hand the disk write
+ * to {@link SharedPreferences.Editor#apply()} so callers never block on I/O. The user is kept
+ * as JSON written by the same Gson as the API, so the role decides which subtype comes back.
+ */
+public class PreferencesSession implements Session {
+
+    public interface InvalidationListener {
+        void onInvalidated();
+    }
+
+    private final SharedPreferences preferences;
+    private final Gson gson;
+    private final InvalidationListener invalidationListener;
+
+    //Resolved once rather than on every read
+    private final String tokenKey;
+    private final String refreshTokenKey;
+    private final String emailKey;
+    private final String userKey;
+
+    private volatile String token;
+    private volatile String refreshToken;
+    private volatile String email;
+    private volatile String password;
+    private volatile User user;
+
+    public PreferencesSession(Context context, SharedPreferences preferences, Gson gson,
+                              InvalidationListener listener) {
+        this.preferences = preferences;
+        this.gson = gson;
+        this.invalidationListener = listener;
+
+        tokenKey = context.getResources().getString(R.string.tokenSharePref);
+        refreshTokenKey = context.getResources().getString(R.string.refreshTokenSharePref);
+        emailKey = context.getResources().getString(R.string.emailSharePref);
+        userKey = context.getResources().getString(R.string.userSharePref);
+
+        //Restore the snapshot from the last run
+        token = preferences.getString(tokenKey, null);
+        refreshToken = preferences.getString(refreshTokenKey, null);
+        email = preferences.getString(emailKey, null);
+        user = readUser(preferences.getString(userKey, null));
+    }
+
+    /**
+     * @return The user stored by a previous run, or null if there isn't one or it no longer parses
+     */
+    private User readUser(String json) {
+        if (json == null) {
+            return null;
+        }
+        try {
+            return gson.fromJson(json, User.class);
+        } catch (JsonParseException e) {
+            return null;
+        }
+    }
+
+    @Override
+    public boolean isLoggedIn() {
+        return token != null;
+    }
+
+    @Override
+    public void saveToken(String token) {
+        this.token = token;
+        preferences.edit().putString(tokenKey, token).apply();
+    }
+
+    @Override
+    public void saveRefreshToken(String token) {
+        this.refreshToken = token;
+        preferences.edit().putString(refreshTokenKey, token).apply();
+    }
+
+    @Override
+    public String getToken() {
+        return token;
+    }
+
+    @Override
+    public String getRefreshToken() {
+        return refreshToken;
+    }
+
+    @Override
+    public void saveEmail(String email) {
+        this.email = email;
+        preferences.edit().putString(emailKey, email).apply();
+    }
+
+    @Override
+    public String getEmail() {
+        return email;
+    }
+
+    @Override
+    public void savePassword(String password) {
+        this.password = password;
+    }
+
+    @Override
+    public String getPassword() {
+        // should return null 99% of the time aside from on login
+        return password;
+    }
+
+    @Override
+    public void invalidate() {
+        token = null;
+        refreshToken = null;
+        email = null;
+        password = null;
+        user = null;
+
+        preferences.edit()
+                .remove(tokenKey)
+                .remove(refreshTokenKey)
+                .remove(emailKey)
+                .remove(userKey)
+                .apply();
+
+        if (invalidationListener != null) {
+            invalidationListener.onInvalidated();
+        }
+    }
+
+    @Override
+    public User getUser() {
+        return user;
+    }
+
+    @Override
+    public void setUser(User user) {
+        this.user = user;
+        if (user == null) {
+            preferences.edit().remove(userKey).apply();
+        } else {
+            preferences.edit().putString(userKey, gson.toJson(user, User.class)).apply();
+        }
+    }
+}
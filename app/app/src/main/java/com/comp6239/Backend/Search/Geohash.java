@@ -0,0 +1,141 @@
+package com.comp6239.Backend.Search;
+
+/**
+ * Geohashes as the backend encodes them, the bits of a point's longitude and latitude interleaved, 5 to a character,
+ * so points that share a prefix are in the same cell.
+ */
+public final class Geohash {
+    private static final String BASE32 = "0123456789bcdefghjkmnpqrstuvwxyz";
+    private static final double EARTH_RADIUS_KM = 6371.0088;
+
+    private Geohash() {
+    }
+
+    /**
+     * @return The geohash of the cell at a precision containing a point
+     */
+    public static String encode(double latitude, double longitude, int precision) {
+        double latLow = -90, latHigh = 90;
+        double lngLow = -180, lngHigh = 180;
+        StringBuilder hash = new StringBuilder(precision);
+        boolean even = true;
+        int bits = 0, bit = 0;
+        while (hash.length() < precision) {
+            bits <<= 1;
+            if (even) {
+                double mid = (lngLow + lngHigh) / 2;
+                if (longitude >= mid) {
+                    bits |= 1;
+                    lngLow = mid;
+                } else {
+                    lngHigh = mid;
+                }
+            } else {
+                double mid = (latLow + latHigh) / 2;
+                if (latitude >= mid) {
+                    bits |= 1;
+                    latLow = mid;
+                } else {
+                    latHigh = mid;
+                }
+            }
+            even = !even;
+            if (++bit == 5) {
+                hash.append(BASE32.charAt(bits));
+                bits = 0;
+                bit = 0;
+            }
+        }
+        return hash.toString();
+    }
+
+    /**
+     * @return The latitude and longitude of the centre of a cell
+     * @throws IllegalArgumentException If the geohash has a character that isn't in the alphabet
+     */
+    public static double[] decode(String hash) {
+        double latLow = -90, latHigh = 90;
+        double lngLow = -180, lngHigh = 180;
+        boolean even = true;
+        for (int i = 0; i < hash.length(); i++) {
+            int bits = BASE32.indexOf(hash.charAt(i));
+            if (bits < 0) {
+                throw new IllegalArgumentException("Invalid geohash: " + hash);
+            }
+            for (int bit = 4; bit >= 0; bit--) {
+                boolean set = ((bits >> bit) & 1) == 1;
+                if (even) {
+                    double mid = (lngLow + lngHigh) / 2;
+                    if (set) lngLow = mid;
+                    else lngHigh = mid;
+                } else {
+                    double mid = (latLow + latHigh) / 2;
+                    if (set) latLow = mid;
+                    else latHigh = mid;
+                }
+                even = !even;
+            }
+        }
+        return new double[]{(latLow + latHigh) / 2, (lngLow + lngHigh) / 2};
+    }
+
+    /**
+     * @return The height and width in degrees of a cell at a precision
+     */
+    public static double[] cellSize(int precision) {
+        int lngBits = (5 * precision + 1) / 2;
+        int latBits = 5 * precision / 2;
+        return new double[]{180.0 / (1L << latBits), 360.0 / (1L << lngBits)};
+    }
+
+    /**
+     * @return How far from a point at a latitude a cell at a precision and its 8 neighbours are guaranteed to reach,
+     * the least of the cell's height and width in km
+     */
+    public static double coveredRadius(int precision, double latitude) {
+        double[] size = cellSize(precision);
+        double height = Math.toRadians(size[0]) * EARTH_RADIUS_KM;
+        double width = Math.toRadians(size[1]) * EARTH_RADIUS_KM * Math.cos(Math.toRadians(Math.min(Math.abs(latitude), 89.9)));
+        return Math.min(height, width);
+    }
+
+    /**
+     * @return The cell containing a point and its neighbours, without repeats near the poles
+     */
+    public static String[] cellsAround(double latitude, double longitude, int precision) {
+        double[] size = cellSize(precision);
+        String[] cells = new String[9];
+        int count = 0;
+        for (int y = -1; y <= 1; y++) {
+            double lat = latitude + y * size[0];
+            if (lat < -90 || lat > 90) continue;
+            for (int x = -1; x <= 1; x++) {
+                double lng = longitude + x * size[1];
+                //Wrap around the antimeridian
+                lng = ((lng + 180) % 360 + 360) % 360 - 180;
+                String cell = encode(lat, lng, precision);
+                boolean seen = false;
+                for (int i = 0; i < count; i++) {
+                    seen |= cells[i].equals(cell);
+                }
+                if (!seen) {
+                    cells[count++] = cell;
+                }
+            }
+        }
+        String[] distinct = new String[count];
+        System.arraycopy(cells, 0, distinct, 0, count);
+        return distinct;
+    }
+
+    /**
+     * @return The great circle distance between two points in km
+     */
+    public static double distanceKm(double lat1, double lng1, double lat2, double lng2) {
+        double dLat = Math.toRadians(lat2 - lat1);
+        double dLng = Math.toRadians(lng2 - lng1);
+        double a = Math.sin(dLat / 2) * Math.sin(dLat / 2)
+                + Math.cos(Math.toRadians(lat1)) * Math.cos(Math.toRadians(lat2)) * Math.sin(dLng / 2) * Math.sin(dLng / 2);
+        return 2 * EARTH_RADIUS_KM * Math.asin(Math.min(1, Math.sqrt(a)));
+    }
+}
@@ -0,0 +1,594 @@
+package com.comp6239.Backend.Search;
+
+import com.comp6239.Backend.Model.Subject;
+import com.comp6239.Backend.Model.Tutor;
+import com.comp6239.Backend.Model.TutorFacets;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.UUID;
+
+/**
+ * An inverted index over every tutor the search returned, so typing and filtering can be answered on the device
+ * instead of with a request per keystroke.
+ *
+ * Tutors are numbered in the order they were given. The words of their names, locations and subjects map to sorted
+ * arrays of those numbers, so a word typed so far is looked up by binary searching for the first word it is a prefix
+ * of. Every word of the query has to match, and tutors are returned in the order they were given. Bios aren't
+ * indexed, as the backend doesn't search them either.
+ *
+ * Each subject has a bitset of the tutors teaching it, and prices are kept sorted, so the filters and their facets
+ * are answered without going through every tutor's profile, see {@link #facets}.
+ *
+ * Tutors with a geohash are also kept in geohash order, so those near a point are found by looking up the prefixes of
+ * the cells around it, see {@link #byDistance(BitSet, double, double, int, int)}.
+ *
+ * Unlike the backend, which matches q anywhere in a name or location (or only against subjects, if any match),
+ * words only match from their start, so "ith" doesn't find "Smith". An index is only built from the unfiltered list,
+ * as the backend's subject matching means the results for a longer query aren't always a subset of a shorter one's.
+ *
+ * Immutable once built, so it can be built off the main thread and searched from any.
+ */
+public class TutorIndex {
+    private static final int[] NO_TUTORS = new int[0];
+    //As many as the backend splits a price histogram into
+    private static final int PRICE_BUCKETS = 10;
+
+    private final Tutor[] tutors;
+
+    //Every word, sorted, and the tutors it appears for
+    private final String[] words;
+    private final int[][] postings;
+
+    //Every distinct location in lower case, matched anywhere as the backend does
+    private final String[] locations;
+    private final int[][] locationPostings;
+
+    //Every subject taught, by name, and the tutors teaching it
+    private final UUID[] subjectIds;
+    private final String[] subjectNames;
+    private final BitSet[] subjectTutors;
+
+    //The tutors with a price, cheapest first
+    private final int[] byPrice;
+    private final double[] prices;
+
+    //The tutors with a geohash in its order, and the centre of each tutor's cell
+    private final String[] geohashes;
+    private final int[] byGeohash;
+    private final BitSet located;
+    private final double[] latitudes;
+    private final double[] longitudes;
+    //The shortest geohash, cells any smaller can't be told apart
+    private final int geohashPrecision;
+
+    private TutorIndex(Tutor[] tutors, String[] words, int[][] postings, String[] locations, int[][] locationPostings,
+                       UUID[] subjectIds, String[] subjectNames, BitSet[] subjectTutors, int[] byPrice,
+                       double[] prices, String[] geohashes, int[] byGeohash, double[] latitudes, double[] longitudes) {
+        this.tutors = tutors;
+        this.words = words;
+        this.postings = postings;
+        this.locations = locations;
+        this.locationPostings = locationPostings;
+        this.subjectIds = subjectIds;
+        this.subjectNames = subjectNames;
+        this.subjectTutors = subjectTutors;
+        this.byPrice = byPrice;
+        this.prices = prices;
+        this.geohashes = geohashes;
+        this.byGeohash = byGeohash;
+        this.latitudes = latitudes;
+        this.longitudes = longitudes;
+
+        located = new BitSet(tutors.length);
+        int precision = Integer.MAX_VALUE;
+        for (int i = 0; i < byGeohash.length; i++) {
+            located.set(byGeohash[i]);
+            precision = Math.min(precision, geohashes[i].length());
+        }
+        geohashPrecision = byGeohash.length == 0 ? 0 : precision;
+    }
+
+    /**
+     * @param tutors Every tutor, as returned by a search with no filters
+     */
+    public static TutorIndex build(List<Tutor> tutors) {
+        final Tutor[] all = tutors == null ? new Tutor[0] : tutors.toArray(new Tutor[0]);
+        Map<String, Postings> words = new HashMap<>();
+        Map<String, Postings> locations = new HashMap<>();
+        //By name then ID, so the facets are in the same order as the backend's for subjects taught as often
+        Map<String, Subject> subjects = new TreeMap<>();
+        Map<String, BitSet> subjectTutors = new HashMap<>();
+        List<Integer> priced = new ArrayList<>();
+        List<Integer> located = new ArrayList<>();
+        double[] latitudes = new double[all.length];
+        double[] longitudes = new double[all.length];
+
+        List<String> tokens = new ArrayList<>();
+        for (int i = 0; i < all.length; i++) {
+            Tutor tutor = all[i];
+            tokens.clear();
+            tokenize(tutor.getFirstName(), tokens);
+            tokenize(tutor.getLastName(), tokens);
+            tokenize(tutor.getLocation(), tokens);
+            if (tutor.getSubjects() != null) {
+                for (Subject subject : tutor.getSubjects()) {
+                    tokenize(subject.getName(), tokens);
+                    if (subject.getId() == null) continue;
+                    String id = subject.getId().toString();
+                    BitSet teaching = subjectTutors.get(id);
+                    if (teaching == null) {
+                        teaching = new BitSet(all.length);
+                        subjectTutors.put(id, teaching);
+                        subjects.put(subject.getName() + "\n" + id, subject);
+                    }
+                    teaching.set(i);
+                }
+            }
+            for (String token : tokens) {
+                add(words, token, i);
+            }
+
+            if (tutor.getLocation() != null) {
+                add(locations, tutor.getLocation().toLowerCase(Locale.ROOT), i);
+            }
+            if (tutor.getPrice() != null) {
+                priced.add(i);
+            }
+            if (tutor.getGeohash() != null && !tutor.getGeohash().isEmpty()) {
+                try {
+                    double[] centre = Geohash.decode(tutor.getGeohash());
+                    latitudes[i] = centre[0];
+                    longitudes[i] = centre[1];
+                    located.add(i);
+                } catch (IllegalArgumentException e) {
+                    //Treated as having no position
+                }
+            }
+        }
+
+        String[] sortedWords = words.keySet().toArray(new String[0]);
+        Arrays.sort(sortedWords);
+        int[][] wordPostings = new int[sortedWords.length][];
+        for (int i = 0; i < sortedWords.length; i++) {
+            wordPostings[i] = words.get(sortedWords[i]).toArray();
+        }
+
+        String[] locationNames = locations.keySet().toArray(new String[0]);
+        int[][] byLocation = new int[locationNames.length][];
+        for (int i = 0; i < locationNames.length; i++) {
+            byLocation[i] = locations.get(locationNames[i]).toArray();
+        }
+
+        UUID[] subjectIds = new UUID[subjects.size()];
+        String[] subjectNames = new String[subjects.size()];
+        BitSet[] bySubject = new BitSet[subjects.size()];
+        int s = 0;
+        for (Subject subject : subjects.values()) {
+            subjectIds[s] = subject.getId();
+            subjectNames[s] = subject.getName();
+            bySubject[s] = subjectTutors.get(subject.getId().toString());
+            s++;
+        }
+
+        Collections.sort(priced, new Comparator<Integer>() {
+            @Override
+            public int compare(Integer a, Integer b) {
+                return Double.compare(all[a].getPrice(), all[b].getPrice());
+            }
+        });
+        int[] byPrice = new int[priced.size()];
+        double[] prices = new double[priced.size()];
+        for (int i = 0; i < byPrice.length; i++) {
+            byPrice[i] = priced.get(i);
+            prices[i] = all[byPrice[i]].getPrice();
+        }
+
+        Collections.sort(located, new Comparator<Integer>() {
+            @Override
+            public int compare(Integer a, Integer b) {
+                return all[a].getGeohash().compareTo(all[b].getGeohash());
+            }
+        });
+        String[] geohashes = new String[located.size()];
+        int[] byGeohash = new int[located.size()];
+        for (int i = 0; i < byGeohash.length; i++) {
+            byGeohash[i] = located.get(i);
+            geohashes[i] = all[byGeohash[i]].getGeohash();
+        }
+
+        return new TutorIndex(all, sortedWords, wordPostings, locationNames, byLocation, subjectIds, subjectNames,
+                bySubject, byPrice, prices, geohashes, byGeohash, latitudes, longitudes);
+    }
+
+    public int size() {
+        return tutors.length;
+    }
+
+    /**
+     * @param query    Words that must each start a word of the tutor's name, location or subjects, or null
+     * @param location Text the tutor's location must contain, or null
+     * @param low      The lowest price per hour, or null
+     * @param high     The highest price per hour, or null
+     * @return The matching tutors, in the order the index was built with
+     */
+    public List<Tutor> search(String query, String location, Double low, Double high) {
+        return tutorsOf(match(query, location, low, high));
+    }
+
+    /**
+     * @return The matching tutors' positions in the list the index was built with
+     */
+    public BitSet match(String query, String location, Double low, Double high) {
+        return match(query, location, low, high, null);
+    }
+
+    /**
+     * @param subjects IDs of subjects, tutors teaching any of them match, or null
+     * @return The matching tutors' positions in the list the index was built with
+     */
+    public BitSet match(String query, String location, Double low, Double high, Collection<String> subjects) {
+        BitSet result = new BitSet(tutors.length);
+        result.set(0, tutors.length);
+
+        List<String> tokens = new ArrayList<>();
+        tokenize(query, tokens);
+        for (String token : tokens) {
+            result.and(startingWith(token));
+            if (result.isEmpty()) return result;
+        }
+
+        if (location != null && !location.trim().isEmpty()) {
+            result.and(locatedIn(location.trim().toLowerCase(Locale.ROOT)));
+        }
+        if (low != null || high != null) {
+            result.and(pricedBetween(low, high));
+        }
+        if (subjects != null && !subjects.isEmpty()) {
+            result.and(teachingAny(subjects));
+        }
+        return result;
+    }
+
+    /**
+     * The facets of a search as the backend would give them, each counting the tutors matching every other filter
+     */
+    public TutorFacets facets(String query, String location, Double low, Double high, Collection<String> subjects) {
+        BitSet others = match(query, location, null, null, null);
+        boolean priced = low != null || high != null;
+        boolean taught = subjects != null && !subjects.isEmpty();
+
+        BitSet forPrices = others;
+        if (taught) {
+            forPrices = (BitSet) others.clone();
+            forPrices.and(teachingAny(subjects));
+        }
+        BitSet forSubjects = others;
+        if (priced) {
+            forSubjects = (BitSet) others.clone();
+            forSubjects.and(pricedBetween(low, high));
+        }
+        int count;
+        if (priced) {
+            BitSet all = (BitSet) forPrices.clone();
+            all.and(pricedBetween(low, high));
+            count = all.cardinality();
+        } else {
+            count = forPrices.cardinality();
+        }
+        return new TutorFacets(count, priceHistogram(forPrices), subjectCounts(forSubjects));
+    }
+
+    /**
+     * Counts of prices in buckets of the same whole number of pounds, from the lowest matched price to the highest
+     */
+    private TutorFacets.PriceBucket[] priceHistogram(BitSet matches) {
+        int first = -1, last = -1;
+        for (int i = 0; i < byPrice.length; i++) {
+            if (matches.get(byPrice[i])) {
+                if (first < 0) first = i;
+                last = i;
+            }
+        }
+        if (first < 0) {
+            return new TutorFacets.PriceBucket[0];
+        }
+
+        double low = Math.floor(prices[first]);
+        double high = Math.ceil(prices[last]);
+        int width = (int) Math.max(1, Math.ceil((high - low) / PRICE_BUCKETS));
+        int count = (int) Math.max(1, Math.ceil((high - low) / width));
+        int[] counts = new int[count];
+        for (int i = first; i <= last; i++) {
+            if (matches.get(byPrice[i])) {
+                counts[Math.min((int) ((prices[i] - low) / width), count - 1)]++;
+            }
+        }
+        TutorFacets.PriceBucket[] buckets = new TutorFacets.PriceBucket[count];
+        for (int i = 0; i < count; i++) {
+            buckets[i] = new TutorFacets.PriceBucket(low + i * width, low + (i + 1) * width, counts[i]);
+        }
+        return buckets;
+    }
+
+    /**
+     * @return How many of the matches teach each subject, most taught first
+     */
+    private TutorFacets.SubjectCount[] subjectCounts(BitSet matches) {
+        List<TutorFacets.SubjectCount> counts = new ArrayList<>();
+        for (int i = 0; i < subjectTutors.length; i++) {
+            BitSet teaching = (BitSet) subjectTutors[i].clone();
+            teaching.and(matches);
+            int count = teaching.cardinality();
+            if (count > 0) {
+                counts.add(new TutorFacets.SubjectCount(subjectIds[i], subjectNames[i], count));
+            }
+        }
+        //Stable, so subjects taught as often stay in name order
+        Collections.sort(counts, new Comparator<TutorFacets.SubjectCount>() {
+            @Override
+            public int compare(TutorFacets.SubjectCount a, TutorFacets.SubjectCount b) {
+                return b.getCount() - a.getCount();
+            }
+        });
+        return counts.toArray(new TutorFacets.SubjectCount[counts.size()]);
+    }
+
+    private BitSet teachingAny(Collection<String> subjects) {
+        BitSet matches = new BitSet(tutors.length);
+        for (int i = 0; i < subjectIds.length; i++) {
+            if (subjects.contains(subjectIds[i].toString())) {
+                matches.or(subjectTutors[i]);
+            }
+        }
+        return matches;
+    }
+
+    /**
+     * @return The tutors at the positions set
+     */
+    public List<Tutor> tutorsOf(BitSet matches) {
+        return tutorsOf(matches, 0, Integer.MAX_VALUE);
+    }
+
+    /**
+     * @return A page of the tutors at the positions set, in the order the index was built with
+     */
+    public List<Tutor> tutorsOf(BitSet matches, int offset, int limit) {
+        List<Tutor> matched = new ArrayList<>(Math.min(limit, matches.cardinality()));
+        int skipped = 0;
+        for (int i = matches.nextSetBit(0); i >= 0 && matched.size() < limit; i = matches.nextSetBit(i + 1)) {
+            if (skipped++ >= offset) {
+                matched.add(tutors[i]);
+            }
+        }
+        return matched;
+    }
+
+    /**
+     * Pages through matched tutors nearest first to a point. Tutors without a position come after the rest, in the
+     * order the index was built with.
+     *
+     * Only the tutors in the cells around the point are looked at, going to bigger cells until enough of them are
+     * within the distance the cells are sure to cover, so a page near the start never sorts every tutor.
+     * Distances are to the centre of the tutor's cell, which is as much as the backend gives away.
+     */
+    public List<Tutor> byDistance(BitSet matches, double latitude, double longitude, int offset, int limit) {
+        BitSet near = (BitSet) matches.clone();
+        near.and(located);
+        int locatedCount = near.cardinality();
+        int needed = (int) Math.min((long) offset + limit, Integer.MAX_VALUE);
+
+        List<Tutor> page = new ArrayList<>();
+        if (offset < locatedCount) {
+            int[] nearest = nearest(near, latitude, longitude, Math.min(needed, locatedCount));
+            for (int i = offset; i < nearest.length; i++) {
+                page.add(tutors[nearest[i]]);
+            }
+        }
+        if (page.size() < limit) {
+            BitSet unlocated = (BitSet) matches.clone();
+            unlocated.andNot(located);
+            int skip = Math.max(0, offset - locatedCount);
+            for (int i = unlocated.nextSetBit(0); i >= 0 && page.size() < limit; i = unlocated.nextSetBit(i + 1)) {
+                if (skip > 0) {
+                    skip--;
+                } else {
+                    page.add(tutors[i]);
+                }
+            }
+        }
+        return page;
+    }
+
+    /**
+     * @param matches Only tutors with a position
+     * @return The count matches nearest to the point, nearest first
+     */
+    private int[] nearest(BitSet matches, double latitude, double longitude, int count) {
+        for (int precision = geohashPrecision; precision > 0; precision--) {
+            double radius = Geohash.coveredRadius(precision, latitude);
+            Candidates within = new Candidates();
+            for (String cell : Geohash.cellsAround(latitude, longitude, precision)) {
+                int i = Arrays.binarySearch(geohashes, cell);
+                if (i < 0) {
+                    i = -i - 1;
+                }
+                for (; i < geohashes.length && geohashes[i].startsWith(cell); i++) {
+                    int tutor = byGeohash[i];
+                    if (!matches.get(tutor)) continue;
+                    double distance = distance(tutor, latitude, longitude);
+                    //Further out, a nearer tutor could be in a cell we haven't looked at
+                    if (distance <= radius) {
+                        within.add(tutor, distance);
+                    }
+                }
+            }
+            if (within.size >= count) {
+                return within.nearest(count);
+            }
+        }
+
+        //Too few near enough at any precision, so every match is sorted
+        Candidates all = new Candidates();
+        for (int i = matches.nextSetBit(0); i >= 0; i = matches.nextSetBit(i + 1)) {
+            all.add(i, distance(i, latitude, longitude));
+        }
+        return all.nearest(count);
+    }
+
+    private double distance(int tutor, double latitude, double longitude) {
+        return Geohash.distanceKm(latitude, longitude, latitudes[tutor], longitudes[tutor]);
+    }
+
+    private BitSet startingWith(String prefix) {
+        BitSet matches = new BitSet(tutors.length);
+        int i = Arrays.binarySearch(words, prefix);
+        if (i < 0) {
+            i = -i - 1;
+        }
+        for (; i < words.length && words[i].startsWith(prefix); i++) {
+            for (int tutor : postings[i]) {
+                matches.set(tutor);
+            }
+        }
+        return matches;
+    }
+
+    private BitSet locatedIn(String location) {
+        BitSet matches = new BitSet(tutors.length);
+        for (int i = 0; i < locations.length; i++) {
+            if (locations[i].contains(location)) {
+                for (int tutor : locationPostings[i]) {
+                    matches.set(tutor);
+                }
+            }
+        }
+        return matches;
+    }
+
+    private BitSet pricedBetween(Double low, Double high) {
+        BitSet matches = new BitSet(tutors.length);
+        int from = low == null ? 0 : firstAtLeast(low);
+        int to = high == null ? prices.length : firstAbove(high);
+        for (int i = from; i < to; i++) {
+            matches.set(byPrice[i]);
+        }
+        return matches;
+    }
+
+    private int firstAtLeast(double price) {
+        int lo = 0, hi = prices.length;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (prices[mid] < price) lo = mid + 1;
+            else hi = mid;
+        }
+        return lo;
+    }
+
+    private int firstAbove(double price) {
+        int lo = 0, hi = prices.length;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (prices[mid] <= price) lo = mid + 1;
+            else hi = mid;
+        }
+        return lo;
+    }
+
+    /**
+     * Splits text into lower case words of letters and digits
+     */
+    static void tokenize(String text, List<String> tokens) {
+        if (text == null) return;
+        int start = -1;
+        for (int i = 0; i <= text.length(); i++) {
+            boolean letter = i < text.length() && Character.isLetterOrDigit(text.charAt(i));
+            if (letter && start < 0) {
+                start = i;
+            } else if (!letter && start >= 0) {
+                tokens.add(text.substring(start, i).toLowerCase(Locale.ROOT));
+                start = -1;
+            }
+        }
+    }
+
+    private static void add(Map<String, Postings> index, String key, int tutor) {
+        Postings postings = index.get(key);
+        if (postings == null) {
+            postings = new Postings();
+            index.put(key, postings);
+        }
+        postings.add(tutor);
+    }
+
+    /**
+     * Tutors and their distances, in no order until asked for the nearest
+     */
+    private static class Candidates {
+        private int[] tutors = new int[16];
+        private double[] distances = new double[16];
+        private int size = 0;
+
+        void add(int tutor, double distance) {
+            if (size == tutors.length) {
+                tutors = Arrays.copyOf(tutors, size * 2);
+                distances = Arrays.copyOf(distances, size * 2);
+            }
+            tutors[size] = tutor;
+            distances[size] = distance;
+            size++;
+        }
+
+        int[] nearest(int count) {
+            Integer[] order = new Integer[size];
+            for (int i = 0; i < size; i++) {
+                order[i] = i;
+            }
+            Arrays.sort(order, new Comparator<Integer>() {
+                @Override
+                public int compare(Integer a, Integer b) {
+                    int byDistance = Double.compare(distances[a], distances[b]);
+                    //Ties in the order the index was built with, so pages don't overlap
+                    return byDistance != 0 ? byDistance : tutors[a] - tutors[b];
+                }
+            });
+            int[] nearest = new int[Math.min(count, size)];
+            for (int i = 0; i < nearest.length; i++) {
+                nearest[i] = tutors[order[i]];
+            }
+            return nearest;
+        }
+    }
+
+    /**
+     * A growing sorted list of tutors, added in order
+     */
+    private static class Postings {
+        private int[] tutors = new int[4];
+        private int size = 0;
+
+        void add(int tutor) {
+            //A word repeated in one tutor's profile is only listed once
+            if (size > 0 && tutors[size - 1] == tutor) return;
+            if (size == tutors.length) {
+                tutors = Arrays.copyOf(tutors, size * 2);
+            }
+            tutors[size++] = tutor;
+        }
+
+        int[] toArray() {
+            return size == 0 ? NO_TUTORS : Arrays.copyOf(tutors, size);
+        }
+    }
+}
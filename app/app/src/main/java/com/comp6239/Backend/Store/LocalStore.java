@@ -0,0 +1,595 @@
+package com.comp6239.Backend.Store;
+
+import android.content.ContentValues;
+import android.content.Context;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteOpenHelper;
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+
+import com.comp6239.Backend.Messaging.Message;
+import com.comp6239.Backend.Messaging.MessageOutbox;
+import com.comp6239.Backend.Messaging.MessageRecipient;
+import com.comp6239.Backend.Messaging.MessageState;
+import com.comp6239.Backend.Messaging.MessageThread;
+import com.comp6239.Backend.Messaging.ThreadChanges;
+import com.comp6239.Backend.Messaging.ThreadState;
+import com.comp6239.Backend.Model.Subject;
+import com.comp6239.Backend.Model.User;
+import com.google.gson.Gson;
+import com.google.gson.JsonParseException;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * On disk copy of the threads, messages, users and subjects the app has loaded, so screens can show what they had
+ * last time straight away and only wait on the network for what changed.
+ *
+ * Reads and writes run in order on a single background thread, callbacks are called on the main thread.
+ * A read queued after a write sees it.
+ */
+public class LocalStore extends SQLiteOpenHelper {
+    private static final String TAG = "LocalStore";
+    private static final String DATABASE_NAME = "comp6239.db";
+    private static final int DATABASE_VERSION = 3;
+
+    /**
+     * The thread lists the backend serves, a thread is in at most one of them at a time
+     */
+    public static final String LIST_STUDENT_TUTORS = "student/tutors";
+    public static final String LIST_STUDENT_REQUESTS = "student/requests";
+    public static final String LIST_TUTOR_TUTEES = "tutor/tutees";
+    public static final String LIST_TUTOR_REQUESTS = "tutor/requests";
+
+    public interface Callback<T> {
+        /**
+         * @param result What was stored, empty or null if nothing was
+         */
+        void onLoaded(T result);
+    }
+
+    private final Gson gson;
+    private final ExecutorService executor = Executors.newSingleThreadExecutor();
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+
+    /**
+     * @param gson Used to store users, which have too many role specific fields for columns to be worth it
+     */
+    public LocalStore(Context context, Gson gson) {
+        super(context, DATABASE_NAME, null, DATABASE_VERSION);
+        this.gson = gson;
+    }
+
+    @Override
+    public void onCreate(SQLiteDatabase db) {
+        db.execSQL("CREATE TABLE subjects (id TEXT PRIMARY KEY, name TEXT NOT NULL)");
+        db.execSQL("CREATE TABLE users (id TEXT PRIMARY KEY, data TEXT NOT NULL)");
+        db.execSQL("CREATE TABLE threads ("
+                + "id TEXT PRIMARY KEY, "
+                + "list TEXT, "
+                + "recipient_id TEXT, "
+                + "recipient_first_name TEXT, "
+                + "recipient_last_name TEXT, "
+                + "state TEXT, "
+                + "message_count INTEGER, "
+                + "unread_count INTEGER, "
+                + "last_message_id TEXT)");
+        db.execSQL("CREATE INDEX ix_threads_list ON threads (list)");
+        db.execSQL("CREATE TABLE messages ("
+                + "id TEXT PRIMARY KEY, "
+                + "thread_id TEXT NOT NULL, "
+                + "sender_id TEXT, "
+                + "message TEXT, "
+                + "state TEXT, "
+                + "sent_at TEXT, "
+                + "sent_at_millis INTEGER NOT NULL)");
+        //A thread's messages are always read newest first
+        db.execSQL("CREATE INDEX ix_messages_thread_sent ON messages (thread_id, sent_at_millis, id)");
+        //The watermark each thread list was last synced up to, see ThreadSyncEngine
+        db.execSQL("CREATE TABLE sync_state (list TEXT PRIMARY KEY, watermark TEXT NOT NULL)");
+        //Messages written but not yet accepted by the backend, see MessageOutbox. seq keeps them in the order written
+        db.execSQL("CREATE TABLE IF NOT EXISTS outbox ("
+                + "seq INTEGER PRIMARY KEY AUTOINCREMENT, "
+                + "id TEXT NOT NULL UNIQUE, "
+                + "thread_id TEXT NOT NULL, "
+                + "sender_id TEXT, "
+                + "message TEXT NOT NULL, "
+                + "sent_at TEXT NOT NULL, "
+                + "failed INTEGER NOT NULL DEFAULT 0)");
+    }
+
+    @Override
+    public void onUpgrade(SQLiteDatabase db, int oldVersion, int newVersion) {
+        //Everything here can be downloaded again, except the outbox which is kept
+        db.execSQL("DROP TABLE IF EXISTS subjects");
+        db.execSQL("DROP TABLE IF EXISTS users");
+        db.execSQL("DROP TABLE IF EXISTS threads");
+        db.execSQL("DROP TABLE IF EXISTS messages");
+        db.execSQL("DROP TABLE IF EXISTS sync_state");
+        onCreate(db);
+    }
+
+    // region Reads
+
+    /**
+     * @param list One of the LIST_ constants
+     * @param callback Given the threads, most recently messaged first, each with its last message
+     */
+    public void loadThreads(final String list, final Callback<List<MessageThread>> callback) {
+        read(callback, new Query<List<MessageThread>>() {
+            @Override
+            public List<MessageThread> run(SQLiteDatabase db) {
+                return getThreads(db, list);
+            }
+        });
+    }
+
+    /**
+     * @param limit How many of the newest messages to load with the thread
+     * @param callback Given the thread with its messages newest first, as the backend sends them, or null
+     */
+    public void loadThread(final UUID threadId, final int limit, final Callback<MessageThread> callback) {
+        read(callback, new Query<MessageThread>() {
+            @Override
+            public MessageThread run(SQLiteDatabase db) {
+                return getThread(db, threadId, limit);
+            }
+        });
+    }
+
+    /**
+     * @param list One of the LIST_ constants
+     * @param callback Given the watermark the list was last synced up to, or null if it never has been
+     */
+    public void loadWatermark(final String list, final Callback<String> callback) {
+        read(callback, new Query<String>() {
+            @Override
+            public String run(SQLiteDatabase db) {
+                Cursor c = db.rawQuery("SELECT watermark FROM sync_state WHERE list = ?", new String[]{list});
+                try {
+                    return c.moveToFirst() ? c.getString(0) : null;
+                } finally {
+                    c.close();
+                }
+            }
+        });
+    }
+
+    /**
+     * @param callback Given every message in the outbox, in the order they were written
+     */
+    public void loadOutbox(final Callback<List<MessageOutbox.Entry>> callback) {
+        read(callback, new Query<List<MessageOutbox.Entry>>() {
+            @Override
+            public List<MessageOutbox.Entry> run(SQLiteDatabase db) {
+                List<MessageOutbox.Entry> entries = new ArrayList<>();
+                Cursor c = db.rawQuery("SELECT thread_id, id, sender_id, message, sent_at, failed FROM outbox "
+                        + "ORDER BY seq", null);
+                try {
+                    while (c.moveToNext()) {
+                        Message message = new Message();
+                        message.setId(UUID.fromString(c.getString(1)));
+                        message.setSenderId(c.isNull(2) ? null : UUID.fromString(c.getString(2)));
+                        message.setMessage(c.getString(3));
+                        message.setSentAt(c.getString(4));
+                        message.setState(MessageState.SENDING);
+                        MessageOutbox.Entry entry = new MessageOutbox.Entry(UUID.fromString(c.getString(0)), message);
+                        entry.setFailed(c.getInt(5) != 0);
+                        entries.add(entry);
+                    }
+                } finally {
+                    c.close();
+                }
+                return entries;
+            }
+        });
+    }
+
+    public void loadSubjects(final Callback<List<Subject>> callback) {
+        read(callback, new Query<List<Subject>>() {
+            @Override
+            public List<Subject> run(SQLiteDatabase db) {
+                List<Subject> subjects = new ArrayList<>();
+                Cursor c = db.rawQuery("SELECT id, name FROM subjects ORDER BY name COLLATE NOCASE", null);
+                try {
+                    while (c.moveToNext()) {
+                        Subject subject = new Subject(c.getString(1));
+                        subject.setId(UUID.fromString(c.getString(0)));
+                        subjects.add(subject);
+                    }
+                } finally {
+                    c.close();
+                }
+                return subjects;
+            }
+        });
+    }
+
+    /**
+     * @param type The user's class, e.g. Tutor
+     * @param callback Given the user, or null if they aren't stored as that type
+     */
+    public <T extends User> void loadUser(final UUID id, final Class<T> type, final Callback<T> callback) {
+        read(callback, new Query<T>() {
+            @Override
+            public T run(SQLiteDatabase db) {
+                Cursor c = db.rawQuery("SELECT data FROM users WHERE id = ?", new String[]{id.toString()});
+                try {
+                    if (!c.moveToFirst()) {
+                        return null;
+                    }
+                    User user = gson.fromJson(c.getString(0), User.class);
+                    return type.isInstance(user) ? type.cast(user) : null;
+                } catch (JsonParseException e) {
+                    return null;
+                } finally {
+                    c.close();
+                }
+            }
+        });
+    }
+
+    private List<MessageThread> getThreads(SQLiteDatabase db, String list) {
+        List<MessageThread> threads = new ArrayList<>();
+        Cursor c = db.rawQuery("SELECT t.id, t.recipient_id, t.recipient_first_name, t.recipient_last_name, "
+                + "t.state, t.message_count, t.unread_count, "
+                + "m.id, m.sender_id, m.message, m.state, m.sent_at "
+                + "FROM threads t LEFT JOIN messages m ON m.id = t.last_message_id "
+                + "WHERE t.list = ? ORDER BY m.sent_at_millis IS NULL, m.sent_at_millis DESC, t.id",
+                new String[]{list});
+        try {
+            while (c.moveToNext()) {
+                MessageThread thread = readThread(c);
+                if (!c.isNull(7)) {
+                    thread.setLastMessage(readMessage(c, 7));
+                }
+                threads.add(thread);
+            }
+        } finally {
+            c.close();
+        }
+        return threads;
+    }
+
+    private MessageThread getThread(SQLiteDatabase db, UUID threadId, int limit) {
+        MessageThread thread;
+        Cursor c = db.rawQuery("SELECT id, recipient_id, recipient_first_name, recipient_last_name, "
+                + "state, message_count, unread_count FROM threads WHERE id = ?", new String[]{threadId.toString()});
+        try {
+            if (!c.moveToFirst()) {
+                return null;
+            }
+            thread = readThread(c);
+        } finally {
+            c.close();
+        }
+
+        List<Message> messages = new ArrayList<>();
+        c = db.rawQuery("SELECT id, sender_id, message, state, sent_at FROM messages WHERE thread_id = ? "
+                        + "ORDER BY sent_at_millis DESC, id DESC LIMIT " + limit,
+                new String[]{threadId.toString()});
+        try {
+            while (c.moveToNext()) {
+                messages.add(readMessage(c, 0));
+            }
+        } finally {
+            c.close();
+        }
+        thread.setMessages(messages.toArray(new Message[0]));
+        return thread;
+    }
+
+    private static MessageThread readThread(Cursor c) {
+        MessageThread thread = new MessageThread();
+        thread.setId(UUID.fromString(c.getString(0)));
+        MessageRecipient recipient = new MessageRecipient();
+        recipient.setId(c.isNull(1) ? null : UUID.fromString(c.getString(1)));
+        recipient.setFirstName(c.getString(2));
+        recipient.setLastName(c.getString(3));
+        thread.setRecipient(recipient);
+        thread.setState(c.isNull(4) ? null : ThreadState.valueOf(c.getString(4)));
+        thread.setMessageCount(c.isNull(5) ? null : c.getInt(5));
+        thread.setUnreadCount(c.isNull(6) ? null : c.getInt(6));
+        return thread;
+    }
+
+    /**
+     * Reads id, sender_id, message, state and sent_at from the columns starting at offset
+     */
+    private static Message readMessage(Cursor c, int offset) {
+        Message message = new Message();
+        message.setId(UUID.fromString(c.getString(offset)));
+        message.setSenderId(c.isNull(offset + 1) ? null : UUID.fromString(c.getString(offset + 1)));
+        message.setMessage(c.getString(offset + 2));
+        message.setState(c.isNull(offset + 3) ? null : MessageState.valueOf(c.getString(offset + 3)));
+        message.setSentAt(c.getString(offset + 4));
+        return message;
+    }
+
+    // endregion
+
+    // region Writes
+
+    /**
+     * Merges what changed in a thread list since its last sync and moves its watermark on, in one transaction
+     * @param list One of the LIST_ constants
+     * @param replace Whether the changes are the whole list, i.e. the list had never been synced
+     * @param callback Given the list as it now is
+     */
+    public void applyThreadChanges(final String list, final ThreadChanges changes, final boolean replace,
+                                   final Callback<List<MessageThread>> callback) {
+        write(new Update() {
+            @Override
+            public void run(SQLiteDatabase db) {
+                ContentValues unlisted = new ContentValues();
+                unlisted.putNull("list");
+                if (replace) {
+                    db.update("threads", unlisted, "list = ?", new String[]{list});
+                }
+                if (changes.getThreads() != null) {
+                    for (MessageThread thread : changes.getThreads()) {
+                        putThread(db, thread, list);
+                    }
+                }
+                if (changes.getRemoved() != null) {
+                    //Only if it's still in this list, it may have moved to another one that synced first
+                    for (UUID id : changes.getRemoved()) {
+                        db.update("threads", unlisted, "id = ? AND list = ?", new String[]{id.toString(), list});
+                    }
+                }
+                if (changes.getWatermark() != null) {
+                    ContentValues values = new ContentValues();
+                    values.put("list", list);
+                    values.put("watermark", changes.getWatermark());
+                    db.insertWithOnConflict("sync_state", null, values, SQLiteDatabase.CONFLICT_REPLACE);
+                }
+            }
+        });
+        loadThreads(list, callback);
+    }
+
+    /**
+     * Stores a thread and the messages it was loaded with, keeping any other messages already stored
+     */
+    public void saveThread(final MessageThread thread) {
+        if (thread == null || thread.getId() == null) return;
+        write(new Update() {
+            @Override
+            public void run(SQLiteDatabase db) {
+                putThread(db, thread, null);
+            }
+        });
+    }
+
+    /**
+     * Stores messages of a thread, e.g. an older page or one that just arrived
+     */
+    public void saveMessages(final UUID threadId, final Collection<Message> messages) {
+        if (messages == null || messages.isEmpty()) return;
+        write(new Update() {
+            @Override
+            public void run(SQLiteDatabase db) {
+                for (Message message : messages) {
+                    putMessage(db, threadId, message);
+                }
+            }
+        });
+    }
+
+    /**
+     * Adds a message to the end of the outbox
+     */
+    public void saveOutboxEntry(final MessageOutbox.Entry entry) {
+        write(new Update() {
+            @Override
+            public void run(SQLiteDatabase db) {
+                Message message = entry.getMessage();
+                ContentValues values = new ContentValues();
+                values.put("id", message.getId().toString());
+                values.put("thread_id", entry.getThreadId().toString());
+                values.put("sender_id", message.getSenderId() == null ? null : message.getSenderId().toString());
+                values.put("message", message.getMessage());
+                values.put("sent_at", message.getSentAt());
+                values.put("failed", entry.isFailed() ? 1 : 0);
+                db.insertWithOnConflict("outbox", null, values, SQLiteDatabase.CONFLICT_IGNORE);
+            }
+        });
+    }
+
+    /**
+     * Marks messages in the outbox as rejected by the backend, so they aren't sent again
+     */
+    public void markOutboxFailed(final Collection<UUID> ids) {
+        if (ids.isEmpty()) return;
+        write(new Update() {
+            @Override
+            public void run(SQLiteDatabase db) {
+                ContentValues values = new ContentValues();
+                values.put("failed", 1);
+                for (UUID id : ids) {
+                    db.update("outbox", values, "id = ?", new String[]{id.toString()});
+                }
+            }
+        });
+    }
+
+    public void deleteOutboxEntries(final Collection<UUID> ids) {
+        if (ids.isEmpty()) return;
+        write(new Update() {
+            @Override
+            public void run(SQLiteDatabase db) {
+                for (UUID id : ids) {
+                    db.delete("outbox", "id = ?", new String[]{id.toString()});
+                }
+            }
+        });
+    }
+
+    /**
+     * Replaces the stored subjects
+     */
+    public void saveSubjects(final List<Subject> subjects) {
+        if (subjects == null) return;
+        write(new Update() {
+            @Override
+            public void run(SQLiteDatabase db) {
+                db.delete("subjects", null, null);
+                ContentValues values = new ContentValues();
+                for (Subject subject : subjects) {
+                    if (subject.getId() == null) continue;
+                    values.put("id", subject.getId().toString());
+                    values.put("name", subject.getName());
+                    db.insertWithOnConflict("subjects", null, values, SQLiteDatabase.CONFLICT_REPLACE);
+                }
+            }
+        });
+    }
+
+    public void saveUser(final User user) {
+        if (user == null || user.getId() == null) return;
+        //Serialised now, the user may be changed on the main thread before the write runs
+        final String data = gson.toJson(user, User.class);
+        write(new Update() {
+            @Override
+            public void run(SQLiteDatabase db) {
+                ContentValues values = new ContentValues();
+                values.put("id", user.getId().toString());
+                values.put("data", data);
+                db.insertWithOnConflict("users", null, values, SQLiteDatabase.CONFLICT_REPLACE);
+            }
+        });
+    }
+
+    /**
+     * Forgets everything, e.g. when the user logs out
+     */
+    public void clear() {
+        write(new Update() {
+            @Override
+            public void run(SQLiteDatabase db) {
+                db.delete("subjects", null, null);
+                db.delete("users", null, null);
+                db.delete("threads", null, null);
+                db.delete("messages", null, null);
+                db.delete("sync_state", null, null);
+                db.delete("outbox", null, null);
+            }
+        });
+    }
+
+    /**
+     * @param list The list the thread is in, or null to leave it in whichever it is
+     */
+    private static void putThread(SQLiteDatabase db, MessageThread thread, String list) {
+        ContentValues values = new ContentValues();
+        if (thread.getRecipient() != null) {
+            values.put("recipient_id", thread.getRecipient().getId() == null ? null : thread.getRecipient().getId().toString());
+            values.put("recipient_first_name", thread.getRecipient().getFirstName());
+            values.put("recipient_last_name", thread.getRecipient().getLastName());
+        }
+        if (thread.getState() != null) {
+            values.put("state", thread.getState().name());
+        }
+        if (thread.getMessageCount() != null) {
+            values.put("message_count", thread.getMessageCount());
+        }
+        if (thread.getUnreadCount() != null) {
+            values.put("unread_count", thread.getUnreadCount());
+        }
+        if (list != null) {
+            values.put("list", list);
+        }
+
+        Message[] messages = thread.getMessages();
+        if (messages != null) {
+            for (Message message : messages) {
+                putMessage(db, thread.getId(), message);
+            }
+        }
+        Message last = thread.getLastMessage();
+        if (last != null && last.getId() != null) {
+            putMessage(db, thread.getId(), last);
+            values.put("last_message_id", last.getId().toString());
+        }
+
+        //Updated in place so fields this response didn't carry keep what was stored
+        String[] id = new String[]{thread.getId().toString()};
+        if (db.update("threads", values, "id = ?", id) == 0) {
+            values.put("id", id[0]);
+            db.insert("threads", null, values);
+        }
+    }
+
+    private static void putMessage(SQLiteDatabase db, UUID threadId, Message message) {
+        //Messages still being sent aren't the server's yet
+        if (message.getId() == null || message.getState() == MessageState.SENDING) return;
+        ContentValues values = new ContentValues();
+        values.put("id", message.getId().toString());
+        values.put("thread_id", threadId.toString());
+        values.put("sender_id", message.getSenderId() == null ? null : message.getSenderId().toString());
+        values.put("message", message.getMessage());
+        values.put("state", message.getState() == null ? null : message.getState().name());
+        values.put("sent_at", message.getSentAt());
+        values.put("sent_at_millis", message.getSentAtMillis());
+        db.insertWithOnConflict("messages", null, values, SQLiteDatabase.CONFLICT_REPLACE);
+    }
+
+    // endregion
+
+    private interface Query<T> {
+        T run(SQLiteDatabase db);
+    }
+
+    private interface Update {
+        void run(SQLiteDatabase db);
+    }
+
+    private <T> void read(final Callback<T> callback, final Query<T> query) {
+        executor.execute(new Runnable() {
+            @Override
+            public void run() {
+                T result = null;
+                try {
+                    result = query.run(getReadableDatabase());
+                } catch (RuntimeException e) {
+                    //A broken store is the same as an empty one, the network will fill it in
+                    Log.w(TAG, "Read failed", e);
+                }
+                final T loaded = result;
+                mainHandler.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        callback.onLoaded(loaded);
+                    }
+                });
+            }
+        });
+    }
+
+    private void write(final Update update) {
+        executor.execute(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    SQLiteDatabase db = getWritableDatabase();
+                    db.beginTransaction();
+                    try {
+                        update.run(db);
+                        db.setTransactionSuccessful();
+                    } finally {
+                        db.endTransaction();
+                    }
+                } catch (RuntimeException e) {
+                    Log.w(TAG, "Write failed", e);
+                }
+            }
+        });
+    }
+}
@@ -0,0 +1,188 @@
+package com.comp6239.Backend.Store;
+
+import android.util.LruCache;
+
+import com.comp6239.Backend.Messaging.Message;
+import com.comp6239.Backend.Messaging.MessageEvent;
+import com.comp6239.Backend.Messaging.MessageGateway;
+import com.comp6239.Backend.Messaging.MessageOutbox;
+import com.comp6239.Backend.Messaging.MessageSentEvent;
+import com.comp6239.Backend.Messaging.MessageThread;
+import com.comp6239.Backend.Messaging.SortedMessageList;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * The conversations opened most recently, in memory, so reopening one shows it in the same frame rather than
+ * after a read from the {@link LocalStore} or the network. The conversation still revalidates against the network.
+ *
+ * Cached threads are kept up to date from gateway events and the outbox while they aren't open, and only hold their
+ * newest messages. Threads are replaced rather than changed, so one handed out is never changed under its reader.
+ *
+ * Must be used from the main thread.
+ */
+public class ThreadCache {
+    private static final int MAX_THREADS = 16;
+    //A screenful or two, older messages are paged in as they are now
+    private static final int MAX_MESSAGES_PER_THREAD = 50;
+
+    private final LruCache<UUID, MessageThread> threads = new LruCache<>(MAX_THREADS);
+
+    public ThreadCache(MessageGateway gateway, MessageOutbox outbox) {
+        gateway.addListener(new MessageGateway.Listener() {
+            @Override
+            public void onMessage(MessageEvent message) {
+                addMessage(message.getThreadId(), message.getMessage());
+            }
+
+            @Override
+            public void onMessageSent(MessageSentEvent sent) {
+                markSent(sent);
+            }
+        });
+        outbox.addListener(new MessageOutbox.Listener() {
+            @Override
+            public void onSent(UUID threadId, MessageThread thread) {
+                merge(thread);
+            }
+
+            @Override
+            public void onFailed(UUID threadId, List<MessageOutbox.Entry> entries, String reason) {
+                //Added as sending, but the backend will never have them
+                for (MessageOutbox.Entry entry : entries) {
+                    remove(threadId, entry.getMessage().getId());
+                }
+            }
+        });
+    }
+
+    /**
+     * @return The cached copy of the thread, or null if it hasn't been opened recently
+     */
+    public MessageThread get(UUID threadId) {
+        return threads.get(threadId);
+    }
+
+    /**
+     * Caches a thread as loaded from the network, replacing the cached copy
+     */
+    public void put(MessageThread thread) {
+        if (thread == null || thread.getId() == null) return;
+        threads.put(thread.getId(), copy(thread, messagesOf(thread)));
+    }
+
+    /**
+     * Merges the messages of a thread into the cached copy, e.g. the response to sending, keeping any not in it
+     */
+    public void merge(MessageThread thread) {
+        if (thread == null || thread.getId() == null) return;
+        MessageThread cached = threads.get(thread.getId());
+        if (cached == null) {
+            put(thread);
+            return;
+        }
+        List<Message> messages = messagesOf(cached);
+        for (Message message : messagesOf(thread)) {
+            replace(messages, message);
+        }
+        threads.put(thread.getId(), copy(thread, messages));
+    }
+
+    /**
+     * Adds a message to the cached copy of its thread, or replaces the one with the same ID.
+     * Does nothing if the thread isn't cached, the first page from the network would have it anyway.
+     */
+    public void addMessage(UUID threadId, Message message) {
+        if (threadId == null || message == null || message.getId() == null) return;
+        MessageThread cached = threads.get(threadId);
+        if (cached == null) return;
+        List<Message> messages = messagesOf(cached);
+        replace(messages, message);
+        threads.put(threadId, copy(cached, messages));
+    }
+
+    /**
+     * Removes a message from the cached copy of its thread, if it is there
+     */
+    public void remove(UUID threadId, UUID messageId) {
+        if (threadId == null || messageId == null) return;
+        MessageThread cached = threads.get(threadId);
+        if (cached == null) return;
+        List<Message> messages = messagesOf(cached);
+        for (int i = 0; i < messages.size(); i++) {
+            if (messages.get(i).getId().equals(messageId)) {
+                messages.remove(i);
+                threads.put(threadId, copy(cached, messages));
+                return;
+            }
+        }
+    }
+
+    /**
+     * Drops every thread, e.g. when the user logs out
+     */
+    public void clear() {
+        threads.evictAll();
+    }
+
+    private void markSent(MessageSentEvent sent) {
+        if (sent.getThreadId() == null || sent.getMessageId() == null) return;
+        MessageThread cached = threads.get(sent.getThreadId());
+        if (cached == null) return;
+        for (Message message : messagesOf(cached)) {
+            if (message.getId().equals(sent.getMessageId())) {
+                //Replaced rather than changed, the message may be shown
+                Message stored = new Message();
+                stored.setId(message.getId());
+                stored.setSenderId(message.getSenderId());
+                stored.setMessage(message.getMessage());
+                stored.setSentAt(sent.getTimestamp() != null ? sent.getTimestamp() : message.getSentAt());
+                stored.setState(sent.getState());
+                addMessage(sent.getThreadId(), stored);
+                return;
+            }
+        }
+    }
+
+    private static void replace(List<Message> messages, Message message) {
+        for (int i = 0; i < messages.size(); i++) {
+            if (messages.get(i).getId().equals(message.getId())) {
+                messages.remove(i);
+                break;
+            }
+        }
+        messages.add(message);
+    }
+
+    /**
+     * @return A copy of the thread with the messages, trimmed to the newest and ordered newest first as the backend
+     * sends them
+     */
+    private static MessageThread copy(MessageThread thread, List<Message> messages) {
+        List<Message> sorted = new ArrayList<>(messages);
+        Collections.sort(sorted, Collections.reverseOrder(SortedMessageList.BY_SENT_AT));
+        if (sorted.size() > MAX_MESSAGES_PER_THREAD) {
+            sorted = sorted.subList(0, MAX_MESSAGES_PER_THREAD);
+        }
+
+        MessageThread copy = new MessageThread();
+        copy.setId(thread.getId());
+        copy.setRecipient(thread.getRecipient());
+        copy.setState(thread.getState());
+        copy.setMessageCount(thread.getMessageCount());
+        copy.setUnreadCount(thread.getUnreadCount());
+        copy.setMessages(sorted.toArray(new Message[0]));
+        return copy;
+    }
+
+    private static List<Message> messagesOf(MessageThread thread) {
+        List<Message> messages = new ArrayList<>();
+        if (thread.getMessages() != null) {
+            Collections.addAll(messages, thread.getMessages());
+        }
+        return messages;
+    }
+}
@@ -0,0 +1,109 @@
+package com.comp6239.Backend.Store;
+
+import com.comp6239.Backend.BackEndService;
+import com.comp6239.Backend.Messaging.MessageThread;
+import com.comp6239.Backend.Messaging.ThreadChanges;
+
+import java.io.IOException;
+import java.util.List;
+
+import retrofit2.Call;
+import retrofit2.Callback;
+import retrofit2.Response;
+
+/**
+ * Keeps the stored copy of a thread list up to date by asking the backend only for the threads that changed since
+ * the watermark of the last sync, so a refresh costs what changed rather than the whole list.
+ *
+ * The first sync of a list, or the first after the store was cleared, fetches everything and replaces whatever
+ * was stored. Each response carries the watermark to send next time, which is saved with the changes.
+ */
+public class ThreadSyncEngine {
+    //Before any thread was modified, the format is the backend's
+    private static final String EPOCH = "1970-01-01T00:00:00.000000";
+
+    public interface Listener {
+        /**
+         * @param threads The whole list after merging the changes, most recently messaged first
+         */
+        void onThreadsChanged(List<MessageThread> threads);
+
+        void onSyncFailed(Throwable t);
+    }
+
+    private final BackEndService service;
+    private final LocalStore store;
+    private final String list;
+
+    private Call<ThreadChanges> call;
+    private boolean syncing = false;
+    private boolean cancelled = false;
+
+    /**
+     * @param list One of the LocalStore.LIST_ constants
+     */
+    public ThreadSyncEngine(BackEndService service, LocalStore store, String list) {
+        this.service = service;
+        this.store = store;
+        this.list = list;
+    }
+
+    /**
+     * Syncs the list, unless a sync is already running, in which case the listener isn't called
+     */
+    public void sync(final Listener listener) {
+        if (syncing) return;
+        syncing = true;
+        cancelled = false;
+
+        store.loadWatermark(list, new LocalStore.Callback<String>() {
+            @Override
+            public void onLoaded(String watermark) {
+                if (cancelled) {
+                    syncing = false;
+                    return;
+                }
+                final boolean replace = watermark == null;
+                call = service.getThreadChanges(list, replace ? EPOCH : watermark, true);
+                call.enqueue(new Callback<ThreadChanges>() {
+                    @Override
+                    public void onResponse(Call<ThreadChanges> call, Response<ThreadChanges> response) {
+                        ThreadChanges changes = response.body();
+                        if (changes == null) {
+                            syncing = false;
+                            listener.onSyncFailed(new IOException("Sync failed with HTTP " + response.code()));
+                            return;
+                        }
+                        store.applyThreadChanges(list, changes, replace, new LocalStore.Callback<List<MessageThread>>() {
+                            @Override
+                            public void onLoaded(List<MessageThread> threads) {
+                                syncing = false;
+                                if (!cancelled && threads != null) {
+                                    listener.onThreadsChanged(threads);
+                                }
+                            }
+                        });
+                    }
+
+                    @Override
+                    public void onFailure(Call<ThreadChanges> call, Throwable t) {
+                        syncing = false;
+                        if (!cancelled) {
+                            listener.onSyncFailed(t);
+                        }
+                    }
+                });
+            }
+        });
+    }
+
+    /**
+     * Stops a running sync from calling its listener, changes already received are still stored
+     */
+    public void cancel() {
+        cancelled = true;
+        if (call != null) {
+            call.cancel();
+        }
+    }
+}
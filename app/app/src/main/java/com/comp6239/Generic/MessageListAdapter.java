@@ -4,6 +4,7 @@ package com.comp6239.Generic;
 import android.content.Context;
 import android.graphics.Color;
 import android.os.Build;
+import android.support.v7.util.AdapterListUpdateCallback;
 import android.support.v7.widget.RecyclerView;
 import android.util.Log;
 import android.view.LayoutInflater;
@@ -16,17 +17,15 @@ import com.comp6239.Backend.BackendRequestController;
 import com.comp6239.Backend.Messaging.Message;
 import com.comp6239.Backend.Messaging.MessageState;
 import com.comp6239.Backend.Messaging.MessageThread;
+import com.comp6239.Backend.Messaging.SortedMessageList;
 import com.comp6239.Backend.Model.User;
 import com.comp6239.R;
 
-import org.joda.time.DateTimeComparator;
-
 import java.time.LocalDateTime;
-import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
-import java.util.Comparator;
 import java.util.List;
+import java.util.UUID;
 
 public class MessageListAdapter extends RecyclerView.Adapter {
     private static final int MESSAGE_SENT = 1;
@@ -35,45 +34,103 @@ public class MessageListAdapter extends RecyclerView.Adapter {
     private BackendRequestController backend;
     private MessageThread mThread;
     private Context mContext;
-    private List<Message> mMessageList;
+    private final SortedMessageList mMessages = new SortedMessageList(new AdapterListUpdateCallback(this));
 
     public MessageListAdapter(Context context, MessageThread thread) {
+        mContext = context;
+        backend = BackendRequestController.getInstance(context);
+        //Each row is keyed on its message ID, so rows animate rather than rebind when messages arrive
+        setHasStableIds(true);
         swapMessages(context, thread);
     }
 
+    /**
+     * Replaces the loaded messages with the thread's, only the rows that differ are updated
+     */
     public void swapMessages(Context context, MessageThread thread) {
         mContext = context;
 
         if (thread == null) return;
         mThread = thread;
-        mMessageList = new ArrayList<>(Arrays.asList(thread.getMessages()));
-        backend = BackendRequestController.getInstance(context);
-        Collections.sort(mMessageList, new Comparator<Message>() {
-            @Override
-            public int compare(Message o1, Message o2) {
-                return DateTimeComparator.getInstance().compare(o1.getTimestamp(), o2.getTimestamp());
-            }
-        });
-        notifyDataSetChanged();
+        mMessages.replaceAll(messagesOf(thread));
     }
 
+    /**
+     * Adds a page of older messages to the top of the list
+     * @param messages Messages older than any already shown
+     */
+    public void prependMessages(List<Message> messages) {
+        if (messages == null || messages.isEmpty()) return;
+        mMessages.addAll(messages);
+    }
+
+    /**
+     * Merges the newest messages of the thread into the list, keeping any older pages already loaded.
+     * Messages still being sent are replaced by the server's copy.
+     * @param thread The thread as returned by the backend
+     */
+    public void mergeMessages(MessageThread thread) {
+        if (thread == null || thread.getMessages() == null) return;
+        mThread = thread;
+        mMessages.addAll(messagesOf(thread));
+    }
+
+    /**
+     * Adds a message in order, or replaces the message with the same ID, e.g. a message we sent echoed back
+     */
     public void newMessage(Message message) {
         if (message == null) return;
-        mMessageList.add(message);
-        notifyDataSetChanged();
+        mMessages.add(message);
+    }
+
+    /**
+     * Updates a message that was being sent with the server's timestamp and state
+     * @return The updated message, or null if the message isn't in the list
+     */
+    public Message markSent(UUID id, String sentAt, MessageState state) {
+        int position = mMessages.indexOf(id);
+        if (position < 0) return null;
+        Message sending = mMessages.get(position);
+
+        //Replaced rather than changed in place, the list is ordered by the timestamp
+        Message sent = new Message();
+        sent.setId(sending.getId());
+        sent.setSenderId(sending.getSenderId());
+        sent.setMessage(sending.getMessage());
+        sent.setSentAt(sentAt != null ? sentAt : sending.getSentAt());
+        sent.setState(state);
+        mMessages.add(sent);
+        return sent;
+    }
+
+    /**
+     * Removes a message, e.g. one that could not be sent
+     */
+    public void removeMessage(UUID id) {
+        mMessages.remove(id);
+    }
+
+    private static List<Message> messagesOf(MessageThread thread) {
+        if (thread.getMessages() == null) {
+            return Collections.emptyList();
+        }
+        return Arrays.asList(thread.getMessages());
     }
 
     @Override
     public int getItemCount() {
-        if (mMessageList == null) {
-            return 0;
-        }
-        return mMessageList.size();
+        return mMessages.size();
+    }
+
+    @Override
+    public long getItemId(int position) {
+        UUID id = mMessages.get(position).getId();
+        return id.getMostSignificantBits() ^ id.getLeastSignificantBits();
     }
 
     @Override
     public int getItemViewType(int position) {
-        Message message = (Message) mMessageList.get(position);
+        Message message = mMessages.get(position);
 
         //If the sender ID is the person logged in, then put it on the right side
         if (message.getSenderId().equals(backend.getSession().getUser().getId())) {
@@ -104,7 +161,7 @@ public class MessageListAdapter extends RecyclerView.Adapter {
     // Passes the message object to a ViewHolder so that the contents can be bound to UI.
     @Override
     public void onBindViewHolder(RecyclerView.ViewHolder holder, int position) {
-        Message message = (Message) mMessageList.get(position);
+        Message message = mMessages.get(position);
 
         switch (holder.getItemViewType()) {
             case MESSAGE_SENT:
@@ -112,6 +169,10 @@ public class MessageListAdapter extends RecyclerView.Adapter {
                 break;
             case MESSAGE_RECEIVED:
                 ((ReceivedMessageHolder) holder).bind(message);
+                //Bound as it scrolls into view, the receipts are batched and sent every few seconds
+                if (mThread != null) {
+                    backend.getMessageReceipts().read(mThread.getId(), message);
+                }
         }
     }
 
@@ -126,14 +187,16 @@ public class MessageListAdapter extends RecyclerView.Adapter {
         }
 
         void bind(Message message) {
+            //Holders are reused and acknowledged messages are rebound in place, so always set the background
             if (message.getState() == MessageState.SENDING) {
                 messageText.setBackground(mContext.getResources().getDrawable(mContext.getResources().getIdentifier("message_back_sending", "drawable", mContext.getPackageName())));
+            } else {
+                messageText.setBackground(mContext.getResources().getDrawable(mContext.getResources().getIdentifier("message_back_sent", "drawable", mContext.getPackageName())));
             }
 
             messageText.setText(message.getMessage());
 
-            int tOccurence = message.getSentAt().indexOf("T");
-            timeText.setText(message.getSentAt().substring(tOccurence + 1, tOccurence + 6));
+            timeText.setText(message.getSentAtTime());
         }
     }
 
@@ -153,8 +216,7 @@ public class MessageListAdapter extends RecyclerView.Adapter {
         void bind(Message message) {
             messageText.setText(message.getMessage());
 
-            int tOccurence = message.getSentAt().indexOf("T");
-            timeText.setText(message.getSentAt().substring(tOccurence + 1, tOccurence + 6));
+            timeText.setText(message.getSentAtTime());
 
             nameText.setText(mThread.getRecipient().getFirstName());
             // Insert the profile image from the URL into the ImageView.
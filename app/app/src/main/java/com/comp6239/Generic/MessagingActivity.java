@@ -2,7 +2,6 @@ package com.comp6239.Generic;
 
 import android.content.Context;
 import android.content.Intent;
-import android.os.Build;
 import android.support.v7.app.AppCompatActivity;
 import android.os.Bundle;
 import android.support.v7.widget.LinearLayoutManager;
@@ -19,33 +18,30 @@ import android.widget.Toast;
 
 import com.comp6239.Backend.BackendRequestController;
 import com.comp6239.Backend.Messaging.Message;
-import com.comp6239.Backend.Messaging.MessageRequest;
+import com.comp6239.Backend.Messaging.MessageEvent;
+import com.comp6239.Backend.Messaging.MessageGateway;
+import com.comp6239.Backend.Messaging.MessageOutbox;
+import com.comp6239.Backend.Messaging.MessagePager;
+import com.comp6239.Backend.Messaging.MessageSentEvent;
 import com.comp6239.Backend.Messaging.MessageState;
 import com.comp6239.Backend.Messaging.MessageThread;
+import com.comp6239.Backend.Messaging.ReadyEvent;
 import com.comp6239.Backend.Model.Tutor;
+import com.comp6239.Backend.Store.LocalStore;
 import com.comp6239.R;
 import com.comp6239.Student.StudentViewProfileActivity;
 import com.comp6239.Tutor.TutorViewProfileActivity;
-import com.google.gson.JsonObject;
-import com.google.gson.JsonParser;
 
 import org.joda.time.DateTime;
 import org.joda.time.DateTimeZone;
 
 import java.lang.reflect.Array;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
 import java.util.TimeZone;
 import java.util.UUID;
 
-import okhttp3.OkHttpClient;
-import okhttp3.Request;
-import okhttp3.WebSocket;
-import okhttp3.WebSocketListener;
-import retrofit2.Call;
-import retrofit2.Callback;
-import retrofit2.Response;
-
 public class MessagingActivity extends AppCompatActivity {
 
     private RecyclerView mMessageRecycler;
@@ -55,7 +51,15 @@ public class MessagingActivity extends AppCompatActivity {
     private EditText mMessageBox;
     private String recipientId;
 
-    private WebSocketListener mMessageListener;
+    private final ConversationListener mConversationListener = new ConversationListener();
+    private MessagePager mMessagePager;
+    //Set once the thread has come from the network, so the stored copy doesn't replace it
+    private boolean mThreadLoaded;
+
+    //How close to the oldest loaded message the list can get before the next page is fetched
+    private static final int OLDER_PAGE_PREFETCH = 5;
+
+    private final OutboxListener mOutboxListener = new OutboxListener();
 
     @Override
     protected void onCreate(Bundle savedInstanceState) {
@@ -66,9 +70,21 @@ public class MessagingActivity extends AppCompatActivity {
 
         mMessageBox = findViewById(R.id.edittext_chatbox);
         mMessageRecycler = findViewById(R.id.reyclerview_message_list);
-        mMessageRecycler.setLayoutManager(new LinearLayoutManager(this));
+        final LinearLayoutManager layoutManager = new LinearLayoutManager(this);
+        layoutManager.setStackFromEnd(true);
+        mMessageRecycler.setLayoutManager(layoutManager);
         mMessageAdapter = new MessageListAdapter(this, null);
         mMessageRecycler.setAdapter(mMessageAdapter);
+        //Fetch the next page of older messages as the user scrolls up towards the oldest one loaded
+        mMessageRecycler.addOnScrollListener(new RecyclerView.OnScrollListener() {
+            @Override
+            public void onScrolled(RecyclerView recyclerView, int dx, int dy) {
+                if (dy < 0 && mMessagePager != null
+                        && layoutManager.findFirstVisibleItemPosition() <= OLDER_PAGE_PREFETCH) {
+                    mMessagePager.loadOlder();
+                }
+            }
+        });
         Toolbar myToolbar = findViewById(R.id.toolbar);
         setSupportActionBar(myToolbar);
 
@@ -96,6 +112,42 @@ public class MessagingActivity extends AppCompatActivity {
 
         if (getIntent().hasExtra("threadId")) {
             threadId = getIntent().getStringExtra("threadId");
+            //Show the conversation as it was last time straight away, the first page from the network replaces it.
+            //Opened recently, it is still in memory, otherwise it is read from disk
+            MessageThread cached = apiBackend.getThreadCache().get(UUID.fromString(threadId));
+            if (cached != null) {
+                showThread(cached);
+            } else {
+                apiBackend.getLocalStore().loadThread(UUID.fromString(threadId), MessagePager.PAGE_SIZE, new LocalStore.Callback<MessageThread>() {
+                    @Override
+                    public void onLoaded(MessageThread thread) {
+                        if (thread != null && !mThreadLoaded) {
+                            showThread(thread);
+                        }
+                    }
+                });
+            }
+            mMessagePager = new MessagePager(apiBackend.apiService, threadId, new MessagePager.Listener() {
+                @Override
+                public void onThreadLoaded(MessageThread thread) {
+                    mThreadLoaded = true;
+                    showThread(thread);
+                    apiBackend.getLocalStore().saveThread(thread);
+                    apiBackend.getThreadCache().put(thread);
+                }
+
+                @Override
+                public void onOlderMessagesLoaded(List<Message> messages) {
+                    mMessageAdapter.prependMessages(messages);
+                    apiBackend.getLocalStore().saveMessages(UUID.fromString(threadId), messages);
+                }
+
+                @Override
+                public void onPageFailed(Throwable t) {
+                    Toast toast = Toast.makeText(getApplicationContext(), "Unable to get message list! Please try again later!", Toast.LENGTH_LONG);
+                    toast.show();
+                }
+            });
             refreshMessageList();
         }
 
@@ -106,149 +158,153 @@ public class MessagingActivity extends AppCompatActivity {
                 sendMessage();
             }
         });
-        Request request = new Request.Builder().url("wss://" + BackendRequestController.BASE_URL + "ws").build();
-        mMessageListener = new MessagingSocketListener();
-        WebSocket ws = new OkHttpClient().newWebSocket(request, mMessageListener);
+    }
 
+    private void showThread(MessageThread thread) {
+        mMessageAdapter.swapMessages(getApplicationContext(), thread);
+        //Messages still in the outbox aren't in the thread yet
+        UUID id = UUID.fromString(threadId);
+        MessageOutbox outbox = apiBackend.getMessageOutbox();
+        for (Message pending : outbox.getPending(id)) {
+            mMessageAdapter.newMessage(pending);
+        }
+        restoreFailed();
+        recipientId = thread.getRecipient().getId().toString();
+        setTitle(thread.getRecipient().getFirstName() + " " + thread.getRecipient().getLastName());
+    }
 
+    @Override
+    protected void onStart() {
+        super.onStart();
+        MessageGateway gateway = apiBackend.getMessageGateway();
+        gateway.addListener(mConversationListener);
+        gateway.start();
+        apiBackend.getMessageOutbox().addListener(mOutboxListener);
+    }
+
+    @Override
+    protected void onStop() {
+        super.onStop();
+        //The gateway stays connected for the rest of the app
+        apiBackend.getMessageGateway().removeListener(mConversationListener);
+        apiBackend.getMessageOutbox().removeListener(mOutboxListener);
+        //Don't hold back what was read on the way out
+        apiBackend.getMessageReceipts().flush();
     }
 
 
     public void sendMessage() {
         String messageContent = mMessageBox.getText().toString().trim();
-        if (TextUtils.isEmpty(messageContent)) {
+        if (TextUtils.isEmpty(messageContent) || threadId == null) {
             return; //Dont send an empty message
         }
 
-        Message m = new Message();
+        //The ID is chosen here so the acknowledgement can be matched to the message, and a retry isn't stored twice
+        final Message m = new Message();
+        m.setId(UUID.randomUUID());
         m.setSentAt(DateTime.now(DateTimeZone.forTimeZone(TimeZone.getDefault())).toString());
         m.setMessage(messageContent);
         m.setSenderId(BackendRequestController.getInstance(getApplicationContext()).getSession().getUser().getId());
         m.setState(MessageState.SENDING);
         mMessageAdapter.newMessage(m);
+        apiBackend.getThreadCache().addMessage(UUID.fromString(threadId), m);
+        mMessageRecycler.scrollToPosition(mMessageAdapter.getItemCount() - 1);
+        mMessageBox.setText("");
 
-        Call<MessageThread> send = apiBackend.apiService.sendMessageToThread(threadId, new MessageRequest(messageContent));
-
-        send.enqueue(new Callback<MessageThread>() {
-            @Override
-            public void onResponse(Call<MessageThread> call, Response<MessageThread> response) {
-                mMessageBox.setText("");
-                mMessageAdapter.swapMessages(getApplicationContext(), response.body());
-//                refreshMessageList();
-            }
+        //Kept on disk until the backend has it, the outbox retries for as long as it takes
+        apiBackend.getMessageOutbox().enqueue(UUID.fromString(threadId), m);
+    }
 
-            @Override
-            public void onFailure(Call<MessageThread> call, Throwable t) {
-                Toast toast = Toast.makeText(getApplicationContext(), "Unable to send message! Please try again later!", Toast.LENGTH_LONG);
-                toast.show();
+    /**
+     * Takes back the messages the backend rejected and puts their text in the message box, so it isn't lost
+     * @return false if there were none
+     */
+    private boolean restoreFailed() {
+        List<MessageOutbox.Entry> failed = apiBackend.getMessageOutbox().takeFailed(UUID.fromString(threadId));
+        if (failed.isEmpty()) {
+            return false;
+        }
+        StringBuilder text = new StringBuilder(mMessageBox.getText().toString().trim());
+        for (MessageOutbox.Entry entry : failed) {
+            mMessageAdapter.removeMessage(entry.getMessage().getId());
+            if (text.length() > 0) {
+                text.append('\n');
             }
-        });
-
-        //send the message followed by refresh messagelist
+            text.append(entry.getMessage().getMessage());
+        }
+        mMessageBox.setText(text);
+        mMessageBox.setSelection(text.length());
+        return true;
     }
 
     private void refreshMessageList() {
-        Call<MessageThread> thread = apiBackend.apiService.getConversationThread(threadId);
-
-        thread.enqueue(new Callback<MessageThread>() {
-            @Override
-            public void onResponse(Call<MessageThread> call, Response<MessageThread> response) {
-                mMessageAdapter.swapMessages(getApplicationContext(), response.body());
-                recipientId = response.body().getRecipient().getId().toString();
-                setTitle(response.body().getRecipient().getFirstName() + " " + response.body().getRecipient().getLastName());
-            }
-
-            @Override
-            public void onFailure(Call<MessageThread> call, Throwable t) {
-                Toast toast = Toast.makeText(getApplicationContext(), "Unable to get message list! Please try again later!", Toast.LENGTH_LONG);
-                toast.show();
-            }
-        });
+        mMessagePager.loadFirstPage();
     }
 
-    public class MessagingSocketListener extends WebSocketListener {
-
-        private static final int NORMAL_CLOSURE_STATUS = 1000;
-
-        public String identify() {
-            JsonObject payload = new JsonObject();
-            payload.addProperty("o", 2);
-            JsonObject data = new JsonObject();
-            JsonObject properties = new JsonObject();
-            properties.addProperty("device", Build.MANUFACTURER + " " + Build.MODEL);
-            properties.addProperty("os", "Android " + Build.VERSION.RELEASE + "(" + Build.VERSION.SDK_INT + ")");
-
-            data.add("properties", properties);
-            data.addProperty("token", BackendRequestController.getInstance(getApplicationContext()).getSession().getToken());
-            payload.add("d", data);
-
-            return payload.toString();
+    @Override
+    protected void onDestroy() {
+        super.onDestroy();
+        if (mMessagePager != null) {
+            mMessagePager.cancel();
         }
+    }
 
+    /**
+     * Applies gateway events to this conversation
+     */
+    private class ConversationListener extends MessageGateway.Listener {
 
         @Override
-        public void onOpen(WebSocket socket, okhttp3.Response response) {
-            socket.send(identify());
+        public void onReady(ReadyEvent ready) {
+            //Not resumed, so events may have been missed while disconnected
+            if (mMessagePager != null) {
+                refreshMessageList();
+            }
         }
 
         @Override
-        public void onMessage(WebSocket webSocket, String text) {
-            JsonObject payload = new JsonParser().parse(text).getAsJsonObject();
-            if (payload.getAsJsonPrimitive("o").getAsInt() != 0) {
-                Log.d("WebSocket", "Ignoring OpCode of " + payload.getAsJsonPrimitive("o"));
-                return;
-            }
-            String event = payload.get("e").getAsString();
-            JsonObject data = payload.getAsJsonObject("d");
-
-            switch (event){
-                case "MESSAGE":
-                    handle_new_message(data);
-                    break;
-                case "MESSAGE_SENT":
-                    break;
+        public void onMessageSent(MessageSentEvent sent) {
+            Message message = mMessageAdapter.markSent(sent.getMessageId(), sent.getTimestamp(), sent.getState());
+            if (message != null) {
+                apiBackend.getLocalStore().saveMessages(UUID.fromString(threadId), Collections.singletonList(message));
             }
-
-            Log.d("WebSocket", "Received: " + text);
         }
 
-        private void handle_new_message(JsonObject data){
-            String thread_id = data.get("thread_id").getAsString();
-            if (!thread_id.equals(threadId)) return;
-
-            Message m = new Message();
-            m.setId(UUID.fromString(data.get("id").getAsString()));
-            m.setSenderId(UUID.fromString(data.getAsJsonObject("from").get("id").getAsString()));
-            m.setMessage(data.get("message").getAsString());
-            m.setSentAt(data.get("timestamp").getAsString());
-            MessageState state = null;
-            switch(data.get("state").getAsString()){
-                case "s":
-                    state = MessageState.SENT;
-                    break;
-                case "d":
-                    state = MessageState.DELIVERED;
-                    break;
-                case "r":
-                    state = MessageState.READ;
-                    break;
+        @Override
+        public void onCongestionChanged(boolean congested) {
+            //The outbox keeps the messages, this just says why they're taking a while
+            if (getSupportActionBar() != null) {
+                getSupportActionBar().setSubtitle(congested ? getString(R.string.messaging_congested) : null);
             }
-            m.setState(state);
-            mMessageAdapter.newMessage(m);
         }
 
         @Override
-        public void onClosing(WebSocket webSocket, int code, String reason) {
-            webSocket.close(NORMAL_CLOSURE_STATUS, null);
-            Log.d("WebSocket", "Closing : " + code + " / " + reason);
+        public void onMessage(MessageEvent event) {
+            if (threadId == null || !event.getThreadId().toString().equals(threadId)) return;
+
+            mMessageAdapter.newMessage(event.getMessage());
+            apiBackend.getLocalStore().saveMessages(event.getThreadId(), Collections.singletonList(event.getMessage()));
         }
+    }
+
+    /**
+     * Applies what happened to the messages this conversation put in the outbox
+     */
+    private class OutboxListener implements MessageOutbox.Listener {
 
         @Override
-        public void onFailure(WebSocket webSocket, Throwable t, okhttp3.Response response) {
-            Log.d("WebSocket", "Error : " + t.getMessage());
+        public void onSent(UUID thread, MessageThread sent) {
+            if (!thread.toString().equals(threadId) || sent == null) return;
+            mMessageAdapter.mergeMessages(sent);
+            apiBackend.getLocalStore().saveThread(sent);
         }
 
+        @Override
+        public void onFailed(UUID thread, List<MessageOutbox.Entry> entries, String reason) {
+            if (!thread.toString().equals(threadId)) return;
+            restoreFailed();
+            Toast toast = Toast.makeText(getApplicationContext(), reason, Toast.LENGTH_LONG);
+            toast.show();
+        }
     }
-
-
 }
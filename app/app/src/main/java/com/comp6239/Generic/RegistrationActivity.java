@@ -497,6 +497,9 @@ public class RegistrationActivity extends AppCompatActivity implements LoaderCal
             } else {
                 newUser = new Tutor(mEmail, mFirstName, mLastName, mGender, loc[0], mPassword);
             }
+            if (mLocation != null) {
+                newUser.setPosition(mLocation.getLatitude(), mLocation.getLongitude());
+            }
 
 
             Call<User> call = backendApi.apiService.createUser(newUser);
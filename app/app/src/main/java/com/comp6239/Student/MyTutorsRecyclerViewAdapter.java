@@ -7,7 +7,6 @@ import android.view.ViewGroup;
 import android.widget.TextView;
 
 import com.comp6239.Backend.Messaging.Message;
-import com.comp6239.Backend.Messaging.MessageState;
 import com.comp6239.Backend.Messaging.MessageThread;
 import com.comp6239.R;
 
@@ -39,16 +38,11 @@ public class MyTutorsRecyclerViewAdapter extends RecyclerView.Adapter<MyTutorsRe
     public void onBindViewHolder(final ViewHolder holder, int position) {
         holder.mItem = mValues.get(position);
         holder.mNameView.setText(mValues.get(position).getRecipient().getFirstName() + " " + mValues.get(position).getRecipient().getLastName()); //Get name
-        holder.mRecentMessageView.setText(mValues.get(position).getMessages()[mValues.get(position).getMessages().length - 1].getMessage()); //Get the last messages text
+        Message lastMessage = holder.mItem.getLastMessage();
+        holder.mRecentMessageView.setText(lastMessage == null ? "" : lastMessage.getMessage()); //Get the last messages text
 
-        Integer unreadMessages = 0;
-        for(Message m : mValues.get(position).getMessages()) {
-            if(m.getState() == MessageState.DELIVERED ) {
-                unreadMessages++;
-            }
-        }
-
-        holder.mNotifNumberView.setText(unreadMessages.toString());
+        Integer unreadMessages = holder.mItem.getUnreadCount();
+        holder.mNotifNumberView.setText(unreadMessages == null ? "0" : unreadMessages.toString());
 
         holder.mView.setOnClickListener(new View.OnClickListener() {
             @Override
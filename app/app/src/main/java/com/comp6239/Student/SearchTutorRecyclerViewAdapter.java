@@ -10,6 +10,7 @@ import com.comp6239.Backend.Model.Tutor;
 import com.comp6239.R;
 import com.comp6239.Student.StudentSearchTutorsFragment.OnSearchTutorFragmentInteractionListener;
 
+import java.util.ArrayList;
 import java.util.List;
 
 /**
@@ -23,10 +24,31 @@ public class SearchTutorRecyclerViewAdapter extends RecyclerView.Adapter<SearchT
     private final OnSearchTutorFragmentInteractionListener mListener;
 
     public SearchTutorRecyclerViewAdapter(List<Tutor> items, OnSearchTutorFragmentInteractionListener listener) {
-        mValues = items;
+        //Copied, the results are replaced in place as the query changes
+        mValues = items == null ? new ArrayList<Tutor>() : new ArrayList<>(items);
         mListener = listener;
     }
 
+    /**
+     * Shows the results of a new search in place of the current ones
+     */
+    public void setTutors(List<Tutor> tutors) {
+        mValues.clear();
+        if (tutors != null) {
+            mValues.addAll(tutors);
+        }
+        notifyDataSetChanged();
+    }
+
+    /**
+     * Adds the next page of results after the ones shown
+     */
+    public void addTutors(List<Tutor> tutors) {
+        int start = mValues.size();
+        mValues.addAll(tutors);
+        notifyItemRangeInserted(start, tutors.size());
+    }
+
     @Override
     public ViewHolder onCreateViewHolder(ViewGroup parent, int viewType) {
         View view = LayoutInflater.from(parent.getContext())
@@ -373,6 +373,7 @@ public class StudentEditProfileActivity extends AppCompatActivity {
 
             }
             if(loc[0] != null) updatedUser.setLocation(loc[0]);
+            if(mLocation != null) updatedUser.setPosition(mLocation.getLatitude(), mLocation.getLongitude());
 
             try {
                 studentUpdate = apiService.updateStudent(oldUser.getId().toString(), updatedUser).execute();
@@ -11,6 +11,7 @@ import android.support.v7.app.AppCompatActivity;
 import android.util.Log;
 import android.view.MenuItem;
 
+import com.comp6239.Backend.BackendRequestController;
 import com.comp6239.Backend.Messaging.MessageThread;
 import com.comp6239.Backend.Model.Tutor;
 import com.comp6239.Generic.MessagingActivity;
@@ -73,6 +74,13 @@ public class StudentHomeActivity extends AppCompatActivity implements StudentMyP
 
         BottomNavigationView navigation = (BottomNavigationView) findViewById(R.id.navigation);
         navigation.setOnNavigationItemSelectedListener(mOnNavigationItemSelectedListener);
+
+        //Acknowledges messages as they arrive, including any replayed when the gateway connects
+        BackendRequestController.getInstance(this).getMessageReceipts();
+        //Connect once logged in, so events between screens aren't missed
+        BackendRequestController.getInstance(this).getMessageGateway().start();
+        //Sends anything written but not sent last time
+        BackendRequestController.getInstance(this).getMessageOutbox().flush();
     }
 
 
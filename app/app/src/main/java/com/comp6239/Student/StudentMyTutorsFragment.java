@@ -16,15 +16,13 @@ import android.widget.Toast;
 
 import com.comp6239.Backend.BackendRequestController;
 import com.comp6239.Backend.Messaging.MessageThread;
+import com.comp6239.Backend.Store.LocalStore;
+import com.comp6239.Backend.Store.ThreadSyncEngine;
 import com.comp6239.R;
 import com.google.android.gms.common.internal.Constants;
 
 import java.util.List;
 
-import retrofit2.Call;
-import retrofit2.Callback;
-import retrofit2.Response;
-
 /**
  * A fragment representing a list of Items.
  * <p/>
@@ -40,6 +38,7 @@ public class StudentMyTutorsFragment extends Fragment {
     private OnMyTutorsFragmentInteractionListener mListener;
     private BackendRequestController apiBackend;
     private RecyclerView mRecyclerView;
+    private ThreadSyncEngine threadSync;
 
     /**
      * Mandatory empty constructor for the fragment manager to instantiate the
@@ -63,6 +62,7 @@ public class StudentMyTutorsFragment extends Fragment {
         super.onCreate(savedInstanceState);
 
         apiBackend = BackendRequestController.getInstance(getContext());
+        threadSync = new ThreadSyncEngine(apiBackend.apiService, apiBackend.getLocalStore(), LocalStore.LIST_STUDENT_TUTORS);
 
         if (getArguments() != null) {
             mColumnCount = getArguments().getInt(ARG_COLUMN_COUNT);
@@ -127,15 +127,26 @@ public class StudentMyTutorsFragment extends Fragment {
     }
 
     private void refreshTutorList() {
-        Call<List<MessageThread>> tutorList = apiBackend.apiService.getStudentsTutorConversations();
-        tutorList.enqueue(new Callback<List<MessageThread>>() {
+        //Show the list as it was last time straight away, the sync merges in what changed since
+        if (mRecyclerView.getAdapter() == null) {
+            apiBackend.getLocalStore().loadThreads(LocalStore.LIST_STUDENT_TUTORS, new LocalStore.Callback<List<MessageThread>>() {
+                @Override
+                public void onLoaded(List<MessageThread> threads) {
+                    if (threads != null && !threads.isEmpty() && mRecyclerView.getAdapter() == null) {
+                        mRecyclerView.setAdapter(new MyTutorsRecyclerViewAdapter(threads, mListener));
+                    }
+                }
+            });
+        }
+
+        threadSync.sync(new ThreadSyncEngine.Listener() {
             @Override
-            public void onResponse(Call<List<MessageThread>> call, Response<List<MessageThread>> response) {
-                mRecyclerView.setAdapter(new MyTutorsRecyclerViewAdapter(response.body(), mListener));
+            public void onThreadsChanged(List<MessageThread> threads) {
+                mRecyclerView.setAdapter(new MyTutorsRecyclerViewAdapter(threads, mListener));
             }
 
             @Override
-            public void onFailure(Call<List<MessageThread>> call, Throwable t) {
+            public void onSyncFailed(Throwable t) {
                 Toast toast = Toast.makeText(getContext(), "There was a network error searching for tutors! Try again later!", Toast.LENGTH_LONG);
                 toast.show();
             }
@@ -145,6 +156,12 @@ public class StudentMyTutorsFragment extends Fragment {
 
 
 
+    @Override
+    public void onDestroy() {
+        super.onDestroy();
+        threadSync.cancel();
+    }
+
     @Override
     public void onAttach(Context context) {
         super.onAttach(context);
@@ -1,11 +1,14 @@
 package com.comp6239.Student;
 
 import android.content.Context;
+import android.os.AsyncTask;
 import android.os.Bundle;
+import android.os.Handler;
 import android.support.v4.app.Fragment;
 import android.support.v7.widget.GridLayoutManager;
 import android.support.v7.widget.LinearLayoutManager;
 import android.support.v7.widget.RecyclerView;
+import android.text.TextUtils;
 import android.view.LayoutInflater;
 import android.view.View;
 import android.view.ViewGroup;
@@ -14,9 +17,18 @@ import android.widget.Toast;
 
 import com.comp6239.Backend.BackendRequestController;
 import com.comp6239.Backend.Model.Tutor;
+import com.comp6239.Backend.Model.TutorFacets;
+import com.comp6239.Backend.Model.User;
+import com.comp6239.Backend.Search.TutorIndex;
 import com.comp6239.R;
 
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
 
 import retrofit2.Call;
 import retrofit2.Callback;
@@ -37,6 +49,45 @@ public class StudentSearchTutorsFragment extends Fragment {
     private OnSearchTutorFragmentInteractionListener mListener;
     private BackendRequestController apiBackend;
     private RecyclerView mRecyclerView;
+    private SearchTutorRecyclerViewAdapter mAdapter;
+    private TutorSearchFilters mFilters;
+
+    //How long typing has to pause for before the query is searched
+    private static final long SEARCH_DEBOUNCE_MS = 300;
+    private final Handler mHandler = new Handler();
+    private Runnable mPendingSearch;
+    //The page in flight, and the number of the newest search started, so a slow stale response is never shown
+    private Call<List<Tutor>> mSearchCall;
+    private Call<TutorFacets> mFacetsCall;
+    private int mSearchSequence = 0;
+
+    //Results are shown a page at a time, the next one is fetched once the student scrolls this close to the end
+    private static final int PAGE_SIZE = 20;
+    private static final int PREFETCH_DISTANCE = PAGE_SIZE / 2;
+    private int mNextPage;
+    private boolean mLastPageShown;
+    private BitSet mMatches;
+    private final Runnable mLoadNextPage = new Runnable() {
+        @Override
+        public void run() {
+            loadNextPage();
+        }
+    };
+
+    //A summary of every tutor, so searches are answered on the device. Only fetched once the student searches or
+    //scrolls, and again once it is this old. Past INDEX_MAX_TUTORS it would cost too much to keep, so the backend is
+    //paged through instead.
+    private static final long INDEX_MAX_AGE_MS = 5 * 60 * 1000;
+    private static final int INDEX_PAGE_SIZE = 1000;
+    private static final int INDEX_MAX_TUTORS = 2000;
+    private TutorIndex mIndex;
+    private Call<List<Tutor>> mIndexCall;
+    private boolean mIndexTooLarge;
+
+    //The search being shown, searched again when the index is rebuilt
+    private String mName;
+    private String mLocation;
+    private String mQuery;
 
     /**
      * Mandatory empty constructor for the fragment manager to instantiate the
@@ -80,20 +131,51 @@ public class StudentSearchTutorsFragment extends Fragment {
         } else {
             mRecyclerView.setLayoutManager(new GridLayoutManager(context, mColumnCount));
         }
+        mAdapter = new SearchTutorRecyclerViewAdapter(null, mListener);
+        mRecyclerView.setAdapter(mAdapter);
+        mRecyclerView.addOnScrollListener(new RecyclerView.OnScrollListener() {
+            @Override
+            public void onScrolled(RecyclerView recyclerView, int dx, int dy) {
+                //Also called after each layout, only the student scrolling down fetches anything
+                if (dy <= 0) return;
+                onInteraction();
+                int last = ((LinearLayoutManager) recyclerView.getLayoutManager()).findLastVisibleItemPosition();
+                if (!mLastPageShown && mSearchCall == null && last >= mAdapter.getItemCount() - PREFETCH_DISTANCE) {
+                    //Not while the list is laying out
+                    mHandler.removeCallbacks(mLoadNextPage);
+                    mHandler.post(mLoadNextPage);
+                }
+            }
+        });
+
+        mFilters = new TutorSearchFilters(view.findViewById(R.id.tutor_search_filters),
+                new TutorSearchFilters.OnFiltersChangedListener() {
+                    @Override
+                    public void onFiltersChanged() {
+                        scheduleSearch(mQuery);
+                    }
+                });
 
-        refreshTutorList(null, null, null, null, null);
+        mIndex = apiBackend.getTutorIndex();
+        refreshTutorList(null, null, null);
 
         ((SearchView) view.findViewById(R.id.tutor_search_bar)).setOnQueryTextListener(new SearchView.OnQueryTextListener() {
             @Override
             public boolean onQueryTextSubmit(String query) {
-                refreshTutorList(null, null, null, null, query);
+                cancelPendingSearch();
+                onInteraction();
+                refreshTutorList(null, null, query);
                 return false;
             }
 
             @Override
             public boolean onQueryTextChange(String newText) {
                 if (newText.length() == 0) {
-                    refreshTutorList(null, null, null, null, "");
+                    cancelPendingSearch();
+                    onInteraction();
+                    refreshTutorList(null, null, newText);
+                } else {
+                    scheduleSearch(newText);
                 }
                 return false;
             }
@@ -102,27 +184,294 @@ public class StudentSearchTutorsFragment extends Fragment {
         return view;
     }
 
-    private void refreshTutorList(String name, String location, Float lowValue, Float highValue, String q) {
+    /**
+     * Searches once typing or sliding has paused, or straight away if the index can answer it
+     */
+    private void scheduleSearch(final String q) {
+        cancelPendingSearch();
+        onInteraction();
+        //Answered on the device, so there's nothing to wait for
+        if (mIndex != null) {
+            refreshTutorList(mName, mLocation, q);
+            return;
+        }
+        mPendingSearch = new Runnable() {
+            @Override
+            public void run() {
+                mPendingSearch = null;
+                refreshTutorList(mName, mLocation, q);
+            }
+        };
+        mHandler.postDelayed(mPendingSearch, SEARCH_DEBOUNCE_MS);
+    }
+
+    @Override
+    public void onDestroyView() {
+        super.onDestroyView();
+        cancelPendingSearch();
+        cancelSearch();
+        mHandler.removeCallbacks(mLoadNextPage);
+        if (mIndexCall != null) {
+            mIndexCall.cancel();
+            mIndexCall = null;
+        }
+    }
+
+    private void cancelPendingSearch() {
+        if (mPendingSearch != null) {
+            mHandler.removeCallbacks(mPendingSearch);
+            mPendingSearch = null;
+        }
+    }
+
+    private void cancelSearch() {
+        if (mSearchCall != null) {
+            mSearchCall.cancel();
+            mSearchCall = null;
+        }
+        if (mFacetsCall != null) {
+            mFacetsCall.cancel();
+            mFacetsCall = null;
+        }
+    }
+
+    /**
+     * Searches for tutors with the prices and subjects chosen in the filters, showing the first page
+     */
+    private void refreshTutorList(String name, String location, String q) {
+        mName = name;
+        mLocation = location;
+        mQuery = q;
+
+        //Superseded, whatever it returns is out of date
+        cancelSearch();
+        mSearchSequence++;
+        mNextPage = 1;
+        mLastPageShown = false;
 
+        if (mIndex != null) {
+            showIndexed();
+            return;
+        }
+        loadNextPage();
+
+        final int sequence = mSearchSequence;
+        Call<TutorFacets> facets = apiBackend.apiService.getTutorFacets(name, location, priceParam(), subjectsParam(),
+                q);
+        mFacetsCall = facets;
+        facets.enqueue(new Callback<TutorFacets>() {
+            @Override
+            public void onResponse(Call<TutorFacets> call, Response<TutorFacets> response) {
+                if (sequence != mSearchSequence) return;
+                mFacetsCall = null;
+                if (response.isSuccessful()) {
+                    mFilters.setFacets(response.body());
+                }
+            }
+
+            @Override
+            public void onFailure(Call<TutorFacets> call, Throwable t) {
+                //The filters keep the last facets, the results say if the search failed
+                if (call.isCanceled() || sequence != mSearchSequence) return;
+                mFacetsCall = null;
+            }
+        });
+    }
+
+    /**
+     * Adds the next page of the search being shown, from the index if there is one, otherwise from the backend
+     */
+    private void loadNextPage() {
+        if (mLastPageShown || mSearchCall != null || getView() == null) return;
+
+        if (mIndex != null) {
+            List<Tutor> page = indexedPage(mAdapter.getItemCount());
+            mLastPageShown = page.size() < PAGE_SIZE;
+            mAdapter.addTutors(page);
+            return;
+        }
+
+        final int sequence = mSearchSequence;
+        final int pageNumber = mNextPage;
+        String near = nearParam();
         Call<List<Tutor>> tutorList = apiBackend.apiService.getAvailableTutors(
-                (name != null)? name : null,
-                (location != null)? location : null,
-                (lowValue != null && highValue != null)? lowValue + "," + highValue : null,
-                (q != null)? q : null);
+                (mName != null)? mName : null,
+                (mLocation != null)? mLocation : null,
+                priceParam(),
+                subjectsParam(),
+                (mQuery != null)? mQuery : null,
+                near,
+                near != null ? "distance" : null,
+                null,
+                pageNumber,
+                PAGE_SIZE);
+        mSearchCall = tutorList;
         tutorList.enqueue(new Callback<List<Tutor>>() {
             @Override
             public void onResponse(Call<List<Tutor>> call, Response<List<Tutor>> response) {
-                mRecyclerView.setAdapter(new SearchTutorRecyclerViewAdapter(response.body(), mListener));
+                if (sequence != mSearchSequence) return;
+                mSearchCall = null;
+                if (response.isSuccessful()) {
+                    List<Tutor> page = response.body();
+                    mLastPageShown = page.size() < PAGE_SIZE;
+                    mNextPage = pageNumber + 1;
+                    if (pageNumber == 1) {
+                        mAdapter.setTutors(page);
+                    } else {
+                        mAdapter.addTutors(page);
+                    }
+                }
             }
 
             @Override
             public void onFailure(Call<List<Tutor>> call, Throwable t) {
+                if (call.isCanceled() || sequence != mSearchSequence) return;
+                mSearchCall = null;
                 Toast toast = Toast.makeText(getContext(), "There was a network error searching for tutors! Try again later!", Toast.LENGTH_LONG);
                 toast.show();
             }
         });
     }
 
+    /**
+     * The backend only filters on price given both ends
+     */
+    private String priceParam() {
+        Float lowValue = mFilters.getLow();
+        Float highValue = mFilters.getHigh();
+        return (lowValue != null && highValue != null)? lowValue + "," + highValue : null;
+    }
+
+    /**
+     * Where the student is, so the backend orders results nearest first as the index does
+     */
+    private String nearParam() {
+        User student = apiBackend.getSession().getUser();
+        if (student == null || student.getLatitude() == null || student.getLongitude() == null) return null;
+        return student.getLatitude() + "," + student.getLongitude();
+    }
+
+    private String subjectsParam() {
+        Set<String> subjects = mFilters.getSubjects();
+        return subjects.isEmpty() ? null : TextUtils.join(",", subjects);
+    }
+
+    /**
+     * Searches the index for the search being shown
+     */
+    private void showIndexed() {
+        String query = mQuery;
+        if (!isEmpty(mName)) {
+            query = isEmpty(query) ? mName : mName + " " + query;
+        }
+        Float lowValue = mFilters.getLow();
+        Float highValue = mFilters.getHigh();
+        boolean priced = lowValue != null && highValue != null;
+        Double low = priced ? Double.valueOf(lowValue) : null;
+        Double high = priced ? Double.valueOf(highValue) : null;
+        mMatches = mIndex.match(query, mLocation, low, high, mFilters.getSubjects());
+        mFilters.setFacets(mIndex.facets(query, mLocation, low, high, mFilters.getSubjects()));
+
+        List<Tutor> page = indexedPage(0);
+        mLastPageShown = page.size() < PAGE_SIZE;
+        mAdapter.setTutors(page);
+    }
+
+    /**
+     * @return The page of the index's matches starting at offset, nearest first if we know where the student is
+     */
+    private List<Tutor> indexedPage(int offset) {
+        User student = apiBackend.getSession().getUser();
+        if (student != null && student.getLatitude() != null && student.getLongitude() != null) {
+            return mIndex.byDistance(mMatches, student.getLatitude(), student.getLongitude(), offset, PAGE_SIZE);
+        }
+        return mIndex.tutorsOf(mMatches, offset, PAGE_SIZE);
+    }
+
+    /**
+     * Fetches the index if there isn't one yet or it is out of date
+     */
+    private void onInteraction() {
+        if (mIndex == null || apiBackend.getTutorIndexAge() > INDEX_MAX_AGE_MS) {
+            reloadIndex();
+        }
+    }
+
+    /**
+     * Fetches a summary of every tutor again a page at a time, the current results stay up until the new index is ready
+     */
+    private void reloadIndex() {
+        if (mIndexCall != null || mIndexTooLarge) return;
+        loadIndexPage(new LinkedHashMap<UUID, Tutor>(), 1);
+    }
+
+    /**
+     * @param tutors The tutors on the pages before, by ID so one that moved between pages isn't indexed twice
+     */
+    private void loadIndexPage(final Map<UUID, Tutor> tutors, final int page) {
+        mIndexCall = apiBackend.apiService.getAvailableTutors(null, null, null, null, null, null, null, true, page,
+                INDEX_PAGE_SIZE);
+        mIndexCall.enqueue(new Callback<List<Tutor>>() {
+            @Override
+            public void onResponse(Call<List<Tutor>> call, Response<List<Tutor>> response) {
+                if (call != mIndexCall) return;
+                mIndexCall = null;
+                if (!response.isSuccessful()) return;
+                for (Tutor tutor : response.body()) {
+                    tutors.put(tutor.getId(), tutor);
+                }
+                if (response.body().size() < INDEX_PAGE_SIZE) {
+                    buildIndex(new ArrayList<>(tutors.values()));
+                } else if (tutors.size() >= INDEX_MAX_TUTORS) {
+                    //Searches page through the backend from now on
+                    mIndexTooLarge = true;
+                    apiBackend.setTutorIndex(null);
+                    if (mIndex != null) {
+                        mIndex = null;
+                        mMatches = null;
+                        if (getView() != null) {
+                            refreshTutorList(mName, mLocation, mQuery);
+                        }
+                    }
+                } else {
+                    loadIndexPage(tutors, page + 1);
+                }
+            }
+
+            @Override
+            public void onFailure(Call<List<Tutor>> call, Throwable t) {
+                if (call != mIndexCall) return;
+                //Keep searching the old index, and try again on the next search
+                mIndexCall = null;
+            }
+        });
+    }
+
+    private void buildIndex(final List<Tutor> tutors) {
+        AsyncTask.THREAD_POOL_EXECUTOR.execute(new Runnable() {
+            @Override
+            public void run() {
+                final TutorIndex index = TutorIndex.build(tutors);
+                mHandler.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        apiBackend.setTutorIndex(index);
+                        mIndex = index;
+                        if (getView() != null) {
+                            cancelSearch();
+                            mSearchSequence++;
+                            showIndexed();
+                        }
+                    }
+                });
+            }
+        });
+    }
+
+    private static boolean isEmpty(String text) {
+        return text == null || text.trim().isEmpty();
+    }
+
 
     @Override
     public void onAttach(Context context) {
@@ -0,0 +1,239 @@
+package com.comp6239.Student;
+
+import android.content.Context;
+import android.graphics.Color;
+import android.support.v4.content.ContextCompat;
+import android.view.View;
+import android.widget.CheckBox;
+import android.widget.CompoundButton;
+import android.widget.LinearLayout;
+import android.widget.SeekBar;
+import android.widget.TextView;
+
+import com.comp6239.Backend.Model.TutorFacets;
+import com.comp6239.R;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * The price range and subject filters above the tutor search results, drawn from the facets of the search
+ */
+class TutorSearchFilters {
+
+    public interface OnFiltersChangedListener {
+        void onFiltersChanged();
+    }
+
+    private static final int BAR_COLOUR = Color.LTGRAY;
+
+    private final View mView;
+    private final TextView mSummary;
+    private final LinearLayout mHistogram;
+    private final SeekBar mMinPrice;
+    private final SeekBar mMaxPrice;
+    private final LinearLayout mSubjects;
+    private final OnFiltersChangedListener mListener;
+
+    private TutorFacets.PriceBucket[] mBuckets = new TutorFacets.PriceBucket[0];
+    private double mRangeLow;
+    //The prices chosen, null where the slider is at the end of the range
+    private Float mLow;
+    private Float mHigh;
+    private final Set<String> mSelectedSubjects = new HashSet<>();
+    //Names of subjects seen, so a chosen subject no tutor matches any more can still be unchosen
+    private final Map<String, String> mSubjectNames = new HashMap<>();
+
+    TutorSearchFilters(View view, OnFiltersChangedListener listener) {
+        mView = view;
+        mListener = listener;
+        mSummary = view.findViewById(R.id.tutor_search_filter_summary);
+        mHistogram = view.findViewById(R.id.tutor_search_price_histogram);
+        mMinPrice = view.findViewById(R.id.tutor_search_price_min);
+        mMaxPrice = view.findViewById(R.id.tutor_search_price_max);
+        mSubjects = view.findViewById(R.id.tutor_search_subjects);
+
+        SeekBar.OnSeekBarChangeListener priceListener = new SeekBar.OnSeekBarChangeListener() {
+            @Override
+            public void onProgressChanged(SeekBar seekBar, int progress, boolean fromUser) {
+                if (!fromUser) return;
+                //Don't let the ends cross
+                if (seekBar == mMinPrice && progress > mMaxPrice.getProgress()) {
+                    mMaxPrice.setProgress(progress);
+                } else if (seekBar == mMaxPrice && progress < mMinPrice.getProgress()) {
+                    mMinPrice.setProgress(progress);
+                }
+                readPrices();
+                highlightHistogram();
+                mListener.onFiltersChanged();
+            }
+
+            @Override
+            public void onStartTrackingTouch(SeekBar seekBar) {
+            }
+
+            @Override
+            public void onStopTrackingTouch(SeekBar seekBar) {
+            }
+        };
+        mMinPrice.setOnSeekBarChangeListener(priceListener);
+        mMaxPrice.setOnSeekBarChangeListener(priceListener);
+    }
+
+    /**
+     * @return The lowest price chosen, or null if both ends of the range are
+     */
+    public Float getLow() {
+        return mLow == null && mHigh == null ? null : mLow == null ? (float) mRangeLow : mLow;
+    }
+
+    /**
+     * @return The highest price chosen, or null if both ends of the range are
+     */
+    public Float getHigh() {
+        return mLow == null && mHigh == null ? null : mHigh == null ? (float) rangeHigh() : mHigh;
+    }
+
+    /**
+     * @return IDs of the subjects chosen
+     */
+    public Set<String> getSubjects() {
+        return mSelectedSubjects;
+    }
+
+    /**
+     * Shows the facets of the newest search, keeping what has been chosen
+     */
+    public void setFacets(TutorFacets facets) {
+        Context context = mView.getContext();
+        TutorFacets.PriceBucket[] buckets = facets.getPrices() != null ? facets.getPrices() : new TutorFacets.PriceBucket[0];
+        TutorFacets.SubjectCount[] subjects = facets.getSubjects() != null ? facets.getSubjects() : new TutorFacets.SubjectCount[0];
+        mView.setVisibility(buckets.length > 0 || subjects.length > 0 || !mSelectedSubjects.isEmpty()
+                ? View.VISIBLE : View.GONE);
+
+        mBuckets = buckets;
+        bindPrices();
+        mSummary.setText(context.getString(R.string.search_filter_summary, describePrices(), facets.getCount()));
+
+        //Rebinding mustn't look like the student ticking boxes
+        mSubjects.removeAllViews();
+        Set<String> shown = new HashSet<>();
+        for (TutorFacets.SubjectCount subject : subjects) {
+            String id = subject.getId().toString();
+            mSubjectNames.put(id, subject.getName());
+            shown.add(id);
+            mSubjects.addView(subjectBox(context, id, subject.getName(), subject.getCount()));
+        }
+        for (String id : mSelectedSubjects) {
+            if (!shown.contains(id)) {
+                mSubjects.addView(subjectBox(context, id, mSubjectNames.get(id), 0));
+            }
+        }
+    }
+
+    private CheckBox subjectBox(Context context, final String id, String name, int count) {
+        CheckBox box = new CheckBox(context);
+        box.setText(context.getString(R.string.search_subject_count, name, count));
+        box.setChecked(mSelectedSubjects.contains(id));
+        box.setOnCheckedChangeListener(new CompoundButton.OnCheckedChangeListener() {
+            @Override
+            public void onCheckedChanged(CompoundButton buttonView, boolean isChecked) {
+                if (isChecked) {
+                    mSelectedSubjects.add(id);
+                } else {
+                    mSelectedSubjects.remove(id);
+                }
+                mListener.onFiltersChanged();
+            }
+        });
+        return box;
+    }
+
+    /**
+     * Sizes the sliders to the range of the histogram, in whole pounds, and draws its bars
+     */
+    private void bindPrices() {
+        boolean priced = mBuckets.length > 0;
+        mHistogram.setVisibility(priced ? View.VISIBLE : View.GONE);
+        mMinPrice.setVisibility(priced ? View.VISIBLE : View.GONE);
+        mMaxPrice.setVisibility(priced ? View.VISIBLE : View.GONE);
+        if (!priced) return;
+
+        mRangeLow = mBuckets[0].getLow();
+        int steps = (int) Math.round(rangeHigh() - mRangeLow);
+        mMinPrice.setMax(steps);
+        mMaxPrice.setMax(steps);
+        mMinPrice.setProgress(mLow == null ? 0 : clamp((int) Math.round(mLow - mRangeLow), steps));
+        mMaxPrice.setProgress(mHigh == null ? steps : clamp((int) Math.round(mHigh - mRangeLow), steps));
+
+        int most = 1;
+        for (TutorFacets.PriceBucket bucket : mBuckets) {
+            most = Math.max(most, bucket.getCount());
+        }
+        mHistogram.removeAllViews();
+        float density = mView.getResources().getDisplayMetrics().density;
+        int height = mHistogram.getLayoutParams().height;
+        for (TutorFacets.PriceBucket bucket : mBuckets) {
+            View bar = new View(mView.getContext());
+            LinearLayout.LayoutParams params = new LinearLayout.LayoutParams(0,
+                    Math.max(1, height * bucket.getCount() / most), 1f);
+            params.leftMargin = params.rightMargin = (int) density;
+            mHistogram.addView(bar, params);
+        }
+        highlightHistogram();
+    }
+
+    private void readPrices() {
+        int steps = mMaxPrice.getMax();
+        mLow = mMinPrice.getProgress() == 0 ? null : (float) (mRangeLow + mMinPrice.getProgress());
+        mHigh = mMaxPrice.getProgress() == steps ? null : (float) (mRangeLow + mMaxPrice.getProgress());
+        mSummary.setText(mView.getContext().getString(R.string.search_filter_summary, describePrices(),
+                countChosen()));
+    }
+
+    /**
+     * Colours the bars of buckets overlapping the prices chosen
+     */
+    private void highlightHistogram() {
+        double low = mRangeLow + mMinPrice.getProgress();
+        double high = mRangeLow + mMaxPrice.getProgress();
+        int accent = ContextCompat.getColor(mView.getContext(), R.color.colorAccent);
+        for (int i = 0; i < mHistogram.getChildCount() && i < mBuckets.length; i++) {
+            boolean chosen = mBuckets[i].getHigh() > low && mBuckets[i].getLow() <= high;
+            mHistogram.getChildAt(i).setBackgroundColor(chosen ? accent : BAR_COLOUR);
+        }
+    }
+
+    /**
+     * @return Roughly how many tutors the prices chosen give, from the buckets they cover, until the search returns
+     */
+    private int countChosen() {
+        double low = mRangeLow + mMinPrice.getProgress();
+        double high = mRangeLow + mMaxPrice.getProgress();
+        int count = 0;
+        for (TutorFacets.PriceBucket bucket : mBuckets) {
+            if (bucket.getHigh() > low && bucket.getLow() <= high) {
+                count += bucket.getCount();
+            }
+        }
+        return count;
+    }
+
+    private String describePrices() {
+        Context context = mView.getContext();
+        if (mBuckets.length == 0 || (mLow == null && mHigh == null)) {
+            return context.getString(R.string.search_price_any);
+        }
+        return context.getString(R.string.search_price_range, Math.round(getLow()), Math.round(getHigh()));
+    }
+
+    private double rangeHigh() {
+        return mBuckets.length > 0 ? mBuckets[mBuckets.length - 1].getHigh() : mRangeLow;
+    }
+
+    private static int clamp(int progress, int max) {
+        return Math.max(0, Math.min(max, progress));
+    }
+}
@@ -8,13 +8,14 @@ import android.view.ViewGroup;
 import android.widget.TextView;
 
 import com.comp6239.Backend.Messaging.Message;
-import com.comp6239.Backend.Messaging.MessageState;
 import com.comp6239.Backend.Messaging.MessageThread;
 import com.comp6239.Backend.Model.Student;
 import com.comp6239.R;
 import com.comp6239.Tutor.TutorStudentRequestsFragment.OnSearchStudentFragmentInteractionListener;
 
+import java.util.ArrayList;
 import java.util.List;
+import java.util.UUID;
 
 /**
  * {@link RecyclerView.Adapter} that can display a {@link Student} and makes a call to the
@@ -27,10 +28,49 @@ public class StudentRequestRecyclerViewAdapter extends RecyclerView.Adapter<Stud
     private final OnSearchStudentFragmentInteractionListener mListener;
 
     public StudentRequestRecyclerViewAdapter(List<MessageThread> items, OnSearchStudentFragmentInteractionListener listener) {
-        mValues = items;
+        //Copied, requests are added and removed as the gateway reports them
+        mValues = items == null ? new ArrayList<MessageThread>() : new ArrayList<>(items);
         mListener = listener;
     }
 
+    /**
+     * Puts a new request at the top of the list, replacing the thread's old entry if it has one
+     */
+    public void addRequest(MessageThread thread) {
+        int position = indexOf(thread.getId());
+        if (position == 0) {
+            mValues.set(0, thread);
+            notifyItemChanged(0);
+            return;
+        }
+        if (position > 0) {
+            mValues.remove(position);
+            notifyItemRemoved(position);
+        }
+        mValues.add(0, thread);
+        notifyItemInserted(0);
+    }
+
+    /**
+     * Removes a thread that is no longer a request, e.g. approved or blocked
+     */
+    public void removeRequest(UUID threadId) {
+        int position = indexOf(threadId);
+        if (position >= 0) {
+            mValues.remove(position);
+            notifyItemRemoved(position);
+        }
+    }
+
+    private int indexOf(UUID threadId) {
+        for (int i = 0; i < mValues.size(); i++) {
+            if (mValues.get(i).getId().equals(threadId)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
     @Override
     public ViewHolder onCreateViewHolder(ViewGroup parent, int viewType) {
         View view = LayoutInflater.from(parent.getContext())
@@ -43,16 +83,11 @@ public class StudentRequestRecyclerViewAdapter extends RecyclerView.Adapter<Stud
         holder.mItem = mValues.get(position);
         holder.mNameView.setText(mValues.get(position).getRecipient().getFirstName() + " " + mValues.get(position).getRecipient().getLastName()); //Get name
         //Log.d("Studnet Request Adapt", "current position: " + position);
-        holder.mRecentMessageView.setText(mValues.get(position).getMessages()[mValues.get(position).getMessages().length - 1].getMessage()); //Get the last messages text
+        Message lastMessage = holder.mItem.getLastMessage();
+        holder.mRecentMessageView.setText(lastMessage == null ? "" : lastMessage.getMessage()); //Get the last messages text
 
-        Integer unreadMessages = 0;
-        for(Message m : mValues.get(position).getMessages()) {
-            if(m.getState() != MessageState.READ) {
-                unreadMessages++;
-            }
-        }
-
-        holder.mNotifNumberView.setText(unreadMessages.toString());
+        Integer unreadMessages = holder.mItem.getUnreadCount();
+        holder.mNotifNumberView.setText(unreadMessages == null ? "0" : unreadMessages.toString());
 
         holder.mView.setOnClickListener(new View.OnClickListener() {
             @Override
@@ -68,9 +103,6 @@ public class StudentRequestRecyclerViewAdapter extends RecyclerView.Adapter<Stud
 
     @Override
     public int getItemCount() {
-        if(mValues == null ) {
-            return 0;
-        }
         return mValues.size();
     }
 
@@ -399,6 +399,7 @@ public class TutorEditProfileActivity extends AppCompatActivity {
 
             }
             if(loc[0] != null) updatedUser.setLocation(loc[0]);
+            if(mLocation != null) updatedUser.setPosition(mLocation.getLatitude(), mLocation.getLongitude());
 
             try {
                 tutorUpdate = apiBackend.apiService.updateTutor(oldUser.getId().toString(), updatedUser).execute();
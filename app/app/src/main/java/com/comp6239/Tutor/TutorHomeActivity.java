@@ -73,6 +73,12 @@ public class TutorHomeActivity extends AppCompatActivity implements
         setTitle("My Tutees");
         setContentView(R.layout.activity_tutor_home);
         backendApi = BackendRequestController.getInstance(this);
+        //Acknowledges messages as they arrive, including any replayed when the gateway connects
+        backendApi.getMessageReceipts();
+        //Connect once logged in, so events between screens aren't missed
+        backendApi.getMessageGateway().start();
+        //Sends anything written but not sent last time
+        backendApi.getMessageOutbox().flush();
 
         Tutor loggedTutor = (Tutor) backendApi.getSession().getUser();
         Log.d("Tutor Login", "IsApproved?:" + loggedTutor.isApproved());
@@ -104,7 +110,7 @@ public class TutorHomeActivity extends AppCompatActivity implements
         //fromStudentMessage.setText("A student has sent you a request!");
         //actualMessage.setText(item.getMessages()[0].getMessage());
         ((TextView) promptView.findViewById(R.id.view_from_student)).setText(item.getRecipient().getFirstName() + " " + item.getRecipient().getLastName() + " has sent you a request!");
-        ((TextView) promptView.findViewById(R.id.view_student_message)).setText(item.getMessages()[0].getMessage());
+        ((TextView) promptView.findViewById(R.id.view_student_message)).setText(item.getLastMessage() == null ? "" : item.getLastMessage().getMessage());
         // setup a dialog window
         alertDialogBuilder.setCancelable(false)
                 .setPositiveButton("Accept", new DialogInterface.OnClickListener() {
@@ -116,6 +122,9 @@ public class TutorHomeActivity extends AppCompatActivity implements
                                 Toast toast = Toast.makeText(TutorHomeActivity.this, "Accepted new student!", Toast.LENGTH_LONG);
                                 toast.show();
                                 ((TutorMyStudentsFragment) myTutees).refreshStudentList();
+                                if (myRequests instanceof TutorStudentRequestsFragment) {
+                                    ((TutorStudentRequestsFragment) myRequests).removeRequest(item.getId());
+                                }
                             }
 
                             @Override
@@ -136,7 +145,9 @@ public class TutorHomeActivity extends AppCompatActivity implements
                                     public void onResponse(Call<Void> call, Response<Void> response) {
                                         Toast toast = Toast.makeText(TutorHomeActivity.this, "Rejected student!", Toast.LENGTH_LONG);
                                         toast.show();
-                                        ((TutorStudentRequestsFragment) myRequests).refreshStudentList();
+                                        if (myRequests instanceof TutorStudentRequestsFragment) {
+                                            ((TutorStudentRequestsFragment) myRequests).removeRequest(item.getId());
+                                        }
                                     }
 
                                     @Override
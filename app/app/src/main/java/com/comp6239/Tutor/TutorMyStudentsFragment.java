@@ -16,14 +16,12 @@ import android.widget.Toast;
 
 import com.comp6239.Backend.BackendRequestController;
 import com.comp6239.Backend.Messaging.MessageThread;
+import com.comp6239.Backend.Store.LocalStore;
+import com.comp6239.Backend.Store.ThreadSyncEngine;
 import com.comp6239.R;
 
 import java.util.List;
 
-import retrofit2.Call;
-import retrofit2.Callback;
-import retrofit2.Response;
-
 /**
  * A fragment representing a list of Items.
  * <p/>
@@ -39,6 +37,7 @@ public class TutorMyStudentsFragment extends Fragment {
     private OnMyStudentFragmentInteractionListener mListener;
     private BackendRequestController apiBackend;
     private RecyclerView mRecyclerView;
+    private ThreadSyncEngine threadSync;
 
     /**
      * Mandatory empty constructor for the fragment manager to instantiate the
@@ -66,6 +65,7 @@ public class TutorMyStudentsFragment extends Fragment {
         }
 
         apiBackend = BackendRequestController.getInstance(getContext());
+        threadSync = new ThreadSyncEngine(apiBackend.apiService, apiBackend.getLocalStore(), LocalStore.LIST_TUTOR_TUTEES);
     }
 
     @Override
@@ -127,15 +127,26 @@ public class TutorMyStudentsFragment extends Fragment {
     }
 
     public void refreshStudentList() {
-        Call<List<MessageThread>> tutorList = apiBackend.apiService.getTutorsTuteesConversations();
-        tutorList.enqueue(new Callback<List<MessageThread>>() {
+        //Show the list as it was last time straight away, the sync merges in what changed since
+        if (mRecyclerView.getAdapter() == null) {
+            apiBackend.getLocalStore().loadThreads(LocalStore.LIST_TUTOR_TUTEES, new LocalStore.Callback<List<MessageThread>>() {
+                @Override
+                public void onLoaded(List<MessageThread> threads) {
+                    if (threads != null && !threads.isEmpty() && mRecyclerView.getAdapter() == null) {
+                        mRecyclerView.setAdapter(new MyStudentRecyclerViewAdapter(threads, mListener));
+                    }
+                }
+            });
+        }
+
+        threadSync.sync(new ThreadSyncEngine.Listener() {
             @Override
-            public void onResponse(Call<List<MessageThread>> call, Response<List<MessageThread>> response) {
-                mRecyclerView.setAdapter(new MyStudentRecyclerViewAdapter(response.body(), mListener));
+            public void onThreadsChanged(List<MessageThread> threads) {
+                mRecyclerView.setAdapter(new MyStudentRecyclerViewAdapter(threads, mListener));
             }
 
             @Override
-            public void onFailure(Call<List<MessageThread>> call, Throwable t) {
+            public void onSyncFailed(Throwable t) {
                 Toast toast = Toast.makeText(getContext(), "There was a network error searching for tutors! Try again later!", Toast.LENGTH_LONG);
                 toast.show();
             }
@@ -143,6 +154,12 @@ public class TutorMyStudentsFragment extends Fragment {
     }
 
 
+    @Override
+    public void onDestroy() {
+        super.onDestroy();
+        threadSync.cancel();
+    }
+
     @Override
     public void onAttach(Context context) {
         super.onAttach(context);
@@ -6,27 +6,32 @@ import android.support.v4.app.Fragment;
 import android.support.v7.widget.GridLayoutManager;
 import android.support.v7.widget.LinearLayoutManager;
 import android.support.v7.widget.RecyclerView;
-import android.util.Log;
-import android.view.GestureDetector;
 import android.view.LayoutInflater;
-import android.view.MotionEvent;
 import android.view.View;
 import android.view.ViewGroup;
 import android.widget.Toast;
 
 import com.comp6239.Backend.BackendRequestController;
+import com.comp6239.Backend.Messaging.MessageEvent;
+import com.comp6239.Backend.Messaging.MessageGateway;
 import com.comp6239.Backend.Messaging.MessageThread;
+import com.comp6239.Backend.Messaging.ReadyEvent;
+import com.comp6239.Backend.Messaging.ThreadState;
+import com.comp6239.Backend.Messaging.ThreadStateEvent;
+import com.comp6239.Backend.Store.LocalStore;
+import com.comp6239.Backend.Store.ThreadSyncEngine;
 import com.comp6239.R;
 
+import java.util.Collections;
 import java.util.List;
-
-import retrofit2.Call;
-import retrofit2.Callback;
-import retrofit2.Response;
+import java.util.UUID;
 
 /**
  * A fragment representing a list of Items.
  * <p/>
+ * The list is synced when shown and kept up to date from the gateway while it is: new requests are added as
+ * MESSAGE_REQUEST arrives and removed once approved or blocked, without reloading the rest of the list.
+ * <p/>
  * Activities containing this fragment MUST implement the {@link OnSearchStudentFragmentInteractionListener}
  * interface.
  */
@@ -39,6 +44,8 @@ public class TutorStudentRequestsFragment extends Fragment {
     private OnSearchStudentFragmentInteractionListener mListener;
     private BackendRequestController apiBackend;
     private RecyclerView mRecyclerView;
+    private ThreadSyncEngine threadSync;
+    private final RequestListener mRequestListener = new RequestListener();
 
     /**
      * Mandatory empty constructor for the fragment manager to instantiate the
@@ -62,6 +69,9 @@ public class TutorStudentRequestsFragment extends Fragment {
         super.onCreate(savedInstanceState);
 
         apiBackend = BackendRequestController.getInstance(getContext());
+        threadSync = new ThreadSyncEngine(apiBackend.apiService, apiBackend.getLocalStore(), LocalStore.LIST_TUTOR_REQUESTS);
+        //Listens until destroyed, so the list is current when the tutor comes back from a conversation
+        apiBackend.getMessageGateway().addListener(mRequestListener);
 
         if (getArguments() != null) {
             mColumnCount = getArguments().getInt(ARG_COLUMN_COUNT);
@@ -83,59 +93,30 @@ public class TutorStudentRequestsFragment extends Fragment {
         }
         refreshStudentList();
 
-        final GestureDetector gesture = new GestureDetector(getActivity(),
-                new GestureDetector.SimpleOnGestureListener() {
-
-                    @Override
-                    public boolean onDown(MotionEvent e) {
-                        return true;
-                    }
-
-                    @Override
-                    public boolean onFling(MotionEvent e1, MotionEvent e2, float velocityX,
-                                           float velocityY) {
-                        final int SWIPE_MIN_DISTANCE = 120;
-                        final int SWIPE_MAX_OFF_PATH = 250;
-                        final int SWIPE_THRESHOLD_VELOCITY = 200;
-                        try {
-                            if (Math.abs(e1.getX() - e2.getX()) > SWIPE_MAX_OFF_PATH)
-                                return false;
-                            if (e1.getY() - e2.getY() > SWIPE_MIN_DISTANCE
-                                    && Math.abs(velocityY) > SWIPE_THRESHOLD_VELOCITY) {
-                                Log.i("Swipe", "Down to Up");
-                            } else if (e2.getY() - e1.getY() > SWIPE_MIN_DISTANCE
-                                    && Math.abs(velocityY) > SWIPE_THRESHOLD_VELOCITY) {
-                                Log.i("Swipe", "Up to Down");
-                                refreshStudentList();
-                            }
-                        } catch (Exception e) {
-                            // nothing
-                        }
-                        return super.onFling(e1, e2, velocityX, velocityY);
-                    }
-                });
-        view.setOnTouchListener(new View.OnTouchListener() {
-            @Override
-            public boolean onTouch(View v, MotionEvent event) {
-                return gesture.onTouchEvent(event);
-            }
-        });
-
         return view;
     }
 
     public void refreshStudentList() {
-        Call<List<MessageThread>> tutorList = apiBackend.apiService.getTutorsStudentRequests();
-        tutorList.enqueue(new Callback<List<MessageThread>>() {
-            @Override
-            public void onResponse(Call<List<MessageThread>> call, Response<List<MessageThread>> response) {
-
-                mRecyclerView.setAdapter(new StudentRequestRecyclerViewAdapter(response.body(), mListener));
+        //Show the list as it was last time straight away, the sync merges in what changed since
+        if (mRecyclerView.getAdapter() == null) {
+            apiBackend.getLocalStore().loadThreads(LocalStore.LIST_TUTOR_REQUESTS, new LocalStore.Callback<List<MessageThread>>() {
+                @Override
+                public void onLoaded(List<MessageThread> threads) {
+                    if (threads != null && !threads.isEmpty() && mRecyclerView.getAdapter() == null) {
+                        mRecyclerView.setAdapter(new StudentRequestRecyclerViewAdapter(threads, mListener));
+                    }
+                }
+            });
+        }
 
+        threadSync.sync(new ThreadSyncEngine.Listener() {
+            @Override
+            public void onThreadsChanged(List<MessageThread> threads) {
+                mRecyclerView.setAdapter(new StudentRequestRecyclerViewAdapter(threads, mListener));
             }
 
             @Override
-            public void onFailure(Call<List<MessageThread>> call, Throwable t) {
+            public void onSyncFailed(Throwable t) {
                 Toast toast = Toast.makeText(getContext(), "There was a network error searching for student requests! Try again later!", Toast.LENGTH_LONG);
                 toast.show();
             }
@@ -143,6 +124,23 @@ public class TutorStudentRequestsFragment extends Fragment {
     }
 
 
+    /**
+     * Removes a request straight away, e.g. once the tutor has answered it, without waiting for the gateway
+     */
+    public void removeRequest(UUID threadId) {
+        StudentRequestRecyclerViewAdapter adapter = (StudentRequestRecyclerViewAdapter) mRecyclerView.getAdapter();
+        if (adapter != null) {
+            adapter.removeRequest(threadId);
+        }
+    }
+
+    @Override
+    public void onDestroy() {
+        super.onDestroy();
+        threadSync.cancel();
+        apiBackend.getMessageGateway().removeListener(mRequestListener);
+    }
+
     @Override
     public void onAttach(Context context) {
         super.onAttach(context);
@@ -160,6 +158,42 @@ public class TutorStudentRequestsFragment extends Fragment {
         mListener = null;
     }
 
+    private class RequestListener extends MessageGateway.Listener {
+        @Override
+        public void onReady(ReadyEvent ready) {
+            //Requests may have come and gone while disconnected
+            if (mRecyclerView != null) {
+                refreshStudentList();
+            }
+        }
+
+        @Override
+        public void onMessageRequest(MessageEvent request) {
+            if (mRecyclerView == null || request.getThreadId() == null) return;
+            MessageThread thread = new MessageThread();
+            thread.setId(request.getThreadId());
+            thread.setRecipient(request.getFrom());
+            thread.setLastMessage(request.getMessage());
+            thread.setMessageCount(1);
+            thread.setUnreadCount(1);
+            thread.setState(ThreadState.REQUESTED);
+
+            StudentRequestRecyclerViewAdapter adapter = (StudentRequestRecyclerViewAdapter) mRecyclerView.getAdapter();
+            if (adapter == null) {
+                mRecyclerView.setAdapter(new StudentRequestRecyclerViewAdapter(Collections.singletonList(thread), mListener));
+            } else {
+                adapter.addRequest(thread);
+            }
+        }
+
+        @Override
+        public void onThreadStateChanged(ThreadStateEvent changed) {
+            if (mRecyclerView != null && changed.getState() != ThreadState.REQUESTED) {
+                removeRequest(changed.getThreadId());
+            }
+        }
+    }
+
     /**
      * This interface must be implemented by activities that contain this
      * fragment to allow an interaction in this fragment to be communicated
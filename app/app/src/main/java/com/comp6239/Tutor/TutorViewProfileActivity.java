@@ -18,12 +18,14 @@ import com.comp6239.Backend.BackendRequestController;
 import com.comp6239.Backend.Messaging.MessageRequest;
 import com.comp6239.Backend.Model.Subject;
 import com.comp6239.Backend.Model.Tutor;
+import com.comp6239.Backend.Store.LocalStore;
 import com.comp6239.R;
 import com.comp6239.Student.StudentHomeActivity;
 
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
+import java.util.UUID;
 
 import retrofit2.Call;
 import retrofit2.Callback;
@@ -37,6 +39,8 @@ public class TutorViewProfileActivity extends AppCompatActivity {
     private String tutorId;
     private String threadId;
     private FloatingActionButton blockFab;
+    //Set once the profile has come from the network, so the stored copy doesn't replace it
+    private boolean profileLoaded;
 
     @SuppressLint("RestrictedApi")
     @Override
@@ -46,11 +50,23 @@ public class TutorViewProfileActivity extends AppCompatActivity {
         apiBackend = BackendRequestController.getInstance(this);
         if(getIntent().hasExtra("tutorId")) {
             tutorId = getIntent().getStringExtra("tutorId");
+            //Show the profile as it was last time straight away, the response replaces it
+            apiBackend.getLocalStore().loadUser(UUID.fromString(tutorId), Tutor.class, new LocalStore.Callback<Tutor>() {
+                @Override
+                public void onLoaded(Tutor user) {
+                    if (user != null && !profileLoaded) {
+                        updateUIWithDetails(user);
+                    }
+                }
+            });
             Call<Tutor> getTutor = backendApi.apiService.getTutor(getIntent().getStringExtra("tutorId"));
             getTutor.enqueue(new Callback<Tutor>() {
                 @Override
                 public void onResponse(Call<Tutor> call, Response<Tutor> response) {
+                    if (response.body() == null) return;
+                    profileLoaded = true;
                     updateUIWithDetails(response.body());
+                    apiBackend.getLocalStore().saveUser(response.body());
                 }
 
                 @Override
@@ -0,0 +1,92 @@
+package com.comp6239.Backend.Messaging;
+
+import org.junit.Test;
+
+import java.nio.charset.Charset;
+import java.util.Arrays;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+
+import okio.ByteString;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class GatewayCompressionTest {
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    /**
+     * Compresses frames the way the server does, one zlib stream flushed after each frame
+     */
+    private static class Server {
+        private final Deflater deflater = new Deflater();
+
+        ByteString frame(String payload) {
+            deflater.setInput(payload.getBytes(UTF_8));
+            byte[] buffer = new byte[64 * 1024];
+            int length = deflater.deflate(buffer, 0, buffer.length, Deflater.SYNC_FLUSH);
+            return ByteString.of(Arrays.copyOf(buffer, length));
+        }
+    }
+
+    private static String message(int i) {
+        return "{\"o\":0,\"e\":\"MESSAGE\",\"s\":" + i + ",\"d\":{\"thread_id\":\"4d1b6a3e-8a62-4d1c-9d0a-0f2b6c1e"
+                + String.format("%04d", i) + "\",\"message\":{\"id\":\"" + i + "\",\"message\":\"Hello " + i
+                + "\",\"state\":\"s\",\"sent_at\":\"2019-01-10T12:10:00.123456\"}}}";
+    }
+
+    @Test
+    public void inflatesEachFrameOfTheStream() throws DataFormatException {
+        Server server = new Server();
+        GatewayCompression compression = new GatewayCompression(true);
+        for (int i = 0; i < 20; i++) {
+            assertEquals(message(i), compression.inflate(server.frame(message(i))));
+        }
+        //Later frames reuse the field names of earlier ones
+        assertTrue(compression.getWireBytesIn() * 3 < compression.getRawBytesIn());
+    }
+
+    @Test
+    public void inflatesFramesLargerThanTheBuffer() throws DataFormatException {
+        StringBuilder builder = new StringBuilder("[");
+        for (int i = 0; i < 500; i++) {
+            builder.append(message(i)).append(',');
+        }
+        String payload = builder.append("{}]").toString();
+        GatewayCompression compression = new GatewayCompression(true);
+        assertEquals(payload, compression.inflate(new Server().frame(payload)));
+        assertEquals(payload.length(), compression.getRawBytesIn());
+    }
+
+    @Test
+    public void countsTextFrames() {
+        GatewayCompression compression = new GatewayCompression(true);
+        compression.receivedText(message(1));
+        assertEquals(compression.getRawBytesIn(), compression.getWireBytesIn());
+    }
+
+    @Test
+    public void deflatesForTheServer() throws DataFormatException {
+        GatewayCompression client = new GatewayCompression(true);
+        GatewayCompression server = new GatewayCompression(true);
+        for (int i = 0; i < 5; i++) {
+            assertEquals(message(i), server.inflate(client.deflate(message(i))));
+        }
+        assertEquals(client.getRawBytesOut(), server.getRawBytesIn());
+        assertEquals(client.getWireBytesOut(), server.getWireBytesIn());
+    }
+
+    @Test
+    public void sendsTextWithoutDeflater() {
+        GatewayCompression compression = new GatewayCompression(false);
+        assertEquals(null, compression.deflate(message(1)));
+        assertEquals(compression.getRawBytesOut(), compression.getWireBytesOut());
+    }
+
+    @Test(expected = DataFormatException.class)
+    public void rejectsFramesAfterEnd() throws DataFormatException {
+        GatewayCompression compression = new GatewayCompression(true);
+        compression.end();
+        compression.inflate(new Server().frame(message(1)));
+    }
+}
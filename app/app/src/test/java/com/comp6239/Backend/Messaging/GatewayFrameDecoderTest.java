@@ -0,0 +1,94 @@
+package com.comp6239.Backend.Messaging;
+
+import com.comp6239.Backend.ModelTypeAdapterFactory;
+import com.google.gson.GsonBuilder;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.UUID;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+public class GatewayFrameDecoderTest {
+    private static final String THREAD_ID = "a2d40043-9282-45dd-9eab-b72588c3a6d6";
+    private static final String MESSAGE_ID = "0b1a4c38-14e6-11e9-9b6a-0242ac120002";
+    private static final String SENDER_ID = "5c0d5a52-63b5-4bde-a3f6-3c4fd2b1ad2c";
+
+    private static final String MESSAGE_DATA = "{\"thread_id\": \"" + THREAD_ID + "\", "
+            + "\"from\": {\"id\": \"" + SENDER_ID + "\", \"first_name\": \"Ada\", \"last_name\": \"Lovelace\"}, "
+            + "\"message\": \"Hello\", \"timestamp\": \"2019-01-10T12:10:00.123456+00:00\", "
+            + "\"id\": \"" + MESSAGE_ID + "\", \"state\": \"r\"}";
+
+    private GatewayFrameDecoder decoder;
+
+    @Before
+    public void setUp() {
+        decoder = new GatewayFrameDecoder(new GsonBuilder()
+                .registerTypeAdapterFactory(new ModelTypeAdapterFactory())
+                .create())
+                .register("MESSAGE", MessageEvent.class)
+                .register("MESSAGE_SENT", MessageSentEvent.class);
+    }
+
+    @Test
+    public void decodesMessage() throws IOException {
+        GatewayFrame frame = decoder.decode("{\"o\": 0, \"e\": \"MESSAGE\", \"s\": 42, \"d\": " + MESSAGE_DATA + "}");
+
+        assertEquals(MessageGateway.OP_DISPATCH, frame.getOp());
+        assertEquals("MESSAGE", frame.getEvent());
+        assertEquals(Long.valueOf(42), frame.getSeq());
+        MessageEvent event = (MessageEvent) frame.getData();
+        assertEquals(UUID.fromString(THREAD_ID), event.getThreadId());
+        assertEquals("Ada", event.getFrom().getFirstName());
+        Message message = event.getMessage();
+        assertEquals(UUID.fromString(MESSAGE_ID), message.getId());
+        assertEquals(UUID.fromString(SENDER_ID), message.getSenderId());
+        assertEquals("Hello", message.getMessage());
+        assertEquals(MessageState.READ, message.getState());
+    }
+
+    @Test
+    public void decodesDataBeforeEvent() throws IOException {
+        GatewayFrame frame = decoder.decode("{\"o\": 0, \"d\": " + MESSAGE_DATA + ", \"e\": \"MESSAGE\"}");
+
+        MessageEvent event = (MessageEvent) frame.getData();
+        assertEquals(UUID.fromString(MESSAGE_ID), event.getMessage().getId());
+        assertNull(frame.getSeq());
+    }
+
+    @Test
+    public void mapsStatesBySerializedName() throws IOException {
+        GatewayFrame frame = decoder.decode("{\"o\": 0, \"e\": \"MESSAGE_SENT\", \"d\": {\"message_id\": \""
+                + MESSAGE_ID + "\", \"thread_id\": \"" + THREAD_ID + "\", \"timestamp\": \"2019-01-10T12:10:00\", "
+                + "\"state\": \"d\"}}");
+
+        MessageSentEvent sent = (MessageSentEvent) frame.getData();
+        assertEquals(UUID.fromString(MESSAGE_ID), sent.getMessageId());
+        assertEquals(MessageState.DELIVERED, sent.getState());
+    }
+
+    @Test
+    public void skipsUnregisteredEvents() throws IOException {
+        GatewayFrame frame = decoder.decode("{\"o\": 0, \"e\": \"TYPING\", \"d\": {\"thread_id\": [1, {\"a\": 2}]}}");
+
+        assertEquals("TYPING", frame.getEvent());
+        assertNull(frame.getData());
+    }
+
+    @Test
+    public void decodesErrorOpCodes() throws IOException {
+        GatewayFrame frame = decoder.decode("{\"o\": 4008, \"d\": {}, \"e\": null}");
+
+        assertEquals(MessageGateway.OP_RATE_LIMITED, frame.getOp());
+        assertNull(frame.getEvent());
+        assertNull(frame.getData());
+    }
+
+    @Test(expected = IOException.class)
+    public void rejectsPayloadWithoutOpCode() throws IOException {
+        decoder.decode("{\"e\": \"MESSAGE\", \"d\": {}}");
+    }
+}
@@ -0,0 +1,56 @@
+package com.comp6239.Backend.Messaging;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class GatewaySequenceTest {
+
+    @Test
+    public void readyStartsFromServer() {
+        GatewaySequence sequence = new GatewaySequence();
+        sequence.established("READY", 5);
+        assertEquals(5, sequence.getLast());
+        assertFalse(sequence.accept(5));
+        assertTrue(sequence.accept(6));
+    }
+
+    @Test
+    public void resumeReplaysMissedEvents() {
+        GatewaySequence sequence = new GatewaySequence();
+        sequence.established("READY", 5);
+        assertTrue(sequence.accept(6));
+        assertTrue(sequence.accept(7));
+
+        //Disconnected while 8 to 10 were sent, the server resumes from 7 and says it is at 10
+        assertEquals(7, sequence.getLast());
+        sequence.established("RESUMED", 10);
+        assertTrue(sequence.accept(8));
+        assertTrue(sequence.accept(9));
+        assertTrue(sequence.accept(10));
+        assertEquals(10, sequence.getLast());
+    }
+
+    @Test
+    public void dropsEventsReplayedTwice() {
+        GatewaySequence sequence = new GatewaySequence();
+        sequence.established("READY", 0);
+        assertTrue(sequence.accept(1));
+        assertTrue(sequence.accept(2));
+        sequence.established("RESUMED", 3);
+        assertFalse(sequence.accept(1));
+        assertFalse(sequence.accept(2));
+        assertTrue(sequence.accept(3));
+    }
+
+    @Test
+    public void resetForgetsSession() {
+        GatewaySequence sequence = new GatewaySequence();
+        sequence.established("READY", 42);
+        sequence.reset();
+        assertEquals(0, sequence.getLast());
+        assertTrue(sequence.accept(1));
+    }
+}
@@ -0,0 +1,197 @@
+package com.comp6239.Backend.Messaging;
+
+import com.comp6239.Backend.Iso8601;
+
+import org.joda.time.DateTime;
+import org.joda.time.DateTimeComparator;
+import org.junit.Test;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+import java.util.UUID;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assume.assumeTrue;
+
+/**
+ * Compares sorting a conversation of 10k messages the way we used to, by comparing Joda DateTimes built lazily
+ * from the timestamp strings, against comparing the epoch milliseconds decoded when the message was read.
+ * The timing test only runs when the benchmarks system property is set, see testOptions in build.gradle.
+ */
+public class MessageSortBenchmark {
+    private static final int MESSAGES = 10000;
+    private static final int WARMUP = 20;
+    private static final int ITERATIONS = 100;
+
+    private static final String[] TIMESTAMPS = {
+            "2019-01-10T12:10:00.123456+00:00",
+            "2019-01-10T12:10:00.123+01:00",
+            "2019-01-10T12:10:00-05:30",
+            "2019-01-10T12:10:00Z",
+            "2019-01-10T12:10Z",
+            "2019-02-28T23:59:59.999999",
+            "2019-07-01T00:00:00",
+            "2020-02-29T06:30:15.5+0200",
+            "1969-12-31T23:59:59.999Z",
+    };
+
+    /**
+     * The message as it was, with the DateTime parsed from the string on first use
+     */
+    private static class LazyMessage {
+        final String sentAt;
+        DateTime timestamp;
+
+        LazyMessage(String sentAt) {
+            this.sentAt = sentAt;
+        }
+
+        DateTime getTimestamp() {
+            if (timestamp == null) {
+                timestamp = new DateTime(sentAt);
+            }
+            return timestamp;
+        }
+    }
+
+    private static final Comparator<LazyMessage> BY_TIMESTAMP = new Comparator<LazyMessage>() {
+        @Override
+        public int compare(LazyMessage o1, LazyMessage o2) {
+            return DateTimeComparator.getInstance().compare(o1.getTimestamp(), o2.getTimestamp());
+        }
+    };
+
+    @Test
+    public void parsesSameAsJoda() {
+        for (String timestamp : TIMESTAMPS) {
+            assertEquals(timestamp, new DateTime(timestamp).getMillis(), Iso8601.parseMillis(timestamp));
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsInvalidDates() {
+        Iso8601.parseMillis("2019-02-29T12:00:00");
+    }
+
+    @Test
+    public void sortsSameAsJoda() {
+        List<String> timestamps = timestamps(1000);
+        List<LazyMessage> before = new ArrayList<>();
+        List<Message> after = new ArrayList<>();
+        for (String timestamp : timestamps) {
+            before.add(new LazyMessage(timestamp));
+            after.add(message(timestamp));
+        }
+        Collections.sort(before, BY_TIMESTAMP);
+        Collections.sort(after, SortedMessageList.BY_SENT_AT);
+        for (int i = 0; i < before.size(); i++) {
+            assertEquals(before.get(i).getTimestamp().getMillis(), after.get(i).getSentAtMillis());
+        }
+    }
+
+    @Test
+    public void sort10kMessages() {
+        assumeTrue("Run with -Pbenchmarks", Boolean.getBoolean("benchmarks"));
+        List<String> timestamps = timestamps(MESSAGES);
+
+        for (int i = 0; i < WARMUP; i++) {
+            sortLazy(timestamps);
+            sortDecoded(timestamps);
+        }
+
+        long startBytes = allocatedBytes();
+        long start = System.nanoTime();
+        for (int i = 0; i < ITERATIONS; i++) {
+            sortLazy(timestamps);
+        }
+        long lazyNanos = System.nanoTime() - start;
+        long lazyBytes = allocatedBytes() - startBytes;
+
+        startBytes = allocatedBytes();
+        start = System.nanoTime();
+        for (int i = 0; i < ITERATIONS; i++) {
+            sortDecoded(timestamps);
+        }
+        long decodedNanos = System.nanoTime() - start;
+        long decodedBytes = allocatedBytes() - startBytes;
+
+        //Sorting alone, on messages already decoded, is what the adapter does on every page and reload
+        List<Message> decoded = new ArrayList<>();
+        for (String timestamp : timestamps) {
+            decoded.add(message(timestamp));
+        }
+        startBytes = allocatedBytes();
+        start = System.nanoTime();
+        for (int i = 0; i < ITERATIONS; i++) {
+            Collections.sort(new ArrayList<>(decoded), SortedMessageList.BY_SENT_AT);
+        }
+        long sortNanos = System.nanoTime() - start;
+        long sortBytes = allocatedBytes() - startBytes;
+
+        String summary = String.format("lazy DateTime %.2f ms/op %d B/op, "
+                        + "decode + sort %.2f ms/op %d B/op, sort only %.2f ms/op %d B/op",
+                lazyNanos / 1e6 / ITERATIONS, perOp(startBytes, lazyBytes),
+                decodedNanos / 1e6 / ITERATIONS, perOp(startBytes, decodedBytes),
+                sortNanos / 1e6 / ITERATIONS, perOp(startBytes, sortBytes));
+        assertTrue(summary, decodedNanos < lazyNanos);
+        assertTrue(summary, startBytes < 0 || decodedBytes < lazyBytes);
+        assertTrue(summary, sortNanos < decodedNanos);
+    }
+
+    private static void sortLazy(List<String> timestamps) {
+        List<LazyMessage> messages = new ArrayList<>(timestamps.size());
+        for (String timestamp : timestamps) {
+            messages.add(new LazyMessage(timestamp));
+        }
+        Collections.sort(messages, BY_TIMESTAMP);
+    }
+
+    private static void sortDecoded(List<String> timestamps) {
+        List<Message> messages = new ArrayList<>(timestamps.size());
+        for (String timestamp : timestamps) {
+            messages.add(message(timestamp));
+        }
+        Collections.sort(messages, SortedMessageList.BY_SENT_AT);
+    }
+
+    private static Message message(String timestamp) {
+        Message message = new Message();
+        message.setId(UUID.randomUUID());
+        message.setSentAt(timestamp);
+        return message;
+    }
+
+    /**
+     * Timestamps as the backend sends them, shuffled
+     */
+    private static List<String> timestamps(int count) {
+        Random random = new Random(6239);
+        List<String> timestamps = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            timestamps.add(String.format("2019-%02d-%02dT%02d:%02d:%02d.%06d+00:00",
+                    1 + random.nextInt(12), 1 + random.nextInt(28), random.nextInt(24),
+                    random.nextInt(60), random.nextInt(60), random.nextInt(1000000)));
+        }
+        return timestamps;
+    }
+
+    private static long perOp(long startBytes, long bytes) {
+        return startBytes < 0 ? -1 : bytes / ITERATIONS;
+    }
+
+    /**
+     * @return bytes allocated by this thread so far, or -1 if the JVM can't tell us
+     */
+    private static long allocatedBytes() {
+        java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        if (bean instanceof com.sun.management.ThreadMXBean) {
+            return ((com.sun.management.ThreadMXBean) bean).getThreadAllocatedBytes(Thread.currentThread().getId());
+        }
+        return -1;
+    }
+}
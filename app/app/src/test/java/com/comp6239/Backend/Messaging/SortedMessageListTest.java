@@ -0,0 +1,133 @@
+package com.comp6239.Backend.Messaging;
+
+import android.support.v7.util.ListUpdateCallback;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.UUID;
+
+import static org.junit.Assert.assertEquals;
+
+public class SortedMessageListTest {
+    private final List<String> updates = new ArrayList<>();
+    private SortedMessageList list;
+
+    @Before
+    public void setUp() {
+        list = new SortedMessageList(new ListUpdateCallback() {
+            @Override
+            public void onInserted(int position, int count) {
+                updates.add("insert " + position + "+" + count);
+            }
+
+            @Override
+            public void onRemoved(int position, int count) {
+                updates.add("remove " + position + "+" + count);
+            }
+
+            @Override
+            public void onMoved(int fromPosition, int toPosition) {
+                updates.add("move " + fromPosition + ">" + toPosition);
+            }
+
+            @Override
+            public void onChanged(int position, int count, Object payload) {
+                updates.add("change " + position + "+" + count);
+            }
+        });
+    }
+
+    private static Message message(int minute, MessageState state) {
+        Message message = new Message();
+        message.setId(new UUID(0, minute));
+        message.setSentAt(String.format("2019-01-01T12:%02d:00.000Z", minute));
+        message.setMessage("Message " + minute);
+        message.setState(state);
+        return message;
+    }
+
+    private static Message message(int minute) {
+        return message(minute, MessageState.SENT);
+    }
+
+    private void assertOrder(int... minutes) {
+        assertEquals(minutes.length, list.size());
+        for (int i = 0; i < minutes.length; i++) {
+            assertEquals(new UUID(0, minutes[i]), list.get(i).getId());
+        }
+    }
+
+    @Test
+    public void insertsInOrder() {
+        list.add(message(1));
+        list.add(message(3));
+        list.add(message(2));
+        assertOrder(1, 2, 3);
+        assertEquals(Arrays.asList("insert 0+1", "insert 1+1", "insert 1+1"), updates);
+    }
+
+    @Test
+    public void replacesEchoes() {
+        list.add(message(1));
+        list.add(message(2, MessageState.SENDING));
+        updates.clear();
+
+        list.add(message(2, MessageState.SENDING));
+        assertEquals(0, updates.size());
+
+        list.add(message(2, MessageState.SENT));
+        assertOrder(1, 2);
+        assertEquals(MessageState.SENT, list.get(1).getState());
+        assertEquals(Arrays.asList("change 1+1"), updates);
+    }
+
+    @Test
+    public void movesRetimedMessages() {
+        list.add(message(1));
+        list.add(message(5));
+        list.add(message(9));
+        updates.clear();
+
+        //Same ID as the message at 9, now sent at 3
+        Message retimed = message(3);
+        retimed.setId(new UUID(0, 9));
+        list.add(retimed);
+        assertEquals(3, list.size());
+        assertEquals(1, list.indexOf(new UUID(0, 9)));
+        assertEquals(Arrays.asList("move 2>1", "change 1+1"), updates);
+    }
+
+    @Test
+    public void prependsPagesAsOneRange() {
+        list.addAll(Arrays.asList(message(7), message(8), message(9)));
+        list.addAll(Arrays.asList(message(3), message(1), message(2)));
+        assertOrder(1, 2, 3, 7, 8, 9);
+        assertEquals(Arrays.asList("insert 0+3", "insert 0+3"), updates);
+    }
+
+    @Test
+    public void diffsReplacements() {
+        list.addAll(Arrays.asList(message(1), message(2), message(3), message(4), message(5, MessageState.SENDING)));
+        updates.clear();
+
+        list.replaceAll(Arrays.asList(message(3), message(4), message(5), message(6), message(7)));
+        assertOrder(3, 4, 5, 6, 7);
+        assertEquals(Arrays.asList("remove 0+2", "change 2+1", "insert 3+2"), updates);
+    }
+
+    @Test
+    public void removesById() {
+        list.addAll(Arrays.asList(message(1), message(2), message(3)));
+        updates.clear();
+
+        assertEquals(true, list.remove(new UUID(0, 2)));
+        assertEquals(false, list.remove(new UUID(0, 2)));
+        assertOrder(1, 3);
+        assertEquals(-1, list.indexOf(new UUID(0, 2)));
+        assertEquals(Arrays.asList("remove 1+1"), updates);
+    }
+}
@@ -0,0 +1,38 @@
+package com.comp6239.Backend.Messaging;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+public class TokenBucketTest {
+
+    @Test
+    public void allowsBurstThenRate() {
+        TokenBucket bucket = new TokenBucket(3, 2, 0);
+        assertEquals(0, bucket.acquire(0));
+        assertEquals(0, bucket.acquire(0));
+        assertEquals(0, bucket.acquire(0));
+        assertEquals(500, bucket.acquire(0));
+        assertEquals(250, bucket.acquire(250));
+        assertEquals(0, bucket.acquire(500));
+        assertEquals(500, bucket.acquire(500));
+    }
+
+    @Test
+    public void refillsToCapacity() {
+        TokenBucket bucket = new TokenBucket(2, 1, 0);
+        bucket.acquire(0);
+        bucket.acquire(0);
+        assertEquals(0, bucket.acquire(60 * 1000));
+        assertEquals(0, bucket.acquire(60 * 1000));
+        assertEquals(1000, bucket.acquire(60 * 1000));
+    }
+
+    @Test
+    public void drainEmptiesBurst() {
+        TokenBucket bucket = new TokenBucket(10, 1, 0);
+        bucket.drain(0);
+        assertEquals(1000, bucket.acquire(0));
+        assertEquals(0, bucket.acquire(1000));
+    }
+}
@@ -0,0 +1,79 @@
+package com.comp6239.Backend.Model;
+
+import com.comp6239.Backend.ModelTypeAdapterFactory;
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParseException;
+import com.google.gson.JsonParser;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class RuntimeTypeAdapterFactoryTest {
+    private static final String TUTOR_FIELDS = "\"first_name\":\"Ada\",\"gender\":\"f\",\"price\":20.5,"
+            + "\"subjects\":[{\"name\":\"Maths\"}]";
+
+    private static Gson gson(boolean maintainType, boolean streaming) {
+        GsonBuilder builder = new GsonBuilder();
+        if (streaming) {
+            builder.registerTypeAdapterFactory(new ModelTypeAdapterFactory());
+        }
+        return builder.registerTypeAdapterFactory(RuntimeTypeAdapterFactory
+                .of(User.class, "role", maintainType)
+                .registerSubtype(Student.class, "s")
+                .registerSubtype(Tutor.class, "t")
+                .registerSubtype(Admin.class, "a"))
+                .create();
+    }
+
+    private static void assertTutor(User user) {
+        assertTrue(user instanceof Tutor);
+        Tutor tutor = (Tutor) user;
+        assertEquals("Ada", tutor.getFirstName());
+        assertEquals(Gender.FEMALE, tutor.getGender());
+        assertEquals(20.5, tutor.getPrice(), 0);
+        assertEquals("Maths", tutor.getSubjects()[0].getName());
+    }
+
+    @Test
+    public void readsLabelFirst() {
+        assertTutor(gson(false, true).fromJson("{\"role\":\"t\"," + TUTOR_FIELDS + "}", User.class));
+        assertTutor(gson(false, false).fromJson("{\"role\":\"t\"," + TUTOR_FIELDS + "}", User.class));
+    }
+
+    @Test
+    public void readsLabelLast() {
+        assertTutor(gson(false, true).fromJson("{" + TUTOR_FIELDS + ",\"role\":\"t\"}", User.class));
+        assertTutor(gson(false, false).fromJson("{" + TUTOR_FIELDS + ",\"role\":\"t\"}", User.class));
+    }
+
+    @Test
+    public void readsWithMaintainType() {
+        assertTutor(gson(true, true).fromJson("{" + TUTOR_FIELDS + ",\"role\":\"t\"}", User.class));
+        assertTutor(gson(true, false).fromJson("{\"role\":\"t\"," + TUTOR_FIELDS + "}", User.class));
+    }
+
+    @Test(expected = JsonParseException.class)
+    public void rejectsMissingLabel() {
+        gson(false, true).fromJson("{" + TUTOR_FIELDS + "}", User.class);
+    }
+
+    @Test(expected = JsonParseException.class)
+    public void rejectsUnknownLabel() {
+        gson(false, true).fromJson("{\"role\":\"x\"," + TUTOR_FIELDS + "}", User.class);
+    }
+
+    @Test
+    public void writesLabelFirst() {
+        Tutor tutor = new Tutor();
+        tutor.setFirstName("Ada");
+        tutor.setPrice(20.5);
+        String streamed = gson(false, true).toJson(tutor, User.class);
+        assertTrue(streamed.startsWith("{\"role\":\"t\""));
+        JsonObject expected = new JsonParser().parse(gson(false, false).toJson(tutor, User.class)).getAsJsonObject();
+        assertEquals(expected, new JsonParser().parse(streamed));
+    }
+}
@@ -0,0 +1,197 @@
+package com.comp6239.Backend;
+
+import com.comp6239.Backend.Messaging.MessageThread;
+import com.comp6239.Backend.Model.Admin;
+import com.comp6239.Backend.Model.RuntimeTypeAdapterFactory;
+import com.comp6239.Backend.Model.Student;
+import com.comp6239.Backend.Model.Tutor;
+import com.comp6239.Backend.Model.User;
+import com.google.gson.FieldNamingPolicy;
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.google.gson.JsonParser;
+
+import org.junit.Test;
+
+import java.lang.management.ManagementFactory;
+import java.text.DateFormat;
+import java.util.UUID;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assume.assumeTrue;
+
+/**
+ * Compares the reflective Gson we used to have against the one with the streaming adapters,
+ * on a thread of 200 messages and a search result of 100 tutors. The timing tests only run
+ * when the benchmarks system property is set, see testOptions in build.gradle.
+ */
+public class ModelTypeAdapterBenchmark {
+    private static final int WARMUP = 200;
+    private static final int ITERATIONS = 1000;
+
+    private static final String THREAD_JSON = threadJson(200);
+    private static final String TUTORS_JSON = tutorsJson(100);
+
+    private final Gson streaming = BackendRequestController.createGson();
+    private final Gson reflective = reflectiveGson();
+
+    @Test
+    public void parsesSameAsReflection() {
+        MessageThread before = reflective.fromJson(THREAD_JSON, MessageThread.class);
+        MessageThread after = streaming.fromJson(THREAD_JSON, MessageThread.class);
+        assertEquals(before.getId(), after.getId());
+        assertEquals(before.getRecipient().getFirstName(), after.getRecipient().getFirstName());
+        assertEquals(before.getState(), after.getState());
+        assertEquals(before.getMessageCount(), after.getMessageCount());
+        assertEquals(before.getMessages().length, after.getMessages().length);
+        for (int i = 0; i < before.getMessages().length; i++) {
+            assertEquals(before.getMessages()[i].getId(), after.getMessages()[i].getId());
+            assertEquals(before.getMessages()[i].getSenderId(), after.getMessages()[i].getSenderId());
+            assertEquals(before.getMessages()[i].getSentAt(), after.getMessages()[i].getSentAt());
+            assertEquals(before.getMessages()[i].getMessage(), after.getMessages()[i].getMessage());
+            assertEquals(before.getMessages()[i].getState(), after.getMessages()[i].getState());
+        }
+
+        User[] beforeTutors = reflective.fromJson(TUTORS_JSON, User[].class);
+        User[] afterTutors = streaming.fromJson(TUTORS_JSON, User[].class);
+        assertEquals(beforeTutors.length, afterTutors.length);
+        for (int i = 0; i < beforeTutors.length; i++) {
+            Tutor b = (Tutor) beforeTutors[i];
+            Tutor a = (Tutor) afterTutors[i];
+            assertEquals(b.getId(), a.getId());
+            assertEquals(b.getEmail(), a.getEmail());
+            assertEquals(b.getGender(), a.getGender());
+            assertEquals(b.getBio(), a.getBio());
+            assertEquals(b.getPrice(), a.getPrice());
+            assertEquals(b.isApproved(), a.isApproved());
+            assertEquals(b.getSubjects().length, a.getSubjects().length);
+            assertEquals(b.getSubjects()[0].getName(), a.getSubjects()[0].getName());
+        }
+
+        JsonParser parser = new JsonParser();
+        assertEquals(parser.parse(reflective.toJson(afterTutors[0], Tutor.class)),
+                parser.parse(streaming.toJson(afterTutors[0], Tutor.class)));
+    }
+
+    /**
+     * Most of a thread's parse is its timestamps, which both setups decode the same way, so the
+     * streaming adapters (which the gateway reader needs anyway) only have to keep up here.
+     */
+    @Test
+    public void threadPayload() {
+        assumeTrue("Run with -Pbenchmarks", Boolean.getBoolean("benchmarks"));
+        Result before = measure(reflective, THREAD_JSON, MessageThread.class);
+        Result after = measure(streaming, THREAD_JSON, MessageThread.class);
+        String summary = summary(before, after);
+        assertTrue(summary, after.opsPerSecond >= before.opsPerSecond * 0.8);
+        assertTrue(summary, before.bytesPerOp < 0 || after.bytesPerOp <= before.bytesPerOp * 1.01);
+    }
+
+    @Test
+    public void tutorListPayload() {
+        assumeTrue("Run with -Pbenchmarks", Boolean.getBoolean("benchmarks"));
+        Result before = measure(reflective, TUTORS_JSON, User[].class);
+        Result after = measure(streaming, TUTORS_JSON, User[].class);
+        String summary = summary(before, after);
+        assertTrue(summary, after.opsPerSecond > before.opsPerSecond * 1.1);
+        assertTrue(summary, before.bytesPerOp < 0 || after.bytesPerOp < before.bytesPerOp);
+    }
+
+    private static String summary(Result before, Result after) {
+        return String.format("reflective %.0f ops/s %d B/op, streaming %.0f ops/s %d B/op",
+                before.opsPerSecond, before.bytesPerOp, after.opsPerSecond, after.bytesPerOp);
+    }
+
+    private static Result measure(Gson gson, String json, Class<?> type) {
+        for (int i = 0; i < WARMUP; i++) {
+            assertNotNull(gson.fromJson(json, type));
+        }
+        long startBytes = allocatedBytes();
+        long start = System.nanoTime();
+        for (int i = 0; i < ITERATIONS; i++) {
+            gson.fromJson(json, type);
+        }
+        long elapsed = System.nanoTime() - start;
+        long allocated = allocatedBytes() - startBytes;
+        return new Result(ITERATIONS * 1e9 / elapsed, startBytes < 0 ? -1 : allocated / ITERATIONS);
+    }
+
+    /**
+     * @return bytes allocated by this thread so far, or -1 if the JVM can't tell us
+     */
+    private static long allocatedBytes() {
+        java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        if (bean instanceof com.sun.management.ThreadMXBean) {
+            return ((com.sun.management.ThreadMXBean) bean).getThreadAllocatedBytes(Thread.currentThread().getId());
+        }
+        return -1;
+    }
+
+    /**
+     * The converter as it was configured before the streaming adapters
+     */
+    private static Gson reflectiveGson() {
+        RuntimeTypeAdapterFactory<User> typeFactory = RuntimeTypeAdapterFactory
+                .of(User.class, "role", false)
+                .registerSubtype(Student.class, "s")
+                .registerSubtype(Tutor.class, "t")
+                .registerSubtype(Admin.class, "a");
+        return new GsonBuilder()
+                .registerTypeAdapterFactory(typeFactory)
+                .enableComplexMapKeySerialization()
+                .setDateFormat(DateFormat.LONG)
+                .setFieldNamingPolicy(FieldNamingPolicy.UPPER_CAMEL_CASE)
+                .setVersion(1.0)
+                .create();
+    }
+
+    private static String threadJson(int messages) {
+        String me = UUID.randomUUID().toString();
+        String them = UUID.randomUUID().toString();
+        StringBuilder json = new StringBuilder();
+        json.append("{\"id\":\"").append(UUID.randomUUID()).append("\",")
+                .append("\"recipient\":{\"id\":\"").append(them).append("\",\"first_name\":\"Ada\",\"last_name\":\"Lovelace\"},")
+                .append("\"state\":\"a\",\"message_count\":").append(messages).append(",\"messages\":[");
+        for (int i = 0; i < messages; i++) {
+            if (i > 0) {
+                json.append(',');
+            }
+            json.append("{\"id\":\"").append(UUID.randomUUID())
+                    .append("\",\"sender_id\":\"").append(i % 2 == 0 ? me : them)
+                    .append("\",\"timestamp\":\"2019-01-").append(10 + i % 20).append("T12:").append(10 + i % 50).append(":00.000000+00:00\"")
+                    .append(",\"message\":\"Message number ").append(i).append(", could we move the session to Thursday?\"")
+                    .append(",\"state\":\"").append(i < messages - 5 ? "d" : "s").append("\"}");
+        }
+        return json.append("]}").toString();
+    }
+
+    private static String tutorsJson(int tutors) {
+        StringBuilder json = new StringBuilder("[");
+        for (int i = 0; i < tutors; i++) {
+            if (i > 0) {
+                json.append(',');
+            }
+            json.append("{\"id\":\"").append(UUID.randomUUID()).append("\",\"role\":\"t\"")
+                    .append(",\"first_name\":\"Tutor\",\"last_name\":\"Number ").append(i).append('"')
+                    .append(",\"email\":\"tutor").append(i).append("@example.com\"")
+                    .append(",\"gender\":\"").append(i % 2 == 0 ? "m" : "f").append('"')
+                    .append(",\"location\":\"Southampton\",\"bio\":\"I have been teaching maths and physics for ").append(i % 10).append(" years.\"")
+                    .append(",\"price\":").append(15 + i % 20).append(".5,\"status\":true,\"revision\":\"2019-01-01T00:00:00\",\"reviewed_at\":null")
+                    .append(",\"subjects\":[{\"id\":\"").append(UUID.randomUUID()).append("\",\"name\":\"Maths\"},{\"id\":\"")
+                    .append(UUID.randomUUID()).append("\",\"name\":\"Physics\"}]}");
+        }
+        return json.append(']').toString();
+    }
+
+    private static class Result {
+        final double opsPerSecond;
+        final long bytesPerOp;
+
+        Result(double opsPerSecond, long bytesPerOp) {
+            this.opsPerSecond = opsPerSecond;
+            this.bytesPerOp = bytesPerOp;
+        }
+    }
+}
@@ -0,0 +1,395 @@
+package com.comp6239.Backend.Search;
+
+import com.comp6239.Backend.Model.Subject;
+import com.comp6239.Backend.Model.Tutor;
+import com.comp6239.Backend.Model.TutorFacets;
+
+import org.junit.Test;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Random;
+import java.util.UUID;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assume.assumeTrue;
+
+/**
+ * Compares searching 50k tutors with the index against scanning every tutor's words, as a refinement of a query
+ * would otherwise have to, for the queries a student types on their way to "maths southampton".
+ * Also compares the first page of tutors nearest a student against sorting every tutor by distance, and times the
+ * facets behind the price and subject filters. The timing tests only run when the benchmarks system property is set,
+ * see testOptions in build.gradle.
+ */
+public class TutorIndexBenchmark {
+    private static final int TUTORS = 50000;
+    private static final int WARMUP = 200;
+    private static final int ITERATIONS = 1000;
+    private static final int BUILD_SCANS = 20;
+
+    private static final String[] FIRST_NAMES = {"Ada", "Alan", "Grace", "Edsger", "Barbara", "Donald", "Margaret",
+            "Tim", "Frances", "John", "Radia", "Ken", "Hedy", "Dennis", "Karen", "Niklaus"};
+    private static final String[] LAST_NAMES = {"Lovelace", "Turing", "Hopper", "Dijkstra", "Liskov", "Knuth",
+            "Hamilton", "Berners-Lee", "Allen", "McCarthy", "Perlman", "Thompson", "Lamarr", "Ritchie", "Jones", "Wirth"};
+    private static final String[] LOCATIONS = {"Southampton", "Winchester", "Portsmouth", "London", "Bristol",
+            "Oxford", "Cambridge", "Bath", "Salisbury", "Bournemouth"};
+    private static final String[] SUBJECTS = {"Maths", "Further Maths", "Physics", "Chemistry", "Biology", "English",
+            "French", "German", "History", "Geography", "Computer Science", "Music", "Economics", "Latin"};
+    private static final String[] BIO_WORDS = {"teaching", "years", "experience", "GCSE", "A-level", "degree",
+            "university", "patient", "friendly", "exam", "revision", "online", "weekends", "evenings", "graduate",
+            "mathematics", "student", "qualified", "teacher", "tutor", "school", "college", "primary", "secondary"};
+
+    private static final List<Tutor> ALL = tutors(TUTORS);
+    private static final Map<Tutor, Integer> POSITIONS = new IdentityHashMap<>();
+
+    static {
+        for (int i = 0; i < ALL.size(); i++) {
+            POSITIONS.put(ALL.get(i), i);
+        }
+    }
+
+    //Southampton, tutors are spread over southern England
+    private static final double LATITUDE = 50.9097;
+    private static final double LONGITUDE = -1.4044;
+    private static final int PAGE = 20;
+
+    private static final String[] QUERIES = {"m", "ma", "mat", "math", "maths", "maths s", "maths so",
+            "maths southampton"};
+
+    @Test
+    public void matchesScan() {
+        TutorIndex index = TutorIndex.build(ALL);
+        assertEquals(TUTORS, index.size());
+        for (String query : QUERIES) {
+            assertEquals(query, scan(ALL, query, null, null, null), index.search(query, null, null, null));
+        }
+        assertEquals(scan(ALL, "ada", "south", 20.0, 30.0), index.search("ada", "south", 20.0, 30.0));
+        assertEquals(scan(ALL, null, null, null, 15.0), index.search(null, null, null, 15.0));
+        assertEquals(ALL, index.search("", null, null, null));
+        assertTrue(index.search("zzz", null, null, null).isEmpty());
+        //Only in bios
+        assertTrue(index.search("qualified", null, null, null).isEmpty());
+
+        BitSet maths = index.match("maths", null, null, null);
+        List<Tutor> all = index.tutorsOf(maths);
+        assertEquals(all.subList(0, PAGE), index.tutorsOf(maths, 0, PAGE));
+        assertEquals(all.subList(PAGE * 50, PAGE * 51), index.tutorsOf(maths, PAGE * 50, PAGE));
+        assertEquals(all.subList(all.size() - 5, all.size()), index.tutorsOf(maths, all.size() - 5, PAGE));
+        assertTrue(index.tutorsOf(maths, all.size(), PAGE).isEmpty());
+    }
+
+    @Test
+    public void nearestMatchesSort() {
+        TutorIndex index = TutorIndex.build(ALL);
+        BitSet everyone = index.match(null, null, null, null);
+        List<Tutor> sorted = sortByDistance(ALL);
+        assertEquals(sorted.subList(0, PAGE), index.byDistance(everyone, LATITUDE, LONGITUDE, 0, PAGE));
+        assertEquals(sorted.subList(PAGE * 50, PAGE * 51),
+                index.byDistance(everyone, LATITUDE, LONGITUDE, PAGE * 50, PAGE));
+        assertEquals(sorted, index.byDistance(everyone, LATITUDE, LONGITUDE, 0, Integer.MAX_VALUE));
+
+        BitSet maths = index.match("maths", null, 20.0, 30.0);
+        assertEquals(sortByDistance(index.tutorsOf(maths)).subList(0, PAGE),
+                index.byDistance(maths, LATITUDE, LONGITUDE, 0, PAGE));
+
+        //Tutors without a position come last
+        List<Tutor> some = new ArrayList<>(ALL.subList(0, 10));
+        Tutor nowhere = new Tutor();
+        some.add(0, nowhere);
+        TutorIndex small = TutorIndex.build(some);
+        List<Tutor> page = small.byDistance(small.match(null, null, null, null), LATITUDE, LONGITUDE, 0, 11);
+        assertEquals(nowhere, page.get(10));
+    }
+
+    @Test
+    public void nearest() {
+        assumeTrue("Run with -Pbenchmarks", Boolean.getBoolean("benchmarks"));
+        TutorIndex index = TutorIndex.build(ALL);
+        BitSet everyone = index.match(null, null, null, null);
+        for (int i = 0; i < WARMUP; i++) {
+            index.byDistance(everyone, LATITUDE, LONGITUDE, 0, PAGE);
+        }
+        for (int i = 0; i < WARMUP / 20; i++) {
+            sortByDistance(ALL);
+        }
+        long start = System.nanoTime();
+        for (int i = 0; i < ITERATIONS; i++) {
+            index.byDistance(everyone, LATITUDE, LONGITUDE, 0, PAGE);
+        }
+        double indexed = (System.nanoTime() - start) / 1e3 / ITERATIONS;
+        start = System.nanoTime();
+        for (int i = 0; i < ITERATIONS / 10; i++) {
+            sortByDistance(ALL);
+        }
+        double sorted = (System.nanoTime() - start) / 1e3 / (ITERATIONS / 10);
+        assertTrue(String.format("nearest %d of %d: buckets %.1f us, sort %.1f us", PAGE, TUTORS, indexed, sorted),
+                indexed < sorted);
+    }
+
+    @Test
+    public void facetsMatchScan() {
+        TutorIndex index = TutorIndex.build(ALL);
+        List<String> physics = Collections.singletonList(subjectId("Physics").toString());
+        TutorFacets facets = index.facets("ada", null, 20.0, 30.0, physics);
+
+        List<Tutor> others = scan(ALL, "ada", null, null, null);
+        List<Tutor> forPrices = teaching(others, "Physics");
+        List<Tutor> forSubjects = scan(ALL, "ada", null, 20.0, 30.0);
+        assertEquals(teaching(forSubjects, "Physics").size(), facets.getCount());
+
+        //Every tutor teaching physics, whatever their price, in buckets of whole pounds
+        int bucketed = 0;
+        double low = Double.MAX_VALUE, high = 0;
+        for (Tutor tutor : forPrices) {
+            low = Math.min(low, tutor.getPrice());
+            high = Math.max(high, tutor.getPrice());
+        }
+        TutorFacets.PriceBucket[] prices = facets.getPrices();
+        assertEquals(Math.floor(low), prices[0].getLow(), 0);
+        assertEquals(Math.ceil(high), prices[prices.length - 1].getHigh(), 0);
+        for (TutorFacets.PriceBucket bucket : prices) {
+            bucketed += bucket.getCount();
+        }
+        assertEquals(forPrices.size(), bucketed);
+
+        //Every subject of the tutors priced 20-30, whether or not they teach physics
+        Map<String, Integer> counts = new HashMap<>();
+        for (Tutor tutor : forSubjects) {
+            for (String name : taughtBy(tutor)) {
+                counts.put(name, counts.containsKey(name) ? counts.get(name) + 1 : 1);
+            }
+        }
+        assertEquals(counts.size(), facets.getSubjects().length);
+        int last = Integer.MAX_VALUE;
+        for (TutorFacets.SubjectCount subject : facets.getSubjects()) {
+            assertEquals(subject.getName(), counts.get(subject.getName()).intValue(), subject.getCount());
+            assertEquals(subjectId(subject.getName()), subject.getId());
+            assertTrue(subject.getCount() <= last);
+            last = subject.getCount();
+        }
+
+        TutorFacets none = index.facets("zzz", null, null, null, null);
+        assertEquals(0, none.getCount());
+        assertArrayEquals(new TutorFacets.PriceBucket[0], none.getPrices());
+        assertArrayEquals(new TutorFacets.SubjectCount[0], none.getSubjects());
+    }
+
+    /**
+     * All three facets together should still cost less than the one scan a refinement would otherwise need
+     */
+    @Test
+    public void facets() {
+        assumeTrue("Run with -Pbenchmarks", Boolean.getBoolean("benchmarks"));
+        TutorIndex index = TutorIndex.build(ALL);
+        List<String> physics = Collections.singletonList(subjectId("Physics").toString());
+        for (int i = 0; i < WARMUP; i++) {
+            index.facets("maths", null, 20.0, 30.0, physics);
+        }
+        for (int i = 0; i < WARMUP / 20; i++) {
+            scan(ALL, "maths", null, 20.0, 30.0);
+        }
+        long start = System.nanoTime();
+        for (int i = 0; i < ITERATIONS; i++) {
+            index.facets("maths", null, 20.0, 30.0, physics);
+        }
+        double faceted = (System.nanoTime() - start) / 1e3 / ITERATIONS;
+        start = System.nanoTime();
+        for (int i = 0; i < ITERATIONS / 10; i++) {
+            scan(ALL, "maths", null, 20.0, 30.0);
+        }
+        double scanned = (System.nanoTime() - start) / 1e3 / (ITERATIONS / 10);
+        assertTrue(String.format("facets of \"maths\", 20-30, physics: %.1f us, scan %.1f us", faceted, scanned),
+                faceted < scanned);
+    }
+
+    /**
+     * The index is built once per fetched list, so it should pay for itself within BUILD_SCANS refinements
+     */
+    @Test
+    public void build() {
+        assumeTrue("Run with -Pbenchmarks", Boolean.getBoolean("benchmarks"));
+        for (int i = 0; i < 3; i++) {
+            TutorIndex.build(ALL);
+            scan(ALL, "maths", null, null, null);
+        }
+        long startBytes = allocatedBytes();
+        long start = System.nanoTime();
+        TutorIndex.build(ALL);
+        long elapsed = System.nanoTime() - start;
+        long allocated = allocatedBytes() - startBytes;
+        start = System.nanoTime();
+        scan(ALL, "maths", null, null, null);
+        long scanned = System.nanoTime() - start;
+        assertTrue(String.format("build (%d tutors): %.1f ms, %d kB allocated, scan %.1f ms", TUTORS, elapsed / 1e6,
+                startBytes < 0 ? -1 : allocated / 1024, scanned / 1e6), elapsed < scanned * BUILD_SCANS);
+    }
+
+    @Test
+    public void queries() {
+        assumeTrue("Run with -Pbenchmarks", Boolean.getBoolean("benchmarks"));
+        TutorIndex index = TutorIndex.build(ALL);
+        for (String query : QUERIES) {
+            run("\"" + query + "\"", index, query, null, null, null);
+        }
+        run("\"maths\" in south, 20-30", index, "maths", "south", 20.0, 30.0);
+    }
+
+    private static void run(String name, TutorIndex index, String query, String location, Double low, Double high) {
+        int matches = 0;
+        for (int i = 0; i < WARMUP; i++) {
+            matches = index.match(query, location, low, high).cardinality();
+        }
+        for (int i = 0; i < WARMUP / 20; i++) {
+            scan(ALL, query, location, low, high);
+        }
+        long start = System.nanoTime();
+        for (int i = 0; i < ITERATIONS; i++) {
+            index.match(query, location, low, high);
+        }
+        double indexed = (System.nanoTime() - start) / 1e3 / ITERATIONS;
+        start = System.nanoTime();
+        for (int i = 0; i < ITERATIONS / 10; i++) {
+            scan(ALL, query, location, low, high);
+        }
+        double scanned = (System.nanoTime() - start) / 1e3 / (ITERATIONS / 10);
+        assertTrue(String.format("%s: %d matches, index %.1f us, scan %.1f us", name, matches, indexed, scanned),
+                indexed < scanned);
+    }
+
+    /**
+     * The search the index answers, done the slow way
+     */
+    private static List<Tutor> scan(List<Tutor> tutors, String query, String location, Double low, Double high) {
+        List<String> words = new ArrayList<>();
+        TutorIndex.tokenize(query, words);
+        List<Tutor> matched = new ArrayList<>();
+        List<String> tokens = new ArrayList<>();
+        for (Tutor tutor : tutors) {
+            tokens.clear();
+            TutorIndex.tokenize(tutor.getFirstName(), tokens);
+            TutorIndex.tokenize(tutor.getLastName(), tokens);
+            TutorIndex.tokenize(tutor.getLocation(), tokens);
+            for (Subject subject : tutor.getSubjects()) {
+                TutorIndex.tokenize(subject.getName(), tokens);
+            }
+            boolean matches = true;
+            for (String word : words) {
+                boolean found = false;
+                for (String token : tokens) {
+                    if (token.startsWith(word)) {
+                        found = true;
+                        break;
+                    }
+                }
+                matches &= found;
+            }
+            if (location != null) {
+                matches &= tutor.getLocation().toLowerCase(Locale.ROOT).contains(location);
+            }
+            if (low != null) {
+                matches &= tutor.getPrice() >= low;
+            }
+            if (high != null) {
+                matches &= tutor.getPrice() <= high;
+            }
+            if (matches) {
+                matched.add(tutor);
+            }
+        }
+        return matched;
+    }
+
+    private static List<Tutor> teaching(List<Tutor> tutors, String subject) {
+        List<Tutor> teaching = new ArrayList<>();
+        for (Tutor tutor : tutors) {
+            if (taughtBy(tutor).contains(subject)) {
+                teaching.add(tutor);
+            }
+        }
+        return teaching;
+    }
+
+    /**
+     * @return The names of the subjects a tutor teaches, once each
+     */
+    private static List<String> taughtBy(Tutor tutor) {
+        List<String> names = new ArrayList<>();
+        for (Subject subject : tutor.getSubjects()) {
+            if (!names.contains(subject.getName())) {
+                names.add(subject.getName());
+            }
+        }
+        return names;
+    }
+
+    private static UUID subjectId(String name) {
+        return UUID.nameUUIDFromBytes(name.getBytes());
+    }
+
+    /**
+     * Sorts by distance the way the index would without buckets, ties in the order the index was built with
+     */
+    private static List<Tutor> sortByDistance(List<Tutor> tutors) {
+        final Map<Tutor, Double> distances = new IdentityHashMap<>();
+        for (Tutor tutor : tutors) {
+            double[] centre = Geohash.decode(tutor.getGeohash());
+            distances.put(tutor, Geohash.distanceKm(LATITUDE, LONGITUDE, centre[0], centre[1]));
+        }
+        List<Tutor> sorted = new ArrayList<>(tutors);
+        Collections.sort(sorted, new Comparator<Tutor>() {
+            @Override
+            public int compare(Tutor a, Tutor b) {
+                int byDistance = Double.compare(distances.get(a), distances.get(b));
+                return byDistance != 0 ? byDistance : POSITIONS.get(a) - POSITIONS.get(b);
+            }
+        });
+        return sorted;
+    }
+
+    /**
+     * @return bytes allocated by this thread so far, or -1 if the JVM can't tell us
+     */
+    private static long allocatedBytes() {
+        java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        if (bean instanceof com.sun.management.ThreadMXBean) {
+            return ((com.sun.management.ThreadMXBean) bean).getThreadAllocatedBytes(Thread.currentThread().getId());
+        }
+        return -1;
+    }
+
+    private static List<Tutor> tutors(int count) {
+        Random random = new Random(6239);
+        List<Tutor> tutors = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            Tutor tutor = new Tutor();
+            tutor.setFirstName(FIRST_NAMES[random.nextInt(FIRST_NAMES.length)]);
+            tutor.setLastName(LAST_NAMES[random.nextInt(LAST_NAMES.length)]);
+            tutor.setLocation(LOCATIONS[random.nextInt(LOCATIONS.length)]);
+            StringBuilder bio = new StringBuilder();
+            for (int j = 0; j < 12; j++) {
+                bio.append(BIO_WORDS[random.nextInt(BIO_WORDS.length)]).append(' ');
+            }
+            tutor.setBio(bio.toString());
+            tutor.setPrice(10 + random.nextInt(40) + 0.5 * random.nextInt(2));
+            tutor.setGeohash(Geohash.encode(50 + 2 * random.nextDouble(), -4 + 5 * random.nextDouble(), 6));
+            Subject[] subjects = new Subject[1 + random.nextInt(3)];
+            for (int j = 0; j < subjects.length; j++) {
+                subjects[j] = new Subject(SUBJECTS[random.nextInt(SUBJECTS.length)]);
+                subjects[j].setId(subjectId(subjects[j].getName()));
+            }
+            tutor.setSubjects(subjects);
+            tutors.add(tutor);
+        }
+        return tutors;
+    }
+}
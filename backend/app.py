@@ -116,7 +116,8 @@ class App:
                 raise tornado.web.HTTPError(status_code=404)
 
         routes.append((r"[\w\W]*", DefaultController))
-        return TornadoWebApp(routes)
+        # Pings let the server drop sockets whose client went away without closing them
+        return TornadoWebApp(routes, websocket_ping_interval=30, websocket_ping_timeout=90)
 
     def _init_database(self, host: str, port: int, user: str, password: str, db: str = "comp6239"):
 
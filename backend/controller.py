@@ -2,8 +2,11 @@ import http.client
 import json
 import logging
 import re
+import zlib
+from datetime import datetime
 from json import JSONDecodeError
 from typing import Dict, Any, Optional, Union, List
+from uuid import UUID
 
 from tornado.log import gen_log
 from tornado.web import RequestHandler, HTTPError
@@ -13,6 +16,18 @@ from backend.exc import BadRequestException
 from backend.models import User
 from backend.utils import enum
 from backend.utils.json import dumps
+from backend.utils.regex import uuid as uuid_regex
+
+_uuid_regex = re.compile(uuid_regex)
+
+# Upper bound on the limit parameter of cursor paged endpoints
+MAX_PAGE_LIMIT = 100
+
+# Format of the since parameter, the watermark returned by a previous sync
+WATERMARK_FORMAT = "%Y-%m-%dT%H:%M:%S.%f"
+
+# Value of the compress query parameter that asks for payloads as a zlib stream, for clients without permessage-deflate
+ZLIB_STREAM = "zlib-stream"
 
 
 class Controller(RequestHandler):
@@ -99,6 +114,19 @@ class Controller(RequestHandler):
     def get_valid_fields(self, *fields) -> Dict:
         return {k: v for k, v in self.json_args.items() if k in fields}
 
+    def merge_position(self, user: User):
+        """
+        Sets the user's latitude and longitude if either was sent, both null clears them
+        """
+        if "latitude" not in self.json_args and "longitude" not in self.json_args:
+            return
+        latitude = self.json_args.get("latitude")
+        longitude = self.json_args.get("longitude")
+        if latitude is None and longitude is None:
+            user.set_position(None, None)
+            return
+        user.set_position(*parse_position(latitude, longitude))
+
     def _parse_common_options(self):
         self.options = {"page": 1, "per_page": 50}
         for k in ["page", "per_page"]:
@@ -108,6 +136,33 @@ class Controller(RequestHandler):
                 except Exception:
                     raise BadRequestException("Invalid value for parameter {}".format(k))
 
+        for k in ["before", "after"]:
+            self.options[k] = None
+            if k in self.request.arguments:
+                value = self.get_query_argument(k)
+                if not _uuid_regex.fullmatch(value):
+                    raise BadRequestException("Invalid value for parameter {}".format(k))
+                self.options[k] = UUID(value)
+
+        self.options["limit"] = None
+        if "limit" in self.request.arguments:
+            try:
+                limit = int(self.get_query_argument("limit"))
+            except ValueError:
+                raise BadRequestException("Invalid value for parameter limit")
+            if limit < 1:
+                raise BadRequestException("Invalid value for parameter limit")
+            self.options["limit"] = min(limit, MAX_PAGE_LIMIT)
+
+        self.options["summary"] = self.get_query_argument("summary", "false").lower() in ("true", "1")
+
+        self.options["since"] = None
+        if "since" in self.request.arguments:
+            try:
+                self.options["since"] = datetime.strptime(self.get_query_argument("since"), WATERMARK_FORMAT)
+            except ValueError:
+                raise BadRequestException("Invalid value for parameter since")
+
         self.options["search"] = self.get_argument("search", "")
         self.options["filter"] = parse_filter_option(self.get_query_argument("filter", ""))
 
@@ -123,6 +178,21 @@ class Controller(RequestHandler):
                     fields[pieces[0]] = pieces[1]
         self.options["sort"] = fields
 
+    def cursor_options(self, default_limit: Optional[int] = None) -> Dict[str, Any]:
+        """
+        Keyword arguments for the cursor paged model queries, from the before, after and limit parameters.
+        Without a limit, default_limit is used if given. Otherwise a cursor gets a page of MAX_PAGE_LIMIT, and a
+        request with neither gets every row, as the endpoints returned before they were paged
+        """
+        limit = self.options["limit"] or default_limit
+        if limit is None and (self.options["before"] is not None or self.options["after"] is not None):
+            limit = MAX_PAGE_LIMIT
+        return {
+            "before": self.options["before"],
+            "after": self.options["after"],
+            "limit": limit
+        }
+
     def _request_summary(self):
         return "{} {} ({})".format(self.request.method, self.request.uri, self.remote_ip)
 
@@ -145,19 +215,23 @@ class OpCode(enum.Enum):
 
 class Payload:
 
-    def __init__(self, op_code: OpCode, data: Optional[dict], event: Optional[str] = None):
+    def __init__(self, op_code: OpCode, data: Optional[dict], event: Optional[str] = None, seq: Optional[int] = None):
         self.op = op_code
         self.data = data
         self.event = event
+        self.seq = seq
         if self.event is not None:
             self.event = self.event.upper()
 
     def serialise(self) -> bytes:
+        # The event and sequence go before the data, so clients decoding as they read know the data's type
         data = {
             "o": self.op.value,
-            "d": self.data,
             "e": self.event
         }
+        if self.seq is not None:
+            data["s"] = self.seq
+        data["d"] = self.data
         payload = dumps(data)
         return payload.encode()
 
@@ -213,26 +287,74 @@ class WebSocketController(WebSocketHandler):
 
     def __init__(self, application, request, **kwargs):
         super().__init__(application, request, **kwargs)
+        self.compressor = None
+        self.decompressor = None
+        if self.get_query_argument("compress", None) == ZLIB_STREAM:
+            self.compressor = zlib.compressobj()
+            self.decompressor = zlib.decompressobj()
+        # Payload bytes before and after zlib-stream compression, for measuring what it saves
+        self.raw_bytes_in = 0
+        self.raw_bytes_out = 0
+        self.frame_bytes_in = 0
+        self.frame_bytes_out = 0
 
     def check_origin(self, origin):
         if __debug__:
             return True
         return super().check_origin(origin)
 
+    def get_compression_options(self):
+        # Negotiate permessage-deflate with clients that offer it
+        return {}
+
     def write_message(self, message: Union[bytes, str, Dict[str, Any]], binary=False):
         if isinstance(message, (dict, list)):
             message = dumps(message)
+        if isinstance(message, str):
+            message = message.encode()
+        self.raw_bytes_out += len(message)
+        if self.compressor is not None:
+            # Flushed to a byte boundary so the client can inflate each frame as it arrives,
+            # while the dictionary carries over so repeated field names cost next to nothing
+            message = self.compressor.compress(message) + self.compressor.flush(zlib.Z_SYNC_FLUSH)
+            binary = True
+        self.frame_bytes_out += len(message)
         super().write_message(message, binary)
 
+    def decode_message(self, message: Union[bytes, str]) -> str:
+        """
+        A received frame as text, inflating binary frames from a client using zlib-stream
+        """
+        binary = isinstance(message, bytes)
+        if not binary:
+            message = message.encode()
+        self.frame_bytes_in += len(message)
+        if binary and self.decompressor is not None:
+            try:
+                message = self.decompressor.decompress(message)
+            except zlib.error as e:
+                raise ValueError(e)
+        self.raw_bytes_in += len(message)
+        return message.decode()
+
+    def on_close(self):
+        connection = self.ws_connection
+        # Tornado counts the bytes through permessage-deflate, when it was negotiated
+        wire_in = getattr(connection, "_wire_bytes_in", 0) or self.frame_bytes_in
+        wire_out = getattr(connection, "_wire_bytes_out", 0) or self.frame_bytes_out
+        gen_log.info("Closed websocket from {}: sent {} B as {} B, received {} B as {} B".format(
+            self.request.remote_ip, self.raw_bytes_out, wire_out, self.raw_bytes_in, wire_in
+        ))
+
     def send_payload(self, payload: Payload):
         try:
             self.write_message(payload.serialise())
         except WebSocketClosedError:
             pass
 
-    def send_opcode(self, opcode: OpCode):
+    def send_opcode(self, opcode: OpCode, data: Optional[dict] = None):
         try:
-            payload = Payload(opcode, {})
+            payload = Payload(opcode, data if data is not None else {})
             self.write_message(payload.serialise())
         except WebSocketClosedError:
             pass
@@ -242,6 +364,17 @@ class WebSocketController(WebSocketHandler):
         return self.close_code is not None and self.close_reason is not None
 
 
+def parse_position(latitude: Any, longitude: Any):
+    try:
+        latitude = float(latitude)
+        longitude = float(longitude)
+    except (TypeError, ValueError):
+        raise BadRequestException("Invalid position: latitude and longitude must be numbers")
+    if not -90 <= latitude <= 90 or not -180 <= longitude <= 180:
+        raise BadRequestException("Invalid position: latitude must be in [-90, 90] and longitude in [-180, 180]")
+    return latitude, longitude
+
+
 def parse_multi_field_option(string: str, arg_separator: str = "|", param_separator: str = ":") -> Dict[str, Any]:
     """
     Parse a multi-field value into a key=>value pairs
@@ -1,6 +1,7 @@
 from uuid import UUID
 
 from backend.controller import Controller
+from backend.controllers.messaging import notify_tutor_reviewed
 from backend.exc import NotFoundException
 from backend.models import UserRole
 from backend.models.tutor import get_unapproved_tutors, get_profile_by_tutor_id
@@ -43,3 +44,4 @@ class TutorApprovalController(Controller):
 
             s.add(tutor)
             s.commit()
+        notify_tutor_reviewed(tutor_id, approved)
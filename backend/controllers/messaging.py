@@ -3,19 +3,24 @@ import re
 import time
 import uuid
 from asyncio import Future
+from datetime import datetime
+from collections import deque
 from http import HTTPStatus
-from typing import Union, Dict, Coroutine, List, Optional
+from typing import Union, Dict, Coroutine, List, Optional, Deque, Tuple, Set
 from uuid import UUID
 
+from sqlalchemy import func
 from sqlalchemy.orm import Session
 
 from backend import log
-from backend.controller import WebSocketController, Payload, OpCode, Controller
+from backend.controller import WebSocketController, Payload, OpCode, Controller, WATERMARK_FORMAT
 from backend.database import sql_session
 from backend.exc import NotFoundException, AccessDeniedException, BadRequestException
 from backend.models import Message, UserRole, MessageThread, ThreadState, MessageState
 from backend.models.messages import get_unread_thread_count, get_recent_threads, get_thread_by_user_ids, \
-    get_thread_by_id, get_recent_messages_by_thread
+    get_thread_by_id, get_recent_messages_by_thread, get_messages_by_thread, get_last_messages, get_unread_counts, \
+    get_message_by_id, get_thread_changes, mark_messages
+from backend.models.tutor import get_unapproved_tutors
 from backend.models.user import get_user_by_id
 from backend.oauth import server, protected
 from backend.utils import str_to_int
@@ -23,6 +28,22 @@ from backend.utils.regex import uuid as uuid_regex
 
 _uuid_regex = re.compile(uuid_regex)
 
+# Messages returned by GET /thread/<id> when no limit is given, as many as its page_size defaults to
+DEFAULT_MESSAGE_LIMIT = 10
+
+# Messages that can be sent in one batch
+MAX_BATCH_SIZE = 20
+
+# Message IDs that can be acknowledged in one set of receipts
+MAX_RECEIPTS = 100
+
+# Dispatches kept per user for clients resuming a dropped connection
+REPLAY_BUFFER_SIZE = 100
+
+# Dispatches a socket may send in a burst, and per second after that
+DISPATCH_BURST = 20
+DISPATCH_RATE = 2.0
+
 connect_payload = Payload(
     OpCode.HELLO,
     {}
@@ -35,8 +56,26 @@ class MessageException(Exception):
         self.message = message
 
 
+def acknowledge_message(message: Message, sender_id: UUID):
+    MessageSocket.broadcast(Payload.dispatch(
+        "MESSAGE_SENT",
+        {
+            "message_id": message.id,
+            "thread_id": message.thread_id,
+            "timestamp": message.created_at,
+            "state": message.state
+        }),
+        sender_id
+    )
+
+
 @sql_session
-def send_message(sender_id: UUID, recipient_id: UUID, message: str, session: Session) -> Optional[Message]:
+def send_message(sender_id: UUID, recipient_id: UUID, message: str, session: Session,
+                 message_id: Optional[UUID] = None) -> Optional[Message]:
+    """
+    Stores and delivers a message.
+    Clients may choose the message's ID so a retried send is stored once, a message with that ID is acknowledged again
+    """
     sender = get_user_by_id(sender_id, session)
     recipient = get_user_by_id(recipient_id, session)
 
@@ -45,9 +84,19 @@ def send_message(sender_id: UUID, recipient_id: UUID, message: str, session: Ses
         raise MessageException("Message length must not be 0")
 
     if not recipient:
-        log.info("Not sending message to {} - does not exist".format(recipient.id))
+        log.info("Not sending message to {} - does not exist".format(recipient_id))
         raise MessageException("Recipient does not exist")
 
+    if message_id is not None:
+        existing = get_message_by_id(message_id, session=session)
+        if existing is not None:
+            if existing.sender_id != sender.id:
+                log.warning("Not sending message {} - ID belongs to another user's message".format(message_id))
+                raise MessageException("Message ID already in use")
+            log.info("Message {} already sent, acknowledging again".format(message_id))
+            acknowledge_message(existing, sender.id)
+            return existing
+
     if recipient.role == sender.role:
         log.info("Not sending message to {} - cannot send message to users of same role ({})".format(
             recipient.id, recipient.role
@@ -85,12 +134,14 @@ def send_message(sender_id: UUID, recipient_id: UUID, message: str, session: Ses
             raise MessageException("Cannot send message, request has not been accepted!")
 
     message = Message(
-        id=uuid.uuid1(int(time.time())),
+        id=message_id if message_id is not None else uuid.uuid1(int(time.time())),
         sender_id=sender.id,
         thread_id=thread.id,
         message=message
     )
     thread.state = MessageState.SENT
+    # Set even if the state hasn't changed, so syncing clients see the thread has a new message
+    thread.modified_at = func.now()
 
     session.add(message)
     session.commit()
@@ -101,9 +152,11 @@ def send_message(sender_id: UUID, recipient_id: UUID, message: str, session: Ses
     else:
         event_type = "MESSAGE"
 
+    acknowledge_message(message, sender.id)
+
     if not is_new_thread and thread.request_state != ThreadState.ALLOWED:
         log.info("Not broadcasting message")
-        return
+        return message
 
     MessageSocket.broadcast(
         Payload.dispatch(
@@ -124,23 +177,142 @@ def send_message(sender_id: UUID, recipient_id: UUID, message: str, session: Ses
         recipient.id
     )
     log.info("Sent message to {}".format(recipient.id))
-    MessageSocket.broadcast(Payload.dispatch(
-        "MESSAGE_SENT",
-        {
-            "message_id": message.id
-        }),
-        sender.id
-    )
     return message
 
 
+def parse_message_id(message_id: Optional[str]) -> Optional[UUID]:
+    """
+    The optional client chosen ID of a message being sent
+    """
+    if message_id is None:
+        return None
+    if not isinstance(message_id, str) or not _uuid_regex.match(message_id):
+        raise BadRequestException("ID was not a valid UUID")
+    return UUID(message_id)
+
+
+def parse_outgoing(data: Dict) -> List[Tuple[Optional[UUID], str]]:
+    """
+    The (id, message) pairs to send, either one message or a batch given as "messages".
+    A batch is checked in full before any of it is sent
+    """
+    if "messages" not in data:
+        if not isinstance(data.get("message"), str):
+            raise BadRequestException("Message not found")
+        return [(parse_message_id(data.get("id")), data["message"])]
+
+    batch = data["messages"]
+    if not isinstance(batch, list) or not batch:
+        raise BadRequestException("Messages must be a non-empty list")
+    if len(batch) > MAX_BATCH_SIZE:
+        raise BadRequestException("Cannot send more than {} messages at once".format(MAX_BATCH_SIZE))
+    outgoing = []
+    for item in batch:
+        if not isinstance(item, dict) or not isinstance(item.get("message"), str) or not item["message"]:
+            raise BadRequestException("Message not found")
+        outgoing.append((parse_message_id(item.get("id")), item["message"]))
+    return outgoing
+
+
+def parse_receipts(data: Dict) -> Dict[MessageState, List[UUID]]:
+    """
+    The IDs of messages delivered and read, from the optional "delivered" and "read" lists of a set of receipts.
+    A message read is also delivered, so it only needs to be in "read"
+    """
+    receipts = {}
+    total = 0
+    for key, state in (("delivered", MessageState.DELIVERED), ("read", MessageState.READ)):
+        ids = data.get(key, [])
+        if not isinstance(ids, list):
+            raise BadRequestException("{} must be a list".format(key.capitalize()))
+        receipts[state] = [parse_message_id(i) for i in ids]
+        total += len(ids)
+    if total == 0:
+        raise BadRequestException("No receipts given")
+    if total > MAX_RECEIPTS:
+        raise BadRequestException("Cannot acknowledge more than {} messages at once".format(MAX_RECEIPTS))
+    return receipts
+
+
+@sql_session
+def record_receipts(thread_id: UUID, reader_id: UUID, receipts: Dict[MessageState, List[UUID]],
+                    session: Session) -> bool:
+    """
+    Marks the messages in receipts, read last so a message in both lists ends up read.
+    Returns False if the thread doesn't exist or isn't the reader's
+    """
+    thread = get_thread_by_id(thread_id, session=session, lock_update=True)
+    if thread is None or reader_id not in (thread.student_id, thread.tutor_id):
+        return False
+    for state in (MessageState.DELIVERED, MessageState.READ):
+        mark_messages(thread, reader_id, receipts.get(state, []), state, session=session)
+    return True
+
+
+def summarise_threads(threads: List[MessageThread], user_id: UUID, session: Session) -> List[Dict]:
+    """
+    Thread list entries with only the newest message and the number of unread messages,
+    for lists that don't need the thread's history
+    """
+    thread_ids = [t.id for t in threads]
+    last_messages = get_last_messages(thread_ids, session=session)
+    unread_counts = get_unread_counts(thread_ids, user_id, session=session)
+
+    summaries = []
+    for thread in threads:
+        recipient = thread.get_recipient(user_id)
+        m = last_messages.get(thread.id)
+        summaries.append({
+            "id": thread.id,
+            "recipient": {
+                "id": recipient.id,
+                "first_name": recipient.first_name,
+                "last_name": recipient.last_name
+            },
+            "message_count": thread.message_count,
+            "unread_count": unread_counts.get(thread.id, 0),
+            "last_message": None if m is None else {
+                "id": m.id,
+                "sender_id": m.sender_id,
+                "timestamp": m.created_at,
+                "message": m.message,
+                "state": m.state
+            },
+            "state": thread.state
+        })
+    return summaries
+
+
+def thread_changes(user_column, user_id: UUID, states: List[ThreadState], since: datetime,
+                   session: Session) -> Dict:
+    """
+    The response to a thread list requested with since, the threads that changed as summaries
+    and the IDs of threads that left the list
+    """
+    watermark, changed, removed = get_thread_changes(user_column, user_id, states, since, session=session)
+    return {
+        "threads": summarise_threads(changed, user_id, session=session),
+        "removed": removed,
+        "watermark": watermark.strftime(WATERMARK_FORMAT)
+    }
+
+
 class MessageController(Controller):
     route = [r"/thread"]
 
     @protected(roles=[UserRole.STUDENT, UserRole.TUTOR])
     async def get(self):
         with self.app.db.session() as s:
-            threads = get_recent_threads(self.current_user.id, session=s, number=2)
+            options = self.cursor_options(default_limit=2)
+            threads = get_recent_threads(self.current_user.id, session=s, number=options["limit"],
+                                         before=options["before"], after=options["after"],
+                                         load_messages=not self.options["summary"])
+            if threads is None:
+                raise BadRequestException("Cursor does not exist")
+
+            if self.options["summary"]:
+                self.write(summarise_threads(threads, self.current_user.id, session=s))
+                return
 
             content = []
 
@@ -183,7 +355,8 @@ class MessageController(Controller):
             raise BadRequestException("To was not a valid UUID")
 
         try:
-            m = send_message(self.current_user.id, self.json_args["to"], self.json_args["message"])
+            m = send_message(self.current_user.id, self.json_args["to"], self.json_args["message"],
+                             message_id=parse_message_id(self.json_args.get("id")))
         except MessageException as e:
             raise BadRequestException(e.message)
 
@@ -239,9 +412,15 @@ class MessageThreadController(Controller):
             else:
                 recipient = get_user_by_id(thread.student_id)
 
-            page_size = str_to_int(self.get_query_argument("page_size", "10"))
-            page = str_to_int(self.get_query_argument("page", "0"))
-            messages = get_recent_messages_by_thread(thread_id, session=s, page_size=page_size, page=page)
+            if "page" in self.request.arguments or "page_size" in self.request.arguments:
+                page_size = str_to_int(self.get_query_argument("page_size", "10"))
+                page = str_to_int(self.get_query_argument("page", "0"))
+                messages = get_recent_messages_by_thread(thread_id, session=s, page_size=page_size, page=page)
+            else:
+                messages = get_messages_by_thread(thread_id, session=s,
+                                                  **self.cursor_options(default_limit=DEFAULT_MESSAGE_LIMIT))
+                if messages is None:
+                    raise BadRequestException("Cursor does not exist")
 
             self.write({
                 "id": thread.id,
@@ -263,8 +442,7 @@ class MessageThreadController(Controller):
 
     @protected(roles=[UserRole.STUDENT, UserRole.TUTOR])
     async def post(self, thread_id: UUID):
-        if "message" not in self.json_args:
-            raise BadRequestException("Message not found")
+        outgoing = parse_outgoing(self.json_args)
 
         thread = get_thread_by_id(thread_id)
         if thread is None:
@@ -276,12 +454,61 @@ class MessageThreadController(Controller):
         sender = get_user_by_id(self.current_user.id)
         recipient_id = thread.tutor_id if sender.id == thread.student_id else thread.student_id
         try:
-            send_message(sender.id, recipient_id, self.json_args["message"])
+            for message_id, message in outgoing:
+                send_message(sender.id, recipient_id, message, message_id=message_id)
         except MessageException as e:
             raise BadRequestException(e.message)
         return await self.get(thread_id)
 
 
+class MessageReceiptsController(Controller):
+    route = [r"/thread/(" + uuid_regex + ")/receipts"]
+
+    @protected(roles=[UserRole.STUDENT, UserRole.TUTOR])
+    async def post(self, thread_id: UUID):
+        receipts = parse_receipts(self.json_args)
+        if not record_receipts(thread_id, self.current_user.id, receipts):
+            raise NotFoundException()
+        self.set_status(HTTPStatus.NO_CONTENT)
+
+
+def notify_thread_state(thread: MessageThread):
+    """
+    Tells the tutor's devices a thread's request state changed, so it can leave or join their request list
+    """
+    MessageSocket.broadcast(Payload.dispatch(
+        "THREAD_STATE",
+        {
+            "thread_id": thread.id,
+            "state": thread.request_state
+        }),
+        thread.tutor_id
+    )
+
+
+def notify_tutor_awaiting_approval(tutor_id: UUID):
+    """
+    Tells admins a tutor's profile is waiting to be reviewed, or has changed while waiting
+    """
+    tutors = get_unapproved_tutors(tutor_id=tutor_id)
+    if not tutors:
+        return
+    MessageSocket.broadcast_to_admins(Payload.dispatch("TUTOR_AWAITING_APPROVAL", tutors[0].fields()))
+
+
+def notify_tutor_reviewed(tutor_id: UUID, approved: bool):
+    """
+    Tells admins a tutor has been reviewed, so it leaves their approval lists
+    """
+    MessageSocket.broadcast_to_admins(Payload.dispatch(
+        "TUTOR_REVIEWED",
+        {
+            "id": tutor_id,
+            "approved": approved
+        }
+    ))
+
+
 class MessageBlockRequestController(Controller):
     route = [r"/thread/(" + uuid_regex + ")/block"]
 
@@ -297,6 +524,7 @@ class MessageBlockRequestController(Controller):
 
             s.add(thread)
             s.commit()
+            notify_thread_state(thread)
         self.set_status(HTTPStatus.NO_CONTENT)
 
 
@@ -318,20 +546,88 @@ class MessageApproveRequestController(Controller):
 
             s.add(thread)
             s.commit()
+            notify_thread_state(thread)
         self.set_status(HTTPStatus.NO_CONTENT)
 
 
+class DispatchSession:
+    """
+    Numbers the dispatches sent to a user and keeps the most recent ones,
+    so a client that reconnects can resume from the last sequence number it saw.
+    Shared by all of the user's sockets.
+    """
+
+    def __init__(self):
+        self.id = uuid.uuid4()
+        self.seq = 0
+        self.buffer = deque(maxlen=REPLAY_BUFFER_SIZE)  # type: Deque[Payload]
+
+    def sequence(self, payload: Payload) -> Payload:
+        self.seq += 1
+        # Copied, the same payload may be broadcast to several users
+        payload = Payload(payload.op, payload.data, payload.event, seq=self.seq)
+        self.buffer.append(payload)
+        return payload
+
+    def replay_since(self, seq: int) -> Optional[List[Payload]]:
+        """
+        Dispatches sent after seq, or None if the session can't be resumed from seq
+        """
+        if seq > self.seq:
+            return None
+        if seq == self.seq:
+            return []
+        if not self.buffer or self.buffer[0].seq > seq + 1:
+            return None
+        return [p for p in self.buffer if p.seq > seq]
+
+
+class DispatchRateLimiter:
+    """
+    Token bucket limiting the dispatches a client can send, a burst of DISPATCH_BURST then DISPATCH_RATE per second
+    """
+
+    def __init__(self, burst: int = DISPATCH_BURST, rate: float = DISPATCH_RATE):
+        self.burst = burst
+        self.rate = rate
+        self.tokens = float(burst)
+        self.updated = time.monotonic()
+
+    def _refill(self):
+        now = time.monotonic()
+        self.tokens = min(self.burst, self.tokens + (now - self.updated) * self.rate)
+        self.updated = now
+
+    def take(self) -> bool:
+        self._refill()
+        if self.tokens < 1:
+            return False
+        self.tokens -= 1
+        return True
+
+    def retry_after(self) -> float:
+        """
+        Seconds until the next dispatch would be allowed
+        """
+        self._refill()
+        return max(0.0, (1 - self.tokens) / self.rate)
+
+
 class MessageSocket(WebSocketController):
     route = [r"/ws"]
     method_map = {}  # type: Dict[OpCode, Union[callable, Coroutine]]
     event_map = {}  # type: Dict[str, Union[callable, Coroutine]]
 
     client_maps = {}  # type: Dict[UUID, List[MessageSocket]]
+    sessions = {}  # type: Dict[UUID, DispatchSession]
+    # Admins who have identified since the server started, their events are sequenced even while they're offline
+    admin_ids = set()  # type: Set[UUID]
 
     def __init__(self, application, request, **kwargs):
         super().__init__(application, request, **kwargs)
         self._has_identified = False
         self.identify_task = None  # type: Optional[Future]
+        self.rate_limiter = DispatchRateLimiter()
 
     @property
     def has_identified(self) -> bool:
@@ -363,10 +659,25 @@ class MessageSocket(WebSocketController):
             [c.send_payload(payload) for u in cls.client_maps.values() for c in u]
             return
 
+        # Sequenced even if the user isn't connected right now, so they get it when they resume
+        if user_id in cls.sessions:
+            payload = cls.sessions[user_id].sequence(payload)
+
         if user_id not in cls.client_maps:
             return
         [c.send_payload(payload) for c in cls.client_maps[user_id]]
 
+    @classmethod
+    def broadcast_to_admins(cls, payload: Payload):
+        for user_id in list(cls.admin_ids):
+            cls.broadcast(payload, user_id)
+
+    @classmethod
+    def get_session(cls, user_id: UUID) -> DispatchSession:
+        if user_id not in cls.sessions:
+            cls.sessions[user_id] = DispatchSession()
+        return cls.sessions[user_id]
+
     def open(self, *args: str, **kwargs: str):
         self.send_payload(connect_payload)
         self.identify_task = asyncio.ensure_future(identify_timeout(self))
@@ -386,7 +697,7 @@ class MessageSocket(WebSocketController):
 
     async def on_message(self, message: Union[str, bytes]):
         try:
-            payload = Payload.deserialise(message)
+            payload = Payload.deserialise(self.decode_message(message))
             log.info("Received payload: '{}'".format(payload))
 
             if not self.has_identified and payload.op != OpCode.IDENTIFY:
@@ -399,6 +710,13 @@ class MessageSocket(WebSocketController):
                 self.close()
                 return
 
+            if payload.op == OpCode.DISPATCH and not self.rate_limiter.take():
+                retry_after = self.rate_limiter.retry_after()
+                log.info("Rate limiting {}, retry after {:.1f}s".format(self.current_user.id, retry_after))
+                self.send_opcode(OpCode.RATE_LIMITED, {"retry_after": retry_after})
+                self.close(OpCode.RATE_LIMITED.value)
+                return
+
             result = self.method_map[payload.op](self, payload)
             if result is not None:
                 await result
@@ -452,18 +770,40 @@ def identify(socket: MessageSocket, payload: Payload):
         return
 
     user = r.user
-    if user.role == UserRole.ADMIN:
-        socket.send_opcode(OpCode.INVALID_SESSION)
-        socket.close()
-        return
-
     socket.current_user = user
     socket.has_identified = True
     if socket.identify_task:
         socket.identify_task.cancel()
 
-    unread_thread_count = get_unread_thread_count(user.id)
-    recent_threads = get_recent_threads(user.id)
+    session = MessageSocket.get_session(user.id)
+    replay = None
+    resume = data.get("resume")
+    if isinstance(resume, dict) and resume.get("session_id") == str(session.id):
+        try:
+            replay = session.replay_since(str_to_int(resume.get("seq")))
+        except (TypeError, ValueError):
+            replay = None
+
+    if replay is not None:
+        log.info("Resuming session for {}, replaying {} events".format(user.id, len(replay)))
+        socket.send_payload(Payload.dispatch(
+            "RESUMED",
+            {
+                "session_id": session.id,
+                "seq": session.seq
+            }
+        ))
+        [socket.send_payload(p) for p in replay]
+        return
+
+    if user.role == UserRole.ADMIN:
+        # Admins have no threads, they connect for the approval list's events
+        MessageSocket.admin_ids.add(user.id)
+        unread_thread_count = 0
+        recent_threads = []
+    else:
+        unread_thread_count = get_unread_thread_count(user.id)
+        recent_threads = get_recent_threads(user.id)
     threads = []
     for thread in recent_threads:
         state = thread.request_state
@@ -501,7 +841,9 @@ def identify(socket: MessageSocket, payload: Payload):
             "first_name": user.first_name,
             "last_name": user.last_name,
             "unread_threads": unread_thread_count,
-            "recent_threads": threads
+            "recent_threads": threads,
+            "session_id": session.id,
+            "seq": session.seq
         }
     ))
 
@@ -510,6 +852,10 @@ def identify(socket: MessageSocket, payload: Payload):
 async def handle_dispatch(socket: MessageSocket, payload: Payload):
     if payload.event not in MessageSocket.event_map:
         return
+    if socket.current_user.role == UserRole.ADMIN:
+        # Admins only listen, they have no threads to send to
+        log.info("Ignoring {} from admin {}".format(payload.event, socket.current_user.id))
+        return
     result = MessageSocket.event_map[payload.event](socket, payload)
     if result is not None:
         await result
@@ -519,10 +865,74 @@ async def handle_dispatch(socket: MessageSocket, payload: Payload):
 @sql_session
 def ws_send_message(socket: MessageSocket, payload: Payload, session: Session):
     data = payload.data
-    if "to" not in data or "message" not in data:
+    message_ids = [data.get("id")]
+    if isinstance(data.get("messages"), list):
+        message_ids = [m.get("id") for m in data["messages"] if isinstance(m, dict)]
+
+    def failed(reason: str, failed_ids: Optional[List] = None):
+        for failed_id in message_ids if failed_ids is None else failed_ids:
+            socket.send_payload(Payload.dispatch(
+                "MESSAGE_FAILED",
+                {
+                    "message_id": failed_id,
+                    "reason": reason
+                }
+            ))
+
+    if "to" not in data and "thread_id" not in data:
+        failed("Message or recipient not found")
         return
 
-    send_message(socket.current_user.id, data["to"], data["message"])
+    try:
+        outgoing = parse_outgoing(data)
+    except BadRequestException as e:
+        failed(e.message)
+        return
+
+    if "thread_id" in data:
+        if not isinstance(data["thread_id"], str) or not _uuid_regex.match(data["thread_id"]):
+            failed("Thread does not exist")
+            return
+        thread = get_thread_by_id(data["thread_id"], session=session)
+        if thread is None or socket.current_user.id not in (thread.student_id, thread.tutor_id):
+            failed("Thread does not exist")
+            return
+        recipient_id = thread.get_recipient_id(socket.current_user.id)
+    else:
+        if not isinstance(data["to"], str) or not _uuid_regex.match(data["to"]):
+            failed("To was not a valid UUID")
+            return
+        recipient_id = data["to"]
+
+    # Each message is acknowledged or failed on its own, in the order they were given
+    for message_uuid, message in outgoing:
+        message_id = str(message_uuid) if message_uuid is not None else None
+        try:
+            m = send_message(socket.current_user.id, recipient_id, message, session=session,
+                             message_id=message_uuid)
+        except MessageException as e:
+            failed(e.message, [message_id])
+            continue
+
+        if m is None:
+            # Blocked threads look like requests to the student
+            failed("Cannot send message, request has not been accepted!", [message_id])
+
+
+@MessageSocket.add_handler("MESSAGE_RECEIPTS")
+def ws_message_receipts(socket: MessageSocket, payload: Payload):
+    data = payload.data
+    thread_id = data.get("thread_id")
+    if not isinstance(thread_id, str) or not _uuid_regex.match(thread_id):
+        log.info("Ignoring receipts without a thread")
+        return
+    try:
+        receipts = parse_receipts(data)
+    except BadRequestException as e:
+        log.info("Ignoring receipts: {}".format(e.message))
+        return
+    if not record_receipts(UUID(thread_id), socket.current_user.id, receipts):
+        log.info("Ignoring receipts for thread {}".format(thread_id))
 
 
 async def identify_timeout(socket: MessageSocket, timeout: int = 45):
@@ -531,4 +941,5 @@ async def identify_timeout(socket: MessageSocket, timeout: int = 45):
         return
     if not socket.is_closed:
         log.info("Closing idle socket...")
-        socket.close()
+        socket.send_opcode(OpCode.SESSION_TIMEOUT)
+        socket.close(OpCode.SESSION_TIMEOUT.value)
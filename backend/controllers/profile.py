@@ -17,12 +17,14 @@ class ProfileController(Controller):
                 raise NotFoundException("Profile not found!")
 
             data = {
+                "role": user.role,
                 "id": user.id,
                 "email": user.email,
                 "first_name": user.first_name,
                 "last_name": user.last_name,
                 "gender": user.gender,
-                "role": user.role,
-                "location": user.location
+                "location": user.location,
+                "latitude": user.latitude,
+                "longitude": user.longitude
             }
         self.write(data)
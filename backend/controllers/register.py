@@ -44,19 +44,22 @@ class RegisterController(Controller):
                 raise ResourceAlreadyExistsException("An account with that email already exists")
             new_user = User(**self.get_valid_fields(*required_fields))
             new_user.id = generate_unique_id(user_exists_by_id, s)
+            self.merge_position(new_user)
             s.add(new_user)
             if new_user.role == UserRole.TUTOR:
                 await self.create_blank_tutor_profile(new_user, s)
             s.commit()
             self.set_status(HTTPStatus.CREATED)
             self.write({
+                "role": new_user.role,
                 "id": new_user.id,
                 "first_name": new_user.first_name,
                 "last_name": new_user.last_name,
                 "email": new_user.email,
                 "gender": new_user.gender,
-                "role": new_user.role,
-                "location": new_user.location
+                "location": new_user.location,
+                "latitude": new_user.latitude,
+                "longitude": new_user.longitude
             })
 
     async def create_blank_tutor_profile(self, tutor: User, session: Session):
@@ -4,8 +4,9 @@ from typing import Optional
 from uuid import UUID
 
 from backend.controller import Controller
+from backend.controllers.messaging import summarise_threads, thread_changes
 from backend.exc import NotFoundException, BadRequestException, UnauthorisedException
-from backend.models import UserRole, UserGender
+from backend.models import UserRole, UserGender, MessageThread, ThreadState
 from backend.models.student import get_student_by_id, get_subjects_by_student_id
 from backend.models.subject import get_subject_by_id, get_tutor_threads_by_student_id, \
     get_tutor_request_threads_by_student_id
@@ -32,16 +33,18 @@ class StudentProfileController(Controller):
                 raise NotFoundException("Student not found!")
 
             data = {
+                "role": student.role,
                 "id": student.id,
                 "first_name": student.first_name,
                 "last_name": student.last_name,
                 "gender": student.gender,
-                "role": student.role,
                 "location": student.location,
                 "subjects": student.subjects
             }
         if student.id == self.current_user.id:
             data["email"] = student.email
+            data["latitude"] = student.latitude
+            data["longitude"] = student.longitude
         self.write(data)
 
     @protected(roles=[UserRole.STUDENT])
@@ -71,6 +74,7 @@ class StudentProfileController(Controller):
                     self.json_args["gender"] = UserGender(self.json_args["gender"])
 
             self.merge_fields(student, *permissible_fields)
+            self.merge_position(student)
             if "subjects" in self.json_args:
                 student.subjects.clear()
                 subject_ids = [UUID(s["id"]) for s in self.json_args["subjects"] if _uuid_regex.match(s.get("id"))]
@@ -83,13 +87,15 @@ class StudentProfileController(Controller):
             s.add(student)
             s.commit()
             data = {
+                "role": student.role,
                 "id": student.id,
                 "first_name": student.first_name,
                 "last_name": student.last_name,
                 "email": student.email,
                 "gender": student.gender,
-                "role": student.role,
                 "location": student.location,
+                "latitude": student.latitude,
+                "longitude": student.longitude,
                 "subjects": student.subjects
             }
 
@@ -195,24 +201,39 @@ class Tutors(Controller):
 
     @protected(roles=[UserRole.STUDENT])
     async def get(self):
-        tutees = get_tutor_threads_by_student_id(self.current_user.id)
-        self.write([{
-            "id": thread.id,
-            "recipient": {
-                "id": thread.get_recipient(self.current_user.id).id,
-                "first_name": thread.get_recipient(self.current_user.id).first_name,
-                "last_name": thread.get_recipient(self.current_user.id).last_name
-            },
-            "message_count": thread.message_count,
-            "messages": [{
-                "id": m.id,
-                "sender_id": m.sender_id,
-                "timestamp": m.created_at,
-                "message": m.message,
-                "state": m.state
-            } for m in thread.messages],
-            "state": thread.state
-        } for thread in tutees])
+        with self.app.db.session() as s:
+            if self.options["since"] is not None:
+                self.write(thread_changes(MessageThread.student_id, self.current_user.id, [ThreadState.ALLOWED],
+                                          self.options["since"], session=s))
+                return
+
+            tutees = get_tutor_threads_by_student_id(self.current_user.id, session=s,
+                                                     load_messages=not self.options["summary"],
+                                                     **self.cursor_options())
+            if tutees is None:
+                raise BadRequestException("Cursor does not exist")
+
+            if self.options["summary"]:
+                self.write(summarise_threads(tutees, self.current_user.id, session=s))
+                return
+
+            self.write([{
+                "id": thread.id,
+                "recipient": {
+                    "id": thread.get_recipient(self.current_user.id).id,
+                    "first_name": thread.get_recipient(self.current_user.id).first_name,
+                    "last_name": thread.get_recipient(self.current_user.id).last_name
+                },
+                "message_count": thread.message_count,
+                "messages": [{
+                    "id": m.id,
+                    "sender_id": m.sender_id,
+                    "timestamp": m.created_at,
+                    "message": m.message,
+                    "state": m.state
+                } for m in thread.messages],
+                "state": thread.state
+            } for thread in tutees])
 
 
 class TutorRequests(Controller):
@@ -220,21 +241,36 @@ class TutorRequests(Controller):
 
     @protected(roles=[UserRole.STUDENT])
     async def get(self):
-        tutees = get_tutor_request_threads_by_student_id(self.current_user.id)
-        self.write([{
-            "id": thread.id,
-            "recipient": {
-                "id": thread.get_recipient(self.current_user.id).id,
-                "first_name": thread.get_recipient(self.current_user.id).first_name,
-                "last_name": thread.get_recipient(self.current_user.id).last_name
-            },
-            "message_count": thread.message_count,
-            "messages": [{
-                "id": m.id,
-                "sender_id": m.sender_id,
-                "timestamp": m.created_at,
-                "message": m.message,
-                "state": m.state
-            } for m in thread.messages],
-            "state": thread.state
-        } for thread in tutees])
+        with self.app.db.session() as s:
+            if self.options["since"] is not None:
+                self.write(thread_changes(MessageThread.student_id, self.current_user.id, [ThreadState.REQUESTED],
+                                          self.options["since"], session=s))
+                return
+
+            tutees = get_tutor_request_threads_by_student_id(self.current_user.id, session=s,
+                                                             load_messages=not self.options["summary"],
+                                                             **self.cursor_options())
+            if tutees is None:
+                raise BadRequestException("Cursor does not exist")
+
+            if self.options["summary"]:
+                self.write(summarise_threads(tutees, self.current_user.id, session=s))
+                return
+
+            self.write([{
+                "id": thread.id,
+                "recipient": {
+                    "id": thread.get_recipient(self.current_user.id).id,
+                    "first_name": thread.get_recipient(self.current_user.id).first_name,
+                    "last_name": thread.get_recipient(self.current_user.id).last_name
+                },
+                "message_count": thread.message_count,
+                "messages": [{
+                    "id": m.id,
+                    "sender_id": m.sender_id,
+                    "timestamp": m.created_at,
+                    "message": m.message,
+                    "state": m.state
+                } for m in thread.messages],
+                "state": thread.state
+            } for thread in tutees])
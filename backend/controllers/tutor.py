@@ -1,22 +1,34 @@
 import re
 from http import HTTPStatus
-from typing import Optional
+from typing import Optional, Dict
 from uuid import UUID
 
 from sqlalchemy.orm import Session
 
-from backend.controller import Controller
+from backend.controller import Controller, parse_position, MAX_PAGE_LIMIT
+from backend.controllers.messaging import summarise_threads, thread_changes, notify_tutor_awaiting_approval
 from backend.exc import NotFoundException, BadRequestException, UnauthorisedException
-from backend.models import UserRole, UserGender, TutorProfile
+from backend.models import UserRole, UserGender, TutorProfile, MessageThread, ThreadState
 from backend.models.subject import get_subject_by_id
 from backend.models.tutor import get_tutors, get_tutor_by_id, get_profile_by_tutor_id, get_subjects_by_tutor_id, \
-    get_tutee_request_threads_by_tutor_id, get_tutees_threads_by_tutor_id, search_tutors
+    get_tutee_request_threads_by_tutor_id, get_tutees_threads_by_tutor_id, search_tutors, search_facets
 from backend.models.user import user_exists_by_id, user_is_role, get_user_by_id
 from backend.oauth import protected
+from backend.utils import geohash
 from backend.utils.regex import uuid as uuid_regex
 
 _uuid_regex = re.compile(uuid_regex)
 
+# Proximity searches default to and are capped at these radii, in km
+DEFAULT_SEARCH_RADIUS = 10
+MAX_SEARCH_RADIUS = 100
+
+# Summaries are small enough to page through more of at once, e.g. to index every tutor on the device
+MAX_SUMMARY_PAGE_LIMIT = 1000
+
+# Tutors' geohashes are only given to this precision, about 1.2km by 0.6km, so their address can't be found from them
+PUBLIC_GEOHASH_PRECISION = 6
+
 
 class TutorsController(Controller):
     route = [r"/tutor"]
@@ -43,11 +55,11 @@ class TutorProfileController(Controller):
                 raise NotFoundException("Tutor not found!")
 
             data = {
+                "role": tutor.role,
                 "id": tutor.id,
                 "first_name": tutor.first_name,
                 "last_name": tutor.last_name,
                 "gender": tutor.gender,
-                "role": tutor.role,
                 "location": tutor.location,
                 "subjects": tutor.subjects,
                 "bio": tutor.bio,
@@ -55,6 +67,8 @@ class TutorProfileController(Controller):
             }
         if tutor.id == self.current_user.id:
             data["email"] = tutor.email
+            data["latitude"] = tutor.latitude
+            data["longitude"] = tutor.longitude
             data["reviewed_at"] = tutor.reviewed_at
             data["reason"] = tutor.reason
             data["revision"] = tutor.profile.created_at
@@ -100,6 +114,7 @@ class TutorProfileController(Controller):
                     self.json_args["gender"] = UserGender(self.json_args["gender"])
 
             self.merge_fields(user, *user_fields)
+            self.merge_position(user)
             self.merge_fields(profile, *tutor_fields)
             if "subjects" in self.json_args:
                 profile.subjects.clear()
@@ -124,12 +139,13 @@ class TutorProfileController(Controller):
             else:
                 s.add(profile)
             s.commit()
+            notify_tutor_awaiting_approval(user.id)
             data = {
+                "role": user.role,
                 "id": user.id,
                 "first_name": user.first_name,
                 "last_name": user.last_name,
                 "gender": user.gender,
-                "role": user.role,
                 "location": user.location,
                 "subjects": profile.subjects,
                 "bio": profile.bio,
@@ -138,6 +154,8 @@ class TutorProfileController(Controller):
             }
             if user.id == self.current_user.id:
                 data["email"] = user.email
+                data["latitude"] = user.latitude
+                data["longitude"] = user.longitude
                 data["approved_at"] = profile.reviewed_at
                 data["revision"] = profile.created_at
             if self.current_user.role == UserRole.ADMIN:
@@ -227,6 +245,7 @@ class TutorSubjectProfileController(Controller):
             else:
                 s.merge(profile)
             s.commit()
+            notify_tutor_awaiting_approval(tutor_id)
             self.write(profile.subjects)
 
     @protected
@@ -269,6 +288,7 @@ class TutorSubjectProfileController(Controller):
             else:
                 s.merge(profile)
             s.commit()
+            notify_tutor_awaiting_approval(tutor_id)
             self.write(profile.subjects)
 
 
@@ -278,7 +298,21 @@ class Tutees(Controller):
     @protected(roles=[UserRole.TUTOR])
     async def get(self):
         with self.app.db.session() as s:
-            tutees = get_tutees_threads_by_tutor_id(self.current_user.id, session=s)
+            if self.options["since"] is not None:
+                self.write(thread_changes(MessageThread.tutor_id, self.current_user.id, [ThreadState.ALLOWED],
+                                          self.options["since"], session=s))
+                return
+
+            tutees = get_tutees_threads_by_tutor_id(self.current_user.id, session=s,
+                                                    load_messages=not self.options["summary"],
+                                                    **self.cursor_options())
+            if tutees is None:
+                raise BadRequestException("Cursor does not exist")
+
+            if self.options["summary"]:
+                self.write(summarise_threads(tutees, self.current_user.id, session=s))
+                return
+
             self.write([{
                 "id": thread.id,
                 "recipient": {
@@ -304,7 +338,21 @@ class TuteeRequests(Controller):
     @protected(roles=[UserRole.TUTOR])
     async def get(self):
         with self.app.db.session() as s:
-            tutees = get_tutee_request_threads_by_tutor_id(self.current_user.id, session=s)
+            if self.options["since"] is not None:
+                self.write(thread_changes(MessageThread.tutor_id, self.current_user.id, [ThreadState.REQUESTED],
+                                          self.options["since"], session=s))
+                return
+
+            tutees = get_tutee_request_threads_by_tutor_id(self.current_user.id, session=s,
+                                                           load_messages=not self.options["summary"],
+                                                           **self.cursor_options())
+            if tutees is None:
+                raise BadRequestException("Cursor does not exist")
+
+            if self.options["summary"]:
+                self.write(summarise_threads(tutees, self.current_user.id, session=s))
+                return
+
             self.write([{
                 "id": thread.id,
                 "recipient": {
@@ -324,11 +372,12 @@ class TuteeRequests(Controller):
             } for thread in tutees])
 
 
-class TutorSearch(Controller):
-    route = [r"/search/tutors"]
+class TutorSearchController(Controller):
 
-    @protected(roles=[UserRole.STUDENT])
-    async def get(self):
+    def search_arguments(self) -> Dict:
+        """
+        The filters of a search, as search_tutors takes them
+        """
         price_low = None
         price_high = None
 
@@ -337,12 +386,35 @@ class TutorSearch(Controller):
         location = self.get_query_argument("location", None)
         price = self.get_query_argument("price", None)
         subjects = self.get_query_argument("subjects", None)
+        near = self.get_query_argument("near", None)
+        radius = self.get_query_argument("radius", None)
+        sort = self.get_query_argument("sort", None)
+
+        if near:
+            try:
+                near = parse_position(*near.split(","))
+            except TypeError:
+                raise BadRequestException("Invalid parameter for near")
+            if sort is not None and sort != "distance":
+                raise BadRequestException("Invalid parameter for sort")
+            try:
+                if radius:
+                    radius = float(radius)
+                else:
+                    # Sorting by distance alone keeps tutors however far away they are
+                    radius = None if sort == "distance" else DEFAULT_SEARCH_RADIUS
+            except ValueError:
+                raise BadRequestException("Invalid parameter for radius")
+            if radius is not None and not 0 < radius <= MAX_SEARCH_RADIUS:
+                raise BadRequestException("Invalid parameter for radius: must be in (0, {}]".format(MAX_SEARCH_RADIUS))
+        else:
+            near = None
 
         if price:
             try:
                 price_split = price.split(",")
-                price_low = int(price_split[0])
-                price_high = int(price_split[1])
+                price_low = float(price_split[0])
+                price_high = float(price_split[1])
             except (ValueError, IndexError):
                 raise BadRequestException("Invalid parameter for price")
 
@@ -351,22 +423,62 @@ class TutorSearch(Controller):
         else:
             subjects = []
 
-        tutors = search_tutors(
-            name=name,
-            location=location,
-            price_lower=price_low,
-            price_higher=price_high,
-            subjects=subjects,
-            query_str=query
-        )
-        self.write([{
-            "id": tutor.id,
-            "first_name": tutor.first_name,
-            "last_name": tutor.last_name,
-            "gender": tutor.gender,
-            "role": tutor.role,
-            "location": tutor.location,
-            "subjects": tutor.subjects,
-            "bio": tutor.bio,
-            "price": tutor.price
-        } for tutor in tutors])
+        return {
+            "name": name,
+            "location": location,
+            "price_lower": price_low,
+            "price_higher": price_high,
+            "subjects": subjects,
+            "query_str": query,
+            "near": near,
+            "radius_km": radius
+        }
+
+
+class TutorSearch(TutorSearchController):
+    route = [r"/search/tutors"]
+
+    @protected(roles=[UserRole.STUDENT])
+    async def get(self):
+        arguments = self.search_arguments()
+        near = arguments["near"]
+        summary = self.options["summary"]
+        # Paged only if asked to be, so a client can still fetch every tutor at once
+        if "per_page" in self.request.arguments:
+            if self.options["page"] < 1 or self.options["per_page"] < 1:
+                raise BadRequestException("Invalid value for parameter page or per_page")
+            per_page = min(self.options["per_page"], MAX_SUMMARY_PAGE_LIMIT if summary else MAX_PAGE_LIMIT)
+            arguments["offset"] = (self.options["page"] - 1) * per_page
+            arguments["limit"] = per_page
+        tutors = search_tutors(**arguments)
+        results = []
+        for tutor in tutors:
+            result = {
+                "role": tutor.role,
+                "id": tutor.id,
+                "first_name": tutor.first_name,
+                "last_name": tutor.last_name,
+                "gender": tutor.gender,
+                "location": tutor.location,
+                "geohash": tutor.geohash[:PUBLIC_GEOHASH_PRECISION] if tutor.geohash else None,
+                "subjects": tutor.subjects,
+                "bio": tutor.bio,
+                "price": tutor.price
+            }
+            if summary:
+                del result["gender"]
+                del result["bio"]
+            if near is not None and tutor.geohash:
+                # From the centre of the public cell, so distances from a few points can't place the tutor within it
+                centre = geohash.decode(tutor.geohash[:PUBLIC_GEOHASH_PRECISION])
+                result["distance"] = round(geohash.distance_km(near[0], near[1], centre[0], centre[1]), 1)
+            results.append(result)
+        self.write(results)
+
+
+class TutorSearchFacets(TutorSearchController):
+    route = [r"/search/tutors/facets"]
+
+    @protected(roles=[UserRole.STUDENT])
+    async def get(self):
+        self.write(search_facets(**self.search_arguments()))
@@ -4,13 +4,13 @@ from typing import List, Optional
 
 from bcrypt import hashpw, gensalt, checkpw
 from sqlalchemy import Column, String, LargeBinary, ForeignKey, Enum, DateTime, Table, Integer, Numeric, func, inspect, \
-    select
+    select, Index, Float
 from sqlalchemy.ext.declarative import declarative_base
 from sqlalchemy.ext.hybrid import hybrid_property
 from sqlalchemy.orm import relationship, column_property
 from sqlalchemy_utils import UUIDType, EmailType
 
-from backend.utils import enum
+from backend.utils import enum, geohash
 from backend.utils.hash import hash_string, compare_hash
 
 Base = declarative_base()
@@ -110,6 +110,19 @@ class User(TimestampModifiedMixin, Base):
 
     location = Column(String)
 
+    # Where the user is, location is just the name of the area. Searched by the geohash's prefix
+    latitude = Column(Float)
+    longitude = Column(Float)
+    geohash = Column(String(geohash.MAX_PRECISION), index=True)
+
+    def set_position(self, latitude: Optional[float], longitude: Optional[float]):
+        if latitude is None or longitude is None:
+            self.latitude = self.longitude = self.geohash = None
+            return
+        self.latitude = latitude
+        self.longitude = longitude
+        self.geohash = geohash.encode(latitude, longitude)
+
     @property
     def password(self):
         return self._password
@@ -206,7 +219,8 @@ class Tutor:
         profile = self._get_fields(self._profile)
         tutor = self._get_fields(self._tutor)
         fields = {**profile, **tutor}
-        self._remove_fields(fields, ["password", "created_at", "tutor", "tutor_id" "reviewed_by"])
+        self._remove_fields(fields, ["password", "created_at", "tutor", "tutor_id", "reviewed_by", "latitude", "longitude",
+                                     "geohash"])
         if not include_private:
             self._remove_fields(fields, ["reason", "reviewed_at", "reviewed_id", "state", "email"])
         return fields
@@ -282,6 +296,11 @@ class Message(TimestampMixin, Base):
     message = Column(String)  # type: str
     state = Column(Enum(MessageState), default=MessageState.SENT, nullable=False)  # type: MessageState
 
+    __table_args__ = (
+        # Cursor paging reads a thread's messages in (created_at, id) order
+        Index("ix_messages_thread_created", "thread_id", "created_at", "id"),
+    )
+
 
 MessageThread.message_count = column_property(
     select(
@@ -1,30 +1,128 @@
-from typing import List, Optional
+from datetime import datetime, timedelta
+from typing import List, Optional, Dict, Tuple
 from uuid import UUID
 
 from sqlalchemy import func, and_, or_
 from sqlalchemy.orm import Session, Query
 
 from backend.database import sql_session
-from backend.models import Message, MessageThread, MessageState
+from backend.models import Message, MessageThread, MessageState, ThreadState
+
+# Receipts only move a message forwards through these states
+RECEIPT_ORDER = [MessageState.SENT, MessageState.DELIVERED, MessageState.READ]
+
+# How far before the watermark a sync looks, so a change committed after a sync started, but timestamped before it,
+# is still picked up by the next one
+SYNC_OVERLAP = timedelta(seconds=10)
+
+
+def page_by_cursor(query: Query, model, key, session: Session, before: Optional[UUID] = None,
+                   after: Optional[UUID] = None, limit: Optional[int] = None) -> Optional[List]:
+    """
+    Pages query newest first by key, using the ids of rows on the previous page as cursors.
+    Rows with the same key are ordered by id so no row is skipped or repeated between pages.
+    If after is given, the page is the rows immediately after it (still returned newest first).
+    Returns None if a cursor does not exist in the query.
+    """
+    for cursor_id, newer in ((before, False), (after, True)):
+        if cursor_id is None:
+            continue
+        cursor_key = session.query(key).filter(model.id == cursor_id).scalar()
+        if cursor_key is None:
+            return None
+        if newer:
+            query = query.filter(or_(key > cursor_key, and_(key == cursor_key, model.id > cursor_id)))
+        else:
+            query = query.filter(or_(key < cursor_key, and_(key == cursor_key, model.id < cursor_id)))
+
+    if after is not None:
+        query = query.order_by(key.asc(), model.id.asc())
+    else:
+        query = query.order_by(key.desc(), model.id.desc())
+
+    if limit is not None:
+        query = query.limit(limit)
+    rows = query.all()
+
+    if after is not None:
+        rows.reverse()
+    return rows
 
 
 @sql_session
-def get_recent_threads(user_id: UUID, session: Session, number: Optional[int] = 10) -> List[MessageThread]:
+def get_recent_threads(user_id: UUID, session: Session, number: Optional[int] = 10, before: Optional[UUID] = None,
+                       after: Optional[UUID] = None, load_messages: bool = True) -> Optional[List[MessageThread]]:
     thread_query = session.query(MessageThread).filter(or_(
         MessageThread.tutor_id == user_id, MessageThread.student_id == user_id
-    )).order_by(MessageThread.modified_at.desc())
+    ))
 
-    if number is not None:
-        thread_query = thread_query.limit(number)
-    threads = thread_query.all()
+    threads = page_by_cursor(thread_query, MessageThread, MessageThread.modified_at, session,
+                             before=before, after=after, limit=number)
+    if threads is None:
+        return None
 
-    for thread in threads:
-        message = get_recent_messages_by_thread(thread.id, session=session, page_size=1)[0]
-        thread.message = message
+    if load_messages:
+        for thread in threads:
+            message = get_recent_messages_by_thread(thread.id, session=session, page_size=1)[0]
+            thread.message = message
 
     return threads
 
 
+@sql_session
+def get_thread_changes(user_column, user_id: UUID, states: List[ThreadState], since: datetime,
+                       session: Session) -> Tuple[datetime, List[MessageThread], List[UUID]]:
+    """
+    The user's threads modified since a watermark, for keeping a copy of a thread list up to date.
+    Returns the watermark for the next sync, the modified threads whose request state is one of states, newest first,
+    and the IDs of the other modified threads, which may have left the list.
+    """
+    watermark = session.query(func.localtimestamp()).scalar()
+    query = session.query(MessageThread).filter(
+        user_column == user_id,
+        MessageThread.modified_at > since - SYNC_OVERLAP
+    ).order_by(MessageThread.modified_at.desc(), MessageThread.id.desc())  # type: Query
+
+    changed = []
+    removed = []
+    for thread in query.all():
+        if thread.request_state in states:
+            changed.append(thread)
+        else:
+            removed.append(thread.id)
+    return watermark, changed, removed
+
+
+@sql_session
+def mark_messages(thread: MessageThread, reader_id: UUID, message_ids: List[UUID], state: MessageState,
+                  session: Session) -> int:
+    """
+    Records that reader_id has received or read messages sent to them in a thread.
+    Messages already in that state or later, sent by the reader, or not in the thread are left alone.
+    The thread takes the state of its newest message, and is marked modified so syncing clients see the new counts.
+    Returns the number of messages marked
+    """
+    if not message_ids:
+        return 0
+    earlier = RECEIPT_ORDER[:RECEIPT_ORDER.index(state)]
+    count = session.query(Message).filter(
+        Message.thread_id == thread.id,
+        Message.sender_id != reader_id,
+        Message.id.in_(message_ids),
+        Message.state.in_(earlier)
+    ).update({Message.state: state}, synchronize_session=False)
+    if not count:
+        return 0
+
+    newest = get_recent_messages_by_thread(thread.id, session=session, page_size=1)
+    if newest and newest[0].state in RECEIPT_ORDER:
+        thread.state = newest[0].state
+    thread.modified_at = func.now()
+    session.add(thread)
+    session.commit()
+    return count
+
+
 @sql_session
 def get_thread_by_user_ids(student_id: UUID, tutor_id: UUID, session: Session) -> MessageThread:
     query = session.query(MessageThread).filter(
@@ -43,6 +141,11 @@ def get_thread_by_id(thread_id: UUID, session: Session, lock_update: bool = Fals
     return query.first()
 
 
+@sql_session
+def get_message_by_id(message_id: UUID, session: Session) -> Optional[Message]:
+    return session.query(Message).filter_by(id=message_id).one_or_none()
+
+
 @sql_session
 def get_recent_messages_by_thread(thread_id: UUID, session: Session, page: Optional[int] = 0, page_size: Optional[int] = 10) -> List[Message]:
     query = session.query(Message).filter_by(thread_id=thread_id).order_by(Message.created_at.desc())  # type: Query
@@ -55,6 +158,45 @@ def get_recent_messages_by_thread(thread_id: UUID, session: Session, page: Optio
     return query.all()
 
 
+@sql_session
+def get_messages_by_thread(thread_id: UUID, session: Session, before: Optional[UUID] = None,
+                           after: Optional[UUID] = None, limit: Optional[int] = 20) -> Optional[List[Message]]:
+    query = session.query(Message).filter(Message.thread_id == thread_id)  # type: Query
+    return page_by_cursor(query, Message, Message.created_at, session, before=before, after=after, limit=limit)
+
+
+@sql_session
+def get_last_messages(thread_ids: List[UUID], session: Session) -> Dict[UUID, Message]:
+    """
+    Newest message of each thread, in one query
+    """
+    if not thread_ids:
+        return {}
+    query = session.query(Message).filter(
+        Message.thread_id.in_(thread_ids)
+    ).distinct(
+        Message.thread_id
+    ).order_by(
+        Message.thread_id, Message.created_at.desc(), Message.id.desc()
+    )  # type: Query
+    return {m.thread_id: m for m in query.all()}
+
+
+@sql_session
+def get_unread_counts(thread_ids: List[UUID], user_id: UUID, session: Session) -> Dict[UUID, int]:
+    """
+    Number of messages in each thread that were sent to user_id and have not been read
+    """
+    if not thread_ids:
+        return {}
+    query = session.query(Message.thread_id, func.count(Message.id)).filter(
+        Message.thread_id.in_(thread_ids),
+        Message.sender_id != user_id,
+        Message.state != MessageState.READ
+    ).group_by(Message.thread_id)  # type: Query
+    return {thread_id: count for thread_id, count in query.all()}
+
+
 @sql_session
 def get_unread_thread_count(user_id: UUID, session: Session) -> int:
     query = session.query(func.count(MessageThread.id)).filter(
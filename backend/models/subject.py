@@ -1,11 +1,11 @@
-from typing import List
+from typing import List, Optional
 from uuid import UUID
 
 from sqlalchemy.orm import Session, joinedload
 
 from backend.database import sql_session
 from backend.models import Subject, MessageThread, ThreadState
-from backend.models.messages import get_recent_messages_by_thread
+from backend.models.messages import get_recent_messages_by_thread, page_by_cursor
 
 
 @sql_session
@@ -43,7 +43,9 @@ def get_subject_by_id(id: UUID, session: Session, lock_update: bool = False) ->
 
 
 @sql_session
-def get_tutor_threads_by_student_id(student_id: UUID, session: Session) -> List[MessageThread]:
+def get_tutor_threads_by_student_id(student_id: UUID, session: Session, before: Optional[UUID] = None,
+                                    after: Optional[UUID] = None,
+                                    limit: Optional[int] = None, load_messages: bool = True) -> Optional[List[MessageThread]]:
     query = session.query(
         MessageThread
     ).filter_by(
@@ -54,15 +56,21 @@ def get_tutor_threads_by_student_id(student_id: UUID, session: Session) -> List[
         joinedload(MessageThread.tutor)
     )
 
-    threads = query.all()
-    for t in threads:
-        t.messages = get_recent_messages_by_thread(thread_id=t.id, session=session, page_size=1)
+    threads = page_by_cursor(query, MessageThread, MessageThread.modified_at, session,
+                             before=before, after=after, limit=limit)
+    if threads is None:
+        return None
+    if load_messages:
+        for t in threads:
+            t.messages = get_recent_messages_by_thread(thread_id=t.id, session=session, page_size=1)
 
-    return query.all()
+    return threads
 
 
 @sql_session
-def get_tutor_request_threads_by_student_id(student_it: UUID, session: Session) -> List[MessageThread]:
+def get_tutor_request_threads_by_student_id(student_it: UUID, session: Session, before: Optional[UUID] = None,
+                                            after: Optional[UUID] = None,
+                                            limit: Optional[int] = None, load_messages: bool = True) -> Optional[List[MessageThread]]:
     query = session.query(
         MessageThread
     ).filter_by(
@@ -73,8 +81,12 @@ def get_tutor_request_threads_by_student_id(student_it: UUID, session: Session)
         joinedload(MessageThread.tutor)
     )
 
-    threads = query.all()
-    for t in threads:
-        t.messages = get_recent_messages_by_thread(thread_id=t.id, session=session, page_size=1)
+    threads = page_by_cursor(query, MessageThread, MessageThread.modified_at, session,
+                             before=before, after=after, limit=limit)
+    if threads is None:
+        return None
+    if load_messages:
+        for t in threads:
+            t.messages = get_recent_messages_by_thread(thread_id=t.id, session=session, page_size=1)
 
-    return query.all()
+    return threads
@@ -1,13 +1,24 @@
-from typing import List
+import math
+from decimal import Decimal
+from typing import List, Optional, Tuple, Dict
 from uuid import UUID
 
-from sqlalchemy import func, or_
+from sqlalchemy import func, or_, and_
 from sqlalchemy.orm import Session, joinedload
 
 from backend.database import sql_session
-from backend.models import TutorProfile, Tutor, Subject, MessageThread, ThreadState, User, UserRole
-from backend.models.messages import get_recent_messages_by_thread
+from backend.models import TutorProfile, Tutor, Subject, MessageThread, ThreadState, User, UserRole, \
+    tutor_subject_assoc_table
+from backend.models.messages import get_recent_messages_by_thread, page_by_cursor
 from backend.models.user import get_user_by_id
+from backend.utils import geohash
+
+# How many buckets a price histogram is split into at most
+PRICE_BUCKETS = 10
+
+# Radii of the rings of cells searched for a page of the tutors nearest a point, widest last.
+# A page with fewer tutors than it needs within the widest scans every tutor.
+NEAREST_RINGS_KM = (5, 20, 100)
 
 
 @sql_session
@@ -27,7 +38,10 @@ def get_tutors(session: Session, include_unapproved: bool = False) -> List[Tutor
 
 
 @sql_session
-def get_unapproved_tutors(session: Session) -> List[Tutor]:
+def get_unapproved_tutors(session: Session, tutor_id: Optional[UUID] = None) -> List[Tutor]:
+    """
+    Tutors whose latest profile is complete and waiting to be reviewed, or just tutor_id if it is given and waiting
+    """
     with session:
         subquery = session.query(
             func.max(TutorProfile.id)
@@ -37,6 +51,8 @@ def get_unapproved_tutors(session: Session) -> List[Tutor]:
             TutorProfile.reason.is_(None),
             TutorProfile.reviewed_at.is_(None)
         )
+        if tutor_id is not None:
+            subquery = subquery.filter(TutorProfile.tutor_id == tutor_id)
         query = session.query(TutorProfile).options(
             joinedload(TutorProfile.tutor),
             joinedload(TutorProfile.subjects)
@@ -87,7 +103,9 @@ def get_subjects_by_tutor_id(id: UUID, session: Session, is_approved: bool = Fal
 
 
 @sql_session
-def get_tutees_threads_by_tutor_id(tutor_id: UUID, session: Session) -> List[MessageThread]:
+def get_tutees_threads_by_tutor_id(tutor_id: UUID, session: Session, before: Optional[UUID] = None,
+                                   after: Optional[UUID] = None,
+                                   limit: Optional[int] = None, load_messages: bool = True) -> Optional[List[MessageThread]]:
     query = session.query(
         MessageThread
     ).filter_by(
@@ -98,15 +116,21 @@ def get_tutees_threads_by_tutor_id(tutor_id: UUID, session: Session) -> List[Mes
         joinedload(MessageThread.tutor)
     )
 
-    threads = query.all()
-    for t in threads:
-        t.messages = get_recent_messages_by_thread(thread_id=t.id, session=session, page_size=2)
+    threads = page_by_cursor(query, MessageThread, MessageThread.modified_at, session,
+                             before=before, after=after, limit=limit)
+    if threads is None:
+        return None
+    if load_messages:
+        for t in threads:
+            t.messages = get_recent_messages_by_thread(thread_id=t.id, session=session, page_size=2)
 
     return threads
 
 
 @sql_session
-def get_tutee_request_threads_by_tutor_id(tutor_id: UUID, session: Session) -> List[MessageThread]:
+def get_tutee_request_threads_by_tutor_id(tutor_id: UUID, session: Session, before: Optional[UUID] = None,
+                                          after: Optional[UUID] = None,
+                                          limit: Optional[int] = None, load_messages: bool = True) -> Optional[List[MessageThread]]:
     query = session.query(
         MessageThread
     ).filter_by(
@@ -117,24 +141,44 @@ def get_tutee_request_threads_by_tutor_id(tutor_id: UUID, session: Session) -> L
         joinedload(MessageThread.tutor)
     )
 
-    threads = query.all()
-    for t in threads:
-        t.messages = get_recent_messages_by_thread(thread_id=t.id, session=session, page_size=1)
+    threads = page_by_cursor(query, MessageThread, MessageThread.modified_at, session,
+                             before=before, after=after, limit=limit)
+    if threads is None:
+        return None
+    if load_messages:
+        for t in threads:
+            t.messages = get_recent_messages_by_thread(thread_id=t.id, session=session, page_size=1)
 
     return threads
 
 
-@sql_session
-def search_tutors(
+def _search_profiles(
+        session: Session,
         name: str = None,
         location: str = None,
-        price_lower: int = None,
-        price_higher: int = None,
+        price_lower: float = None,
+        price_higher: float = None,
         subjects: List[str] = None,
         query_str: str = None,
-        session: Session = None
-) -> List[Tutor]:
-    query = session.query(User.id).filter_by(role=UserRole.TUTOR)
+        near: Optional[Tuple[float, float]] = None,
+        radius_km: float = None
+) -> List[Tuple[UUID, int]]:
+    """
+    The IDs of the approved tutors search_tutors returns, in its order, with the ID of their latest approved profile.
+    Nothing else is loaded, so whole searches can be counted cheaply
+    """
+    query = session.query(User.id, User.last_name, User.first_name, User.latitude, User.longitude) \
+        .filter_by(role=UserRole.TUTOR)
+    if near is not None and radius_km is not None:
+        # The cells around near cover the radius, so the index on geohash narrows it down before distances are checked
+        precision = geohash.precision_for_radius(radius_km, near[0])
+        query = query.filter(User.geohash.isnot(None))
+        if precision:
+            query = query.filter(or_(*[
+                and_(User.geohash >= lower, User.geohash < upper)
+                for lower, upper in map(geohash.cell_range, geohash.cells_around(near[0], near[1], precision))
+            ]))
+
     if name:
         query = query.filter(or_(
             User.first_name.ilike("%{}%".format(name)),
@@ -144,28 +188,178 @@ def search_tutors(
     if location:
         query = query.filter(User.location.ilike("%{}%".format(location)))
 
+    # q matches subjects if it names any, otherwise names and locations
+    query_subjects = None
     if query_str:
-        subjects = [s[0] for s in session.query(Subject.id).filter(Subject.name.ilike("%" + query_str + "%")).all()]
-        if not subjects:
+        query_subjects = [s[0] for s in session.query(Subject.id).filter(Subject.name.ilike("%" + query_str + "%")).all()]
+        if not query_subjects:
             query = query.filter(or_(
                 User.first_name.ilike("%{}%".format(query_str)),
                 User.last_name.ilike("%{}%".format(query_str)),
                 User.location.ilike("%{}%".format(query_str)),
             ))
 
-    valid_tutor_ids = set([i[0] for i in query.all()])
-    query = session.query(TutorProfile.tutor_id, func.max(TutorProfile.id)).group_by(TutorProfile.tutor_id).filter(
+    candidates = {row.id: row for row in query.all()}
+    if not candidates:
+        return []
+    latest = session.query(func.max(TutorProfile.id)).group_by(TutorProfile.tutor_id).filter(
         TutorProfile.reviewed_at.isnot(None),
         TutorProfile.reason.is_(None)
     )
-    if subjects:
+    query = session.query(TutorProfile.tutor_id, TutorProfile.id).filter(TutorProfile.id.in_(latest))
+    if near is not None and radius_km is not None:
+        # Only the profiles of tutors in the cells
+        query = query.filter(TutorProfile.tutor_id.in_(list(candidates)))
+    # Both given, a tutor must teach a subject chosen that q also matches
+    if subjects and query_subjects:
+        query = query.filter(TutorProfile.subjects.any(and_(Subject.id.in_(subjects), Subject.id.in_(query_subjects))))
+    elif subjects:
         query = query.filter(TutorProfile.subjects.any(Subject.id.in_(subjects)))
+    elif query_subjects:
+        query = query.filter(TutorProfile.subjects.any(Subject.id.in_(query_subjects)))
 
     if price_lower:
         query = query.filter(TutorProfile.price >= price_lower)
     if price_higher:
         query = query.filter(TutorProfile.price <= price_higher)
-    valid_tutor_profile_ids = set([i[0] for i in query.all()])
+    profile_ids = {i[0]: i[1] for i in query.all()}
+
+    tutor_ids = [i for i in candidates if i in profile_ids]
+    # Ties are broken by ID so pages never overlap or skip a tutor
+    if near is None:
+        tutor_ids.sort(key=lambda i: ((candidates[i].last_name or "").lower(),
+                                      (candidates[i].first_name or "").lower(), str(i)))
+    else:
+        distances = {i: geohash.distance_km(near[0], near[1], candidates[i].latitude, candidates[i].longitude)
+                     if candidates[i].latitude is not None else None for i in tutor_ids}
+        if radius_km is not None:
+            tutor_ids = [i for i in tutor_ids if distances[i] is not None and distances[i] <= radius_km]
+        tutor_ids.sort(key=lambda i: (distances[i] is None, distances[i] or 0, str(i)))
+    return [(i, profile_ids[i]) for i in tutor_ids]
+
+
+@sql_session
+def search_tutors(
+        name: str = None,
+        location: str = None,
+        price_lower: float = None,
+        price_higher: float = None,
+        subjects: List[str] = None,
+        query_str: str = None,
+        near: Optional[Tuple[float, float]] = None,
+        radius_km: float = None,
+        offset: int = 0,
+        limit: Optional[int] = None,
+        session: Session = None
+) -> List[Tutor]:
+    """
+    Approved tutors matching every filter given, by last then first name.
+    If near is given, only tutors within radius_km of it are returned, nearest first.
+    With near but no radius_km every tutor is returned nearest first, those without a position last.
+    q matches subjects if it names any, and then only tutors teaching one of the subjects given that it matches are
+    returned. Only the limit tutors after the first offset are loaded, in one query, so a page costs the same however
+    many match.
+    A page of the tutors nearest near with no radius_km is found in the cells of rings NEAREST_RINGS_KM wide, from
+    the narrowest holding the page. Only a page past the tutors within the widest ring reads every tutor
+    """
+    profiles = None
+    if near is not None and radius_km is None and limit is not None:
+        for ring_km in NEAREST_RINGS_KM:
+            # Every tutor within the ring is nearer than any outside it, so its nearest are the page
+            ring = _search_profiles(session, name, location, price_lower, price_higher, subjects, query_str, near,
+                                    ring_km)
+            if len(ring) >= offset + limit:
+                profiles = ring
+                break
+    if profiles is None:
+        profiles = _search_profiles(session, name, location, price_lower, price_higher, subjects, query_str, near,
+                                    radius_km)
+    profiles = profiles[offset:] if limit is None else profiles[offset:offset + limit]
+    if not profiles:
+        return []
+    loaded = {p.id: p for p in session.query(TutorProfile).options(
+        joinedload(TutorProfile.tutor),
+        joinedload(TutorProfile.subjects)
+    ).filter(TutorProfile.id.in_([p for _, p in profiles])).all()}
+    return [Tutor(loaded[p].tutor, loaded[p]) for _, p in profiles]
+
+
+@sql_session
+def search_facets(
+        name: str = None,
+        location: str = None,
+        price_lower: float = None,
+        price_higher: float = None,
+        subjects: List[str] = None,
+        query_str: str = None,
+        near: Optional[Tuple[float, float]] = None,
+        radius_km: float = None,
+        session: Session = None
+) -> Dict:
+    """
+    How many tutors a search on search_tutors matches, with the histogram of their prices and how many teach each
+    subject. Each facet ignores its own filter, so shows what choosing another price or subject would give.
+    Counted in the database from the IDs of the tutors' profiles, no tutor is loaded
+    """
+    priced = price_lower or price_higher
+    unpriced = [p for _, p in _search_profiles(session, name, location, None, None, subjects, query_str, near,
+                                                radius_km)]
+    prices = []
+    if unpriced:
+        prices = session.query(TutorProfile.price, func.count(TutorProfile.id)).filter(
+            TutorProfile.id.in_(unpriced),
+            TutorProfile.price.isnot(None)
+        ).group_by(TutorProfile.price).all()
+    if priced:
+        count = sum(c for p, c in prices if (not price_lower or p >= price_lower) and
+                    (not price_higher or p <= price_higher))
+    else:
+        count = len(unpriced)
+
+    any_subject = unpriced
+    if subjects:
+        any_subject = [p for _, p in _search_profiles(session, name, location, None, None, [], query_str, near,
+                                                       radius_km)]
+    subjects_taught = []
+    if any_subject:
+        query = session.query(Subject.id, Subject.name, func.count(TutorProfile.id)) \
+            .join(tutor_subject_assoc_table, tutor_subject_assoc_table.c.subject_id == Subject.id) \
+            .join(TutorProfile, TutorProfile.id == tutor_subject_assoc_table.c.profile_id) \
+            .filter(TutorProfile.id.in_(any_subject))
+        if price_lower:
+            query = query.filter(TutorProfile.price >= price_lower)
+        if price_higher:
+            query = query.filter(TutorProfile.price <= price_higher)
+        subjects_taught = query.group_by(Subject.id, Subject.name).all()
+
+    return {
+        "count": count,
+        "prices": price_histogram(prices),
+        "subjects": subject_counts(subjects_taught)
+    }
+
+
+def price_histogram(prices: List[Tuple[Decimal, int]], buckets: int = PRICE_BUCKETS) -> List[Dict]:
+    """
+    Counts of prices in buckets of the same whole number of pounds, from the lowest price to the highest.
+    Takes each price with how many tutors charge it.
+    A bucket holds prices from its low up to but not including its high, except the last, which includes it
+    """
+    if not prices:
+        return []
+    low = math.floor(min(p for p, _ in prices))
+    high = math.ceil(max(p for p, _ in prices))
+    width = max(1, math.ceil((high - low) / buckets))
+    count = max(1, math.ceil((high - low) / width))
+    counts = [0] * count
+    for price, tutors in prices:
+        counts[min(int((price - low) // width), count - 1)] += tutors
+    return [{"low": low + i * width, "high": low + (i + 1) * width, "count": c} for i, c in enumerate(counts)]
+
 
-    tutor_ids = valid_tutor_ids.intersection(valid_tutor_profile_ids)
-    return [get_tutor_by_id(i) for i in tutor_ids]
+def subject_counts(subjects: List[Tuple[UUID, str, int]]) -> List[Dict]:
+    """
+    Takes each subject's ID and name with how many tutors teach it, most taught first
+    """
+    ordered = sorted(subjects, key=lambda s: (-s[2], s[1]))
+    return [{"id": subject_id, "name": name, "count": count} for subject_id, name, count in ordered]
@@ -156,3 +156,99 @@ class TestStudentSubjectEdit(APITestCase):
             with self.delete("/student/profile/subject", json=[s["id"]]) as r:
                 self.assertEqual(r.status_code, HTTPStatus.OK, r.json())
                 self.assertEqual(subjects, r.json())
+
+
+class TestStudentAPI(APITestCase):
+
+    @classmethod
+    def setUpClass(cls):
+        super().setUpClass()
+        cls.email = "student@" + cls.test_time
+        cls.password = "Test1!"
+        data = {
+            "email": cls.email,
+            "password": cls.password,
+            "role": UserRole.STUDENT.value,
+            "location": "test server",
+            "first_name": "Test",
+            "last_name": "Student"
+        }
+        with cls.post("/register", json=data) as r:
+            assert r.status_code == HTTPStatus.CREATED
+        cls.setUpOAuthClient()
+
+    @classmethod
+    def tearDownClass(cls) -> None:
+        with cls.delete("/student/profile", json={"password": cls.password}) as r:
+            assert r.status_code == HTTPStatus.NO_CONTENT
+
+        super().tearDownClass()
+
+
+class TestStudentThreadSync(TestStudentAPI):
+
+    def test_since(self):
+        with self.get("/student/requests", query={"since": "1970-01-01T00:00:00.000000"}) as r:
+            self.assertEqual(r.status_code, HTTPStatus.OK, r.json())
+            j = r.json()
+            self.assertEqual([], j["threads"])
+            self.assertEqual([], j["removed"])
+            watermark = j["watermark"]
+
+        with self.get("/student/tutors", query={"since": watermark}) as r:
+            self.assertEqual(r.status_code, HTTPStatus.OK, r.json())
+            self.assertEqual([], r.json()["threads"])
+
+        with self.get("/student/requests", query={"since": "yesterday"}) as r:
+            self.assertEqual(r.status_code, HTTPStatus.BAD_REQUEST, r.json())
+
+
+class TestStudentTutorSearch(TestStudentAPI):
+
+    def test_pages(self):
+        with self.get("/search/tutors") as r:
+            self.assertEqual(r.status_code, HTTPStatus.OK, r.json())
+            everyone = [t["id"] for t in r.json()]
+
+        tutors = []
+        page = 1
+        while True:
+            with self.get("/search/tutors", query={"page": page, "per_page": 2}) as r:
+                self.assertEqual(r.status_code, HTTPStatus.OK, r.json())
+                ids = [t["id"] for t in r.json()]
+            self.assertLessEqual(len(ids), 2)
+            tutors += ids
+            if len(ids) < 2:
+                break
+            page += 1
+        self.assertEqual(everyone, tutors)
+
+        with self.get("/search/tutors", query={"page": 0, "per_page": 2}) as r:
+            self.assertEqual(r.status_code, HTTPStatus.BAD_REQUEST, r.json())
+
+    def test_summary(self):
+        with self.get("/search/tutors") as r:
+            self.assertEqual(r.status_code, HTTPStatus.OK, r.json())
+            everyone = r.json()
+
+        with self.get("/search/tutors", query={"summary": "true", "page": 1, "per_page": 1000}) as r:
+            self.assertEqual(r.status_code, HTTPStatus.OK, r.json())
+            summaries = r.json()
+        self.assertEqual([t["id"] for t in everyone], [t["id"] for t in summaries])
+        for tutor in summaries:
+            self.assertFalse("bio" in tutor, "Bio in summary")
+            self.assertFalse("gender" in tutor, "Gender in summary")
+        for tutor in everyone:
+            self.assertTrue("bio" in tutor, "Bio not found")
+
+    def test_facets(self):
+        with self.get("/search/tutors") as r:
+            self.assertEqual(r.status_code, HTTPStatus.OK, r.json())
+            count = len(r.json())
+
+        with self.get("/search/tutors/facets") as r:
+            self.assertEqual(r.status_code, HTTPStatus.OK, r.json())
+            j = r.json()
+            self.assertEqual(count, j["count"])
+            # Tutors without a price aren't in the histogram
+            self.assertLessEqual(sum(b["count"] for b in j["prices"]), count)
@@ -168,3 +168,41 @@ class TestTutorSubjectEdit(APITestCase):
             with self.delete("/tutor/profile/subject", json=[s["id"]]) as r:
                 self.assertEqual(r.status_code, HTTPStatus.OK, r.json())
                 self.assertEqual(subjects, r.json())
+
+
+
+class TestTutorProfileGet(APITestCase):
+
+    @classmethod
+    def setUpClass(cls):
+        super().setUpClass()
+        cls.email = "tutor@" + cls.test_time
+        cls.password = "Test1!"
+        data = {
+            "email": cls.email,
+            "password": cls.password,
+            "role": UserRole.TUTOR.value,
+            "location": "test server",
+            "first_name": "Test",
+            "last_name": "Tutor"
+        }
+        with cls.post("/register", json=data) as r:
+            assert r.status_code == HTTPStatus.CREATED
+            cls.user_id = r.json()["id"]
+        cls.setUpOAuthClient()
+
+    @classmethod
+    def tearDownClass(cls) -> None:
+        with cls.delete("/tutor/profile", json={"password": cls.password}) as r:
+            assert r.status_code == HTTPStatus.NO_CONTENT
+
+        super().tearDownClass()
+
+    def test_get_profile(self):
+        for uri in ("/tutor/profile", "/tutor/{}/profile".format(self.user_id)):
+            with self.get(uri) as r:
+                self.assertEqual(r.status_code, HTTPStatus.OK, r.json())
+                j = r.json()
+                self.assertEqual(self.user_id, j["id"])
+                self.assertTrue("bio" in j, "Bio not found")
+                self.assertTrue("gender" in j, "Gender not found")
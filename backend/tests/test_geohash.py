@@ -0,0 +1,42 @@
+import random
+import unittest
+
+from backend.utils import geohash
+
+
+class GeohashTest(unittest.TestCase):
+
+    def test_encode(self):
+        self.assertEqual("u4pruydqqvj", geohash.encode(57.64911, 10.40744, 11))
+
+    def test_decode(self):
+        cell = geohash.encode(50.9097, -1.4044, 6)
+        latitude, longitude = geohash.decode(cell)
+        height, width = geohash.cell_size(6)
+        self.assertEqual(cell, geohash.encode(latitude, longitude, 6))
+        self.assertAlmostEqual(50.9097, latitude, delta=height / 2)
+        self.assertAlmostEqual(-1.4044, longitude, delta=width / 2)
+
+    def test_cells_around_cover_radius(self):
+        rng = random.Random(6239)
+        for radius in (1, 5, 10, 50, 100):
+            centre = (50.9097, -1.4044)
+            precision = geohash.precision_for_radius(radius, centre[0])
+            cells = geohash.cells_around(centre[0], centre[1], precision)
+            for _ in range(500):
+                lat = centre[0] + rng.uniform(-1, 1) * radius / 111
+                lng = centre[1] + rng.uniform(-1, 1) * radius / 70
+                if geohash.distance_km(centre[0], centre[1], lat, lng) > radius:
+                    continue
+                point = geohash.encode(lat, lng)
+                lower_upper = [geohash.cell_range(c) for c in cells]
+                self.assertTrue(any(lower <= point < upper for lower, upper in lower_upper),
+                                "{},{} within {}km not in {}".format(lat, lng, radius, cells))
+
+    def test_distance(self):
+        # Southampton to London
+        self.assertAlmostEqual(111.0, geohash.distance_km(50.9097, -1.4044, 51.5072, -0.1276), delta=0.5)
+
+
+if __name__ == '__main__':
+    unittest.main()
@@ -1,10 +1,15 @@
+import datetime
 import logging
 import unittest
 import uuid
+from decimal import Decimal
 
 from backend.database import Database
-from backend.models import User, OAuthClient, OAuthGrantType, OAuthResponseType
+from backend.models import User, OAuthClient, OAuthGrantType, OAuthResponseType, UserRole, MessageThread, Message, \
+    MessageState, ThreadState, Subject, TutorProfile
+from backend.models.messages import page_by_cursor, get_thread_changes, mark_messages, SYNC_OVERLAP
 from backend.models.oauth import save_bearer_token, get_bearer_token_by_access_token, get_bearer_token_by_refresh_token
+from backend.models.tutor import search_tutors, search_facets, price_histogram, subject_counts
 from backend.utils import random_string
 
 
@@ -70,3 +75,243 @@ class OAuthBearerTokenTest(unittest.TestCase):
 
         self.s.delete(u)
         self.s.commit()
+
+
+class ModelTestCase(unittest.TestCase):
+
+    @classmethod
+    def setUpClass(cls) -> None:
+        logging.getLogger().setLevel(logging.DEBUG)
+        Database(
+            "localhost",
+            5432,
+            "postgres",
+            "comp6239",
+            sql_echo=True
+        )
+        cls.db = Database.instance
+        cls.db.set_wrap_sessions(True)
+
+    def setUp(self):
+        self.db.recreate_db()
+        self.s = self.db.session()
+
+    def tearDown(self) -> None:
+        self.s.close()
+
+    def add_user(self, role: UserRole, first_name: str = "Test", last_name: str = "User") -> User:
+        u = User(
+            id=uuid.uuid4(),
+            first_name=first_name,
+            last_name=last_name,
+            email="{}@{}".format(random_string(16), "example.com"),
+            role=role
+        )
+        self.s.add(u)
+        self.s.commit()
+        return u
+
+
+class MessagesTest(ModelTestCase):
+
+    def setUp(self):
+        super().setUp()
+        self.student = self.add_user(UserRole.STUDENT)
+        self.tutor = self.add_user(UserRole.TUTOR)
+        self.thread = MessageThread(
+            id=uuid.uuid4(),
+            student_id=self.student.id,
+            tutor_id=self.tutor.id,
+            request_state=ThreadState.ALLOWED
+        )
+        self.s.add(self.thread)
+        self.s.commit()
+
+    def tearDown(self) -> None:
+        self.s.delete(self.student)
+        self.s.delete(self.tutor)
+        self.s.commit()
+        super().tearDown()
+
+    def add_messages(self, count: int, created_at: datetime.datetime):
+        messages = [Message(
+            id=uuid.uuid4(),
+            thread_id=self.thread.id,
+            sender_id=self.tutor.id,
+            message=str(i),
+            state=MessageState.SENT,
+            created_at=created_at
+        ) for i in range(count)]
+        self.s.add_all(messages)
+        self.s.commit()
+        return messages
+
+    def page(self, **kwargs):
+        query = self.s.query(Message).filter(Message.thread_id == self.thread.id)
+        return page_by_cursor(query, Message, Message.created_at, self.s, **kwargs)
+
+    def test_page_by_cursor(self):
+        # Every message at the same time, so only the ID orders them
+        messages = self.add_messages(5, datetime.datetime(2019, 1, 1))
+        newest_first = sorted(messages, key=lambda m: m.id, reverse=True)
+
+        pages = []
+        page = self.page(limit=2)
+        while page:
+            pages.append(page)
+            page = self.page(before=page[-1].id, limit=2)
+        self.assertEqual([2, 2, 1], [len(p) for p in pages])
+        self.assertEqual([m.id for m in newest_first], [m.id for p in pages for m in p])
+
+        newer = self.page(after=newest_first[3].id, limit=2)
+        self.assertEqual([m.id for m in newest_first[1:3]], [m.id for m in newer])
+
+        self.assertIsNone(self.page(before=uuid.uuid4()))
+
+    def test_get_thread_changes(self):
+        since = datetime.datetime(1970, 1, 1)
+        watermark, changed, removed = get_thread_changes(MessageThread.student_id, self.student.id,
+                                                         [ThreadState.ALLOWED], since, session=self.s)
+        self.assertEqual([self.thread.id], [t.id for t in changed])
+        self.assertEqual([], removed)
+
+        # Changed just before the watermark, so it may have been committed after the sync read it
+        watermark, changed, removed = get_thread_changes(MessageThread.student_id, self.student.id,
+                                                         [ThreadState.ALLOWED], watermark, session=self.s)
+        self.assertEqual([self.thread.id], [t.id for t in changed])
+
+        self.thread.modified_at = watermark - 2 * SYNC_OVERLAP
+        self.s.commit()
+        _, changed, removed = get_thread_changes(MessageThread.student_id, self.student.id,
+                                                 [ThreadState.ALLOWED], watermark, session=self.s)
+        self.assertEqual([], changed)
+        self.assertEqual([], removed)
+
+        # No longer in the list asked for
+        _, changed, removed = get_thread_changes(MessageThread.student_id, self.student.id,
+                                                 [ThreadState.REQUESTED], since, session=self.s)
+        self.assertEqual([], changed)
+        self.assertEqual([self.thread.id], removed)
+
+    def test_mark_messages(self):
+        messages = self.add_messages(3, datetime.datetime(2019, 1, 1))
+        ids = [m.id for m in messages]
+
+        # Only the recipient can mark them, and only forwards
+        self.assertEqual(0, mark_messages(self.thread, self.tutor.id, ids, MessageState.READ, session=self.s))
+        self.assertEqual(2, mark_messages(self.thread, self.student.id, ids[:2], MessageState.DELIVERED,
+                                          session=self.s))
+        self.assertEqual(3, mark_messages(self.thread, self.student.id, ids, MessageState.READ, session=self.s))
+        self.assertEqual(0, mark_messages(self.thread, self.student.id, ids, MessageState.DELIVERED, session=self.s))
+        self.assertEqual(0, mark_messages(self.thread, self.student.id, [uuid.uuid4()], MessageState.READ,
+                                          session=self.s))
+
+        self.s.expire_all()
+        self.assertEqual({MessageState.READ}, {m.state for m in self.s.query(Message).filter(Message.id.in_(ids))})
+        self.assertEqual(MessageState.READ, self.s.query(MessageThread).get(self.thread.id).state)
+
+
+class TutorSearchTest(ModelTestCase):
+
+    def setUp(self):
+        super().setUp()
+        # Every tutor has this last name, so searching by it only finds them
+        self.name = random_string(16)
+        self.maths = Subject(id=uuid.uuid4(), name="Maths " + self.name)
+        self.physics = Subject(id=uuid.uuid4(), name="Physics " + self.name)
+        self.s.add_all([self.maths, self.physics])
+        self.s.commit()
+
+        self.tutors = []
+        for i, (price, subjects) in enumerate([(10, [self.maths]), (15, [self.physics]),
+                                               (20, [self.maths, self.physics]), (25, [self.maths]),
+                                               (30, [self.physics])]):
+            tutor = self.add_user(UserRole.TUTOR, first_name=chr(ord("A") + i), last_name=self.name)
+            self.s.add(TutorProfile(
+                tutor_id=tutor.id,
+                price=Decimal(price),
+                subjects=subjects,
+                reviewed_at=datetime.datetime.utcnow()
+            ))
+            self.tutors.append(tutor)
+        # Waiting to be reviewed, so the approved profile before it is searched
+        self.s.add(TutorProfile(tutor_id=self.tutors[0].id, price=Decimal(100), subjects=[self.physics]))
+        self.s.commit()
+
+    def tearDown(self) -> None:
+        for tutor in self.tutors:
+            self.s.delete(tutor)
+        self.s.delete(self.maths)
+        self.s.delete(self.physics)
+        self.s.commit()
+        super().tearDown()
+
+    def ids(self, tutors):
+        return [t.id for t in tutors]
+
+    def test_pages(self):
+        everyone = search_tutors(name=self.name, session=self.s)
+        self.assertEqual(self.ids(self.tutors), self.ids(everyone))
+
+        pages = [search_tutors(name=self.name, offset=offset, limit=2, session=self.s) for offset in (0, 2, 4, 6)]
+        self.assertEqual([2, 2, 1, 0], [len(p) for p in pages])
+        self.assertEqual(self.ids(everyone), [t.id for p in pages for t in p])
+
+    def test_nearest_pages(self):
+        # 1, 10, 50 and 500km north of near, the last tutor hasn't given their position
+        near = (50.9, -1.4)
+        for tutor, km in zip(self.tutors, (1, 10, 50, 500)):
+            tutor.set_position(near[0] + km / 111.2, near[1])
+        self.s.commit()
+
+        everyone = search_tutors(name=self.name, near=near, session=self.s)
+        self.assertEqual(self.ids(self.tutors), self.ids(everyone))
+        # From the 20km ring, then from every tutor as only 3 are within the widest
+        pages = [search_tutors(name=self.name, near=near, offset=offset, limit=2, session=self.s)
+                 for offset in (0, 2, 4)]
+        self.assertEqual([2, 2, 1], [len(p) for p in pages])
+        self.assertEqual(self.ids(everyone), [t.id for p in pages for t in p])
+
+    def test_query_subjects(self):
+        maths_tutors = self.ids([self.tutors[0], self.tutors[2], self.tutors[3]])
+        self.assertEqual(maths_tutors, self.ids(search_tutors(name=self.name, query_str=self.maths.name,
+                                                              session=self.s)))
+        # Only subjects both chosen and named by q
+        self.assertEqual(maths_tutors, self.ids(search_tutors(name=self.name, query_str=self.maths.name,
+                                                              subjects=[str(self.maths.id), str(self.physics.id)],
+                                                              session=self.s)))
+        self.assertEqual([], search_tutors(name=self.name, query_str=self.maths.name,
+                                           subjects=[str(self.physics.id)], session=self.s))
+
+    def test_facets(self):
+        facets = search_facets(name=self.name, price_lower=12, price_higher=26, subjects=[str(self.maths.id)],
+                               session=self.s)
+        # Teaching maths for 20 and 25
+        self.assertEqual(2, facets["count"])
+        # Every price of a maths tutor
+        self.assertEqual(3, sum(b["count"] for b in facets["prices"]))
+        self.assertEqual(10, facets["prices"][0]["low"])
+        # Every subject of a tutor from 15 to 25
+        self.assertEqual([(self.maths.id, 2), (self.physics.id, 2)],
+                         [(s["id"], s["count"]) for s in facets["subjects"]])
+
+
+class SearchFacetsTest(unittest.TestCase):
+
+    def test_price_histogram(self):
+        self.assertEqual([], price_histogram([]))
+        self.assertEqual([{"low": 20, "high": 21, "count": 3}], price_histogram([(Decimal(20), 3)]))
+
+        buckets = price_histogram([(Decimal(10), 1), (Decimal("15.5"), 2), (Decimal(30), 1)])
+        self.assertEqual(10, len(buckets))
+        self.assertEqual((10, 12, 1), (buckets[0]["low"], buckets[0]["high"], buckets[0]["count"]))
+        self.assertEqual(2, buckets[2]["count"])
+        # The highest price is in the last bucket
+        self.assertEqual((28, 30, 1), (buckets[-1]["low"], buckets[-1]["high"], buckets[-1]["count"]))
+        self.assertEqual(4, sum(b["count"] for b in buckets))
+
+    def test_subject_counts(self):
+        art, maths, physics = uuid.uuid4(), uuid.uuid4(), uuid.uuid4()
+        counts = subject_counts([(physics, "Physics", 2), (maths, "Maths", 2), (art, "Art", 5)])
+        self.assertEqual([art, maths, physics], [c["id"] for c in counts])
+        self.assertEqual([5, 2, 2], [c["count"] for c in counts])
@@ -0,0 +1,117 @@
+import math
+from typing import List, Tuple
+
+_BASE32 = "0123456789bcdefghjkmnpqrstuvwxyz"
+_EARTH_RADIUS_KM = 6371.0088
+
+# The most precision stored, a cell of about 37mm
+MAX_PRECISION = 12
+
+
+def encode(latitude: float, longitude: float, precision: int = MAX_PRECISION) -> str:
+    """
+    The geohash of the cell containing a point, bits alternate longitude then latitude, 5 to a character
+    """
+    lat_range = [-90.0, 90.0]
+    lng_range = [-180.0, 180.0]
+    chars = []
+    bits = 0
+    bit_count = 0
+    even = True
+    while len(chars) < precision:
+        value, interval = (longitude, lng_range) if even else (latitude, lat_range)
+        mid = (interval[0] + interval[1]) / 2
+        bits <<= 1
+        if value >= mid:
+            bits |= 1
+            interval[0] = mid
+        else:
+            interval[1] = mid
+        even = not even
+        bit_count += 1
+        if bit_count == 5:
+            chars.append(_BASE32[bits])
+            bits = 0
+            bit_count = 0
+    return "".join(chars)
+
+
+def decode(cell: str) -> Tuple[float, float]:
+    """
+    The latitude and longitude of the centre of a cell
+    """
+    lat_range = [-90.0, 90.0]
+    lng_range = [-180.0, 180.0]
+    even = True
+    for char in cell:
+        bits = _BASE32.index(char)
+        for shift in range(4, -1, -1):
+            interval = lng_range if even else lat_range
+            mid = (interval[0] + interval[1]) / 2
+            if bits >> shift & 1:
+                interval[0] = mid
+            else:
+                interval[1] = mid
+            even = not even
+    return (lat_range[0] + lat_range[1]) / 2, (lng_range[0] + lng_range[1]) / 2
+
+
+def cell_size(precision: int) -> Tuple[float, float]:
+    """
+    Height and width in degrees of a cell at a precision
+    """
+    lng_bits = (5 * precision + 1) // 2
+    lat_bits = 5 * precision // 2
+    return 180.0 / (1 << lat_bits), 360.0 / (1 << lng_bits)
+
+
+def precision_for_radius(radius_km: float, latitude: float) -> int:
+    """
+    The finest precision whose cells are at least radius_km across at a latitude,
+    so every point within the radius is in the cell containing the centre or one of its 8 neighbours
+    """
+    for precision in range(MAX_PRECISION, 0, -1):
+        height, width = cell_size(precision)
+        height_km = math.radians(height) * _EARTH_RADIUS_KM
+        width_km = math.radians(width) * _EARTH_RADIUS_KM * math.cos(math.radians(min(abs(latitude), 89.9)))
+        if min(height_km, width_km) >= radius_km:
+            return precision
+    return 0
+
+
+def cells_around(latitude: float, longitude: float, precision: int) -> List[str]:
+    """
+    The cell containing a point and its neighbours, without duplicates near the poles
+    """
+    if precision == 0:
+        return [""]
+    height, width = cell_size(precision)
+    cells = []
+    for d_lat in (-height, 0, height):
+        lat = latitude + d_lat
+        if lat < -90 or lat > 90:
+            continue
+        for d_lng in (-width, 0, width):
+            lng = (longitude + d_lng + 180) % 360 - 180
+            cell = encode(lat, lng, precision)
+            if cell not in cells:
+                cells.append(cell)
+    return cells
+
+
+def cell_range(cell: str) -> Tuple[str, str]:
+    """
+    Bounds such that lower <= geohash < upper for every geohash in the cell, so a B-tree index can answer it
+    """
+    return cell, cell + "~"
+
+
+def distance_km(lat1: float, lng1: float, lat2: float, lng2: float) -> float:
+    """
+    Great circle distance by the haversine formula
+    """
+    d_lat = math.radians(lat2 - lat1)
+    d_lng = math.radians(lng2 - lng1)
+    a = math.sin(d_lat / 2) ** 2 + \
+        math.cos(math.radians(lat1)) * math.cos(math.radians(lat2)) * math.sin(d_lng / 2) ** 2
+    return 2 * _EARTH_RADIUS_KM * math.asin(min(1.0, math.sqrt(a)))